@@ -8,6 +8,7 @@ package applications;
 import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import movement.MovementModel;
 
@@ -17,6 +18,7 @@ import core.Message;
 import core.Settings;
 import core.SimClock;
 import core.SimScenario;
+import core.SimulationContext;
 import core.World;
 import core.Coord;
 import core.DTNSim;
@@ -60,7 +62,13 @@ public class FloatingApplication extends Application {
     public static final int MODE_FIXED_ANCHOR = 0;
     public static final int MODE_VARIABLE_ANCHOR = 1;
     
-    private static  LinkedList<Message> msgs = new LinkedList<Message> ();
+    /** messages of the runs (one list per simulation context) */
+    private static final SimulationContext.Local<LinkedList<Message>> msgs =
+	new SimulationContext.Local<LinkedList<Message>>() {
+	    protected LinkedList<Message> initialValue() {
+		return new LinkedList<Message> ();
+	    }
+	};
     
     private double  lastMessage   = 0;
     private double  interval      = 500;
@@ -95,7 +103,13 @@ public class FloatingApplication extends Application {
     private boolean in_anchor_zone = false;   
     private boolean flux        = false;
 
-    private static int msg_seq_no = 0;
+    /** message sequence numbers (one counter per simulation context) */
+    private static final SimulationContext.Local<AtomicInteger> msg_seq_no =
+	new SimulationContext.Local<AtomicInteger>() {
+	    protected AtomicInteger initialValue() {
+		return new AtomicInteger();
+	    }
+	};
 
     
     /** Application ID */
@@ -356,7 +370,7 @@ public class FloatingApplication extends Application {
 		    in_anchor_zone = true;
 		}
 	    } else {
-		ListIterator i = FloatingApplication.msgs.listIterator ();
+		ListIterator i = FloatingApplication.msgs.get().listIterator ();
 		Message      m, m_del = null;
 		double       anchor_r2;
 		Coord        anchor;
@@ -381,7 +395,7 @@ public class FloatingApplication extends Application {
 		    }
 		}
 		if (m_del != null)
-		    FloatingApplication.msgs.remove (m_del);
+		    FloatingApplication.msgs.get().remove (m_del);
 	    }
 	}
 
@@ -394,7 +408,7 @@ public class FloatingApplication extends Application {
 		
 		if (distance < anchor_r * in_anchor_zone_factor) {
 		    // Now we are allowed to create a new floating message
-		    Message m = new Message(host, destinationHost(), "floating" + msg_seq_no++ + "-" +
+		    Message m = new Message(host, destinationHost(), "floating" + msg_seq_no.get().getAndIncrement() + "-" +
 					    SimClock.getIntTime() + "-" + host.getAddress(),
 					    getMessageSize());
 		    m.addProperty("type", "floating");
@@ -457,7 +471,7 @@ public class FloatingApplication extends Application {
 		    host.getLocation ().getY () >= anchor.getY () &&
 		    host.getLocation ().getY () <= anchor_max.getY ()) {
 
-		    Message m = new Message(host, destinationHost(), "floating" + msg_seq_no++ + "-" +
+		    Message m = new Message(host, destinationHost(), "floating" + msg_seq_no.get().getAndIncrement() + "-" +
 					    SimClock.getIntTime() + "-" + host.getAddress(),
 					    msgsize);
 		    m.addProperty("type", "floating");
@@ -477,7 +491,7 @@ public class FloatingApplication extends Application {
 		    m.setTtl ((int) (msgttl));
 		    
 		    if (flux)
-			FloatingApplication.msgs.add (m);
+			FloatingApplication.msgs.get().add (m);
 		    lastMessage = curTime + (rng.nextDouble () - 0.5) * interval/2;
 		}
 	    }	    
@@ -751,6 +765,6 @@ public class FloatingApplication extends Application {
 
     public static void reset() {
 	/* do your reset'ing here */
-	msgs.clear();
+	msgs.get().clear();
     }
 }
@@ -118,6 +118,8 @@ public abstract class Application {
 	 */
 	public void sendEventToListeners(String event, Object params,
 			DTNHost host) {
+		UpdateProfiler.count(UpdateProfiler.LISTENER_CALLBACKS, 
+				this.aListeners.size());
 		for (ApplicationListener al : this.aListeners) {
 			al.gotEvent(event, params, this, host);
 		}
@@ -0,0 +1,22 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+/**
+ * Interface for classes that want to be informed about the changes in the
+ * message buffer occupancy of the hosts.
+ */
+public interface BufferListener {
+
+	/**
+	 * Method is called every time a message is added to or removed from
+	 * the message buffer of a host.
+	 * @param host The host whose buffer changed
+	 * @param occupancy The total size of the messages now in the buffer
+	 * (bytes)
+	 */
+	public void bufferOccupancyChanged(DTNHost host, long occupancy);
+	
+}
@@ -4,6 +4,8 @@
  */
 package core;
 
+import java.io.IOException;
+
 import routing.MessageRouter;
 
 /**
@@ -53,7 +55,7 @@ public class CBRConnection extends Connection {
 		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
 
 		if (retVal == MessageRouter.RCV_OK) {
-			this.msgOnFly = newMessage;
+			setMsgOnFly(newMessage);
 			this.transferDoneTime = SimClock.getTime() + 
 			(1.0*m.getSize()) / this.speed;
 		}
@@ -72,6 +74,20 @@ public class CBRConnection extends Connection {
 		this.transferDoneTime = 0;
 	}
 
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(this.speed);
+		out.writeDouble(this.transferDoneTime);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.speed = in.readInt();
+		this.transferDoneTime = in.readDouble();
+	}
+
 	/**
 	 * Gets the transferdonetime
 	 */
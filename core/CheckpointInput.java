@@ -0,0 +1,250 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import util.RestorableRandom;
+
+/**
+ * Binary input stream for reading simulation checkpoints written with
+ * {@link CheckpointOutput}.
+ */
+public class CheckpointInput extends DataInputStream {
+	private List<DTNHost> hosts;
+	private List<Message> messages;
+	private List<Connection> connections;
+	private List<Random> rngs;
+	private List<Object> shared;
+
+	/**
+	 * Creates a new checkpoint input stream
+	 * @param in The stream to read the checkpoint from
+	 * @param hosts The hosts of the simulation indexed by their addresses
+	 */
+	public CheckpointInput(InputStream in, List<DTNHost> hosts) {
+		super(in);
+		this.hosts = hosts;
+		this.messages = new ArrayList<Message>();
+		this.connections = new ArrayList<Connection>();
+		this.rngs = new ArrayList<Random>();
+		this.shared = new ArrayList<Object>();
+	}
+
+	/**
+	 * Reads a host reference
+	 * @return The host or null
+	 * @throws IOException if reading fails
+	 */
+	public DTNHost readHost() throws IOException {
+		int address = readInt();
+		if (address < 0) {
+			return null;
+		}
+		if (address >= hosts.size()) {
+			throw new SimError("Invalid host address " + address +
+					" in checkpoint");
+		}
+		return hosts.get(address);
+	}
+
+	/**
+	 * Reads a list of host references
+	 * @return The hosts or null
+	 * @throws IOException if reading fails
+	 */
+	public List<DTNHost> readHosts() throws IOException {
+		int size = readInt();
+		if (size < 0) {
+			return null;
+		}
+		List<DTNHost> list = new ArrayList<DTNHost>(size);
+		for (int i=0; i<size; i++) {
+			list.add(readHost());
+		}
+		return list;
+	}
+
+	/**
+	 * Reads a network interface reference
+	 * @return The interface
+	 * @throws IOException if reading fails
+	 */
+	public NetworkInterface readInterface() throws IOException {
+		DTNHost host = readHost();
+		int index = readInt();
+		if (host == null || index < 0 ||
+				index >= host.getInterfaces().size()) {
+			throw new SimError("Invalid network interface " + index +
+					" of " + host + " in checkpoint");
+		}
+		return host.getInterfaces().get(index);
+	}
+
+	/**
+	 * Reads a coordinate
+	 * @return The coordinate or null
+	 * @throws IOException if reading fails
+	 */
+	public Coord readCoord() throws IOException {
+		if (!readBoolean()) {
+			return null;
+		}
+		double x = readDouble();
+		return new Coord(x, readDouble());
+	}
+
+	/**
+	 * Reads a string that may be null
+	 * @return The string or null
+	 * @throws IOException if reading fails
+	 */
+	public String readString() throws IOException {
+		return readBoolean() ? readUTF() : null;
+	}
+
+	/**
+	 * Reads a value written with {@link CheckpointOutput#writeValue(Object)}
+	 * @return The value
+	 * @throws IOException if reading fails
+	 */
+	public Object readValue() throws IOException {
+		int type = readByte();
+		switch (type) {
+		case CheckpointOutput.TYPE_NULL:
+			return null;
+		case CheckpointOutput.TYPE_INT:
+			return readInt();
+		case CheckpointOutput.TYPE_DOUBLE:
+			return readDouble();
+		case CheckpointOutput.TYPE_STRING:
+			return readUTF();
+		case CheckpointOutput.TYPE_BOOLEAN:
+			return readBoolean();
+		case CheckpointOutput.TYPE_LONG:
+			return readLong();
+		case CheckpointOutput.TYPE_COORD:
+			return readCoord();
+		default:
+			throw new SimError("Invalid value type " + type +
+					" in checkpoint");
+		}
+	}
+
+	/**
+	 * Reads a message or a reference to a message read earlier
+	 * @return The message or null
+	 * @throws IOException if reading fails
+	 */
+	public Message readMessage() throws IOException {
+		int index = readInt();
+		if (index < 0) {
+			return null;
+		}
+		if (index < messages.size()) {
+			return messages.get(index);
+		}
+
+		Message m = new Message();
+		messages.add(m);
+		m.readState(this);
+		return m;
+	}
+
+	/**
+	 * Reads a connection or a reference to a connection read earlier.
+	 * New connections are not added to the interfaces' connection lists.
+	 * @return The connection
+	 * @throws IOException if reading fails
+	 */
+	public Connection readConnection() throws IOException {
+		int index = readInt();
+		if (index < connections.size()) {
+			return connections.get(index);
+		}
+
+		String className = readUTF();
+		NetworkInterface fromNi = readInterface();
+		NetworkInterface toNi = readInterface();
+		DTNHost from = fromNi.getHost();
+		DTNHost to = toNi.getHost();
+
+		Connection con;
+		if (className.equals(CBRConnection.class.getName())) {
+			con = new CBRConnection(from, fromNi, to, toNi, 0);
+		} else if (className.equals(VBRConnection.class.getName())) {
+			con = new VBRConnection(from, fromNi, to, toNi);
+		} else {
+			throw new SimError("Can't restore connection of type " +
+					className);
+		}
+
+		connections.add(con);
+		con.readState(this);
+		return con;
+	}
+
+	/**
+	 * Reads a random number generator or a reference to one read earlier
+	 * @return The generator or null
+	 * @throws IOException if reading fails
+	 */
+	public Random readRandom() throws IOException {
+		int index = readInt();
+		if (index < 0) {
+			return null;
+		}
+		if (index < rngs.size()) {
+			return rngs.get(index);
+		}
+
+		RestorableRandom rng = new RestorableRandom(0);
+		long state = readLong();
+		rng.setState(state, readDouble());
+		rngs.add(rng);
+		return rng;
+	}
+
+	/**
+	 * Reads a reference written with 
+	 * {@link CheckpointOutput#writeShared(Object)}. If 
+	 * {@link #getShared(int)} returns null for the index, the object's state
+	 * follows and the object must be registered with 
+	 * {@link #addShared(Object)} when it has been created.
+	 * @return Index of the object or -1 if the reference was null
+	 * @throws IOException if reading fails
+	 */
+	public int readSharedIndex() throws IOException {
+		int index = readInt();
+		if (index > shared.size()) {
+			throw new SimError("Invalid shared object index " + index + 
+					" in checkpoint");
+		}
+		return index;
+	}
+
+	/**
+	 * Returns a shared object that has been read already
+	 * @param index Index of the object (see {@link #readSharedIndex()})
+	 * @return The object or null if its state has not been read yet
+	 */
+	public Object getShared(int index) {
+		return index < shared.size() ? shared.get(index) : null;
+	}
+
+	/**
+	 * Registers a shared object whose state follows the reference that
+	 * was read last
+	 * @param o The object
+	 */
+	public void addShared(Object o) {
+		shared.add(o);
+	}
+}
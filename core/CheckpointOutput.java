@@ -0,0 +1,266 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import util.LongHashMap;
+import util.RestorableRandom;
+
+/**
+ * Binary output stream for simulation checkpoints. Hosts are written as
+ * their addresses. Messages, connections, random number generators and
+ * other shared objects (see {@link #writeShared(Object)}) are written in 
+ * full only the first time they are written; later references to the same
+ * object are written as indexes so that shared objects are shared also
+ * after restoring (see {@link CheckpointInput}). The objects are looked up
+ * by their ID numbers (or identity) and never by their identity hash codes,
+ * since computing those would change the hash codes that other objects get 
+ * later in the run, and thus the results of the run.
+ */
+public class CheckpointOutput extends DataOutputStream {
+	/** value type identifiers for {@link #writeValue(Object)} */
+	static final int TYPE_NULL = 0;
+	static final int TYPE_INT = 1;
+	static final int TYPE_DOUBLE = 2;
+	static final int TYPE_STRING = 3;
+	static final int TYPE_BOOLEAN = 4;
+	static final int TYPE_LONG = 5;
+	static final int TYPE_COORD = 6;
+
+	/** indexes of the written messages by their unique IDs */
+	private LongHashMap<Integer> messages;
+	/** indexes of the written connections by their interface addresses */
+	private LongHashMap<Integer> connections;
+	/** indexes of the written generators by their ID numbers */
+	private LongHashMap<Integer> rngs;
+	/** the written shared objects in the order of their indexes */
+	private List<Object> shared;
+
+	/**
+	 * Creates a new checkpoint output stream
+	 * @param out The stream to write the checkpoint to
+	 */
+	public CheckpointOutput(OutputStream out) {
+		super(out);
+		this.messages = new LongHashMap<Integer>();
+		this.connections = new LongHashMap<Integer>();
+		this.rngs = new LongHashMap<Integer>();
+		this.shared = new ArrayList<Object>();
+	}
+
+	/**
+	 * Writes a reference to a host
+	 * @param host The host or null
+	 * @throws IOException if writing fails
+	 */
+	public void writeHost(DTNHost host) throws IOException {
+		writeInt(host == null ? -1 : host.getAddress());
+	}
+
+	/**
+	 * Writes a list of host references
+	 * @param hosts The hosts or null
+	 * @throws IOException if writing fails
+	 */
+	public void writeHosts(List<DTNHost> hosts) throws IOException {
+		if (hosts == null) {
+			writeInt(-1);
+			return;
+		}
+		writeInt(hosts.size());
+		for (DTNHost h : hosts) {
+			writeHost(h);
+		}
+	}
+
+	/**
+	 * Writes a reference to a network interface
+	 * @param ni The interface
+	 * @throws IOException if writing fails
+	 */
+	public void writeInterface(NetworkInterface ni) throws IOException {
+		DTNHost host = ni.getHost();
+		writeHost(host);
+		writeInt(host.getInterfaces().indexOf(ni));
+	}
+
+	/**
+	 * Writes a coordinate
+	 * @param c The coordinate or null
+	 * @throws IOException if writing fails
+	 */
+	public void writeCoord(Coord c) throws IOException {
+		writeBoolean(c != null);
+		if (c != null) {
+			writeDouble(c.getX());
+			writeDouble(c.getY());
+		}
+	}
+
+	/**
+	 * Writes a string that may be null
+	 * @param s The string or null
+	 * @throws IOException if writing fails
+	 */
+	public void writeString(String s) throws IOException {
+		writeBoolean(s != null);
+		if (s != null) {
+			writeUTF(s);
+		}
+	}
+
+	/**
+	 * Writes a simple value. Supported types are Integer, Double, String,
+	 * Boolean, Long and Coord.
+	 * @param value The value or null
+	 * @throws IOException if writing fails
+	 * @throws SimError if the value's type is not supported
+	 */
+	public void writeValue(Object value) throws IOException {
+		if (value == null) {
+			writeByte(TYPE_NULL);
+		} else if (value instanceof Integer) {
+			writeByte(TYPE_INT);
+			writeInt((Integer)value);
+		} else if (value instanceof Double) {
+			writeByte(TYPE_DOUBLE);
+			writeDouble((Double)value);
+		} else if (value instanceof String) {
+			writeByte(TYPE_STRING);
+			writeUTF((String)value);
+		} else if (value instanceof Boolean) {
+			writeByte(TYPE_BOOLEAN);
+			writeBoolean((Boolean)value);
+		} else if (value instanceof Long) {
+			writeByte(TYPE_LONG);
+			writeLong((Long)value);
+		} else if (value instanceof Coord) {
+			writeByte(TYPE_COORD);
+			writeCoord((Coord)value);
+		} else {
+			throw new SimError("Can't checkpoint a value of type " +
+					value.getClass().getName());
+		}
+	}
+
+	/**
+	 * Writes a message, or a reference to it if it has been written already
+	 * @param m The message or null
+	 * @throws IOException if writing fails
+	 */
+	public void writeMessage(Message m) throws IOException {
+		if (m == null) {
+			writeInt(-1);
+			return;
+		}
+
+		Integer index = messages.get(m.getUniqueId());
+		if (index != null) {
+			writeInt(index);
+			return;
+		}
+
+		writeInt(messages.size());
+		messages.put(m.getUniqueId(), messages.size());
+		m.writeState(this);
+	}
+
+	/**
+	 * Writes a connection, or a reference to it if it has been written
+	 * already
+	 * @param con The connection
+	 * @throws IOException if writing fails
+	 */
+	public void writeConnection(Connection con) throws IOException {
+		/* two interfaces have at most one connection between them */
+		long key = ((long)con.fromInterface.getAddress() << 32) | 
+			(con.toInterface.getAddress() & 0xFFFFFFFFL);
+		Integer index = connections.get(key);
+		if (index != null) {
+			writeInt(index);
+			return;
+		}
+
+		if (con.getClass() != CBRConnection.class &&
+				con.getClass() != VBRConnection.class) {
+			throw new SimError("Can't checkpoint connection of type " +
+					con.getClass().getName());
+		}
+
+		writeInt(connections.size());
+		connections.put(key, connections.size());
+
+		writeUTF(con.getClass().getName());
+		writeInterface(con.fromInterface);
+		writeInterface(con.toInterface);
+		con.writeState(this);
+	}
+
+	/**
+	 * Writes the state of a random number generator, or a reference to it
+	 * if it has been written already
+	 * @param rng The generator (must be a {@link RestorableRandom})
+	 * @throws IOException if writing fails
+	 * @throws SimError if the generator's state can't be read
+	 */
+	public void writeRandom(Random rng) throws IOException {
+		if (rng == null) {
+			writeInt(-1);
+			return;
+		}
+
+		if (!(rng instanceof RestorableRandom)) {
+			throw new SimError("Can't checkpoint the state of " +
+					rng.getClass().getName());
+		}
+		RestorableRandom rr = (RestorableRandom)rng;
+
+		Integer index = rngs.get(rr.getIdNumber());
+		if (index != null) {
+			writeInt(index);
+			return;
+		}
+
+		writeInt(rngs.size());
+		rngs.put(rr.getIdNumber(), rngs.size());
+		writeLong(rr.getState());
+		writeDouble(rr.getNextGaussian());
+	}
+
+	/**
+	 * Writes a reference to an object that may be referred to from several
+	 * places (e.g., state shared by movement models). The first time an 
+	 * object is written, the caller must write the object's state right 
+	 * after the reference; later references are written as an index only
+	 * (see {@link CheckpointInput#readSharedIndex()}). The written objects
+	 * are searched by identity, so there should not be many of them.
+	 * @param o The object or null
+	 * @return True if the object's state should be written next
+	 * @throws IOException if writing fails
+	 */
+	public boolean writeShared(Object o) throws IOException {
+		if (o == null) {
+			writeInt(-1);
+			return false;
+		}
+
+		for (int i=0, n=shared.size(); i<n; i++) {
+			if (shared.get(i) == o) {
+				writeInt(i);
+				return false;
+			}
+		}
+
+		writeInt(shared.size());
+		shared.add(o);
+		return true;
+	}
+}
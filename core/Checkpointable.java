@@ -0,0 +1,31 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.IOException;
+
+/**
+ * Interface for objects whose run-time state can be stored to a simulation
+ * checkpoint and restored from it (see {@link World#checkpoint(java.nio.file.Path)}).
+ * Only the state that changes during a simulation is stored; the objects
+ * that the state is restored to are created from the same settings as the
+ * checkpointed ones.
+ */
+public interface Checkpointable {
+
+	/**
+	 * Writes the state of the object to a checkpoint
+	 * @param out The checkpoint to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writeState(CheckpointOutput out) throws IOException;
+
+	/**
+	 * Restores the state of the object from a checkpoint
+	 * @param in The checkpoint to read from
+	 * @throws IOException if reading fails
+	 */
+	public void readState(CheckpointInput in) throws IOException;
+}
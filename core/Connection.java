@@ -4,12 +4,14 @@
  */
 package core;
 
+import java.io.IOException;
+
 import routing.MessageRouter;
 
 /**
  * A connection between two DTN nodes.
  */
-public abstract class Connection {
+public abstract class Connection implements Checkpointable {
 	protected DTNHost toNode;
 	protected NetworkInterface toInterface;
 	protected DTNHost fromNode;
@@ -40,6 +42,24 @@ public abstract class Connection {
 	}
 
 
+	/**
+	 * Writes the transfer state of the connection. The end points of the
+	 * connection are written by {@link CheckpointOutput#writeConnection}.
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeBoolean(this.isUp);
+		out.writeHost(this.msgFromNode);
+		out.writeMessage(this.msgOnFly);
+		out.writeInt(this.bytesTransferred);
+	}
+
+	public void readState(CheckpointInput in) throws IOException {
+		this.isUp = in.readBoolean();
+		this.msgFromNode = in.readHost();
+		this.msgOnFly = in.readMessage();
+		this.bytesTransferred = in.readInt();
+	}
+
 	/**
 	 * Returns true if the connection is up
 	 * @return state of the connection
@@ -72,6 +92,9 @@ public abstract class Connection {
 	 * @param state True if the connection is up, false if not
 	 */
 	public void setUpState(boolean state) {
+		if (this.isUp && !state && this.msgOnFly != null) {
+			notifyTransferStateChanged(false);
+		}
 		this.isUp = state;
 	}
 
@@ -115,15 +138,40 @@ public abstract class Connection {
 	 */
 	public abstract int getRemainingByteCount();
 
+	/**
+	 * Sets the message that is currently being transferred and tells the
+	 * interfaces of the connection that a transfer started.
+	 * @param m The message
+	 */
+	protected void setMsgOnFly(Message m) {
+		this.msgOnFly = m;
+		if (this.isUp) {
+			notifyTransferStateChanged(true);
+		}
+	}
+
 	/**
 	 * Clears the message that is currently being transferred.
 	 * Calls to {@link #getMessage()} will return null after this.
 	 */
 	protected void clearMsgOnFly() {
+		if (this.msgOnFly != null && this.isUp) {
+			notifyTransferStateChanged(false);
+		}
 		this.msgOnFly = null;
 		this.msgFromNode = null;		
 	}
 
+	/**
+	 * Tells both interfaces of the connection that a transfer started or
+	 * stopped
+	 * @param started True if a transfer started, false if it stopped
+	 */
+	private void notifyTransferStateChanged(boolean started) {
+		this.fromInterface.transferStateChanged(this, started);
+		this.toInterface.transferStateChanged(this, started);
+	}
+
 	/**
 	 * Finalizes the transfer of the currently transferred message.
 	 * The message that was being transferred can <STRONG>not</STRONG> be
@@ -4,10 +4,13 @@
  */
 package core;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import movement.MovementModel;
 import movement.Path;
@@ -17,8 +20,14 @@ import routing.util.RoutingInfo;
 /**
  * A DTN capable host.
  */
-public class DTNHost implements Comparable<DTNHost> {
-	private static int nextAddress = 0;
+public class DTNHost implements Comparable<DTNHost>, Checkpointable {
+	/** next host address (one counter per simulation context) */
+	private static final SimulationContext.Local<AtomicInteger> nextAddress =
+		new SimulationContext.Local<AtomicInteger>() {
+			protected AtomicInteger initialValue() {
+				return new AtomicInteger();
+			}
+		};
 	private int address;
 
 	private Coord location; 	// where is the host
@@ -29,10 +38,19 @@ public class DTNHost implements Comparable<DTNHost> {
 	private Path path;
 	private double speed;
 	private double nextTimeToMove;
+	/** total time of the move calls */
+	private double movementTime;
+	/** how many times the movement has not continued in a straight line */
+	private int movementChanges;
 	private String name;
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
+	/** snapshot of the connections of all interfaces (or null) */
+	private List<Connection> connections;
+	/** sum of the interfaces' connection list modification counts when
+	 * the snapshot was taken */
+	private long connectionsModCount;
 	private ModuleCommunicationBus comBus;
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -94,15 +112,15 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * subsequent calls.
 	 * @return The next address.
 	 */
-	private synchronized static int getNextAddress() {
-		return nextAddress++;	
+	private static int getNextAddress() {
+		return nextAddress.get().getAndIncrement();
 	}
 
 	/**
 	 * Reset the host and its interfaces
 	 */
 	public static void reset() {
-		nextAddress = 0;
+		nextAddress.set(new AtomicInteger());
 	}
 
 	/**
@@ -114,12 +132,16 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 	
 	/**
-	 * Returns true if this node's radio is active (false if not)
-	 * @return true if this node's radio is active (false if not)
+	 * Returns true if some of this node's radios is active (false if not)
+	 * @return true if some of this node's radios is active (false if not)
 	 */
 	public boolean isRadioActive() {
-		/* TODO: make this work for multiple interfaces */
-		return this.getInterface(1).isActive();
+		for (int i=0, n=net.size(); i<n; i++) {
+			if (net.get(i).isActive()) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -139,6 +161,14 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this.router;
 	}
 
+	/**
+	 * Returns the movement model of this host
+	 * @return the movement model of this host
+	 */
+	public MovementModel getMovement() {
+		return this.movement;
+	}
+
 	/**
 	 * Returns the network-layer address of this host.
 	 */
@@ -168,17 +198,56 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 	/**
-	 * Returns a copy of the list of connections this host has with other hosts
-	 * @return a copy of the list of connections this host has with other hosts
+	 * Returns an unmodifiable list of the connections this host has with
+	 * other hosts. The list is a snapshot: it is not changed when the
+	 * connections change but a new list is returned by the next call. The
+	 * snapshot is rebuilt only when some interface's connections have
+	 * changed since the previous call.
+	 * @return an unmodifiable list of the connections this host has with
+	 * other hosts
 	 */
 	public List<Connection> getConnections() {
-		List<Connection> lc = new ArrayList<Connection>();
+		long modCount = 0;
+		for (int i=0, n=net.size(); i<n; i++) {
+			modCount += net.get(i).getConnectionsModCount();
+		}
 
-		for (NetworkInterface i : net) {
-			lc.addAll(i.getConnections());
+		if (this.connections == null || modCount != this.connectionsModCount) {
+			List<Connection> lc = new ArrayList<Connection>();
+			for (NetworkInterface i : net) {
+				lc.addAll(i.getConnections());
+			}
+			this.connections = Collections.unmodifiableList(lc);
+			this.connectionsModCount = modCount;
 		}
 
-		return lc;
+		return this.connections;
+	}
+
+	/**
+	 * Returns the fastest connection this host has with another host that
+	 * is ready for a new transfer. If the hosts are connected with more
+	 * than one type of interface, the connection with the highest current 
+	 * speed is returned.
+	 * @param other The other host
+	 * @return The fastest connection that is ready for transfer or null if
+	 * the hosts have no such connection
+	 */
+	public Connection getFastestConnection(DTNHost other) {
+		Connection fastest = null;
+		for (int i=0, n=net.size(); i<n; i++) {
+			NetworkInterface ni = net.get(i);
+			NetworkInterface no = other.getInterface(ni.getInterfaceType());
+			if (no == null) {
+				continue;
+			}
+			Connection con = ni.getConnection(no);
+			if (con != null && con.isReadyForTransfer() && 
+					(fastest == null || con.getSpeed() > fastest.getSpeed())) {
+				fastest = con;
+			}
+		}
+		return fastest;
 	}
 
 	/**
@@ -198,12 +267,52 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this.path;
 	}
 
+	/**
+	 * Returns the point this node is currently moving towards. If the node
+	 * is waiting, the destination is its current location (or null if the
+	 * node has not moved yet).
+	 * @return The destination
+	 */
+	public Coord getDestination() {
+		return this.destination;
+	}
+
+	/**
+	 * Returns the speed of the node on the current part of its path
+	 * @return The speed
+	 */
+	public double getSpeed() {
+		return this.speed;
+	}
+
+	/**
+	 * Returns the total time this node has been moved, i.e., the sum of the
+	 * time increments given to {@link #move(double)}
+	 * @return The total time of movement
+	 */
+	public double getMovementTime() {
+		return this.movementTime;
+	}
+
+	/**
+	 * Returns a counter that changes whenever the node does not continue 
+	 * moving in a straight line with the same speed, i.e., it gets a new 
+	 * waypoint, stops, is inactive or is put to a new location. As long as
+	 * the counter does not change, the node moves (or waits) at a constant 
+	 * velocity towards its destination.
+	 * @return The counter of movement changes
+	 */
+	public int getMovementChanges() {
+		return this.movementChanges;
+	}
+
 	/**
 	 * Sets the Node's location overriding any location set by movement model
 	 * @param location The location to set
 	 */
 	public void setLocation(Coord location) {
 		this.location = location.clone();
+		this.movementChanges++;
 	}
 
 	/**
@@ -298,11 +407,21 @@ public class DTNHost implements Comparable<DTNHost> {
 			assert (ni != null) : "Tried to use a nonexisting interfacetype "+interfaceId;
 			assert (no != null) : "Tried to use a nonexisting interfacetype "+interfaceId;
 		} else {
-			ni = getInterface(1);
-			no = anotherHost.getInterface(1);
+			/* use the first interface type that both hosts have */
+			ni = null;
+			no = null;
+			for (NetworkInterface i : net) {
+				no = anotherHost.getInterface(i.getInterfaceType());
+				if (no != null) {
+					ni = i;
+					break;
+				}
+			}
 			
-			assert (ni.getInterfaceType().equals(no.getInterfaceType())) : 
-				"Interface types do not match.  Please specify interface type explicitly";
+			if (ni == null) {
+				throw new SimError("Hosts " + this + " and " + anotherHost +
+						" have no interfaces of the same type");
+			}
 		}
 		
 		if (up) {
@@ -334,32 +453,205 @@ public class DTNHost implements Comparable<DTNHost> {
 		}
 		
 		if (simulateConnections) {
+			long start = UpdateProfiler.start();
 			for (NetworkInterface i : net) {
-				i.update();
+				if (i.isActive()) {
+					i.update();
+				} else {
+					tearDownConnections(i);
+				}
 			}
+			UpdateProfiler.end(UpdateProfiler.INTERFACES, start);
 		}
+		long start = UpdateProfiler.start();
 		this.router.update();
+		UpdateProfiler.end(UpdateProfiler.ROUTERS, start);
 	}
 	
+	/**
+	 * Read phase of a two-phase update. Prepares the network interfaces'
+	 * and the router's next update without changing the state of any other
+	 * simulation object, so it can be called concurrently for different 
+	 * hosts.
+	 * @param simulateConnections Should network layer be prepared
+	 * @see World#UPDATE_THREADS_S
+	 */
+	public void prepareUpdate(boolean simulateConnections) {
+		if (simulateConnections) {
+			for (NetworkInterface i : net) {
+				i.prepareUpdate();
+			}
+		}
+		this.router.prepareUpdate();
+	}
+
 	/** 
 	 * Tears down all connections for this host.
 	 */
 	private void tearDownAllConnections() {
 		for (NetworkInterface i : net) {
-			// Get all connections for the interface
-			List<Connection> conns = i.getConnections();
-			if (conns.size() == 0) continue;
-			
-			// Destroy all connections
-			List<NetworkInterface> removeList =
-				new ArrayList<NetworkInterface>(conns.size());
-			for (Connection con : conns) {
-				removeList.add(con.getOtherInterface(i));
-			}
-			for (NetworkInterface inf : removeList) {
-				i.destroyConnection(inf);
+			tearDownConnections(i);
+		}
+	}
+	
+	/**
+	 * Tears down all connections of an interface of this host.
+	 * @param i The interface
+	 */
+	private void tearDownConnections(NetworkInterface i) {
+		// Get all connections for the interface
+		List<Connection> conns = i.getConnections();
+		if (conns.size() == 0) {
+			return;
+		}
+		
+		// Destroy all connections
+		List<NetworkInterface> removeList =
+			new ArrayList<NetworkInterface>(conns.size());
+		for (Connection con : conns) {
+			removeList.add(con.getOtherInterface(i));
+		}
+		for (NetworkInterface inf : removeList) {
+			i.destroyConnection(inf);
+		}
+	}
+
+	/**
+	 * Writes the state of the host, its movement model, network interfaces
+	 * and router
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		writeMovementState(out);
+		this.comBus.writeState(out);
+		for (NetworkInterface ni : this.net) {
+			ni.writeState(out);
+		}
+		this.router.writeState(out);
+	}
+
+	public void readState(CheckpointInput in) throws IOException {
+		readMovementState(in);
+		this.comBus.readState(in);
+		for (NetworkInterface ni : this.net) {
+			ni.readState(in);
+		}
+		this.router.readState(in);
+	}
+
+	/**
+	 * Writes the location of the host, its current path and the state of
+	 * its movement model
+	 * @param out The checkpoint to write to
+	 * @throws IOException if writing fails
+	 */
+	void writeMovementState(CheckpointOutput out) throws IOException {
+		out.writeCoord(this.location);
+		out.writeCoord(this.destination);
+		out.writeBoolean(this.path != null);
+		if (this.path != null) {
+			this.path.writeState(out);
+		}
+		out.writeDouble(this.speed);
+		out.writeDouble(this.nextTimeToMove);
+		this.movement.writeState(out);
+	}
+
+	/**
+	 * Restores the state written by {@link #writeMovementState}
+	 * @param in The checkpoint to read from
+	 * @throws IOException if reading fails
+	 */
+	void readMovementState(CheckpointInput in) throws IOException {
+		this.location.setLocation(in.readCoord());
+		this.destination = in.readCoord();
+		this.path = null;
+		if (in.readBoolean()) {
+			this.path = new Path();
+			this.path.readState(in);
+		}
+		this.speed = in.readDouble();
+		this.nextTimeToMove = in.readDouble();
+		this.movement.readState(in);
+		this.movementChanges++;
+	}
+
+	/**
+	 * Returns true if this host can be moved concurrently with other hosts,
+	 * i.e., its movement model supports concurrent movement and there are
+	 * no movement listeners that should be informed in order.
+	 * @return true if this host can be moved concurrently with other hosts
+	 * @see MovementModel#isConcurrentMovementSupported()
+	 */
+	public boolean canMoveConcurrently() {
+		if (hasMovementListeners()) {
+			return false;
+		}
+		return this.movement.isConcurrentMovementSupported();
+	}
+
+	/**
+	 * Returns true if this host can be moved for the given time 
+	 * concurrently with other hosts. In addition to the hosts that 
+	 * {@link #canMoveConcurrently()} accepts, this accepts hosts whose 
+	 * movement model supports concurrent path movement and that don't 
+	 * reach the end of their current path during the move, i.e., the move 
+	 * does not call the movement model.
+	 * @param timeIncrement How long time the node would move
+	 * @return true if this host can be moved concurrently with other hosts
+	 * @see MovementModel#isConcurrentPathMovementSupported()
+	 */
+	public boolean canMoveConcurrently(double timeIncrement) {
+		if (hasMovementListeners()) {
+			return false;
+		}
+		if (this.movement.isConcurrentMovementSupported()) {
+			return true;
+		}
+		if (!this.movement.isConcurrentPathMovementSupported()) {
+			return false;
+		}
+		return !needsMovementModel(timeIncrement);
+	}
+
+	/**
+	 * Returns true if moving for the given time would ask the movement
+	 * model for a new path or for the next time to move. Follows the
+	 * computations of {@link #move(double)} without moving.
+	 * @param timeIncrement How long time the node would move
+	 * @return true if the movement model would be called
+	 */
+	private boolean needsMovementModel(double timeIncrement) {
+		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
+			return false;
+		}
+		if (this.destination == null || this.path == null) {
+			return true;
+		}
+
+		double possibleMovement = timeIncrement * speed;
+		double distance = this.location.distance(this.destination);
+		Coord wp = this.destination;
+		List<Coord> coords = this.path.getCoords();
+
+		for (int i=this.path.getNextWaypointIndex(), n=coords.size(); 
+				i<n; i++) {
+			if (possibleMovement < distance) {
+				return false;
 			}
+			possibleMovement -= distance;
+			distance = wp.distance(coords.get(i));
+			wp = coords.get(i);
 		}
+
+		return possibleMovement >= distance;
+	}
+
+	/**
+	 * Returns true if there are listeners for the movement of this host
+	 * @return true if there are movement listeners
+	 */
+	boolean hasMovementListeners() {
+		return this.movListeners != null && this.movListeners.size() > 0;
 	}
 
 	/**
@@ -372,7 +664,12 @@ public class DTNHost implements Comparable<DTNHost> {
 		double distance;
 		double dx, dy;
 
-		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
+		this.movementTime += timeIncrement;
+		if (!isMovementActive()) {
+			this.movementChanges++;
+			return;
+		}
+		if (SimClock.getTime() < this.nextTimeToMove) {
 			return; 
 		}
 		if (this.destination == null) {
@@ -409,6 +706,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * should wait
 	 */
 	private boolean setNextWaypoint() {
+		this.movementChanges++;
 		if (path == null) {
 			path = movement.getPath();
 		}
@@ -423,6 +721,8 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.speed = path.getSpeed();
 
 		if (this.movListeners != null) {
+			UpdateProfiler.count(UpdateProfiler.LISTENER_CALLBACKS, 
+					this.movListeners.size());
 			for (MovementListener l : this.movListeners) {
 				l.newDestination(this, this.destination, this.speed);
 			}
@@ -5,11 +5,17 @@
 package core;
 import gui.DTNSimGUI;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ui.DTNSimTextUI;
+import ui.DTNSimUI;
 
 /**
  * Simulator's main class 
@@ -18,14 +24,33 @@ public class DTNSim {
 	/** If this option ({@value}) is given to program, batch mode and
 	 * Text UI are used*/
 	public static final String BATCH_MODE_FLAG = "-b";
+	/** If this option ({@value}) is given to program, a parameter sweep
+	 * over all run array settings is executed (see {@link ParameterSweep}) 
+	 * using the text UI */
+	public static final String SWEEP_MODE_FLAG = "-sweep";
+	/** If this option ({@value}) followed by a checkpoint file path is 
+	 * given before the other options, the simulation is resumed from the
+	 * checkpoint (see {@link DTNSimUI#RESUME_S}) */
+	public static final String RESUME_FLAG = "-resume";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
 	
 	/** Name of the static method that all resettable classes must have
 	 * @see #registerForReset(String) */
 	public static final String RESET_METHOD_NAME = "reset";
-	/** List of class names that should be reset between batch runs */
-	private static List<Class<?>> resetList = new ArrayList<Class<?>>();
+	/**
+	 * Number of batch runs to execute in parallel -setting id ({@value}).
+	 * Integer. If positive, every batch run is executed in a 
+	 * {@link SimulationContext} of its own and the given number of runs are
+	 * executed at the same time in one JVM. The setting is read using the 
+	 * first run index. Default is zero, i.e., runs are executed one after 
+	 * another.
+	 */
+	public static final String PARALLEL_RUNS_S = "parallelRuns";
+	
+	/** Settings given with command line options (full names and values) */
+	private static Map<String, String> cmdLineSettings = 
+		new LinkedHashMap<String, String>();
 	
 	/**
 	 * Starts the user interface with given arguments.
@@ -37,10 +62,15 @@ public class DTNSim {
 	 * {@link Settings#setRunIndex(int)}). Following arguments are the settings 
 	 * files for the simulation run (if any). For GUI mode, the number before 
 	 * settings files (if given) is the run index to use for that run.
+	 * If the first argument is {@link #SWEEP_MODE_FLAG}, the following 
+	 * arguments are settings files and a parameter sweep is executed.
+	 * All of the above can be preceded by {@link #RESUME_FLAG} and a 
+	 * checkpoint file path.
 	 * @param args Command line arguments
 	 */
 	public static void main(String[] args) {
 		boolean batchMode = false;
+		boolean sweepMode = false;
 		int nrofRuns[] = {0,1};
 		String confFiles[];
 		int firstConfIndex = 0;
@@ -49,6 +79,11 @@ public class DTNSim {
 		/* set US locale to parse decimals in consistent way */
 		java.util.Locale.setDefault(java.util.Locale.US);
 		
+		if (args.length > 1 && args[0].equals(RESUME_FLAG)) {
+			cmdLineSettings.put(DTNSimUI.RESUME_S, args[1]);
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		
 		if (args.length > 0) {
 			if (args[0].equals(BATCH_MODE_FLAG)) {
 				batchMode = true;
@@ -60,6 +95,10 @@ public class DTNSim {
                     firstConfIndex = 2;
                 }
 			}
+			else if (args[0].equals(SWEEP_MODE_FLAG)) {
+				sweepMode = true;
+				firstConfIndex = 1;
+			}
 			else { /* GUI mode */				
 				try { /* is there a run index for the GUI mode ? */
 					guiIndex = Integer.parseInt(args[0]);
@@ -75,14 +114,32 @@ public class DTNSim {
 		}
 		
 		initSettings(confFiles, firstConfIndex);
+		for (Map.Entry<String, String> e : cmdLineSettings.entrySet()) {
+			Settings.setSetting(e.getKey(), e.getValue());
+		}
 		
-		if (batchMode) {
+		if (sweepMode) {
+			long startTime = System.currentTimeMillis();
+			new ParameterSweep(confFiles, firstConfIndex).run();
+			double duration = (System.currentTimeMillis() - startTime)/1000.0;
+			print("---\nSweep done in " + String.format("%.2f", duration) + 
+					"s");
+		}
+		else if (batchMode) {
 			long startTime = System.currentTimeMillis();
-			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
-				print("Run " + (i+1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			Settings.setRunIndex(nrofRuns[0]);
+			int parallelRuns = getParallelRuns();
+			if (parallelRuns > 0) {
+				runInParallel(confFiles, firstConfIndex, nrofRuns, 
+						SimulationContext.getMaxParallelRuns(parallelRuns));
+			}
+			else {
+				for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+					print("Run " + (i+1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(i);
+					SimulationContext.get().reset();
+					new DTNSimTextUI().start();
+				}
 			}
 			double duration = (System.currentTimeMillis() - startTime)/1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
@@ -129,6 +186,97 @@ public class DTNSim {
 		}
 	}
 	
+	/**
+	 * Returns the settings that were given with command line options
+	 * @return Full setting names mapped to their values
+	 */
+	static Map<String, String> getCmdLineSettings() {
+		return cmdLineSettings;
+	}
+	
+	/**
+	 * Returns the number of batch runs to execute in parallel
+	 * @return the value of the {@value #PARALLEL_RUNS_S} setting
+	 */
+	private static int getParallelRuns() {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		int parallelRuns = s.getInt(PARALLEL_RUNS_S, 0);
+		s.ensurePositiveValue(parallelRuns, PARALLEL_RUNS_S);
+		return parallelRuns;
+	}
+	
+	/**
+	 * Executes batch runs in simulation contexts of their own using the 
+	 * given number of threads. Returns when all runs have finished.
+	 * @param confFiles The command line arguments
+	 * @param firstConfIndex Index of the first settings file argument
+	 * @param nrofRuns The first and (last_run_index - 1) of the runs
+	 * @param nrofThreads Number of runs to execute at the same time
+	 */
+	private static void runInParallel(final String[] confFiles, 
+			final int firstConfIndex, final int[] nrofRuns, int nrofThreads) {
+		ExecutorService executor = Executors.newFixedThreadPool(nrofThreads);
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+		
+		for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+			final int runIndex = i;
+			runs.add(executor.submit(new Runnable() {
+				public void run() {
+					print("Run " + (runIndex+1) + "/" + nrofRuns[1]);
+					runInContext(confFiles, firstConfIndex, runIndex, 
+							cmdLineSettings);
+				}
+			}));
+		}
+		executor.shutdown();
+		
+		try {
+			for (Future<?> run : runs) {
+				run.get();
+			}
+		} catch (Exception e) {
+			System.err.println("Batch run failed: " + e.getCause());
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+	
+	/**
+	 * Executes one batch run with the text UI in a new simulation context.
+	 * The settings are read again for the context, so every run has 
+	 * settings, a clock and a scenario of its own.
+	 * @param confFiles The command line arguments
+	 * @param firstConfIndex Index of the first settings file argument
+	 * @param runIndex Run index of the run
+	 * @param settings Settings (full names and values) that override the 
+	 * values read from the settings files
+	 * @throws SimError if the simulation can't be started or it doesn't 
+	 * run to its end
+	 */
+	static void runInContext(final String[] confFiles, 
+			final int firstConfIndex, final int runIndex, 
+			final Map<String, String> settings) {
+		try {
+			new SimulationContext().run(new Runnable() {
+				public void run() {
+					initSettings(confFiles, firstConfIndex);
+					for (Map.Entry<String, String> e : settings.entrySet()) {
+						Settings.setSetting(e.getKey(), e.getValue());
+					}
+					Settings.setRunIndex(runIndex);
+					DTNSimUI ui = new DTNSimTextUI();
+					ui.setExitOnError(false);
+					ui.start();
+					if (!ui.isSimDone()) {
+						throw new SimError("Simulation didn't run to its end");
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			throw new SimError("Run " + (runIndex + 1) + " failed: " + e, e);
+		}
+	}
+	
 	/**
 	 * Registers a class for resetting. Reset is performed after every
 	 * batch run of the simulator to reset the class' state to initial
@@ -156,23 +304,7 @@ public class DTNSim {
 			" for resetting; class doesn't contain resetting method");
 			System.exit(-1);
 		}
-		resetList.add(c);
-	}
-	
-	/**
-	 * Resets all registered classes.
-	 */
-	private static void resetForNextRun() {
-		for (Class<?> c : resetList) {
-			try {
-				Method m = c.getMethod(RESET_METHOD_NAME);
-				m.invoke(null);
-			} catch (Exception e) {
-				System.err.println("Failed to reset class " + c.getName());
-				e.printStackTrace();
-				System.exit(-1);
-			}
-		}
+		SimulationContext.registerForReset(c);
 	}
 	
 	/**
@@ -4,7 +4,10 @@
  */
 package core;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,12 +18,11 @@ import java.util.TreeMap;
 /**
  * A message that is created at a node or passed between nodes.
  */
-public class Message implements Comparable<Message> {
+public class Message implements Comparable<Message>, Checkpointable {
 	/** Time-to-live (TTL) as seconds -setting id ({@value}). Boolean valued.
 	 * If set to true, the TTL is interpreted as seconds instead of minutes. 
 	 * Default=false. */
 	public static final String TTL_SECONDS_S = "Scenario.ttlSeconds";
-	private static boolean ttlAsSeconds = false;
 	
 	/** Value for infinite TTL of message */
 	public static final int INFINITE_TTL = -1;
@@ -36,18 +38,25 @@ public class Message implements Comparable<Message> {
 	private String id;
 	/** Size of the message (bytes) */
 	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path; 
-	/** Next unique identifier to be given */
-	private static int nextUniqueId;
+	/** The last node this message has passed (the nodes before it are 
+	 * shared with the replicates that were made before the hop) */
+	private PathNode path;
+	/** List of the nodes on the path (created on demand) or null */
+	private List<DTNHost> hops;
+	/** The unmodifiable mix list shared with the replicates (or null) */
+	private List<DTNHost> sharedMixlist;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Number of the ID of this message */
+	private int idNumber;
 	/** The time this message was received */
 	private double timeReceived;
 	/** The time when this message was created */
 	private double timeCreated;
 	/** Initial TTL of the message */
 	private int initTtl;
+	/** The time when the TTL runs out (computed when the TTL is set) */
+	private double expiryTime;
 	
 	/** if a response to this message is required, this is the size of the 
 	 * response message (or 0 if no response is requested) */
@@ -59,10 +68,44 @@ public class Message implements Comparable<Message> {
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
+	/** Are the properties shared with replicates (and must be copied 
+	 * before modifying them) */
+	private boolean propertiesShared;
 	
 	/** Application ID of the application that created the message */
 	private String	appID;
 	
+	/** Per-run state of the messages (one per simulation context) */
+	private static final SimulationContext.Local<State> state =
+		new SimulationContext.Local<State>() {
+			protected State initialValue() {
+				return new State();
+			}
+		};
+	
+	/**
+	 * The message state of a simulation run
+	 */
+	private static class State {
+		/** Next unique identifier to be given */
+		private int nextUniqueId;
+		/** Numbers of the message IDs of this run (see 
+		 * {@link Message#getIdNumber()}). Filled only when messages are 
+		 * created (not in the parallel read phase of host updates), so no 
+		 * locking is needed. Kept for the whole run, like the delivered 
+		 * messages of the routers, and cleared by {@link Message#reset()}. */
+		private final HashMap<String, Integer> idNumbers;
+		/** Is the TTL interpreted as seconds */
+		private final boolean ttlAsSeconds;
+		
+		private State() {
+			this.nextUniqueId = 0;
+			this.idNumbers = new HashMap<String, Integer>();
+			Settings s = new Settings();
+			this.ttlAsSeconds = s.getBoolean(TTL_SECONDS_S, false);
+		}
+	}
+	
 	static {
 		reset();
 		DTNSim.registerForReset(Message.class.getCanonicalName());
@@ -85,24 +128,50 @@ public class Message implements Comparable<Message> {
 		//this.mix2 = mix2;
 		//this.mix3 = mix3;
 		this.size = size;
-		this.path = new ArrayList<DTNHost>();
+		this.path = null;
 		this.mixlist = new ArrayList<DTNHost>();
 		this.mixcreationtime = 0;
 		this.mixindex = 0;
-		this.uniqueId = nextUniqueId;
+		this.uniqueId = state.get().nextUniqueId++;
+		this.idNumber = getIdNumber(id);
 		
 		this.timeCreated = SimClock.getTime();
 		this.timeReceived = this.timeCreated;
 		this.initTtl = INFINITE_TTL;
+		this.expiryTime = Double.MAX_VALUE;
 		this.responseSize = 0;
 		this.requestMsg = null;
 		this.properties = null;
 		this.appID = null;
 		
-		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
 	
+	/**
+	 * Creates an empty message whose state is restored from a checkpoint
+	 * @see CheckpointInput#readMessage()
+	 */
+	Message() {
+	}
+	
+	/**
+	 * Creates a replicate of a message
+	 * @param m The message to replicate
+	 * @see #replicate()
+	 */
+	private Message(Message m) {
+		this.from = m.from;
+		this.to = m.to;
+		this.realto = m.to;
+		this.id = m.id;
+		this.size = m.size;
+		this.uniqueId = state.get().nextUniqueId++;
+		this.idNumber = m.idNumber;
+		this.timeReceived = SimClock.getTime();
+		
+		copyFrom(m);
+	}
+	
 	/**
 	 * Returns the node this message is originally from
 	 * @return the node this message is originally from
@@ -146,6 +215,45 @@ public class Message implements Comparable<Message> {
 		return this.uniqueId;
 	}
 	
+	/**
+	 * Returns a number that identifies the ID of the message. All the
+	 * replicates of the message have the same number and the messages
+	 * with different IDs have different numbers. The numbers are given in 
+	 * the order the messages are created (or restored), so they are small 
+	 * non-negative integers but they are not stored in checkpoints.
+	 * @return The number of the message ID
+	 */
+	public int getIdNumber() {
+		return this.idNumber;
+	}
+	
+	/**
+	 * Returns the number of a message ID if the ID has one
+	 * @param id The message ID
+	 * @return The number of the ID (see {@link #getIdNumber()}) or -1 if 
+	 * no message with the ID has been given a number
+	 */
+	public static int findIdNumber(String id) {
+		Integer number = state.get().idNumbers.get(id);
+		return number == null ? -1 : number;
+	}
+	
+	/**
+	 * Returns the number of a message ID and gives the ID a new number if
+	 * it doesn't have one yet
+	 * @param id The message ID
+	 * @return The number of the ID (see {@link #getIdNumber()})
+	 */
+	public static int getIdNumber(String id) {
+		HashMap<String, Integer> idNumbers = state.get().idNumbers;
+		Integer number = idNumbers.get(id);
+		if (number == null) {
+			number = idNumbers.size();
+			idNumbers.put(id, number);
+		}
+		return number;
+	}
+	
 	/**
 	 * Returns the size of the message (in bytes)
 	 * @return the size of the message
@@ -159,15 +267,23 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.path = new PathNode(node, this.path);
+		this.hops = null;
 	}
 	
 	/**
 	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * @return The list (unmodifiable)
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		if (this.hops == null) {
+			DTNHost[] nodes = new DTNHost[this.path.length];
+			for (PathNode n = this.path; n != null; n = n.prev) {
+				nodes[n.length - 1] = n.node;
+			}
+			this.hops = Collections.unmodifiableList(Arrays.asList(nodes));
+		}
+		return this.hops;
 	}
 	
 	/**
@@ -175,7 +291,7 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return this.path.length - 1;
 	}
 	
 	/** 
@@ -190,7 +306,7 @@ public class Message implements Comparable<Message> {
 			return Integer.MAX_VALUE;
 		}
 		else {
-			if (ttlAsSeconds) {
+			if (state.get().ttlAsSeconds) {
 				return (int)(this.initTtl -
 						(SimClock.getTime()-this.timeCreated) );				
 			} else {
@@ -200,6 +316,27 @@ public class Message implements Comparable<Message> {
 		}
 	}
 	
+	/**
+	 * Returns the simulation time when the TTL of the message runs out
+	 * (i.e., the creation time plus the initial TTL)
+	 * @return The expiry time or Double.MAX_VALUE if the TTL is infinite
+	 */
+	public double getExpiryTime() {
+		return this.expiryTime;
+	}
+	
+	/**
+	 * Computes the expiry time from the creation time and the initial TTL
+	 */
+	private void updateExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			this.expiryTime = Double.MAX_VALUE;
+		} else {
+			this.expiryTime = this.timeCreated + 
+				(state.get().ttlAsSeconds ? this.initTtl : this.initTtl * 60.0);
+		}
+	}
+	
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
 	 * TTL is the TTL when the original message was created. The current TTL
@@ -208,6 +345,7 @@ public class Message implements Comparable<Message> {
 	 */
 	public void setTtl(int ttl) {
 		this.initTtl = ttl;
+		updateExpiryTime();
 	}
 	
 	/**
@@ -286,28 +424,47 @@ public class Message implements Comparable<Message> {
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
+	 * Copies message data from other message. If new fields are
 	 * introduced to this class, most likely they should be copied here too
-	 * (unless done in constructor).
+	 * (unless done in constructor). The path, the mix list and the 
+	 * properties are shared with the other message instead of copying 
+	 * them: a new hop is added on top of the shared path, the shared mix 
+	 * list can't be modified any more, and the properties are copied when 
+	 * either message modifies them. So copying takes the same time 
+	 * regardless of the path length.
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
+		this.path = m.path;
+		this.hops = m.hops;
 		this.timeCreated = m.timeCreated;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
 		this.initTtl = m.initTtl;
+		this.expiryTime = m.expiryTime;
 		this.appID = m.appID;
 		this.mixindex = m.mixindex;
 		this.lastfwd = m.lastfwd;
 		
-		this.mixlist = new ArrayList<DTNHost>(m.mixlist);
+		if (m.mixlist != m.sharedMixlist) {
+			/* mix lists don't change after the message is replicated */
+			m.sharedMixlist = Collections.unmodifiableList(m.mixlist);
+			m.mixlist = m.sharedMixlist;
+		}
+		this.mixlist = m.mixlist;
+		this.sharedMixlist = m.sharedMixlist;
 		this.mixcreationtime = m.mixcreationtime;
 		
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
+			if (this.properties == null) {
+				this.properties = m.properties;
+				this.propertiesShared = true;
+				m.propertiesShared = true;
+			} else {
+				Set<String> keys = m.properties.keySet();
+				for (String key : keys) {
+					updateProperty(key, m.getProperty(key));
+				}
 			}
 		}
 	}
@@ -357,7 +514,11 @@ public class Message implements Comparable<Message> {
 			/* lazy creation to prevent performance overhead for classes
 			   that don't use the property feature  */
 			this.properties = new HashMap<String, Object>();
-		}		
+		} else if (this.propertiesShared) {
+			/* copy on write */
+			this.properties = new HashMap<String, Object>(this.properties);
+			this.propertiesShared = false;
+		}
 
 		this.properties.put(key, value);
 	}
@@ -367,9 +528,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
-		m.copyFrom(this);
-		return m;
+		return new Message(this);
 	}
 	
 	/**
@@ -384,11 +543,91 @@ public class Message implements Comparable<Message> {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		nextUniqueId = 0;
-		Settings s = new Settings();
-		ttlAsSeconds = s.getBoolean(TTL_SECONDS_S, false);
+		state.set(new State());
 	}
 
+	/**
+	 * Returns the next unique ID that will be given to a message
+	 * @return the next unique ID
+	 */
+	static int getNextUniqueId() {
+		return state.get().nextUniqueId;
+	}
+	
+	/**
+	 * Sets the next unique ID that will be given to a message (when
+	 * restoring a checkpoint)
+	 * @param id The next unique ID
+	 */
+	static void setNextUniqueId(int id) {
+		state.get().nextUniqueId = id;
+	}
+	
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeHost(from);
+		out.writeHost(to);
+		out.writeHost(realto);
+		out.writeUTF(id);
+		out.writeInt(size);
+		out.writeInt(uniqueId);
+		out.writeDouble(timeReceived);
+		out.writeDouble(timeCreated);
+		out.writeInt(initTtl);
+		out.writeInt(responseSize);
+		out.writeString(appID);
+		out.writeHosts(getHops());
+		out.writeHosts(mixlist);
+		out.writeInt(mixindex);
+		out.writeDouble(mixcreationtime);
+		out.writeString(lastfwd);
+		out.writeMessage(requestMsg);
+		
+		out.writeInt(properties == null ? -1 : properties.size());
+		if (properties != null) {
+			for (Map.Entry<String, Object> e : properties.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeValue(e.getValue());
+			}
+		}
+	}
+	
+	public void readState(CheckpointInput in) throws IOException {
+		this.from = in.readHost();
+		this.to = in.readHost();
+		this.realto = in.readHost();
+		this.id = in.readUTF();
+		this.idNumber = getIdNumber(this.id);
+		this.size = in.readInt();
+		this.uniqueId = in.readInt();
+		this.timeReceived = in.readDouble();
+		this.timeCreated = in.readDouble();
+		this.initTtl = in.readInt();
+		updateExpiryTime();
+		this.responseSize = in.readInt();
+		this.appID = in.readString();
+		this.path = null;
+		for (DTNHost node : in.readHosts()) {
+			addNodeOnPath(node);
+		}
+		this.mixlist = in.readHosts();
+		this.sharedMixlist = null;
+		this.mixindex = in.readInt();
+		this.mixcreationtime = in.readDouble();
+		this.lastfwd = in.readString();
+		this.requestMsg = in.readMessage();
+		
+		int nrofProperties = in.readInt();
+		this.properties = null;
+		this.propertiesShared = false;
+		if (nrofProperties >= 0) {
+			this.properties = new HashMap<String, Object>();
+		}
+		for (int i=0; i<nrofProperties; i++) {
+			String key = in.readUTF();
+			this.properties.put(key, in.readValue());
+		}
+	}
+	
 	/**
 	 * @return the appID
 	 */
@@ -402,7 +641,22 @@ public class Message implements Comparable<Message> {
 	public void setAppID(String appID) {
 		this.appID = appID;
 	}
-
-
-
+	
+	/**
+	 * A node on the path of a message. The path is a chain from the last
+	 * node to the first one and the replicates of a message share the 
+	 * part of the path that was passed before the replication.
+	 */
+	private static class PathNode {
+		private final DTNHost node;
+		private final PathNode prev;
+		/** number of nodes on the path up to and including this node */
+		private final int length;
+		
+		private PathNode(DTNHost node, PathNode prev) {
+			this.node = node;
+			this.prev = prev;
+			this.length = (prev == null ? 1 : prev.length + 1);
+		}
+	}
 }
@@ -4,9 +4,11 @@
  */
 package core;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Intermodule communication bus. Works as a blackboard where modules can
@@ -14,7 +16,7 @@ import java.util.List;
  * This is fairly similar to Message class' property interface, but these
  * values are shared for a node instead of message.
  */
-public class ModuleCommunicationBus {
+public class ModuleCommunicationBus implements Checkpointable {
 	/** Initial capacity for the listener lists (instead of 10) */
 	private static int INIT_CAPACITY = 3;
 	/** The values in the blackboard (or null if none)*/
@@ -155,6 +157,35 @@ public class ModuleCommunicationBus {
 		}
 	}
 	
+	/**
+	 * Writes the values of the bus. Subscriptions are not written.
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeInt(this.values == null ? -1 : this.values.size());
+		if (this.values != null) {
+			for (Map.Entry<String, Object> e : this.values.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeValue(e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Restores the values of the bus. Subscribed modules are not notified
+	 * because their state is restored separately.
+	 */
+	public void readState(CheckpointInput in) throws IOException {
+		int nrofValues = in.readInt();
+		this.values = null;
+		if (nrofValues >= 0) {
+			this.values = new HashMap<String, Object>();
+		}
+		for (int i=0; i<nrofValues; i++) {
+			String key = in.readUTF();
+			this.values.put(key, in.readValue());
+		}
+	}
+
 	/**
 	 * Subscribes a module to changes of a certain value.
 	 * @param key The key of the value whose changes the module is interested of
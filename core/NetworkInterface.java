@@ -7,6 +7,7 @@ package core;
 import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -14,11 +15,13 @@ import java.util.Random;
 import routing.util.EnergyModel;
 
 import util.ActivenessHandler;
+import util.LongHashMap;
 
 /**
  * Network interface of a DTNHost. Takes care of connectivity among hosts.
  */
-abstract public class NetworkInterface implements ModuleCommunicationListener {
+abstract public class NetworkInterface implements ModuleCommunicationListener,
+		Checkpointable {
 	/** transmit range -setting id ({@value})*/
 	public static final String TRANSMIT_RANGE_S = "transmitRange";
 	/** transmit speed -setting id ({@value})*/
@@ -37,7 +40,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public static final String ACT_JITTER_S = "activenessOffsetJitter";
 	
 	/** {@link ModuleCommunicationBus} identifier for the "scanning interval" 
-    variable. */
+    variable. The identifiers are for the host's first interface; the 
+    identifiers of the Nth interface have suffix ".N" (e.g., 
+    "Network.radioRange.2"). */
 	public static final String SCAN_INTERVAL_ID = "Network.scanInterval";
 	/** {@link ModuleCommunicationBus} identifier for the "radio range" 
 	variable. Value type: double */
@@ -49,11 +54,19 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
 
-	private static Random rng;
+	/** Per-run state of the interfaces (one per simulation context) */
+	private static final SimulationContext.Local<State> state =
+		new SimulationContext.Local<State>() {
+			protected State initialValue() {
+				return new State();
+			}
+		};
 	protected DTNHost host = null;
 
 	protected String interfacetype;
 	protected List<Connection> connections; // connected hosts
+	/** the connections by the addresses of the other interfaces */
+	private LongHashMap<Connection> connectionIndex;
 	private List<ConnectionListener> cListeners = null; // list of listeners
 	private int address; // network interface address
 	protected double transmitRange;
@@ -64,12 +77,40 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private double scanInterval;
 	private double lastScanTime;
 	
+	/** communication bus identifiers of this interface's variables */
+	private String scanIntervalId = SCAN_INTERVAL_ID;
+	private String rangeId = RANGE_ID;
+	private String speedId = SPEED_ID;
+	
 	/** activeness handler for the node group */
 	private ActivenessHandler ah;
 	/** maximum activeness jitter value for the node group */
 	private int activenessJitterMax;
 	/** this interface's activeness jitter value */
 	private int activenessJitterValue;
+	/** activeness according to the activeness handler (cached) */
+	private boolean scheduledActive;
+	/** time when the cached activeness must be checked again */
+	private double activenessCheckTime = -Double.MAX_VALUE;
+	/** the handler's range change count when activeness was checked */
+	private int activenessRangeChanges;
+	/** is the battery of the host depleted (cached) */
+	private boolean batteryEmpty;
+	/** reused buffer for the interfaces returned by the optimizer */
+	private List<NetworkInterface> nearInterfaces;
+	/** interfaces found near during the read phase of a two-phase update */
+	private List<NetworkInterface> preparedNearInterfaces;
+	/** are the prepared near interfaces valid for the next update */
+	private boolean nearInterfacesPrepared;
+
+	/**
+	 * The interface state of a simulation run
+	 */
+	private static class State {
+		private final Random rng = new Random(0);
+		/** address of the next created interface */
+		private int nextAddress = 0;
+	}
 
 	static {
 		DTNSim.registerForReset(NetworkInterface.class.getCanonicalName());
@@ -80,7 +121,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		rng = new Random(0);
+		state.set(new State());
 	}
 	
 	/**
@@ -88,7 +129,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface(Settings s) {
 		this.interfacetype = s.getNameSpace();
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
+		this.connectionIndex = new LongHashMap<Connection>();
+		this.address = state.get().nextAddress++;
 
 		this.transmitRange = s.getDouble(TRANSMIT_RANGE_S);
 		this.transmitSpeed = s.getInt(TRANSMIT_SPEED_S);
@@ -101,14 +144,18 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface() {
 		this.interfacetype = "Default";
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
+		this.connectionIndex = new LongHashMap<Connection>();
+		this.address = state.get().nextAddress++;
 	}
 	
 	/**
 	 * copy constructor
 	 */
 	public NetworkInterface(NetworkInterface ni) {
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
+		this.connectionIndex = new LongHashMap<Connection>();
+		this.address = state.get().nextAddress++;
 		this.host = ni.host;
 		this.cListeners = ni.cListeners;
 		this.interfacetype = ni.interfacetype;
@@ -118,14 +165,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.ah = ni.ah;
 		
 		if (ni.activenessJitterMax > 0) {
-			this.activenessJitterValue = rng.nextInt(ni.activenessJitterMax);
+			this.activenessJitterValue = 
+				state.get().rng.nextInt(ni.activenessJitterMax);
 		} else {
 			this.activenessJitterValue = 0;
 		}
 		
 		this.scanInterval = ni.scanInterval;
 		/* draw lastScanTime of [0 -- scanInterval] */
-		this.lastScanTime = rng.nextDouble() * this.scanInterval;
+		this.lastScanTime = state.get().rng.nextDouble() * this.scanInterval;
 	}
 
 	/**
@@ -142,20 +190,30 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.host = host;
 		ModuleCommunicationBus comBus = host.getComBus();
 		
-		if (!comBus.containsProperty(SCAN_INTERVAL_ID)) {
-			/* add properties and subscriptions only for the 1st interface */
-			/* TODO: support for multiple interfaces */
-			comBus.addProperty(SCAN_INTERVAL_ID, this.scanInterval);
-			comBus.addProperty(RANGE_ID, this.transmitRange);
-			comBus.addProperty(SPEED_ID, this.transmitSpeed);
-			comBus.subscribe(SCAN_INTERVAL_ID, this);
-			comBus.subscribe(RANGE_ID, this);
-			comBus.subscribe(SPEED_ID, this);
+		/* the 1st interface uses the plain identifiers and the others 
+		   the identifiers suffixed with their number */
+		String suffix = "";
+		for (int n = 2; comBus.containsProperty(SCAN_INTERVAL_ID + suffix); 
+				n++) {
+			suffix = "." + n;
 		}
+		this.scanIntervalId = SCAN_INTERVAL_ID + suffix;
+		this.rangeId = RANGE_ID + suffix;
+		this.speedId = SPEED_ID + suffix;
+		
+		comBus.addProperty(scanIntervalId, this.scanInterval);
+		comBus.addProperty(rangeId, this.transmitRange);
+		comBus.addProperty(speedId, this.transmitSpeed);
+		comBus.subscribe(scanIntervalId, this);
+		comBus.subscribe(rangeId, this);
+		comBus.subscribe(speedId, this);
+		/* every interface caches the battery state */
+		comBus.subscribe(EnergyModel.ENERGY_VALUE_ID, this);
 		
 		if (transmitRange > 0) {
+			/* each interface type has its own grid sized for its range */
 			optimizer = ConnectivityGrid.ConnectivityGridFactory(
-					this.interfacetype.hashCode(), transmitRange);
+					this.interfacetype, transmitRange);
 			optimizer.addInterface(this);
 		} else {
 			optimizer = null;
@@ -220,33 +278,90 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public List<Connection> getConnections() {
 		return this.connections;
 	}
+
+	/**
+	 * Returns how many times the list of connections has been modified.
+	 * The count changes every time a connection is added to or removed
+	 * from the list, so it can be used to check if a copy of the list is
+	 * still up to date.
+	 * @return The modification count of the connection list
+	 */
+	protected int getConnectionsModCount() {
+		return ((ConnectionList)this.connections).getModCount();
+	}
+
+	/**
+	 * Returns the connection to another interface
+	 * @param anotherInterface The other interface
+	 * @return The connection or null if the interfaces are not connected
+	 */
+	public Connection getConnection(NetworkInterface anotherInterface) {
+		return this.connectionIndex.get(anotherInterface.address);
+	}
+
+	/**
+	 * Returns the address of this interface. Every interface of a 
+	 * simulation run has a different address.
+	 * @return The address
+	 */
+	public int getAddress() {
+		return this.address;
+	}
 	
 	/**
-	 * Returns true if the interface is on at the moment (false if not)
+	 * Returns true if the interface is on at the moment (false if not).
+	 * The activeness handler is asked only when its answer may have changed
+	 * (see {@link ActivenessHandler#nextChange(int)}) and the battery state 
+	 * is cached from the energy value changes of the host's communication 
+	 * bus.
 	 * @return true if the interface is on at the moment (false if not)
 	 */
 	public boolean isActive() {
-		boolean active = ah.isActive(this.activenessJitterValue);
-		
-		if (active && host.getComBus().getDouble(EnergyModel.ENERGY_VALUE_ID,
-					1) <= 0) {
-			/* TODO: better way to check battery level */
-			/* no battery -> inactive */
-			active = false;
+		if (SimClock.getTime() >= this.activenessCheckTime ||
+				ah.getRangeChanges() != this.activenessRangeChanges) {
+			checkActiveness();
 		}
 		
+		/* no battery -> inactive */
+		boolean active = this.scheduledActive && !this.batteryEmpty;
+		
 		if (active == false && this.transmitRange > 0) {
 			/* not active -> make range 0 */
 			this.oldTransmitRange = this.transmitRange;
-			host.getComBus().updateProperty(RANGE_ID, 0.0);
+			host.getComBus().updateProperty(rangeId, 0.0);
 		} else if (active == true && this.transmitRange == 0.0) {
 			/* active, but range == 0 -> restore range  */
-			host.getComBus().updateProperty(RANGE_ID, 
+			host.getComBus().updateProperty(rangeId, 
 					this.oldTransmitRange);
 		}		
 		return active;
 	}
 	
+	/**
+	 * Returns true if the interface is always active: it has no active 
+	 * times nor periods, the host has no energy model and the radio is on.
+	 * Then {@link #isActive()} always returns true and does not change 
+	 * the state of any object.
+	 * @return true if the interface is always active
+	 */
+	public boolean isAlwaysActive() {
+		return (ah == null || ah.isAlwaysActive()) && this.transmitRange > 0 &&
+			host.getComBus().getProperty(EnergyModel.ENERGY_VALUE_ID) == null;
+	}
+	
+	/**
+	 * Asks the activeness handler if the interface should be active and
+	 * when that may change next time. Also refreshes the battery state from
+	 * the communication bus.
+	 */
+	private void checkActiveness() {
+		this.scheduledActive = ah.isActive(this.activenessJitterValue);
+		this.activenessCheckTime = ah.nextChange(this.activenessJitterValue);
+		this.activenessRangeChanges = ah.getRangeChanges();
+		this.batteryEmpty = host.getComBus().getDouble(
+				EnergyModel.ENERGY_VALUE_ID, 1) <= 0;
+	}
+	
 	/**
 	 * Checks if this interface is currently in the scanning mode
 	 * @return True if the interface is scanning; false if not
@@ -289,6 +404,16 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return false;
 	}
 
+	/**
+	 * Called when a message transfer starts or stops on a connection of 
+	 * this interface. A transfer stops when it is finished or aborted or
+	 * when its connection goes down. Does nothing by default.
+	 * @param con The connection
+	 * @param started True if the transfer started, false if it stopped
+	 */
+	protected void transferStateChanged(Connection con, boolean started) {
+	}
+
 	/**
 	 * Connects the interface to another interface.
 	 * 
@@ -308,10 +433,12 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	protected void connect(Connection con, NetworkInterface anotherInterface) {
 		this.connections.add(con);
+		this.connectionIndex.put(anotherInterface.address, con);
 		notifyConnectionListeners(CON_UP, anotherInterface.getHost());
 
 		// set up bidirectional connection
 		anotherInterface.getConnections().add(con);
+		anotherInterface.connectionIndex.put(this.address, con);
 
 		// inform routers about the connection
 		this.host.connectionUp(con);
@@ -320,7 +447,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 
 	/**
 	 * Disconnects this host from another host.  The derived class should
-	 * make the decision whether to disconnect or not
+	 * make the decision whether to disconnect or not and remove the 
+	 * connection from this interface's connection list.
 	 * @param con The connection to tear down
 	 */
 	protected void disconnect(Connection con, 
@@ -333,6 +461,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			throw new SimError("No connection " + con + " found in " +
 					anotherInterface);	
 		}
+		anotherInterface.connectionIndex.remove(this.address);
+		this.connectionIndex.remove(anotherInterface.address);
 
 		this.host.connectionDown(con);
 		anotherInterface.getHost().connectionDown(con);
@@ -355,19 +485,124 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 				anotherInterface.getHost().getLocation()) <= smallerRange;
 	}
 	
+	/**
+	 * Returns true if another interface could be within radio range of this
+	 * interface. Interfaces whose radio is switched off are assumed to have
+	 * the range they had before switching off, so the result is true whenever
+	 * {@link #isWithinRange(NetworkInterface)} could become true during the 
+	 * same update round.
+	 * @param anotherInterface The another interface
+	 * @return True if the interface may be within range, false if not
+	 */
+	protected boolean mayBeWithinRange(NetworkInterface anotherInterface) {
+		double smallerRange = anotherInterface.getNominalRange();
+		double myRange = getNominalRange();
+		if (myRange < smallerRange) {
+			smallerRange = myRange;
+		}
+
+		return this.host.getLocation().distance(
+				anotherInterface.getHost().getLocation()) <= smallerRange;
+	}
+
+	/**
+	 * Returns the transmit range of this interface when the radio is on
+	 * @return the transmit range when the radio is on
+	 */
+	private double getNominalRange() {
+		if (this.transmitRange == 0.0) {
+			return this.oldTransmitRange;
+		}
+		return this.transmitRange;
+	}
+
+	/**
+	 * Read phase of a two-phase update: finds the interfaces that may be 
+	 * within range in the connectivity optimizer's location snapshot (see
+	 * {@link ConnectivityOptimizer#snapshotLocations()}) and stores them for
+	 * the next {@link #update()} call. If the optimizer has no snapshot, 
+	 * nothing is prepared. This method must not change the state of any 
+	 * other simulation object because it is called concurrently for 
+	 * different interfaces (see {@link World#UPDATE_THREADS_S}).
+	 */
+	public void prepareUpdate() {
+		this.nearInterfacesPrepared = false;
+		if (optimizer == null) {
+			return;
+		}
+		
+		List<NetworkInterface> near = this.nearInterfaces;
+		if (near == null) {
+			near = this.nearInterfaces = new ArrayList<NetworkInterface>();
+		}
+		else {
+			near.clear();
+		}
+		if (!optimizer.getSnapshotNearInterfaces(this, near)) {
+			return;
+		}
+		
+		if (this.preparedNearInterfaces == null) {
+			this.preparedNearInterfaces = new ArrayList<NetworkInterface>();
+		}
+		else {
+			this.preparedNearInterfaces.clear();
+		}
+		for (int i=0, n = near.size(); i < n; i++) {
+			NetworkInterface ni = near.get(i);
+			if (ni == this || mayBeWithinRange(ni)) {
+				this.preparedNearInterfaces.add(ni);
+			}
+		}
+		this.nearInterfacesPrepared = true;
+	}
+
+	/**
+	 * Returns the interfaces that are near this interface. If the 
+	 * interfaces that may be within range were found in the read phase of 
+	 * a two-phase update ({@link #prepareUpdate()}), only those of them are
+	 * returned that the connectivity optimizer would return now, in the 
+	 * same order (see {@link ConnectivityOptimizer#filterNearInterfaces}).
+	 * The other near interfaces are out of range, so connecting to them 
+	 * would do nothing. Otherwise the connectivity optimizer is queried. 
+	 * The returned list is reused in the next call, so it must not be 
+	 * stored.
+	 * @return List of near interfaces
+	 */
+	protected List<NetworkInterface> getNearInterfaces() {
+		if (this.nearInterfacesPrepared) {
+			this.nearInterfacesPrepared = false;
+			this.nearInterfaces.clear();
+			optimizer.filterNearInterfaces(this, this.preparedNearInterfaces,
+					this.nearInterfaces);
+			return this.nearInterfaces;
+		}
+		return queryNearInterfaces();
+	}
+
+	/**
+	 * Queries the near interfaces from the connectivity optimizer to a 
+	 * buffer that is reused in every query
+	 * @return The buffer containing the near interfaces
+	 */
+	private List<NetworkInterface> queryNearInterfaces() {
+		if (this.nearInterfaces == null) {
+			this.nearInterfaces = new ArrayList<NetworkInterface>();
+		}
+		else {
+			this.nearInterfaces.clear();
+		}
+		optimizer.getNearInterfaces(this, this.nearInterfaces);
+		return this.nearInterfaces;
+	}
+	
 	/**
 	 * Returns true if the given NetworkInterface is connected to this host. 
 	 * @param netinterface The other NetworkInterface to check 
 	 * @return True if the two hosts are connected
 	 */
-	protected boolean isConnected(NetworkInterface netinterface) {
-		for (int i = 0; i < this.connections.size(); i++) {
-			if (this.connections.get(i).getOtherInterface(this) == 
-				netinterface) {
-				return true;
-			}
-		}
-		return false;
+	public boolean isConnected(NetworkInterface netinterface) {
+		return this.connectionIndex.containsKey(netinterface.address);
 	}
 	
 	/**
@@ -395,9 +630,13 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * @param otherHost The other host on the other end of the connection.
 	 */
 	private void notifyConnectionListeners(int type, DTNHost otherHost) {
+		UpdateProfiler.count(type == CON_UP ? UpdateProfiler.CONTACTS_UP :
+			UpdateProfiler.CONTACTS_DOWN);
 		if (this.cListeners == null) {
 			return;
 		}
+		UpdateProfiler.count(UpdateProfiler.LISTENER_CALLBACKS, 
+				this.cListeners.size());
 		for (ConnectionListener cl : this.cListeners) {
 			switch (type) {
 			case CON_UP:
@@ -414,20 +653,24 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	
 	/**
 	 * This method is called by the {@link ModuleCommunicationBus} when/if
-	 * someone changes the scanning interval, transmit speed, or range
+	 * someone changes the scanning interval, transmit speed, range, or the
+	 * energy value of the host
 	 * @param key Identifier of the changed value
 	 * @param newValue New value for the variable
 	 */
 	public void moduleValueChanged(String key, Object newValue) {
-		if (key.equals(SCAN_INTERVAL_ID)) {
+		if (key.equals(scanIntervalId)) {
 			this.scanInterval = (Double)newValue;	
 		}
-		else if (key.equals(SPEED_ID)) {
+		else if (key.equals(speedId)) {
 			this.transmitSpeed = (Integer)newValue;	
 		}
-		else if (key.equals(RANGE_ID)) {
+		else if (key.equals(rangeId)) {
 			this.transmitRange = (Double)newValue;	
 		}
+		else if (key.equals(EnergyModel.ENERGY_VALUE_ID)) {
+			this.batteryEmpty = (Double)newValue <= 0;
+		}
 		else {
 			throw new SimError("Unexpected combus ID " + key);
 		}
@@ -447,24 +690,20 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * from this host
 	 */
 	public void destroyConnection(NetworkInterface anotherInterface) {
-		DTNHost anotherHost = anotherInterface.getHost();
-		for (int i=0; i < this.connections.size(); i++) {
-			if (this.connections.get(i).getOtherNode(this.host) == anotherHost){
-				removeConnectionByIndex(i, anotherInterface);
-			}
+		Connection con = this.connectionIndex.get(anotherInterface.address);
+		if (con != null) {
+			removeConnection(con, anotherInterface);
 		}
 		// the connection didn't exist, do nothing
 	}
 
 	/**
-	 * Removes a connection by its position (index) in the connections array
-	 * of the interface
-	 * @param index The array index of the connection to be removed
+	 * Removes a connection from this and the other interface
+	 * @param con The connection to be removed
 	 * @param anotherInterface The interface of the other host
 	 */
-	private void removeConnectionByIndex(int index, 
+	private void removeConnection(Connection con, 
 			NetworkInterface anotherInterface) {
-		Connection con = this.connections.get(index);
 		DTNHost anotherNode = anotherInterface.getHost();
 		con.setUpState(false);
 		notifyConnectionListeners(CON_DOWN, anotherNode);
@@ -475,10 +714,65 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 					anotherNode);   
 		}
 
+		anotherInterface.connectionIndex.remove(this.address);
+
 		this.host.connectionDown(con);
 		anotherNode.connectionDown(con);
 
-		connections.remove(index);
+		connections.remove(con);
+		connectionIndex.remove(anotherInterface.address);
+	}
+
+	/**
+	 * Writes the state of the interface and references to its connections.
+	 * The connectivity optimizer's state is written separately.
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeDouble(this.transmitRange);
+		out.writeDouble(this.oldTransmitRange);
+		out.writeInt(this.transmitSpeed);
+		out.writeDouble(this.scanInterval);
+		out.writeDouble(this.lastScanTime);
+		out.writeInt(this.activenessJitterValue);
+		if (this.ah != null) {
+			this.ah.writeState(out);
+		}
+
+		out.writeInt(this.connections.size());
+		for (Connection con : this.connections) {
+			out.writeConnection(con);
+		}
+	}
+
+	/**
+	 * Restores the state of the interface and its connections. Connection
+	 * listeners are told about the connections this interface initiated
+	 * but the routers are not (their state is restored separately).
+	 */
+	public void readState(CheckpointInput in) throws IOException {
+		this.transmitRange = in.readDouble();
+		this.oldTransmitRange = in.readDouble();
+		this.transmitSpeed = in.readInt();
+		this.scanInterval = in.readDouble();
+		this.lastScanTime = in.readDouble();
+		this.activenessJitterValue = in.readInt();
+		if (this.ah != null) {
+			this.ah.readState(in);
+		}
+		this.nearInterfacesPrepared = false;
+
+		int nrofConnections = in.readInt();
+		this.connections.clear();
+		this.connectionIndex.clear();
+		for (int i=0; i<nrofConnections; i++) {
+			Connection con = in.readConnection();
+			this.connections.add(con);
+			this.connectionIndex.put(con.getOtherInterface(this).address, 
+					con);
+			if (con.fromInterface == this) {
+				notifyConnectionListeners(CON_UP, con.toNode);
+			}
+		}
 	}
 
 	/**
@@ -505,4 +799,19 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			". Connections: " +	this.connections;
 	}
 
+	/**
+	 * List of connections that exposes its modification count
+	 */
+	private static class ConnectionList extends ArrayList<Connection> {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Returns the number of structural modifications of the list
+		 * @return The modification count
+		 */
+		int getModCount() {
+			return this.modCount;
+		}
+	}
+
 }
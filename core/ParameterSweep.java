@@ -0,0 +1,412 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import report.Report;
+import ui.DTNSimUI;
+
+/**
+ * Parameter sweep runner. Every setting whose value is a run array (e.g.,
+ * <CODE>MixnetEpidemicRouter.maxTime = [100; 500; 1000]</CODE>) is a
+ * dimension of the sweep and a run is executed for every combination of
+ * the values (the first setting in alphabetical order changes slowest).
+ * Every run is executed in a {@link SimulationContext} of its own on a
+ * work-stealing thread pool. The number of threads is the value of the
+ * {@link DTNSim#PARALLEL_RUNS_S} setting or, if it is not set, the number
+ * of available processors, limited by the heap the runs need (see
+ * {@link SimulationContext#RUN_HEAP_S}).
+ * <P>
+ * Every run must write its reports to files of its own. If the scenario 
+ * name is the same for all runs (i.e., it does not use value filling for
+ * the swept settings), the swept values are appended to the name of each
+ * run. Sweeps whose runs would still write the same report files are
+ * rejected. A manifest of the runs' parameters is written to the report
+ * directory ({@value #MANIFEST_FILE}) and a line starting with 
+ * {@value #DONE_PREFIX} is appended to it when a run has finished. Runs
+ * that are marked done in the manifest are skipped, so an interrupted 
+ * sweep can be continued by running it again. A run that fails does not
+ * stop the other runs.
+ * </P>
+ */
+public class ParameterSweep {
+	/** Name of the manifest file in the report directory ({@value}) */
+	public static final String MANIFEST_FILE = "sweep_manifest.txt";
+	/** Prefix of the manifest lines of finished runs ({@value}) */
+	public static final String DONE_PREFIX = "done ";
+	/** Full name of the scenario name setting */
+	private static final String SCENARIO_NAME_S = SimScenario.SCENARIO_NS +
+		"." + SimScenario.NAME_S;
+
+	private String[] confFiles;
+	private int firstConfIndex;
+	/** the sweep's dimensions: setting names and their values */
+	private Map<String, String[]> dimensions;
+	/** settings of each run */
+	private List<Map<String, String>> runs;
+	/** scenario names of the runs set by the sweep (or null if the names
+	 * are not changed) */
+	private List<String> scenarioNames;
+	/** the manifest file (while the sweep is running) */
+	private PrintWriter manifest;
+
+	/**
+	 * Creates a new parameter sweep using the current settings.
+	 * {@link Settings} must have been initialized using the given settings
+	 * files.
+	 * @param confFiles The command line arguments containing settings file
+	 * paths (see {@link DTNSim#main(String[])})
+	 * @param firstConfIndex Index of the first settings file path
+	 */
+	public ParameterSweep(String[] confFiles, int firstConfIndex) {
+		this.confFiles = confFiles;
+		this.firstConfIndex = firstConfIndex;
+		this.dimensions = Settings.getRunArraySettings();
+		this.runs = new ArrayList<Map<String, String>>();
+
+		int nrofRuns = 1;
+		for (String[] values : dimensions.values()) {
+			nrofRuns *= values.length;
+		}
+
+		for (int i=0; i<nrofRuns; i++) {
+			Map<String, String> run = new LinkedHashMap<String, String>();
+			int stride = nrofRuns;
+			for (Map.Entry<String, String[]> d : dimensions.entrySet()) {
+				String[] values = d.getValue();
+				stride /= values.length;
+				run.put(d.getKey(), values[(i / stride) % values.length]);
+			}
+			runs.add(run);
+		}
+
+		checkReportFiles();
+	}
+
+	/**
+	 * Returns the settings of every run of the sweep
+	 * @return Setting names mapped to their values for every run
+	 */
+	public List<Map<String, String>> getRuns() {
+		return this.runs;
+	}
+
+	/**
+	 * Executes the runs of the sweep that are not marked done in the 
+	 * manifest and marks them done when they finish. Returns when all runs
+	 * have finished.
+	 * @throws SimError if some runs failed (after all runs have finished)
+	 */
+	public void run() {
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		final List<Integer> failed = 
+			Collections.synchronizedList(new ArrayList<Integer>());
+		final int nrofRuns = runs.size();
+
+		Set<String> done = readDoneRuns();
+		writeManifest(done);
+
+		ForkJoinPool pool = createPool();
+		try {
+			for (int i=0; i<nrofRuns; i++) {
+				final int runIndex = i;
+				final Map<String, String> run = runs.get(i);
+				final Map<String, String> settings = 
+					new LinkedHashMap<String, String>(
+							DTNSim.getCmdLineSettings());
+				settings.putAll(run);
+				if (scenarioNames != null) {
+					settings.put(SCENARIO_NAME_S, scenarioNames.get(i));
+				}
+				if (done.contains(getManifestLine(i))) {
+					print("Run " + (i+1) + "/" + nrofRuns + " " + run +
+							" skipped; done already");
+					continue;
+				}
+				tasks.add(pool.submit(new Runnable() {
+					public void run() {
+						print("Run " + (runIndex+1) + "/" + nrofRuns + " " +
+								run);
+						try {
+							DTNSim.runInContext(confFiles, firstConfIndex,
+									runIndex, settings);
+						} catch (SimError e) {
+							e.printStackTrace();
+							failed.add(runIndex + 1);
+							return;
+						}
+						markDone(runIndex);
+					}
+				}));
+			}
+
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		} finally {
+			/* let the other runs finish even if joining failed */
+			pool.shutdown();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.manifest.close();
+		}
+
+		if (!failed.isEmpty()) {
+			Collections.sort(failed);
+			throw new SimError(failed.size() + "/" + nrofRuns + 
+					" runs of the sweep failed: " + failed);
+		}
+	}
+
+	/**
+	 * Creates the thread pool for the runs
+	 * @return A work-stealing pool
+	 */
+	private ForkJoinPool createPool() {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		int threads = s.getInt(DTNSim.PARALLEL_RUNS_S, 0);
+		s.ensurePositiveValue(threads, DTNSim.PARALLEL_RUNS_S);
+		if (threads == 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		threads = SimulationContext.getMaxParallelRuns(threads);
+		return new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Sets the settings of a run to the current settings. Settings that
+	 * are not sweep dimensions (or the scenario name) are not changed.
+	 * @param runIndex Index of the run
+	 */
+	private void applySettings(int runIndex) {
+		for (Map.Entry<String, String> e : runs.get(runIndex).entrySet()) {
+			Settings.setSetting(e.getKey(), e.getValue());
+		}
+		if (scenarioNames != null) {
+			Settings.setSetting(SCENARIO_NAME_S, scenarioNames.get(runIndex));
+		}
+	}
+
+	/**
+	 * Checks that every run writes its reports to files of its own. If
+	 * the scenario name is the same for all runs, the swept values are
+	 * appended to the name of every run.
+	 * @throws SettingsError if some runs would still write the same report
+	 * file
+	 */
+	private void checkReportFiles() {
+		if (runs.size() < 2) {
+			return;
+		}
+
+		Set<String> names = new HashSet<String>();
+		for (int i=0; i<runs.size(); i++) {
+			applySettings(i);
+			Settings s = new Settings();
+			names.add(s.valueFillString(s.getSetting(SCENARIO_NAME_S)));
+		}
+
+		if (names.size() == 1) {
+			String name = names.iterator().next();
+			this.scenarioNames = new ArrayList<String>();
+			for (Map<String, String> run : runs) {
+				String runName = name;
+				for (String value : run.values()) {
+					runName += "_" + value.replaceAll("[^\\w.,-]", "_");
+				}
+				scenarioNames.add(runName);
+			}
+		}
+
+		Map<String, Integer> fileRuns = new HashMap<String, Integer>();
+		for (int i=0; i<runs.size(); i++) {
+			for (String file : getReportFiles(i)) {
+				Integer other = fileRuns.put(file, i);
+				if (other != null) {
+					throw new SettingsError("Runs " + (other+1) + " and " +
+							(i+1) + " of the sweep would write the same " +
+							"report file " + file + ". Use value filling " +
+							"(e.g., %%" + dimensions.keySet().iterator().
+							next() + "%%) in the report file names.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the paths of the report files of a run. Reports that have
+	 * an output interval are identified by the prefix of their files.
+	 * @param runIndex Index of the run
+	 * @return The report file paths
+	 */
+	private List<String> getReportFiles(int runIndex) {
+		List<String> files = new ArrayList<String>();
+		applySettings(runIndex);
+
+		Settings s = new Settings();
+		int nrofReports = s.getInt(DTNSimUI.NROF_REPORT_S, 0);
+		String scenName = s.valueFillString(s.getSetting(SCENARIO_NAME_S));
+		for (int i=1; i<=nrofReports; i++) {
+			String reportClass = s.getSetting(DTNSimUI.REPORT_S + i);
+			String name = reportClass.substring(
+					reportClass.lastIndexOf('.') + 1);
+			Settings rs = new Settings(name);
+			rs.setSecondaryNamespace(Report.REPORT_NS);
+			if (rs.contains(Report.OUTPUT_SETTING)) {
+				files.add(rs.valueFillString(rs.getSetting(
+						Report.OUTPUT_SETTING)));
+			}
+			else {
+				String outDir = getReportDir();
+				files.add(outDir + scenName + "_" + name + Report.OUT_SUFFIX);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Returns the report directory path ending with a slash
+	 * @return the report directory
+	 */
+	private String getReportDir() {
+		String outDir = new Settings().getSetting(Report.REPORTDIR_SETTING);
+		if (!outDir.endsWith("/")) {
+			outDir += "/";
+		}
+		return outDir;
+	}
+
+	/**
+	 * Returns the manifest file of the sweep
+	 * @return the manifest file
+	 */
+	private File getManifestFile() {
+		return new File(getReportDir() + MANIFEST_FILE);
+	}
+
+	/**
+	 * Returns the manifest line of a run: the run number, the values of 
+	 * the swept settings and the scenario name (if it is set by the sweep)
+	 * @param runIndex Index of the run
+	 * @return The line
+	 */
+	private String getManifestLine(int runIndex) {
+		String line = "" + (runIndex+1);
+		for (String value : runs.get(runIndex).values()) {
+			line += " " + value;
+		}
+		if (scenarioNames != null) {
+			line += " " + scenarioNames.get(runIndex);
+		}
+		return line;
+	}
+
+	/**
+	 * Reads the runs that are marked done in an existing manifest
+	 * @return The manifest lines of the done runs (without the
+	 * {@link #DONE_PREFIX})
+	 */
+	private Set<String> readDoneRuns() {
+		Set<String> done = new HashSet<String>();
+		File file = getManifestFile();
+		if (!file.exists()) {
+			return done;
+		}
+
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.startsWith(DONE_PREFIX)) {
+						done.add(line.substring(DONE_PREFIX.length()));
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new SimError("Couldn't read sweep manifest " + file, e);
+		}
+		return done;
+	}
+
+	/**
+	 * Writes the parameters of the runs to the manifest of the sweep in
+	 * the report directory and leaves the manifest open for marking the
+	 * runs done
+	 * @param done Manifest lines of the runs that were done earlier; the 
+	 * ones that are part of this sweep are marked done again
+	 */
+	private void writeManifest(Set<String> done) {
+		File file = getManifestFile();
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+
+		try {
+			this.manifest = new PrintWriter(new FileWriter(file));
+		} catch (IOException e) {
+			throw new SimError("Couldn't write sweep manifest " + file, e);
+		}
+
+		String header = "run";
+		for (String name : dimensions.keySet()) {
+			header += " " + name;
+		}
+		if (scenarioNames != null) {
+			header += " " + SCENARIO_NAME_S;
+		}
+		manifest.println(header);
+
+		for (int i=0; i<runs.size(); i++) {
+			manifest.println(getManifestLine(i));
+		}
+		for (int i=0; i<runs.size(); i++) {
+			String line = getManifestLine(i);
+			if (done.contains(line)) {
+				manifest.println(DONE_PREFIX + line);
+			}
+		}
+		manifest.flush();
+	}
+
+	/**
+	 * Marks a run done in the manifest
+	 * @param runIndex Index of the run
+	 */
+	private synchronized void markDone(int runIndex) {
+		manifest.println(DONE_PREFIX + getManifestLine(runIndex));
+		manifest.flush();
+	}
+
+	/**
+	 * Prints text to stdout
+	 * @param txt Text to print
+	 */
+	private static void print(String txt) {
+		System.out.println(txt);
+	}
+}
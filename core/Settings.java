@@ -12,11 +12,12 @@ import java.io.PrintStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
-import java.util.Set;
+import java.util.SortedMap;
 import java.util.Stack;
+import java.util.TreeMap;
 
 import util.Range;
 
@@ -37,8 +38,6 @@ import util.Range;
  * </P> 
  */
 public class Settings {
-	/** properties object where the setting files are read into */
-	protected static Properties props;
 	/** file name of the default settings file ({@value}) */
 	public static final String DEF_SETTINGS_FILE ="default_settings.txt";
 	
@@ -53,12 +52,6 @@ public class Settings {
 	 * @see #valueFillString(String) */
 	public static final String FILL_DELIMITER = "%%";
 	
-	/** Stream where all read settings are written to */
-	private static PrintStream out = null;
-	private static Set<String> writtenSettings = new HashSet<String>();
-	
-	/** run index for run-specific settings */
-	private static int runIndex = 0;
 	private String namespace = null; // namespace to look the settings from
 	private String secondaryNamespace = null;
 	private Stack<String> oldNamespaces;
@@ -99,8 +92,39 @@ public class Settings {
 	 * -1 to disable run indexing
 	 */
 	public static void setRunIndex(int index) {
-		runIndex = index;
-		writtenSettings.clear();
+		SimulationContext c = SimulationContext.get();
+		c.runIndex = index;
+		c.writtenSettings.clear();
+	}
+	
+	/**
+	 * Returns the properties object where the setting files of the current
+	 * simulation context are read into
+	 * @return The properties or null if no settings have been read yet
+	 * @see SimulationContext
+	 */
+	protected static Properties getProperties() {
+		return SimulationContext.get().settings;
+	}
+	
+	/**
+	 * Returns the properties of the current simulation context. Default 
+	 * settings are read if no settings have been read yet.
+	 * @return The properties
+	 */
+	private static Properties getLoadedProperties() {
+		if (getProperties() == null) {
+			init(null);
+		}
+		return getProperties();
+	}
+	
+	/**
+	 * Sets the properties object of the current simulation context
+	 * @param props The properties
+	 */
+	protected static void setProperties(Properties props) {
+		SimulationContext.get().settings = props;
 	}
 	
 	/**
@@ -174,7 +198,8 @@ public class Settings {
 			return null;
 		}
 		
-		if (props.getProperty(getFullPropertyName(setting, false)) != null) {
+		if (getLoadedProperties().getProperty(
+				getFullPropertyName(setting, false)) != null) {
 			return getFullPropertyName(setting, false);
 		}
 		
@@ -249,6 +274,7 @@ public class Settings {
 	 */
 	public static void init(String propFile) throws SettingsError {
 		String outFile;
+		Properties props;
 		try {
 			if (new File(DEF_SETTINGS_FILE).exists()) {
 				Properties defProperties = new Properties();
@@ -264,14 +290,16 @@ public class Settings {
 		} catch (IOException e) {
 			throw new SettingsError(e);
 		}
+		setProperties(props);
 
 		outFile = props.getProperty(SETTING_OUTPUT_S);
 		if (outFile != null) {
+			SimulationContext c = SimulationContext.get();
 			if (outFile.trim().length() == 0) {
-				out = System.out;
+				c.settingsOut = System.out;
 			} else {
 				try {
-					out = new PrintStream(new File(outFile));
+					c.settingsOut = new PrintStream(new File(outFile));
 				} catch (FileNotFoundException e) {
 					throw new SettingsError("Can't open Settings output file:" +
 							e);
@@ -289,23 +317,74 @@ public class Settings {
 	 */
 	public static void addSettings(String propFile) throws SettingsError {
 		try {
-			props.load(new FileInputStream(propFile));
+			getLoadedProperties().load(new FileInputStream(propFile));
 		} catch (IOException e) {
 			throw new SettingsError(e);
 		}
 	}
 	
+	/**
+	 * Sets the value of a setting overriding any value that the setting 
+	 * had already
+	 * @param name Full (namespace prefixed) name of the setting
+	 * @param value The new value
+	 */
+	public static void setSetting(String name, String value) {
+		getLoadedProperties().setProperty(name, value);
+	}
+	
+	/**
+	 * Returns all settings whose value is a run array (e.g., 
+	 * <CODE>[1; 2; 3]</CODE>). The values are not parsed using the run 
+	 * index.
+	 * @return Full names of the settings mapped to the values of their run
+	 * arrays (sorted by the names)
+	 */
+	public static Map<String, String[]> getRunArraySettings() {
+		Map<String, String[]> runArrays = new TreeMap<String, String[]>();
+		Properties props = getLoadedProperties();
+		
+		for (String name : props.stringPropertyNames()) {
+			String[] values = splitRunArray(props.getProperty(name).trim());
+			if (values != null) {
+				runArrays.put(name, values);
+			}
+		}
+		
+		return runArrays;
+	}
+	
+	/**
+	 * Returns the values of all settings. Run array values are parsed 
+	 * using the current run index. Unlike the getters, this method does not
+	 * write the settings to the settings output.
+	 * @return Full setting names mapped to their values in alphabetical
+	 * order of the names
+	 */
+	public static SortedMap<String, String> getAllSettings() {
+		SortedMap<String, String> settings = new TreeMap<String, String>();
+		Properties props = getLoadedProperties();
+		
+		for (String name : props.stringPropertyNames()) {
+			settings.put(name, parseRunSetting(props.getProperty(name).trim()));
+		}
+		
+		return settings;
+	}
+	
 	/**
 	 * Writes the given setting string to the settings output (if any)
 	 * @param setting The string to write
 	 */
 	private static void outputSetting(String setting) {
-		if (out != null && !writtenSettings.contains(setting)) {
-			if (writtenSettings.size() == 0) {
-				out.println("# Settings for run " + (runIndex + 1));
+		SimulationContext c = SimulationContext.get();
+		if (c.settingsOut != null && !c.writtenSettings.contains(setting)) {
+			if (c.writtenSettings.size() == 0) {
+				c.settingsOut.println("# Settings for run " + 
+						(c.runIndex + 1));
 			}
-			out.println(setting);
-			writtenSettings.add(setting);
+			c.settingsOut.println(setting);
+			c.writtenSettings.add(setting);
 		}
 	}
 	
@@ -359,9 +438,7 @@ public class Settings {
 	 */
 	public String getSetting(String name) {
 		String fullPropName;
-		if (props == null) {
-			init(null);
-		}
+		Properties props = getLoadedProperties();
 		fullPropName = getFullPropertyName(name, false);
 		String value = props.getProperty(fullPropName);
 		
@@ -411,6 +488,23 @@ public class Settings {
 	 * @return The runIndex % arrayLength'th value of the run array
 	 */
 	private static String parseRunSetting(String value) {
+		String[] valueArr = splitRunArray(value);
+		int runIndex = SimulationContext.get().runIndex;
+		
+		if (valueArr == null || runIndex < 0) {
+			return value; // standard format setting -> return
+		}
+		
+		int arrIndex = runIndex % valueArr.length;
+		return valueArr[arrIndex];
+	}
+	
+	/**
+	 * Splits a run array setting value to the values of the array
+	 * @param value The (trimmed) setting value
+	 * @return The (trimmed) values or null if the value is not a run array
+	 */
+	private static String[] splitRunArray(String value) {
 		final String RUN_ARRAY_START = "[";
 		final String RUN_ARRAY_END = "]";
 		final String RUN_ARRAY_DELIM = ";";
@@ -418,17 +512,17 @@ public class Settings {
 		
 		if (!value.startsWith(RUN_ARRAY_START) || 
 			!value.endsWith(RUN_ARRAY_END) || 
-			runIndex < 0 ||
 			value.length() < MIN_LENGTH) {
-			return value; // standard format setting -> return
+			return null;
 		}
 		
 		value = value.substring(1,value.length()-1); // remove brackets
 		String[] valueArr = value.split(RUN_ARRAY_DELIM);
-		int arrIndex = runIndex % valueArr.length;
-		value = valueArr[arrIndex].trim();
-
-		return value;
+		for (int i=0; i<valueArr.length; i++) {
+			valueArr[i] = valueArr[i].trim();
+		}
+		
+		return valueArr;
 	}
 	
 	/**
@@ -879,7 +973,7 @@ public class Settings {
 	 * @return a String representation of the stored settings 
 	 */
 	public String toString() {
-		return props.toString();
+		return getLoadedProperties().toString();
 	}
 	
 }
\ No newline at end of file
@@ -5,28 +5,27 @@
 package core;
 
 /**
- * Wall clock for checking the simulation time.
+ * Wall clock for checking the simulation time. Every 
+ * {@link SimulationContext} has a clock of its own and the static methods
+ * return the time of the calling thread's context.
  */
 public class SimClock {
-	private static double clockTime = 0.0;
-	private static SimClock clock = null;
+	private double clockTime;
 	
-	private SimClock() {}
-	
-	static {
-		DTNSim.registerForReset(SimClock.class.getCanonicalName());
-		reset();
+	/**
+	 * Creates a clock with the time set to zero
+	 * @see SimulationContext#SimulationContext()
+	 */
+	SimClock() {
+		this.clockTime = 0;
 	}
 	
 	/**
 	 * Get the instance of the class that can also change the time.
-	 * @return The instance of this clock
+	 * @return The clock of the current simulation context
 	 */
 	public static SimClock getInstance() {
-		if (clock == null) {
-			clock = new SimClock();
-		}
-		return clock;
+		return SimulationContext.get().clock;
 	}
 	
 	/**
@@ -34,7 +33,7 @@ public class SimClock {
 	 * @return Time as a double
 	 */
 	public static double getTime() {
-		return clockTime;
+		return SimulationContext.get().clock.clockTime;
 	}
 	
 	/**
@@ -42,7 +41,7 @@ public class SimClock {
 	 * @return Time as integer
 	 */
 	public static int getIntTime() {
-		return (int)Math.round(clockTime);
+		return (int)Math.round(getTime());
 	}
 	
 	/**
@@ -52,7 +51,7 @@ public class SimClock {
 	 * @return The sim time
 	 */
 	public static String getFormattedTime(int decimals) {
-		return String.format("%." + decimals + "f", clockTime);
+		return String.format("%." + decimals + "f", getTime());
 	}
 	
 	/**
@@ -80,9 +79,9 @@ public class SimClock {
 	}
 	
 	/**
-	 * Resets the static fields of the class
+	 * Sets the time of the current context's clock to zero
 	 */
 	public static void reset() {
-		clockTime = 0;
+		getInstance().setTime(0);
 	}
 }
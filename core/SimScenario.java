@@ -22,8 +22,9 @@ import routing.MessageRouter;
  */
 public class SimScenario implements Serializable {
 	
-	/** a way to get a hold of this... */	
-	private static SimScenario myinstance=null;
+	/** a way to get a hold of this... (one per simulation context) */	
+	private static final SimulationContext.Local<SimScenario> myinstance =
+		new SimulationContext.Local<SimScenario>();
 
 	/** namespace of scenario settings ({@value})*/
 	public static final String SCENARIO_NS = "Scenario";
@@ -39,6 +40,9 @@ public class SimScenario implements Serializable {
 	public static final String UP_INT_S = "updateInterval";
 	/** simulate connections -setting id ({@value})*/
 	public static final String SIM_CON_S = "simulateConnections";
+	/** simulate movement -setting id ({@value}). Boolean. If false, the 
+	 * hosts stay in their initial locations. Default is true. */
+	public static final String SIM_MOVE_S = "simulateMovement";
 
 	/** namespace for interface type settings ({@value}) */
 	public static final String INTTYPE_NS = "Interface";
@@ -104,6 +108,8 @@ public class SimScenario implements Serializable {
 	private EventQueueHandler eqHandler;
 	/** Should connections between hosts be simulated */
 	private boolean simulateConnections;
+	/** Should hosts be moved */
+	private boolean simulateMovement;
 	/** Map used for host movement (if any) */
 	private SimMap simMap;
 
@@ -117,6 +123,8 @@ public class SimScenario implements Serializable {
 	private List<UpdateListener> updateListeners;
 	/** Global application event listeners */
 	private List<ApplicationListener> appListeners;
+	/** Global buffer occupancy listeners */
+	private List<BufferListener> bufferListeners;
 
 	static {
 		DTNSim.registerForReset(SimScenario.class.getCanonicalName());
@@ -124,7 +132,7 @@ public class SimScenario implements Serializable {
 	}
 	
 	public static void reset() {
-		myinstance = null;
+		myinstance.set(null);
 	}
 
 	/**
@@ -138,6 +146,7 @@ public class SimScenario implements Serializable {
 		this.endTime = s.getDouble(END_TIME_S);
 		this.updateInterval = s.getDouble(UP_INT_S);
 		this.simulateConnections = s.getBoolean(SIM_CON_S);
+		this.simulateMovement = s.getBoolean(SIM_MOVE_S, true);
 
 		s.ensurePositiveValue(nrofGroups, NROF_GROUPS_S);
 		s.ensurePositiveValue(endTime, END_TIME_S);
@@ -151,6 +160,7 @@ public class SimScenario implements Serializable {
 		this.movementListeners = new ArrayList<MovementListener>();
 		this.updateListeners = new ArrayList<UpdateListener>();
 		this.appListeners = new ArrayList<ApplicationListener>();
+		this.bufferListeners = new ArrayList<BufferListener>();
 		this.eqHandler = new EventQueueHandler();
 
 		/* TODO: check size from movement models */
@@ -164,16 +174,19 @@ public class SimScenario implements Serializable {
 		this.world = new World(hosts, worldSizeX, worldSizeY, updateInterval, 
 				updateListeners, simulateConnections, 
 				eqHandler.getEventQueues());
+		this.world.setSimulateMovement(simulateMovement);
 	}
 	
 	/**
 	 * Returns the SimScenario instance and creates one if it doesn't exist yet
 	 */
 	public static SimScenario getInstance() {
-		if (myinstance == null) {
-			myinstance = new SimScenario();
+		SimScenario scen = myinstance.get();
+		if (scen == null) {
+			scen = new SimScenario();
+			myinstance.set(scen);
 		}
-		return myinstance;
+		return scen;
 	}
 
 
@@ -308,6 +321,14 @@ public class SimScenario implements Serializable {
 		return this.appListeners;
 	}
 	
+	/** 
+	 * Adds a new buffer occupancy listener for all nodes.
+	 * @param bl The listener
+	 */
+	public void addBufferListener(BufferListener bl) {
+		this.bufferListeners.add(bl);
+	}
+	
 	/**
 	 * Creates hosts for the scenario
 	 */
@@ -391,6 +412,7 @@ public class SimScenario implements Serializable {
 				DTNHost host = new DTNHost(this.messageListeners, 
 						this.movementListeners,	gid, interfaces, comBus, 
 						mmProto, mRouterProto);
+				host.getRouter().setBufferListeners(this.bufferListeners);
 				hosts.add(host);
 			}
 		}
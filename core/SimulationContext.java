@@ -0,0 +1,309 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The state of one simulation: the simulation clock, the settings and the
+ * per-run state of the other classes, e.g., the scenario, the next host
+ * address and message ID and the connectivity grids. Classes keep their
+ * per-run state in {@link Local}s instead of static fields, so several
+ * simulations can run at the same time in threads of one JVM, each thread
+ * bound to a context of its own. Loaded classes, their JIT compiled code
+ * and JVM-wide caches (e.g., the map data of map based movement models)
+ * are shared by the simulations.
+ * <P>
+ * Threads that are not bound to a context use the default context, so
+ * simulations that are run one at a time (e.g., in the GUI and in tests)
+ * don't need to create contexts. The worker threads of the pools created
+ * with {@link #createPool(int)} are bound to the context that created the
+ * pool. {@link Debug} output and the DTN2 emulation ({@link DTN2Manager})
+ * are JVM-wide and should only be used in the default context.
+ * </P>
+ */
+public class SimulationContext {
+	/**
+	 * Heap needed by one run -setting id ({@value}). Integer (megabytes) in
+	 * the {@link World#OPTIMIZATION_SETTINGS_NS} namespace. If set, the
+	 * number of runs executed at the same time is limited so that the
+	 * runs' heaps fit in the JVM's maximum heap size (<CODE>-Xmx</CODE>).
+	 * Default is 0, i.e., the number of parallel runs is not limited.
+	 */
+	public static final String RUN_HEAP_S = "runHeap";
+
+	/** Classes that are reset between runs (see {@link #reset()}) */
+	private static final List<Class<?>> resetList = new ArrayList<Class<?>>();
+	/** Number of the Locals created so far */
+	private static final AtomicInteger nrofLocals = new AtomicInteger();
+	/** Contexts of the threads that are bound to a context */
+	private static final ThreadLocal<SimulationContext> boundContext =
+		new ThreadLocal<SimulationContext>();
+	/** True after some thread has been bound to a context. Set by the bound
+	 * threads themselves, so the other threads may see a stale value but
+	 * then they are not bound anyway. */
+	private static boolean contextsBound;
+	/** Context of the threads that are not bound to a context */
+	private static final SimulationContext defaultContext =
+		new SimulationContext();
+
+	/** the simulation clock */
+	final SimClock clock;
+	/** the settings (see {@link Settings}) or null if not read yet */
+	Properties settings;
+	/** run index for run-specific settings */
+	int runIndex;
+	/** stream where all read settings are written to (or null) */
+	PrintStream settingsOut;
+	/** settings that have been written to the settings stream */
+	final Set<String> writtenSettings;
+	/** values of the Locals indexed by the Local index (copied when a
+	 * value is set, so that values are safely published to the threads
+	 * reading the array) */
+	private volatile Object[] locals;
+
+	/**
+	 * Per-context variable. Every context has its own, independently
+	 * initialized value of a Local, like every thread has its own value of
+	 * a ThreadLocal. The value of the calling thread's context (see
+	 * {@link SimulationContext#get()}) is accessed.
+	 * @param <T> Type of the value
+	 */
+	public static class Local<T> {
+		private final int index;
+
+		/**
+		 * Creates a new Local
+		 */
+		public Local() {
+			this.index = nrofLocals.getAndIncrement();
+		}
+
+		/**
+		 * Returns the initial value of a context. Called when the value
+		 * of a context is read for the first time. This implementation
+		 * returns null.
+		 * @return The initial value
+		 */
+		protected T initialValue() {
+			return null;
+		}
+
+		/**
+		 * Returns the value of the current context
+		 * @return The value
+		 */
+		@SuppressWarnings("unchecked")
+		public T get() {
+			SimulationContext c = SimulationContext.get();
+			Object[] values = c.locals;
+			if (index < values.length && values[index] != null) {
+				return (T)values[index];
+			}
+			return c.initLocal(this);
+		}
+
+		/**
+		 * Sets the value of the current context
+		 * @param value The new value
+		 */
+		public void set(T value) {
+			SimulationContext.get().setLocal(index, value);
+		}
+	}
+
+	/**
+	 * Creates a new context with the time set to zero and no settings.
+	 * Locals are initialized when they are used in the context.
+	 */
+	public SimulationContext() {
+		this.clock = new SimClock();
+		this.writtenSettings = new HashSet<String>();
+		this.locals = new Object[0];
+	}
+
+	/**
+	 * Returns the context of the calling thread
+	 * @return The context the thread is bound to or the default context
+	 */
+	public static SimulationContext get() {
+		if (contextsBound) {
+			SimulationContext c = boundContext.get();
+			if (c != null) {
+				return c;
+			}
+		}
+		return defaultContext;
+	}
+
+	/**
+	 * Runs a task in this context, i.e., with the calling thread bound to
+	 * this context. Returns when the task returns.
+	 * @param task The task to run
+	 */
+	public void run(Runnable task) {
+		SimulationContext old = boundContext.get();
+		bind(this);
+		try {
+			task.run();
+		} finally {
+			if (old == null) {
+				boundContext.remove();
+			}
+			else {
+				boundContext.set(old);
+			}
+		}
+	}
+
+	/**
+	 * Binds the calling thread to a context
+	 * @param c The context
+	 */
+	private static void bind(SimulationContext c) {
+		contextsBound = true;
+		boundContext.set(c);
+	}
+
+	/**
+	 * Creates a thread pool whose worker threads are bound to this context
+	 * @param threads Number of threads
+	 * @return The pool
+	 */
+	public ForkJoinPool createPool(int threads) {
+		if (this == defaultContext) {
+			return new ForkJoinPool(threads);
+		}
+		return new ForkJoinPool(threads,
+				new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				return new WorkerThread(pool, SimulationContext.this);
+			}
+		}, null, false);
+	}
+
+	/**
+	 * Worker thread of a pool that is bound to a context
+	 */
+	private static class WorkerThread extends ForkJoinWorkerThread {
+		private SimulationContext context;
+
+		protected WorkerThread(ForkJoinPool pool, SimulationContext context) {
+			super(pool);
+			this.context = context;
+		}
+
+		@Override
+		protected void onStart() {
+			super.onStart();
+			bind(context);
+		}
+	}
+
+	/**
+	 * Returns the value of a Local in this context and initializes it
+	 * if it hasn't been initialized yet
+	 * @param local The Local
+	 * @return The value
+	 */
+	@SuppressWarnings("unchecked")
+	private synchronized <T> T initLocal(Local<T> local) {
+		Object[] values = this.locals;
+		if (local.index < values.length && values[local.index] != null) {
+			return (T)values[local.index]; /* set by another thread */
+		}
+		T value = local.initialValue();
+		setLocal(local.index, value);
+		return value;
+	}
+
+	/**
+	 * Sets the value of a Local in this context
+	 * @param index Index of the Local
+	 * @param value The value
+	 */
+	private synchronized void setLocal(int index, Object value) {
+		Object[] values = Arrays.copyOf(this.locals,
+				Math.max(this.locals.length, index + 1));
+		values[index] = value;
+		this.locals = values;
+	}
+
+	/**
+	 * Registers a class whose static reset method is called by
+	 * {@link #reset()}
+	 * @param c The class
+	 * @see DTNSim#registerForReset(String)
+	 */
+	static void registerForReset(Class<?> c) {
+		synchronized (resetList) {
+			resetList.add(c);
+		}
+	}
+
+	/**
+	 * Resets the state of this context for the next run: sets the time to
+	 * zero and calls the reset methods of all registered classes in this
+	 * context. The settings are not changed.
+	 * @see DTNSim#registerForReset(String)
+	 */
+	public void reset() {
+		final List<Class<?>> classes;
+		synchronized (resetList) {
+			classes = new ArrayList<Class<?>>(resetList);
+		}
+
+		run(new Runnable() {
+			public void run() {
+				SimClock.reset();
+				for (Class<?> c : classes) {
+					try {
+						Method m = c.getMethod(DTNSim.RESET_METHOD_NAME);
+						m.invoke(null);
+					} catch (Exception e) {
+						throw new SimError("Failed to reset class " +
+								c.getName(), e);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Limits the number of runs executed at the same time in contexts so
+	 * that the heap of every run (see {@link #RUN_HEAP_S}) fits in the
+	 * JVM's maximum heap
+	 * @param nrofRuns The requested number of parallel runs
+	 * @return The number of parallel runs to use (at least one)
+	 */
+	public static int getMaxParallelRuns(int nrofRuns) {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		int runHeap = s.getInt(RUN_HEAP_S, 0);
+		s.ensurePositiveValue(runHeap, RUN_HEAP_S);
+		if (runHeap == 0) {
+			return nrofRuns;
+		}
+
+		long maxHeap = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+		int maxRuns = (int)Math.max(1, maxHeap / runHeap);
+		if (maxRuns < nrofRuns) {
+			System.out.println("Running " + maxRuns + " runs at a time " +
+					"instead of " + nrofRuns + " (" + RUN_HEAP_S + " " +
+					runHeap + "M, max heap " + maxHeap + "M)");
+			return maxRuns;
+		}
+		return nrofRuns;
+	}
+}
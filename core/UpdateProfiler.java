@@ -0,0 +1,156 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+/**
+ * Phase timers and event counters of the simulation loop
+ * ({@link World#update()}). Profiling is off by default and must be turned
+ * on (e.g., by {@link report.UpdateProfileReport}) before the simulation
+ * starts. When profiling is off, the timer and counter methods return
+ * without doing anything. Phase times are wall clock nanoseconds. A phase's
+ * time includes the listener callbacks made during the phase.
+ */
+public class UpdateProfiler {
+	/** Phase: moving the hosts */
+	public static final int MOVEMENT = 0;
+	/** Phase: processing external events */
+	public static final int EVENTS = 1;
+	/** Phase: read phase of two-phase host updates */
+	public static final int PREPARE = 2;
+	/** Phase: updating network interfaces */
+	public static final int INTERFACES = 3;
+	/** Phase: updating routers */
+	public static final int ROUTERS = 4;
+	/** Phase: informing update listeners */
+	public static final int UPDATE_LISTENERS = 5;
+	/** Names of the phases */
+	public static final String[] PHASE_NAMES = {"movement", "events",
+		"prepare", "interfaces", "routers", "updateListeners"};
+
+	/** Counter: host updates */
+	public static final int HOSTS_UPDATED = 0;
+	/** Counter: processed external events */
+	public static final int EVENTS_PROCESSED = 1;
+	/** Counter: connections that went up */
+	public static final int CONTACTS_UP = 2;
+	/** Counter: connections that went down */
+	public static final int CONTACTS_DOWN = 3;
+	/** Counter: started message transfers */
+	public static final int TRANSFERS_STARTED = 4;
+	/** Counter: calls to listeners of any kind */
+	public static final int LISTENER_CALLBACKS = 5;
+	/** Names of the counters */
+	public static final String[] COUNTER_NAMES = {"hostsUpdated",
+		"eventsProcessed", "contactsUp", "contactsDown", "transfersStarted",
+		"listenerCallbacks"};
+
+	/** Profiling state of the runs (one per simulation context) */
+	private static final SimulationContext.Local<State> state =
+		new SimulationContext.Local<State>() {
+			protected State initialValue() {
+				return new State();
+			}
+		};
+
+	/**
+	 * The profiling state of a simulation run
+	 */
+	private static class State {
+		private boolean enabled = false;
+		private final long[] phaseTimes = new long[PHASE_NAMES.length];
+		private final long[] counts = new long[COUNTER_NAMES.length];
+	}
+
+	static {
+		DTNSim.registerForReset(UpdateProfiler.class.getCanonicalName());
+		reset();
+	}
+
+	private UpdateProfiler() {}
+
+	/**
+	 * Turns profiling on or off
+	 * @param enable True to turn profiling on
+	 */
+	public static void setEnabled(boolean enable) {
+		state.get().enabled = enable;
+	}
+
+	/**
+	 * Returns true if profiling is on
+	 * @return true if profiling is on
+	 */
+	public static boolean isEnabled() {
+		return state.get().enabled;
+	}
+
+	/**
+	 * Starts timing a phase
+	 * @return The start time to give to {@link #end(int, long)}
+	 */
+	public static long start() {
+		return state.get().enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Ends timing a phase and adds its duration to the phase's total time
+	 * @param phase The phase (e.g., {@link #ROUTERS})
+	 * @param start The start time returned by {@link #start()}
+	 */
+	public static void end(int phase, long start) {
+		State st = state.get();
+		if (st.enabled) {
+			st.phaseTimes[phase] += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Increments a counter by one
+	 * @param counter The counter (e.g., {@link #CONTACTS_UP})
+	 */
+	public static void count(int counter) {
+		State st = state.get();
+		if (st.enabled) {
+			st.counts[counter]++;
+		}
+	}
+
+	/**
+	 * Increments a counter
+	 * @param counter The counter (e.g., {@link #LISTENER_CALLBACKS})
+	 * @param n How much the counter is incremented
+	 */
+	public static void count(int counter, int n) {
+		State st = state.get();
+		if (st.enabled) {
+			st.counts[counter] += n;
+		}
+	}
+
+	/**
+	 * Returns the total time of a phase
+	 * @param phase The phase
+	 * @return Total time of the phase in nanoseconds
+	 */
+	public static long getTime(int phase) {
+		return state.get().phaseTimes[phase];
+	}
+
+	/**
+	 * Returns the value of a counter
+	 * @param counter The counter
+	 * @return The value of the counter
+	 */
+	public static long getCount(int counter) {
+		return state.get().counts[counter];
+	}
+
+	/**
+	 * Resets the static fields of the class
+	 */
+	public static void reset() {
+		state.set(new State());
+	}
+}
@@ -4,6 +4,8 @@
  */
 package core;
 
+import java.io.IOException;
+
 import routing.MessageRouter;
 
 /**
@@ -51,7 +53,7 @@ public class VBRConnection extends Connection {
 		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
 		
 		if (retVal == MessageRouter.RCV_OK) {
-			this.msgOnFly = newMessage;
+			setMsgOnFly(newMessage);
 			this.msgsize = m.getSize();
 			this.msgsent = 0;
 		}
@@ -75,6 +77,22 @@ public class VBRConnection extends Connection {
 		msgsent = msgsent + currentspeed;
 	}
 	
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(this.msgsize);
+		out.writeInt(this.msgsent);
+		out.writeInt(this.currentspeed);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.msgsize = in.readInt();
+		this.msgsent = in.readInt();
+		this.currentspeed = in.readInt();
+	}
+
 	/**
 	 * returns the current speed of the connection
 	 */
@@ -0,0 +1,271 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import movement.MovementModel;
+import ui.DTNSimUI;
+
+/**
+ * Cache for the state of the hosts' movement after the movement model
+ * warmup (see {@link World#warmupMovementModel(double)}). The state (host
+ * locations, paths and the state of the movement models) is stored to a
+ * file in the cache directory the first time a warmup is run and later
+ * runs with the same movement settings load the state from the file
+ * instead of running the warmup again.
+ * <P>
+ * The file name is a hash of the settings that may affect the warmup: the
+ * warmup time, the <CODE>MovementModel</CODE>, <CODE>Group</CODE> and
+ * movement model class namespaces, and the scenario's update interval.
+ * Settings that name a file are identified by the file's path, size and
+ * modification time. The cache can't be used (and enabling it is an error)
+ * if some movement model does not support checkpoints (see 
+ * {@link MovementModel#isCheckpointSupported()}) or if there are movement 
+ * listeners that should see the warmup.
+ * </P>
+ */
+public class WarmupCache {
+	/** identifier in the beginning of warmup cache files */
+	private static final int CACHE_MAGIC = 0x4F4E4557;
+	/** version of the cache file format */
+	private static final int CACHE_VERSION = 2;
+	/** suffix of the cache files */
+	private static final String CACHE_SUFFIX = ".warmup";
+	/** packages where the movement model classes are looked up from */
+	private static final String[] MOVEMENT_PACKAGES = {"movement.",
+		"movement.map."};
+	/** group settings that don't affect movement */
+	private static final String[] NON_MOVEMENT_GROUP_S = {"router",
+		"bufferSize", "msgTtl"};
+
+	private World world;
+	private double warmupTime;
+	private Path file;
+
+	/**
+	 * Creates a new warmup cache for the current settings
+	 * @param world The world whose hosts are warmed up
+	 * @param dir Path of the cache directory
+	 * @param warmupTime The warmup time
+	 */
+	public WarmupCache(World world, String dir, double warmupTime) {
+		this.world = world;
+		this.warmupTime = warmupTime;
+		this.file = Paths.get(dir, getKey() + CACHE_SUFFIX);
+	}
+
+	/**
+	 * Returns the cache file of the current settings
+	 * @return The cache file's path
+	 */
+	public Path getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Warms up the movement model. The state after the warmup is loaded
+	 * from the cache file if it exists; otherwise the warmup is run and
+	 * the state is stored to the cache file. SimClock must be set to
+	 * <CODE>-warmupTime</CODE> before calling this method.
+	 * @throws SettingsError if the cache can't be used with the current
+	 * movement models
+	 * @throws SimError if the cache file can't be read or written
+	 */
+	public void warmup() {
+		String reason = getUnsupportedReason();
+		if (reason != null) {
+			throw new SettingsError("Movement warmup cache (" +
+					DTNSimUI.MM_WARMUP_CACHE_S + ") can't be used: " + reason);
+		}
+		if (!load()) {
+			world.warmupMovementModel(warmupTime);
+			store();
+		}
+	}
+
+	/**
+	 * Checks if the cache can be used for the current simulation
+	 * @return Null if the cache can be used or the reason why it can't
+	 */
+	private String getUnsupportedReason() {
+		for (DTNHost host : world.getHosts()) {
+			if (!host.getMovement().isCheckpointSupported()) {
+				return "movement model " +
+					host.getMovement().getClass().getName() + " of " + host +
+					" does not support checkpoints";
+			}
+			if (host.hasMovementListeners()) {
+				return "there are movement listeners";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Loads the state from the cache file if it exists
+	 * @return True if the state was loaded, false if there is no cache
+	 * file (of this version)
+	 */
+	private boolean load() {
+		if (!Files.exists(file)) {
+			return false;
+		}
+
+		try {
+			CheckpointInput in = new CheckpointInput(
+					new BufferedInputStream(new GZIPInputStream(
+							Files.newInputStream(file))), world.getHosts());
+			try {
+				if (in.readInt() != CACHE_MAGIC ||
+						in.readInt() != CACHE_VERSION) {
+					return false;
+				}
+				int nrofHosts = in.readInt();
+				if (nrofHosts != world.getHosts().size()) {
+					throw new SimError("Warmup cache " + file + " has " +
+							nrofHosts + " hosts instead of " +
+							world.getHosts().size());
+				}
+				MovementModel.readCommonState(in);
+				for (DTNHost host : world.getHosts()) {
+					host.readMovementState(in);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new SimError("Can't read warmup cache " + file, e);
+		}
+
+		SimClock.getInstance().setTime(0);
+		return true;
+	}
+
+	/**
+	 * Stores the current state to the cache file. The state is first
+	 * written to a temporary file so that concurrent runs never see a
+	 * partially written cache file.
+	 */
+	private void store() {
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			Path tmpFile = Files.createTempFile(file.toAbsolutePath().
+					getParent(), file.getFileName().toString(), ".tmp");
+			CheckpointOutput out = new CheckpointOutput(
+					new BufferedOutputStream(new GZIPOutputStream(
+							Files.newOutputStream(tmpFile))));
+			try {
+				out.writeInt(CACHE_MAGIC);
+				out.writeInt(CACHE_VERSION);
+				out.writeInt(world.getHosts().size());
+				MovementModel.writeCommonState(out);
+				for (DTNHost host : world.getHosts()) {
+					host.writeMovementState(out);
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new SimError("Can't write warmup cache " + file, e);
+		}
+	}
+
+	/**
+	 * Computes the cache key from the settings that may affect the warmup
+	 * @return Hexadecimal SHA-1 hash of the settings
+	 */
+	private String getKey() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(CACHE_VERSION).append('\n');
+		sb.append(warmupTime).append('\n');
+		sb.append(world.getHosts().size()).append('\n');
+
+		for (Map.Entry<String, String> e :
+				Settings.getAllSettings().entrySet()) {
+			if (affectsMovement(e.getKey())) {
+				String value = e.getValue();
+				sb.append(e.getKey()).append(" = ").append(value);
+				File f = new File(value);
+				if (value.length() > 0 && f.isFile()) {
+					sb.append(" (").append(f.length()).append(' ');
+					sb.append(f.lastModified()).append(')');
+				}
+				sb.append('\n');
+			}
+		}
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] hash = md.digest(sb.toString().getBytes(
+					StandardCharsets.UTF_8));
+			StringBuilder key = new StringBuilder();
+			for (byte b : hash) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError(e);
+		}
+	}
+
+	/**
+	 * Returns true if the given setting may affect the warmup
+	 * @param name Full name of the setting
+	 * @return True if the setting is part of the cache key
+	 */
+	private boolean affectsMovement(String name) {
+		int dot = name.indexOf('.');
+		if (dot < 0) {
+			return false;
+		}
+		String ns = name.substring(0, dot);
+		String setting = name.substring(dot + 1);
+
+		if (name.equals(DTNSimUI.MM_WARMUP_CACHE_S)) {
+			return false;
+		}
+		if (name.equals(SimScenario.SCENARIO_NS + "." +
+				SimScenario.UP_INT_S) ||
+				name.equals(SimScenario.SCENARIO_NS + "." +
+						SimScenario.NROF_GROUPS_S) ||
+				name.equals(World.OPTIMIZATION_SETTINGS_NS + "." +
+						World.MOVEMENT_THREADS_S)) {
+			return true;
+		}
+		if (ns.matches(SimScenario.GROUP_NS + "[0-9]*")) {
+			for (String s : NON_MOVEMENT_GROUP_S) {
+				if (setting.equals(s)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		for (String pkg : MOVEMENT_PACKAGES) {
+			try {
+				Class.forName(pkg + ns, false,
+						WarmupCache.class.getClassLoader());
+				return true;
+			} catch (ClassNotFoundException e) {
+				// not a movement class; try the next package
+			}
+		}
+		return false;
+	}
+}
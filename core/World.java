@@ -4,14 +4,29 @@
  */
 package core;
 
+import input.ConnectionEvent;
 import input.EventQueue;
+import input.EventQueueScheduler;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
-
+import interfaces.ConnectivityOptimizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import movement.MovementModel;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,6 +52,74 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Number of threads for two-phase host updates -setting id ({@value}).
+	 * Integer. If positive, hosts are updated in two phases: a read phase, 
+	 * run in parallel with the given number of threads, finds the network
+	 * interfaces that may be within range of each other from a snapshot of
+	 * the locations (see 
+	 * {@link ConnectivityOptimizer#snapshotLocations()}) and prepares the
+	 * routers' updates (see {@link routing.MessageRouter#prepareUpdate()})
+	 * and a merge phase updates connections and routers in the normal 
+	 * update order using the prepared data that is still valid. Results 
+	 * are the same as with the serial update, except for results that 
+	 * depend on identity hash codes of objects (the hash codes change when
+	 * any code computes them in a different order). Default is zero, i.e., 
+	 * hosts are updated in a single serial phase.
+	 */
+	public static final String UPDATE_THREADS_S = "updateThreads";
+	/**
+	 * Number of threads for moving hosts -setting id ({@value}). Integer. 
+	 * If positive, every movement model instance gets a random number
+	 * generator of its own (see {@link movement.MovementModel}) and hosts 
+	 * whose movement models support it are moved in parallel with the given
+	 * number of threads. Hosts of other models whose models support 
+	 * concurrent path movement (e.g., map based and working day movement)
+	 * are moved in parallel when the move does not reach the end of their
+	 * current path. Results do not depend on the number of threads. 
+	 * Default is zero, i.e., hosts are moved one by one and all movement 
+	 * models share the same random number generator.
+	 */
+	public static final String MOVEMENT_THREADS_S = "movementThreads";
+	/**
+	 * Should only the hosts affected by an external event be updated after
+	 * the event -setting id ({@value}). Boolean (true/false) variable. 
+	 * If true, the hosts that events report (see 
+	 * {@link ExternalEvent#getAffectedHosts()}) are collected to a dirty set
+	 * that is updated once before the simulation time advances, in the same
+	 * (possibly randomized) order as all hosts are updated. Events that
+	 * do not report their hosts still cause a full update of all hosts and
+	 * all hosts are updated after every update interval. Default is false, 
+	 * i.e., all hosts are updated after every event.
+	 */
+	public static final String INCREMENTAL_UPDATES_S = "incrementalUpdates";
+	/**
+	 * Should the connectivity grids detect contacts -setting id ({@value}).
+	 * Boolean (true/false) variable. If true, every connectivity grid 
+	 * checks every pair of interfaces in neighboring cells once before the
+	 * hosts are updated (see 
+	 * {@link interfaces.ConnectivityGrid#detectContacts()}) and the 
+	 * interfaces don't look for contacts themselves. Contacts then don't
+	 * depend on the update order of the hosts. Two-phase updates are not
+	 * used with this setting. Default is false.
+	 */
+	public static final String CONTACT_SWEEP_S = "contactSweep";
+	/**
+	 * Should the connectivity grids predict contacts -setting id 
+	 * ({@value}). Boolean (true/false) variable. If true, the connectivity 
+	 * grids detect contacts like with {@link #CONTACT_SWEEP_S} but a pair 
+	 * of interfaces is checked again only when it may have come within or
+	 * gone out of range, which is solved from the hosts' current movement
+	 * (see {@link interfaces.KineticContacts}). Default is false.
+	 */
+	public static final String KINETIC_CONTACTS_S = "kineticContacts";
+	/** identifier in the beginning of checkpoint files */
+	private static final int CHECKPOINT_MAGIC = 0x4F4E4543;
+	/** version of the checkpoint format */
+	private static final int CHECKPOINT_VERSION = 2;
+	/** max number of hosts processed by one task of a parallel phase */
+	private static final int HOST_BATCH_SIZE = 32;
+
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
@@ -47,6 +130,8 @@ public class World {
 	/** list of nodes; nodes are indexed by their network address */
 	private List<DTNHost> hosts;
 	private boolean simulateConnections;
+	/** are the hosts moved */
+	private boolean simulateMovement = true;
 	/** nodes in the order they should be updated (if the order should be 
 	 * randomized; null value means that the order should not be randomized) */
 	private ArrayList<DTNHost> updateOrder;
@@ -55,8 +140,36 @@ public class World {
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
+	/** Merges the events of the scheduled updates and all event queues */
+	private EventQueueScheduler eventScheduler;
 	private boolean simulateConOnce;
 	private boolean isConSimulated;
+	/** Thread pool for the read phase of two-phase updates (or null if 
+	 * two-phase updates are not used) */
+	private ForkJoinPool updatePool;
+	/** Thread pool for moving hosts (or null if hosts are moved serially) */
+	private ForkJoinPool movePool;
+	/** hosts (by index) left to be moved one by one after parallel moves */
+	private boolean[] deferredMoves;
+	/** Should only the hosts affected by events be updated after them */
+	private boolean incrementalUpdates;
+	/** Addresses of the hosts that need an update (incremental updates) */
+	private List<Integer> dirtyHosts;
+	/** Which hosts are in the dirty set, indexed by address */
+	private boolean[] isDirty;
+	/** Distinct connectivity optimizers of the hosts' interfaces (or null
+	 * if they are not collected yet) */
+	private List<ConnectivityOptimizer> optimizers;
+	/** Connectivity optimizers that detect contacts (or null if they are
+	 * not collected yet) */
+	private List<ConnectivityOptimizer> contactDetectors;
+	/** Contact plan connection changes waiting for the update of the host
+	 * they are from, indexed by address (or null if there have been none) */
+	private List<List<ConnectionEvent>> plannedConnections;
+	/** Number of planned connection changes waiting for an update */
+	private int nrofPlannedConnections;
+	/** Are the planned connection changes applied in the host updates */
+	private boolean isPlanApplied = true;
 
 	/**
 	 * Constructor.
@@ -77,6 +190,11 @@ public class World {
 		this.isCancelled = false;
 		this.isConSimulated = false;
 
+		List<EventQueue> allQueues = new ArrayList<EventQueue>();
+		allQueues.add(this.scheduledUpdates); // wins ties with other queues
+		allQueues.addAll(eventQueues);
+		this.eventScheduler = new EventQueueScheduler(allQueues);
+
 		setNextEventQueue();
 		initSettings();
 	}
@@ -93,6 +211,31 @@ public class World {
 		}
 		simulateConOnce = s.getBoolean(SIMULATE_CON_ONCE_S, false);
 		
+		int updateThreads = s.getInt(UPDATE_THREADS_S, 0);
+		s.ensurePositiveValue(updateThreads, UPDATE_THREADS_S);
+		if (updateThreads > 0) {
+			this.updatePool = SimulationContext.get().createPool(updateThreads);
+		}
+		else {
+			this.updatePool = null;
+		}
+		
+		int movementThreads = s.getInt(MOVEMENT_THREADS_S, 0);
+		s.ensurePositiveValue(movementThreads, MOVEMENT_THREADS_S);
+		if (movementThreads > 0) {
+			this.movePool = SimulationContext.get().createPool(
+					movementThreads);
+		}
+		else {
+			this.movePool = null;
+		}
+		
+		this.incrementalUpdates = s.getBoolean(INCREMENTAL_UPDATES_S, false);
+		if (this.incrementalUpdates) {
+			this.dirtyHosts = new ArrayList<Integer>();
+			this.isDirty = new boolean[this.hosts.size()];
+		}
+		
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
 			this.updateOrder = new ArrayList<DTNHost>(this.hosts);
@@ -112,6 +255,10 @@ public class World {
 		if (time <= 0) {
 			return;
 		}
+		if (!simulateMovement) {
+			simClock.setTime(0);
+			return;
+		}
 
 		while(SimClock.getTime() < -updateInterval) {
 			moveHosts(updateInterval);
@@ -125,23 +272,21 @@ public class World {
 	}
 
 	/**
-	 * Goes through all event Queues and sets the 
-	 * event queue that has the next event.
+	 * Sets the event queue that has the next event. If multiple queues
+	 * have events at the same time, scheduled updates go first and then 
+	 * the event queues in their configuration order.
 	 */
 	public void setNextEventQueue() {
-		EventQueue nextQueue = scheduledUpdates;
-		double earliest = nextQueue.nextEventsTime();
-
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;	
-				earliest = eq.nextEventsTime();
-			}
-		}
+		this.nextEventQueue = eventScheduler.getNextQueue();
+		this.nextQueueEventTime = this.nextEventQueue.nextEventsTime();
+	}
 
-		this.nextEventQueue = nextQueue;
-		this.nextQueueEventTime = earliest;
+	/**
+	 * Returns the scheduler that merges the events of all event queues
+	 * @return the event scheduler
+	 */
+	public EventQueueScheduler getEventScheduler() {
+		return this.eventScheduler;
 	}
 
 	/** 
@@ -157,64 +302,349 @@ public class World {
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
 			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
+			/* changes recorded at the end of the interval were made after
+			 * the hosts moved, i.e., in the update after these events */
+			this.isPlanApplied = this.nextQueueEventTime < runUntil;
+			ExternalEvent ee = eventScheduler.nextEvent();
+			long start = UpdateProfiler.start();
 			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
+			UpdateProfiler.end(UpdateProfiler.EVENTS, start);
+			UpdateProfiler.count(UpdateProfiler.EVENTS_PROCESSED);
+			if (this.incrementalUpdates) {
+				markUpdated(ee);
+			}
+			else if (changesHosts(ee)) {
+				updateHosts(); // update all hosts after every event
+			}
 			setNextEventQueue();
 		}
+		this.isPlanApplied = true;
 
-		moveHosts(this.updateInterval);
+		long start = UpdateProfiler.start();
+		if (this.simulateMovement) {
+			moveHosts(this.updateInterval);
+		}
+		UpdateProfiler.end(UpdateProfiler.MOVEMENT, start);
 		simClock.setTime(runUntil);
 
 		updateHosts();
 
 		/* inform all update listeners */
+		start = UpdateProfiler.start();
+		UpdateProfiler.count(UpdateProfiler.LISTENER_CALLBACKS, 
+				this.updateListeners.size());
 		for (UpdateListener ul : this.updateListeners) {
 			ul.updated(this.hosts);
 		}
+		UpdateProfiler.end(UpdateProfiler.UPDATE_LISTENERS, start);
 	}
 
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
-	 * are made in random order.
+	 * are made in random order. If two-phase updates are enabled, the 
+	 * updates are prepared in parallel before the calls. If connectivity
+	 * optimizers detect contacts, they do it before the calls.
 	 */
 	private void updateHosts() {
-		if (this.updateOrder == null) { // randomizing is off
-			for (int i=0, n = hosts.size();i < n; i++) {
+		List<DTNHost> order = getUpdateOrder();
+		
+		boolean detectContacts = simulateConnections && 
+			getContactDetectors().size() > 0;
+		if (detectContacts) {
+			long start = UpdateProfiler.start();
+			for (ConnectivityOptimizer co : this.contactDetectors) {
+				co.detectContacts();
+			}
+			UpdateProfiler.end(UpdateProfiler.INTERFACES, start);
+		}
+		if (this.updatePool != null) {
+			long start = UpdateProfiler.start();
+			prepareHosts(order, simulateConnections && !detectContacts);
+			UpdateProfiler.end(UpdateProfiler.PREPARE, start);
+		}
+		
+		for (int i=0, n = hosts.size();i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			DTNHost host = order.get(i);
+			if (this.nrofPlannedConnections > 0 && this.isPlanApplied) {
+				applyPlannedConnections(host);
+			}
+			host.update(simulateConnections);
+		}
+		UpdateProfiler.count(UpdateProfiler.HOSTS_UPDATED, hosts.size());
+		
+		if (simulateConOnce && simulateConnections) {
+			simulateConnections = false;
+		}
+	}
+	
+	/**
+	 * Returns the order the hosts should be updated in now. If update order
+	 * randomizing is on, the order is shuffled first.
+	 * @return The hosts in their update order
+	 */
+	private List<DTNHost> getUpdateOrder() {
+		if (this.updateOrder == null) {
+			return this.hosts;
+		}
+		
+		assert this.updateOrder.size() == this.hosts.size() : 
+			"Nrof hosts has changed unexpectedly";
+		Random rng = new Random(SimClock.getIntTime());
+		Collections.shuffle(this.updateOrder, rng); 
+		return this.updateOrder;
+	}
+	
+	/**
+	 * Returns false if processing the event did not change any host 
+	 * (the event reports an empty set of affected hosts)
+	 * @param ee The event that was processed
+	 * @return false if no host needs to be updated after the event
+	 */
+	private boolean changesHosts(ExternalEvent ee) {
+		int[] affected = ee.getAffectedHosts();
+		return affected == null || affected.length > 0;
+	}
+	
+	/**
+	 * Adds a connection change of a contact plan that is applied when the 
+	 * host the connection is from is updated next, just before the host's 
+	 * own update. The plan records the change in the update of that host, 
+	 * so the connection changes at the same point of the host update order
+	 * as in the recorded run. Changes whose time is the end of an update 
+	 * interval are applied in the update that follows moving the hosts 
+	 * (and not in the updates after other events of the same time). Planned
+	 * changes of one host are applied in the order they were added.
+	 * @param ce The connection change
+	 */
+	public void addPlannedConnection(ConnectionEvent ce) {
+		int address = ce.getFromAddress();
+		getNodeByAddress(address); /* checks the address */
+		if (this.plannedConnections == null) {
+			this.plannedConnections = new ArrayList<List<ConnectionEvent>>();
+			for (int i=0, n = hosts.size(); i < n; i++) {
+				this.plannedConnections.add(new ArrayList<ConnectionEvent>());
+			}
+		}
+		
+		this.plannedConnections.get(address).add(ce);
+		this.nrofPlannedConnections++;
+	}
+	
+	/**
+	 * Applies the planned connection changes of a host 
+	 * (see {@link #addPlannedConnection(ConnectionEvent)})
+	 * @param host The host whose changes are applied
+	 */
+	private void applyPlannedConnections(DTNHost host) {
+		List<ConnectionEvent> planned = 
+			this.plannedConnections.get(host.getAddress());
+		if (planned.size() == 0) {
+			return;
+		}
+		
+		long start = UpdateProfiler.start();
+		for (int i=0, n = planned.size(); i < n; i++) {
+			planned.get(i).changeConnection(this);
+		}
+		this.nrofPlannedConnections -= planned.size();
+		planned.clear();
+		UpdateProfiler.end(UpdateProfiler.INTERFACES, start);
+	}
+	
+	/**
+	 * Updates the hosts affected by an external event (incremental updates).
+	 * If the event reports the hosts it affected, they are added to the 
+	 * dirty set. The dirty hosts are updated when the next event happens 
+	 * later than this one. If the event does not report its hosts, all hosts
+	 * are updated.
+	 * @param ee The event that was processed
+	 */
+	private void markUpdated(ExternalEvent ee) {
+		int[] affected = ee.getAffectedHosts();
+		
+		if (affected == null) {
+			clearDirtyHosts();
+			updateHosts(); // also the dirty hosts get updated
+			return;
+		}
+		
+		for (int address : affected) {
+			if (!this.isDirty[address]) {
+				this.isDirty[address] = true;
+				this.dirtyHosts.add(address);
+			}
+		}
+		
+		if (eventScheduler.nextEventsTime() > ee.getTime()) {
+			updateDirtyHosts();
+		}
+	}
+	
+	/**
+	 * Updates all the hosts in the dirty set in the same order as all the
+	 * hosts are updated (shuffled if update order randomizing is on) and 
+	 * clears the set.
+	 */
+	private void updateDirtyHosts() {
+		if (this.updateOrder == null) {
+			/* hosts are updated in the order of their addresses */
+			Collections.sort(this.dirtyHosts);
+			for (int address : this.dirtyHosts) {
 				if (this.isCancelled) {
 					break;
 				}
-				hosts.get(i).update(simulateConnections);
+				updateDirtyHost(this.hosts.get(address));
 			}
 		}
-		else { // update order randomizing is on
-			assert this.updateOrder.size() == this.hosts.size() : 
-				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng); 
-			for (int i=0, n = hosts.size();i < n; i++) {
+		else {
+			List<DTNHost> order = getUpdateOrder();
+			for (int i=0, n = order.size(); i < n; i++) {
 				if (this.isCancelled) {
 					break;
 				}
-				this.updateOrder.get(i).update(simulateConnections);
-			}			
+				DTNHost host = order.get(i);
+				if (this.isDirty[host.getAddress()]) {
+					updateDirtyHost(host);
+				}
+			}
+		}
+		UpdateProfiler.count(UpdateProfiler.HOSTS_UPDATED, 
+				this.dirtyHosts.size());
+		clearDirtyHosts();
+	}
+	
+	/**
+	 * Updates a host of the dirty set
+	 * @param host The host to update
+	 */
+	private void updateDirtyHost(DTNHost host) {
+		if (this.nrofPlannedConnections > 0 && this.isPlanApplied) {
+			applyPlannedConnections(host);
+		}
+		host.update(simulateConnections);
+	}
+	
+	/**
+	 * Clears the set of hosts that need an update
+	 */
+	private void clearDirtyHosts() {
+		for (int address : this.dirtyHosts) {
+			this.isDirty[address] = false;
+		}
+		this.dirtyHosts.clear();
+	}
+	
+	/**
+	 * Returns the distinct connectivity optimizers of the hosts' interfaces
+	 * @return The optimizers in the order of hosts and their interfaces
+	 */
+	private List<ConnectivityOptimizer> getOptimizers() {
+		if (this.optimizers != null) {
+			return this.optimizers;
 		}
 		
-		if (simulateConOnce && simulateConnections) {
-			simulateConnections = false;
+		this.optimizers = new ArrayList<ConnectivityOptimizer>();
+		for (DTNHost host : this.hosts) {
+			for (NetworkInterface ni : host.getInterfaces()) {
+				ConnectivityOptimizer co = ni.optimizer;
+				if (co != null && !this.optimizers.contains(co)) {
+					this.optimizers.add(co);
+				}
+			}
+		}
+		return this.optimizers;
+	}
+	
+	/**
+	 * Returns the distinct connectivity optimizers of the hosts' interfaces
+	 * that detect contacts themselves 
+	 * (see {@link ConnectivityOptimizer#detectsContacts()})
+	 * @return The optimizers in the order of hosts and their interfaces
+	 */
+	private List<ConnectivityOptimizer> getContactDetectors() {
+		if (this.contactDetectors != null) {
+			return this.contactDetectors;
+		}
+		
+		this.contactDetectors = new ArrayList<ConnectivityOptimizer>();
+		for (ConnectivityOptimizer co : getOptimizers()) {
+			if (co.detectsContacts()) {
+				this.contactDetectors.add(co);
+			}
 		}
+		return this.contactDetectors;
+	}
+	
+	/**
+	 * Read phase of a two-phase update. Takes a snapshot of the hosts' 
+	 * locations in the connectivity optimizers (without changing the 
+	 * optimizers' cells, which the serial update moves one host at a time)
+	 * and then prepares the hosts' updates in parallel.
+	 * @param order The hosts in the order they are updated
+	 * @param prepareConnections Should the interfaces' updates be prepared
+	 * (or only the routers')
+	 */
+	private void prepareHosts(List<DTNHost> order, 
+			boolean prepareConnections) {
+		if (prepareConnections) {
+			for (ConnectivityOptimizer co : getOptimizers()) {
+				co.snapshotLocations();
+			}
+		}
+		updatePool.invoke(new HostPreparer(order, 0, order.size(), 
+				prepareConnections));
 	}
 
 	/**
-	 * Moves all hosts in the world for a given amount of time
+	 * Moves all hosts in the world for a given amount of time. If parallel
+	 * movement is enabled, the hosts that can be moved concurrently during
+	 * this move (see {@link DTNHost#canMoveConcurrently(double)}) are moved
+	 * first in parallel and the rest one by one after them.
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.movePool == null) {
+			for (int i=0,n = hosts.size(); i<n; i++) {
+				DTNHost host = hosts.get(i);
+				host.move(timeIncrement);			
+			}
+			return;
+		}
+		
+		if (this.deferredMoves == null || 
+				this.deferredMoves.length != hosts.size()) {
+			this.deferredMoves = new boolean[hosts.size()];
+		}
+		movePool.invoke(new HostMover(hosts, 0, hosts.size(), timeIncrement,
+				this.deferredMoves));
 		for (int i=0,n = hosts.size(); i<n; i++) {
-			DTNHost host = hosts.get(i);
-			host.move(timeIncrement);			
-		}		
+			if (this.deferredMoves[i]) {
+				this.deferredMoves[i] = false;
+				hosts.get(i).move(timeIncrement);
+			}
+		}
+	}
+
+	/**
+	 * Sets whether the hosts are moved. If not, the hosts stay in their
+	 * initial locations and the movement models are not used (e.g., when
+	 * contacts are replayed from a contact plan).
+	 * @param simulateMovement True if the hosts should be moved
+	 */
+	public void setSimulateMovement(boolean simulateMovement) {
+		this.simulateMovement = simulateMovement;
+	}
+
+	/**
+	 * Returns true if the hosts are moved
+	 * @return true if the hosts are moved
+	 */
+	public boolean simulateMovement() {
+		return this.simulateMovement;
 	}
 
 	/**
@@ -273,5 +703,273 @@ public class World {
 	 */
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
+		eventScheduler.queueChanged(scheduledUpdates);
+	}
+	
+	/**
+	 * Schedules update requests to all nodes to happen at the specified 
+	 * simulation times.
+	 * @param simTimes The times of the updates
+	 */
+	public void scheduleUpdates(double[] simTimes) {
+		scheduledUpdates.addUpdates(simTimes);
+		eventScheduler.queueChanged(scheduledUpdates);
+	}
+
+	/**
+	 * Writes the state of the simulation to a checkpoint file from which
+	 * the simulation can be continued with {@link #restore(Path)}. Should be
+	 * called between updates. The state of reports is not written. The
+	 * file is first written to a temporary file that replaces the old
+	 * checkpoint when it is ready.
+	 * @param file Path of the checkpoint file
+	 * @throws SimError if some part of the simulation does not support
+	 * checkpoints or if writing the file fails
+	 * @see MovementModel#isCheckpointSupported()
+	 * @see routing.MessageRouter#isCheckpointSupported()
+	 */
+	public void checkpoint(Path file) {
+		List<Checkpointable> optimizers = checkCheckpointSupport();
+		Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try {
+			CheckpointOutput out = new CheckpointOutput(
+					new BufferedOutputStream(new GZIPOutputStream(
+							Files.newOutputStream(tmpFile))));
+			try {
+				out.writeInt(CHECKPOINT_MAGIC);
+				out.writeInt(CHECKPOINT_VERSION);
+				out.writeDouble(SimClock.getTime());
+				out.writeInt(this.hosts.size());
+				out.writeBoolean(this.simulateConnections);
+				out.writeHosts(this.updateOrder);
+				out.writeInt(Message.getNextUniqueId());
+				MovementModel.writeCommonState(out);
+				this.scheduledUpdates.writeState(out);
+				for (EventQueue eq : this.eventQueues) {
+					((Checkpointable)eq).writeState(out);
+				}
+				for (DTNHost host : this.hosts) {
+					host.writeState(out);
+				}
+				for (Checkpointable co : optimizers) {
+					co.writeState(out);
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new SimError("Can't write checkpoint " + file, e);
+		}
+	}
+
+	/**
+	 * Restores the state of the simulation from a checkpoint file written
+	 * by {@link #checkpoint(Path)}. The world must have been created using
+	 * the same settings as the checkpointed one and it must not have been
+	 * updated yet. Sets the simulation time to the checkpoint's time.
+	 * Connection listeners are informed about the restored connections.
+	 * @param file Path of the checkpoint file
+	 * @throws SimError if the simulation does not support checkpoints or
+	 * if the file can't be read or is not a checkpoint of this simulation
+	 */
+	public void restore(Path file) {
+		List<Checkpointable> optimizers = checkCheckpointSupport();
+
+		try {
+			CheckpointInput in = new CheckpointInput(
+					new BufferedInputStream(new GZIPInputStream(
+							Files.newInputStream(file))), this.hosts);
+			try {
+				if (in.readInt() != CHECKPOINT_MAGIC ||
+						in.readInt() != CHECKPOINT_VERSION) {
+					throw new SimError(file + " is not a checkpoint file " +
+							"of this version");
+				}
+				double time = in.readDouble();
+				int nrofHosts = in.readInt();
+				if (nrofHosts != this.hosts.size()) {
+					throw new SimError("Checkpoint " + file + " has " +
+							nrofHosts + " hosts instead of " +
+							this.hosts.size());
+				}
+				this.simClock.setTime(time);
+				this.simulateConnections = in.readBoolean();
+				List<DTNHost> order = in.readHosts();
+				if (this.updateOrder != null && order != null) {
+					this.updateOrder = new ArrayList<DTNHost>(order);
+				}
+				Message.setNextUniqueId(in.readInt());
+				MovementModel.readCommonState(in);
+				this.scheduledUpdates.readState(in);
+				for (EventQueue eq : this.eventQueues) {
+					((Checkpointable)eq).readState(in);
+				}
+				for (DTNHost host : this.hosts) {
+					host.readState(in);
+				}
+				for (Checkpointable co : optimizers) {
+					co.readState(in);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new SimError("Can't read checkpoint " + file, e);
+		}
+
+		for (EventQueue eq : this.eventScheduler.getQueues()) {
+			this.eventScheduler.queueChanged(eq);
+		}
+		setNextEventQueue();
+	}
+
+	/**
+	 * Checks that all parts of the simulation support checkpoints and
+	 * returns the connectivity optimizers of the hosts' interfaces
+	 * @return The distinct connectivity optimizers in the order of hosts
+	 * and their interfaces
+	 * @throws SimError if some part does not support checkpoints
+	 */
+	private List<Checkpointable> checkCheckpointSupport() {
+		List<Checkpointable> optimizers = new ArrayList<Checkpointable>();
+
+		for (EventQueue eq : this.eventQueues) {
+			if (!(eq instanceof Checkpointable)) {
+				throw new SimError("Event queue " + eq.getClass().getName() +
+						" does not support checkpoints");
+			}
+		}
+		for (DTNHost host : this.hosts) {
+			if (!host.getMovement().isCheckpointSupported()) {
+				throw new SimError("Movement model " +
+						host.getMovement().getClass().getName() + " of " +
+						host + " does not support checkpoints");
+			}
+			if (!host.getRouter().isCheckpointSupported()) {
+				throw new SimError("Router " +
+						host.getRouter().getClass().getName() + " of " +
+						host + " does not support checkpoints");
+			}
+		}
+		for (ConnectivityOptimizer co : getOptimizers()) {
+			if (!(co instanceof Checkpointable)) {
+				throw new SimError("Connectivity optimizer " +
+						co.getClass().getName() + " does not support " +
+						"checkpoints");
+			}
+			optimizers.add((Checkpointable)co);
+		}
+
+		return optimizers;
+	}
+
+	/**
+	 * Fork-join task that processes a range of hosts. Ranges larger than
+	 * {@link World#HOST_BATCH_SIZE} are split to subtasks.
+	 */
+	private static abstract class HostRangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		protected List<DTNHost> hosts;
+		private int start;
+		private int end;
+		
+		/**
+		 * Constructor.
+		 * @param hosts The hosts
+		 * @param start Index of the first host to process
+		 * @param end Index after the last host to process
+		 */
+		protected HostRangeTask(List<DTNHost> hosts, int start, int end) {
+			this.hosts = hosts;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if (end - start <= HOST_BATCH_SIZE) {
+				for (int i=start; i<end; i++) {
+					processHost(hosts.get(i), i);
+				}
+				return;
+			}
+			
+			int middle = (start + end) >>> 1;
+			invokeAll(createSubtask(start, middle), 
+					createSubtask(middle, end));
+		}
+		
+		/**
+		 * Creates a task of the same kind for a subrange of hosts
+		 * @param start Index of the first host to process
+		 * @param end Index after the last host to process
+		 * @return The new task
+		 */
+		protected abstract HostRangeTask createSubtask(int start, int end);
+		
+		/**
+		 * Processes a single host
+		 * @param host The host to process
+		 * @param index Index of the host in the list of hosts
+		 */
+		protected abstract void processHost(DTNHost host, int index);
+	}
+	
+	/**
+	 * Task that prepares the updates of a range of hosts
+	 */
+	private static class HostPreparer extends HostRangeTask {
+		private static final long serialVersionUID = 1L;
+		private boolean simulateConnections;
+		
+		private HostPreparer(List<DTNHost> hosts, int start, int end,
+				boolean simulateConnections) {
+			super(hosts, start, end);
+			this.simulateConnections = simulateConnections;
+		}
+		
+		@Override
+		protected HostRangeTask createSubtask(int start, int end) {
+			return new HostPreparer(hosts, start, end, simulateConnections);
+		}
+		
+		@Override
+		protected void processHost(DTNHost host, int index) {
+			host.prepareUpdate(simulateConnections);
+		}
+	}
+	
+	/**
+	 * Task that moves the hosts of a range that can be moved concurrently
+	 * and marks the rest to be moved one by one
+	 */
+	private static class HostMover extends HostRangeTask {
+		private static final long serialVersionUID = 1L;
+		private double timeIncrement;
+		private boolean[] deferred;
+		
+		private HostMover(List<DTNHost> hosts, int start, int end,
+				double timeIncrement, boolean[] deferred) {
+			super(hosts, start, end);
+			this.timeIncrement = timeIncrement;
+			this.deferred = deferred;
+		}
+		
+		@Override
+		protected HostRangeTask createSubtask(int start, int end) {
+			return new HostMover(hosts, start, end, timeIncrement, deferred);
+		}
+		
+		@Override
+		protected void processHost(DTNHost host, int index) {
+			if (host.canMoveConcurrently(timeIncrement)) {
+				host.move(timeIncrement);
+			}
+			else {
+				deferred[index] = true;
+			}
+		}
 	}
 }
@@ -40,12 +40,33 @@ public class ConnectionEvent extends ExternalEvent {
 	
 	@Override
 	public void processEvent(World world) {
+		changeConnection(world);
+	}
+	
+	/**
+	 * Sets the connection up or down between the hosts
+	 * @param world World where the hosts are
+	 */
+	public void changeConnection(World world) {
 		DTNHost from = world.getNodeByAddress(this.fromAddr);
 		DTNHost to = world.getNodeByAddress(this.toAddr);
 		
 		from.forceConnection(to, interfaceId, this.isUp);
 	}
 	
+	/**
+	 * Returns the address of the node the (dis)connection is from
+	 * @return the address of the node the (dis)connection is from
+	 */
+	public int getFromAddress() {
+		return this.fromAddr;
+	}
+	
+	@Override
+	public int[] getAffectedHosts() {
+		return new int[] {this.fromAddr, this.toAddr};
+	}
+	
 	@Override
 	public String toString() {
 		return "CONN " + (isUp ? "up" : "down") + " @" + this.time + " " + 
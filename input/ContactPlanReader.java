@@ -0,0 +1,127 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package input;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.SimError;
+
+/**
+ * Reads connection events from a binary contact plan file (recorded e.g.
+ * with {@link report.ContactPlanReport}). The file starts with
+ * {@link #PLAN_MAGIC} and {@link #PLAN_VERSION} (integers) and is followed
+ * by one record per connection event: the event's time (double), the
+ * addresses of the two hosts (integers) and whether the connection went up
+ * (boolean). The first host is the one whose update changed the connection
+ * and the change is replayed when that host is updated (see 
+ * {@link PlannedConnectionEvent}). The connections are replayed between the
+ * first interfaces of the hosts.
+ */
+public class ContactPlanReader implements ExternalEventsReader {
+	/** Extension of contact plan files */
+	public static final String PLAN_EXT = ".cplan";
+	/** identifier in the beginning of contact plan files */
+	public static final int PLAN_MAGIC = 0x4F4E4550;
+	/** version of the contact plan format */
+	public static final int PLAN_VERSION = 1;
+
+	private File planFile;
+	private DataInputStream in;
+	private boolean allRead;
+
+	/**
+	 * Constructor.
+	 * @param planFile The file where the events are read
+	 */
+	public ContactPlanReader(File planFile) {
+		this.planFile = planFile;
+		try {
+			this.in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(planFile)));
+			if (in.readInt() != PLAN_MAGIC || in.readInt() != PLAN_VERSION) {
+				in.close();
+				throw new SimError("Invalid contact plan file " +
+						planFile.getAbsolutePath());
+			}
+		} catch (IOException e) {
+			throw new SimError("Can't read contact plan " +
+					planFile.getAbsolutePath(), e);
+		}
+		this.allRead = false;
+	}
+
+	/**
+	 * Reads connection events from the file
+	 * @param nrof Maximum number of events to read
+	 * @return Events in a List (empty list if didn't read any)
+	 */
+	public List<ExternalEvent> readEvents(int nrof) {
+		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
+		if (allRead) {
+			return events;
+		}
+
+		try {
+			for (int i=0; i < nrof; i++) {
+				double time;
+				try {
+					time = in.readDouble();
+				} catch (EOFException e) {
+					allRead = true;
+					close();
+					break;
+				}
+				int from = in.readInt();
+				int to = in.readInt();
+				boolean up = in.readBoolean();
+				events.add(new PlannedConnectionEvent(from, to, up, time));
+			}
+		} catch (IOException e) {
+			throw new SimError("Can't read contact plan " +
+					planFile.getAbsolutePath(), e);
+		}
+		return events;
+	}
+
+	/**
+	 * Checks if the given file is a contact plan file
+	 * @param file The file to check
+	 * @return True if the file name has the contact plan extension and the
+	 * file starts with the contact plan identifier
+	 */
+	public static boolean isContactPlanFile(File file) {
+		if (!file.getName().endsWith(PLAN_EXT)) {
+			return false;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(
+					new FileInputStream(file));
+			try {
+				return in.readInt() == PLAN_MAGIC;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public void close() {
+		try {
+			this.in.close();
+		}
+		catch (IOException ioe) {
+			throw new SimError(ioe);
+		}
+	}
+}
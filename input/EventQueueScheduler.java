@@ -0,0 +1,266 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the events of multiple event queues to a single sequence ordered by
+ * event time. The queues are kept in an indexed min-heap keyed by their next
+ * event's time, so after an event is taken only the queue it came from needs
+ * to be re-keyed. If two queues have events at the same time, the queue that
+ * is earlier in the list given to the constructor goes first.
+ * <P>
+ * Queues whose next event's time is only changed by taking events from them
+ * (event files, message generators and scheduled updates) are kept in the
+ * heap. Changes made to such a queue by other means must be reported with
+ * {@link #queueChanged(EventQueue)}. The next event's time of all other
+ * queues (e.g., {@link DTN2Events}) is checked every time the next queue is
+ * requested.
+ * </P>
+ */
+public class EventQueueScheduler {
+	/** the event queues */
+	private List<EventQueue> queues;
+	/** indexes of the queues that are not in the heap */
+	private int[] polledQueues;
+	/** how many events have been taken from each queue */
+	private long[] eventCounts;
+
+	/** queue indexes in a binary min-heap */
+	private int[] heap;
+	/** number of queues in the heap */
+	private int heapSize;
+	/** positions of the queues in the heap (or -1 if a queue is polled) */
+	private int[] heapPos;
+	/** next event's time of each queue in the heap */
+	private double[] keys;
+
+	/**
+	 * Creates a new scheduler for the given event queues
+	 * @param queues The event queues in their priority order
+	 */
+	public EventQueueScheduler(List<EventQueue> queues) {
+		int n = queues.size();
+		List<Integer> polled = new ArrayList<Integer>();
+
+		this.queues = queues;
+		this.eventCounts = new long[n];
+		this.heap = new int[n];
+		this.heapPos = new int[n];
+		this.keys = new double[n];
+		this.heapSize = 0;
+
+		for (int i=0; i<n; i++) {
+			EventQueue eq = queues.get(i);
+			if (isKeyable(eq)) {
+				this.keys[i] = eq.nextEventsTime();
+				this.heap[this.heapSize] = i;
+				this.heapPos[i] = this.heapSize;
+				this.heapSize++;
+				siftUp(this.heapPos[i]);
+			}
+			else {
+				this.heapPos[i] = -1;
+				polled.add(i);
+			}
+		}
+
+		this.polledQueues = new int[polled.size()];
+		for (int i=0; i<polledQueues.length; i++) {
+			this.polledQueues[i] = polled.get(i);
+		}
+	}
+
+	/**
+	 * Returns true if the next event's time of the queue can only change
+	 * when an event is taken from it (or when the change is reported)
+	 * @param eq The queue to check
+	 * @return true if the queue can be kept in the heap
+	 */
+	private boolean isKeyable(EventQueue eq) {
+		return eq instanceof ScheduledUpdatesQueue ||
+			eq instanceof ExternalEventsQueue ||
+			eq instanceof MessageEventGenerator;
+	}
+
+	/**
+	 * Returns the index of the queue that has the next event, or -1 if
+	 * there are no queues
+	 * @return the index of the queue that has the next event
+	 */
+	private int nextQueueIndex() {
+		int next = (this.heapSize > 0 ? this.heap[0] : -1);
+		double earliest = (next >= 0 ? this.keys[next] : Double.MAX_VALUE);
+
+		for (int i : this.polledQueues) {
+			double time = this.queues.get(i).nextEventsTime();
+			if (next < 0 || time < earliest || (time == earliest && i < next)) {
+				next = i;
+				earliest = time;
+			}
+		}
+
+		return next;
+	}
+
+	/**
+	 * Returns the queue that has the next event
+	 * @return the queue that has the next event or null if there are
+	 * no queues
+	 */
+	public EventQueue getNextQueue() {
+		int next = nextQueueIndex();
+		return (next >= 0 ? this.queues.get(next) : null);
+	}
+
+	/**
+	 * Returns the time of the next event in any of the queues
+	 * @return the time of the next event or Double.MAX_VALUE if there are
+	 * no events left
+	 */
+	public double nextEventsTime() {
+		int next = nextQueueIndex();
+		return (next >= 0 ? this.queues.get(next).nextEventsTime() :
+			Double.MAX_VALUE);
+	}
+
+	/**
+	 * Takes the next event from the queue that has it
+	 * @return The next event or ExternalEvent with time of Double.MAX_VALUE
+	 * if there are no events left
+	 */
+	public ExternalEvent nextEvent() {
+		int next = nextQueueIndex();
+		if (next < 0) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+
+		ExternalEvent ee = this.queues.get(next).nextEvent();
+		this.eventCounts[next]++;
+		rekey(next);
+
+		return ee;
+	}
+
+	/**
+	 * Informs the scheduler that the next event's time of a queue may have
+	 * changed without taking an event from it through this scheduler.
+	 * @param eq The queue that changed
+	 */
+	public void queueChanged(EventQueue eq) {
+		int index = this.queues.indexOf(eq);
+		if (index >= 0) {
+			rekey(index);
+		}
+	}
+
+	/**
+	 * Returns the event queues in their priority order
+	 * @return the event queues
+	 */
+	public List<EventQueue> getQueues() {
+		return this.queues;
+	}
+
+	/**
+	 * Returns the number of events taken from each queue. Counts are in the
+	 * same order as the queues in {@link #getQueues()}.
+	 * @return the number of events taken from each queue
+	 */
+	public long[] getEventCounts() {
+		return this.eventCounts.clone();
+	}
+
+	/**
+	 * Updates the heap position of a queue after its next event's time has
+	 * (possibly) changed
+	 * @param index Index of the queue
+	 */
+	private void rekey(int index) {
+		int pos = this.heapPos[index];
+		if (pos < 0) {
+			return; /* polled queue */
+		}
+
+		double oldKey = this.keys[index];
+		this.keys[index] = this.queues.get(index).nextEventsTime();
+		if (this.keys[index] < oldKey) {
+			siftUp(pos);
+		}
+		else {
+			siftDown(pos);
+		}
+	}
+
+	/**
+	 * Returns true if queue a should be before queue b in the heap
+	 * @param a Index of the first queue
+	 * @param b Index of the second queue
+	 * @return true if queue a has an earlier event (or the same time and
+	 * higher priority) than queue b
+	 */
+	private boolean isBefore(int a, int b) {
+		return this.keys[a] < this.keys[b] ||
+			(this.keys[a] == this.keys[b] && a < b);
+	}
+
+	/**
+	 * Moves the queue at the given heap position up until its parent is
+	 * before it
+	 * @param pos The heap position
+	 */
+	private void siftUp(int pos) {
+		int index = this.heap[pos];
+
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (!isBefore(index, this.heap[parent])) {
+				break;
+			}
+			this.heap[pos] = this.heap[parent];
+			this.heapPos[this.heap[pos]] = pos;
+			pos = parent;
+		}
+		this.heap[pos] = index;
+		this.heapPos[index] = pos;
+	}
+
+	/**
+	 * Moves the queue at the given heap position down until none of its
+	 * children is before it
+	 * @param pos The heap position
+	 */
+	private void siftDown(int pos) {
+		int index = this.heap[pos];
+		int half = this.heapSize >>> 1;
+
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < this.heapSize &&
+					isBefore(this.heap[child + 1], this.heap[child])) {
+				child++;
+			}
+			if (!isBefore(this.heap[child], index)) {
+				break;
+			}
+			this.heap[pos] = this.heap[child];
+			this.heapPos[this.heap[pos]] = pos;
+			pos = child;
+		}
+		this.heap[pos] = index;
+		this.heapPos[index] = pos;
+	}
+
+	/**
+	 * Returns a string representation of the scheduler
+	 * @return a string representation of the scheduler
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of " + this.queues.size() +
+			" queues, next event @ " + nextEventsTime();
+	}
+}
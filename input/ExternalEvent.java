@@ -29,6 +29,19 @@ public class ExternalEvent implements Comparable<ExternalEvent>, Serializable {
 		// this is just a dummy event
 	}
 
+	/**
+	 * Returns the network addresses of the hosts whose state this event 
+	 * changes when it is processed. With incremental updates, only these 
+	 * hosts are updated after the event.
+	 * @return The addresses of the affected hosts or null if the event may 
+	 * affect any host (and all hosts should be updated after it). An empty
+	 * array means that processing the event changes no host and no hosts
+	 * are updated after it (even without incremental updates).
+	 */
+	public int[] getAffectedHosts() {
+		return null;
+	}
+
 	/**
 	 * Returns the time when this event should happen.
 	 * @return Event's time
@@ -5,16 +5,20 @@
 package input;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
+import core.Checkpointable;
 import core.Settings;
 
 /**
  * Queue of external events. This class also takes care of buffering
  * the events and preloading only a proper amount of them.
  */
-public class ExternalEventsQueue implements EventQueue {
+public class ExternalEventsQueue implements EventQueue, Checkpointable {
 	/** ExternalEvents namespace ({@value})*/
 	public static final String SETTINGS_NAMESPACE = "ExternalEvents";
 	/** number of event to preload -setting id ({@value})*/
@@ -31,12 +35,15 @@ public class ExternalEventsQueue implements EventQueue {
 	private int nrofPreload;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
+	/** number of events returned by {@link #nextEvent()} */
+	private int nrofEventsRead;
 	
 	/**
 	 * Creates a new Queue from a file
 	 * @param filePath Path to the file where the events are read from. If
 	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
-	 * the file is assumed to be a binary file.
+	 * the file is assumed to be a binary file. If it ends with
+	 * {@link ContactPlanReader#PLAN_EXT}, it is assumed to be a contact plan.
 	 * @param nrofPreload How many events to preload
 	 * @see BinaryEventsReader#BINARY_EXT
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
@@ -77,7 +84,10 @@ public class ExternalEventsQueue implements EventQueue {
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
 		
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+		if (ContactPlanReader.isContactPlanFile(eventsFile)) {
+			this.reader = new ContactPlanReader(eventsFile);
+		}
+		else if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
 		else {
@@ -86,6 +96,7 @@ public class ExternalEventsQueue implements EventQueue {
 		
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
+		this.nrofEventsRead = 0;
 	}
 	
 	/**
@@ -115,6 +126,7 @@ public class ExternalEventsQueue implements EventQueue {
 		
 		ExternalEvent ee = queue.get(nextEventIndex);
 		nextEventIndex++;
+		nrofEventsRead++;
 		
 		if (nextEventIndex >= queue.size()) { // ran out of events
 			queue = readEvents(nrofPreload);
@@ -124,6 +136,25 @@ public class ExternalEventsQueue implements EventQueue {
 		return ee;
 	}
 	
+	/**
+	 * Writes the number of events read from the queue
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeInt(this.nrofEventsRead);
+	}
+
+	/**
+	 * Restores the queue's position by skipping the events that had been
+	 * read when the checkpoint was written. The queue must not have been
+	 * read before this.
+	 */
+	public void readState(CheckpointInput in) throws IOException {
+		int nrofEvents = in.readInt();
+		while (this.nrofEventsRead < nrofEvents && queue.size() > 0) {
+			nextEvent();
+		}
+	}
+
 	/**
 	 * Returns the amount of events left in the buffer at the moment
 	 * (the amount can increase later if more events are read).
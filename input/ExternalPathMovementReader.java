@@ -326,14 +326,15 @@ public class ExternalPathMovementReader {
 	/** 
 	 * Get an instance of the reader for the given file path. If the file has
 	 * already been read previously it will not be read again and instead the
-	 * previous instance of the reader will be returned.
+	 * previous instance of the reader will be returned. The readers are
+	 * shared by all simulations that are run in the JVM.
 	 * 
 	 * @param filePath	path where the file is read from
 	 * @return instance of the reader that has loaded all the paths from the
 	 * 			given trace file.
 	 */
-	public static ExternalPathMovementReader getInstance(String traceFilePath,
-			String activeFilePath) {
+	public static synchronized ExternalPathMovementReader getInstance(
+			String traceFilePath, String activeFilePath) {
 		if (!ExternalPathMovementReader.singletons.containsKey(traceFilePath)) {
 			try {
 				ExternalPathMovementReader.singletons.put(traceFilePath,
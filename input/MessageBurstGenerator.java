@@ -4,6 +4,10 @@
  */
 package input;
 
+import java.io.IOException;
+
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Settings;
 
 /**
@@ -30,6 +34,20 @@ public class MessageBurstGenerator extends MessageEventGenerator {
 		}
 	}
 	
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(this.nextFromOffset);
+		out.writeInt(this.nextToOffset);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.nextFromOffset = in.readInt();
+		this.nextToOffset = in.readInt();
+	}
+
 	/** 
 	 * Returns the next message creation event
 	 * @see input.EventQueue#nextEvent()
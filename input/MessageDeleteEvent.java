@@ -51,6 +51,11 @@ public class MessageDeleteEvent extends MessageEvent {
 		}
 	}
 
+	@Override
+	public int[] getAffectedHosts() {
+		return new int[] {this.fromAddr};
+	}
+
 	@Override
 	public String toString() {
 		return super.toString() + " [" + fromAddr + "] DELETE";
@@ -4,8 +4,14 @@
  */
 package input;
 
+import java.io.IOException;
 import java.util.Random;
 
+import util.RestorableRandom;
+
+import core.CheckpointInput;
+import core.CheckpointOutput;
+import core.Checkpointable;
 import core.Settings;
 import core.SettingsError;
 
@@ -14,7 +20,7 @@ import core.SettingsError;
  * message creation patterns whose message size and inter-message intervals can
  * be configured.
  */
-public class MessageEventGenerator implements EventQueue {
+public class MessageEventGenerator implements EventQueue, Checkpointable {
 	/** Message size range -setting id ({@value}). Can be either a single
 	 * value or a range (min, max) of uniformly distributed random values.
 	 * Defines the message size (bytes). */
@@ -91,7 +97,7 @@ public class MessageEventGenerator implements EventQueue {
 		}
 		
 		/* if prefix is unique, so will be the rng's sequence */
-		this.rng = new Random(idPrefix.hashCode());
+		this.rng = new RestorableRandom(idPrefix.hashCode());
 		
 		if (this.sizeRange.length == 1) {
 			/* convert single value to range with 0 length */
@@ -220,6 +226,18 @@ public class MessageEventGenerator implements EventQueue {
 		return this.nextEventsTime;
 	}
 	
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeDouble(this.nextEventsTime);
+		out.writeInt(this.id);
+		out.writeRandom(this.rng);
+	}
+
+	public void readState(CheckpointInput in) throws IOException {
+		this.nextEventsTime = in.readDouble();
+		this.id = in.readInt();
+		this.rng = in.readRandom();
+	}
+
 	/**
 	 * Returns a next free message ID
 	 * @return next globally unique message ID
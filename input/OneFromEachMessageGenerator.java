@@ -4,10 +4,13 @@
  */
 package input;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Settings;
 import core.SettingsError;
 
@@ -39,6 +42,25 @@ public class OneFromEachMessageGenerator extends MessageEventGenerator {
 		Collections.shuffle(fromIds, rng);
 	}
 	
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(this.fromIds.size());
+		for (int id : this.fromIds) {
+			out.writeInt(id);
+		}
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		int nrofIds = in.readInt();
+		this.fromIds.clear();
+		for (int i = 0; i < nrofIds; i++) {
+			this.fromIds.add(in.readInt());
+		}
+	}
+
 	/** 
 	 * Returns the next message creation event
 	 * @see input.EventQueue#nextEvent()
@@ -4,10 +4,13 @@
  */
 package input;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Settings;
 import core.SettingsError;
 
@@ -39,6 +42,25 @@ public class OneToEachMessageGenerator extends MessageEventGenerator {
 		Collections.shuffle(toIds, rng);
 	}
 	
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(this.toIds.size());
+		for (int id : this.toIds) {
+			out.writeInt(id);
+		}
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		int nrofIds = in.readInt();
+		this.toIds.clear();
+		for (int i = 0; i < nrofIds; i++) {
+			this.toIds.add(in.readInt());
+		}
+	}
+
 	/** 
 	 * Returns the next message creation event
 	 * @see input.EventQueue#nextEvent()
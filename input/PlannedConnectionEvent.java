@@ -0,0 +1,42 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package input;
+
+import core.World;
+
+/**
+ * A connection up/down event of a contact plan. Processing the event only 
+ * hands it to the world, which changes the connection when the host the 
+ * connection is from is updated next (see 
+ * {@link World#addPlannedConnection(ConnectionEvent)}). This way the 
+ * connection changes at the same point of the update as in the run where
+ * the plan was recorded and the hosts are not updated after every event.
+ */
+public class PlannedConnectionEvent extends ConnectionEvent {
+	/** no hosts change when the event is processed */
+	private static final int[] NO_HOSTS = new int[0];
+
+	/**
+	 * Creates a new planned connection event
+	 * @param from Address of the host whose update changed the connection
+	 * @param to Address of the other end of the connection
+	 * @param up If true, this was a "connection up" event, if false, this
+	 *  was a "connection down" event
+	 * @param time Time when the Connection event occurs
+	 */
+	public PlannedConnectionEvent(int from, int to, boolean up, double time) {
+		super(from, to, null, up, time);
+	}
+
+	@Override
+	public void processEvent(World world) {
+		world.addPlannedConnection(this);
+	}
+
+	@Override
+	public int[] getAffectedHosts() {
+		return NO_HOSTS;
+	}
+}
@@ -4,52 +4,72 @@
  */
 package input;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import core.CheckpointInput;
+import core.CheckpointOutput;
+import core.Checkpointable;
 
 /**
  * Event queue where simulation objects can request an update to happen
- * at the specified simulation time. Multiple updates at the same time 
- * are merged to a single update.
+ * at the specified simulation time. Multiple updates at the same time
+ * are merged to a single update. The update times are kept in a binary
+ * min-heap, so adding and removing an update takes O(log n) time.
  */
-public class ScheduledUpdatesQueue implements EventQueue {
-	/** Time of the event (simulated seconds) */
-	private ExternalEvent nextEvent;
-	private List<ExternalEvent> updates;
-	
+public class ScheduledUpdatesQueue implements EventQueue, Checkpointable {
+	/** initial capacity of the heap */
+	private static final int INIT_CAPACITY = 16;
+
+	/** update times in a binary min-heap */
+	private double[] heap;
+	/** number of updates in the heap */
+	private int size;
+	/** the update times in the heap (for merging updates at the same time) */
+	private Set<Double> times;
+
 	/**
 	 * Constructor. Creates an empty update queue.
 	 */
 	public ScheduledUpdatesQueue(){
-		this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		this.updates = new ArrayList<ExternalEvent>();
+		this.heap = new double[INIT_CAPACITY];
+		this.size = 0;
+		this.times = new HashSet<Double>();
 	}
-	
+
 	/**
 	 * Returns the next scheduled event or event with time Double.MAX_VALUE
-	 * if there aren't any. 
+	 * if there aren't any.
 	 * @return the next scheduled event
 	 */
 	public ExternalEvent nextEvent() {
-		ExternalEvent event = this.nextEvent;
-		
-		if (this.updates.size() == 0) {
-			this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
+		if (this.size == 0) {
+			return new ExternalEvent(Double.MAX_VALUE);
 		}
-		else {
-			this.nextEvent = this.updates.remove(0);
+
+		double time = this.heap[0];
+		this.times.remove(time);
+		this.size--;
+		if (this.size > 0) {
+			this.heap[0] = this.heap[this.size];
+			siftDown(0);
 		}
-		
-		return event;
+
+		return new ExternalEvent(time);
 	}
-	
+
 	/**
 	 * Returns the next scheduled event's time or Double.MAX_VALUE if there
 	 * aren't any events left
 	 * @return the next scheduled event's time
 	 */
 	public double nextEventsTime() {
-		return this.nextEvent.getTime();
+		if (this.size == 0) {
+			return Double.MAX_VALUE;
+		}
+		return this.heap[0];
 	}
 
 	/**
@@ -57,49 +77,130 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @param simTime The time when the update should happen
 	 */
 	public void addUpdate(double simTime) {
-		ExternalEvent ee = new ExternalEvent(simTime);
+		if (put(simTime)) {
+			siftUp(this.size - 1);
+		}
+	}
+
+	/**
+	 * Adds new update requests for all the given times. Adding many updates
+	 * at once is faster than adding them one by one.
+	 * @param simTimes The times when the updates should happen
+	 */
+	public void addUpdates(double[] simTimes) {
+		int oldSize = this.size;
+
+		for (double simTime : simTimes) {
+			put(simTime);
+		}
+
+		int added = this.size - oldSize;
+		if (added > oldSize) { // cheaper to rebuild the whole heap
+			for (int i = (this.size >>> 1) - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+		}
+		else {
+			for (int i = oldSize; i < this.size; i++) {
+				siftUp(i);
+			}
+		}
+	}
 
-		if (ee.compareTo(nextEvent) == 0) { // this event is already next
-			return;
+	/**
+	 * Puts an update time to the end of the heap array unless an update with
+	 * the same time exists already. Heap order must be restored after this.
+	 * @param simTime The time of the update
+	 * @return True if the time was added, false if it existed already
+	 */
+	private boolean put(double simTime) {
+		simTime += 0.0; // -0.0 -> 0.0 so that both map to the same update
+
+		if (!this.times.add(simTime)) {
+			return false; // update with the given time exists already
 		}
-		else if (this.nextEvent.getTime() > simTime) { // new nextEvent
-			putToQueue(this.nextEvent); // put the old nextEvent back to q
-			this.nextEvent = ee;
+
+		if (this.size == this.heap.length) {
+			this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
 		}
-		else { // given event happens later..
-			putToQueue(ee);
+		this.heap[this.size++] = simTime;
+		return true;
+	}
+
+	/**
+	 * Moves the update at the given index up in the heap until its parent
+	 * is not later than it
+	 * @param index Index of the update to move
+	 */
+	private void siftUp(int index) {
+		double time = this.heap[index];
+
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (this.heap[parent] <= time) {
+				break;
+			}
+			this.heap[index] = this.heap[parent];
+			index = parent;
 		}
+		this.heap[index] = time;
 	}
-	
+
 	/**
-	 * Puts a event to the queue in the right place
-	 * @param ee The event to put to the queue
+	 * Moves the update at the given index down in the heap until neither of
+	 * its children is earlier than it
+	 * @param index Index of the update to move
 	 */
-	private void putToQueue(ExternalEvent ee) {
-		double eeTime = ee.getTime();
-		
-		for (int i=0, n=this.updates.size(); i<n; i++) {
-			double time = updates.get(i).getTime();
-			if (time == eeTime) {
-				return; // update with the given time exists -> no need for new
+	private void siftDown(int index) {
+		double time = this.heap[index];
+		int half = this.size >>> 1;
+
+		while (index < half) {
+			int child = 2 * index + 1;
+			if (child + 1 < this.size &&
+					this.heap[child + 1] < this.heap[child]) {
+				child++;
 			}
-			else if (eeTime < time) {
-				this.updates.add(i, ee);
-				return;
+			if (time <= this.heap[child]) {
+				break;
 			}
+			this.heap[index] = this.heap[child];
+			index = child;
 		}
-		
-		/* all existing updates are earlier -> add to the end of the list */
-		this.updates.add(ee);  
+		this.heap[index] = time;
 	}
-	
+
+	/**
+	 * Writes the update times in their heap order
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeInt(this.size);
+		for (int i = 0; i < this.size; i++) {
+			out.writeDouble(this.heap[i]);
+		}
+	}
+
+	public void readState(CheckpointInput in) throws IOException {
+		this.size = in.readInt();
+		this.heap = new double[Math.max(INIT_CAPACITY,
+				Integer.highestOneBit(Math.max(this.size, 1)) * 2)];
+		this.times.clear();
+		for (int i = 0; i < this.size; i++) {
+			this.heap[i] = in.readDouble();
+			this.times.add(this.heap[i]);
+		}
+	}
+
 	public String toString() {
-		String times = "updates @ " + this.nextEvent.getTime();
-		
-		for (ExternalEvent ee : this.updates) {
-			times += ", " + ee.getTime();
+		double[] sorted = Arrays.copyOf(this.heap, this.size);
+		Arrays.sort(sorted);
+
+		String times = "updates @ " + (this.size > 0 ? sorted[0] :
+			Double.MAX_VALUE);
+		for (int i = 1; i < sorted.length; i++) {
+			times += ", " + sorted[i];
 		}
-		
+
 		return times;
 	}
 }
@@ -4,18 +4,28 @@
  */
 package interfaces;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 
 import movement.MovementModel;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
+import core.Checkpointable;
+import core.Connection;
 import core.Coord;
 import core.DTNSim;
 import core.NetworkInterface;
 import core.Settings;
 import core.SettingsError;
+import core.SimulationContext;
 import core.World;
+import util.LongHashMap;
 
 /**
  * <P>
@@ -39,7 +49,8 @@ import core.World;
  * coordinates. Also, it makes sense to normalize the coordinates to start
  * from zero to conserve memory. 
  */
-public class ConnectivityGrid extends ConnectivityOptimizer {
+public class ConnectivityGrid extends ConnectivityOptimizer
+		implements Checkpointable {
 
 	/**
 	 * Cell based optimization cell size multiplier -setting id ({@value}).
@@ -53,83 +64,155 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	public static final String CELL_SIZE_MULT_S = "cellSizeMult";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
+	/**
+	 * Sparse grid -setting id ({@value}). Boolean (true/false) variable.
+	 * Used in {@link World#OPTIMIZATION_SETTINGS_NS} name space. If true, 
+	 * only the cells that contain interfaces are stored (in a hash map) 
+	 * instead of a matrix of all cells of the world. The memory use then 
+	 * depends on the number of interfaces instead of the size of the world.
+	 * The near interfaces are the same in both modes. Default is false.
+	 */
+	public static final String SPARSE_GRID_S = "sparseGrid";
 	
+	/** matrix of all cells (or null if the grid is sparse) */
 	private GridCell[][] cells;
+	/** the non-empty cells by their keys (or null if the grid is dense) */
+	private LongHashMap<GridCell> sparseCells;
+	/** reused buffer for the keys of the sparse cells */
+	private long[] keyBuffer;
+	/** reused buffer for the non-empty cells in row-major order */
+	private ArrayList<GridCell> occupiedCells;
+	/** kinetic contact detection (or null if not in use) */
+	private KineticContacts kinetic;
 	private HashMap<NetworkInterface, GridCell> ginterfaces;
+	/** the interfaces in the order they were added */
+	private ArrayList<NetworkInterface> interfaceList;
+	/** cell keys of the interfaces in the location snapshot (sorted) */
+	private long[] snapshotKeys;
+	/** the interfaces of the location snapshot in the order of the keys */
+	private NetworkInterface[] snapshotInterfaces;
+	/** reused buffer for sorting the interfaces of the snapshot */
+	private Integer[] snapshotOrder;
+	/** reused buffers for the cell keys and indexes of filtered interfaces */
+	private long[] filterKeys;
+	private int[] filterIndexes;
 	private int cellSize;
 	private int rows;
 	private int cols;
-	private static int worldSizeX;
-	private static int worldSizeY;
-	private static int cellSizeMultiplier;
+	/** are contacts detected by the grid (see {@link #detectsContacts()}) */
+	private boolean contactDetection;
 	
-	static HashMap<Integer,ConnectivityGrid> gridobjects;
+	/** Grid settings and grids of the runs (one per simulation context) */
+	private static final SimulationContext.Local<State> state =
+		new SimulationContext.Local<State>() {
+			protected State initialValue() {
+				return new State();
+			}
+		};
 
 	static {
 		DTNSim.registerForReset(ConnectivityGrid.class.getCanonicalName());
 		reset();
 	}
 	
-	public static void reset() {
-		gridobjects = new HashMap<Integer, ConnectivityGrid>();
-
-		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
-		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
-		worldSizeX = worldSize[0];
-		worldSizeY = worldSize[1];
+	/**
+	 * The grid settings and the grids of a simulation run
+	 */
+	private static class State {
+		private final int worldSizeX;
+		private final int worldSizeY;
+		private final int cellSizeMultiplier;
+		private final boolean contactSweep;
+		private final boolean kineticContacts;
+		private final boolean sparseGrid;
+		/** the grids by the interface types */
+		private final HashMap<String,ConnectivityGrid> gridobjects;
 		
-		s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);		
-		if (s.contains(CELL_SIZE_MULT_S)) {
-			cellSizeMultiplier = s.getInt(CELL_SIZE_MULT_S);
-		}
-		else {
-			cellSizeMultiplier = DEF_CON_CELL_SIZE_MULT;
-		}
-		if (cellSizeMultiplier < 1) {
-			throw new SettingsError("Too small value (" + cellSizeMultiplier +
-					") for " + World.OPTIMIZATION_SETTINGS_NS + 
-					"." + CELL_SIZE_MULT_S);
+		private State() {
+			this.gridobjects = new HashMap<String, ConnectivityGrid>();
+	
+			Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+			int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+			this.worldSizeX = worldSize[0];
+			this.worldSizeY = worldSize[1];
+			
+			s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);		
+			if (s.contains(CELL_SIZE_MULT_S)) {
+				this.cellSizeMultiplier = s.getInt(CELL_SIZE_MULT_S);
+			}
+			else {
+				this.cellSizeMultiplier = DEF_CON_CELL_SIZE_MULT;
+			}
+			if (cellSizeMultiplier < 1) {
+				throw new SettingsError("Too small value (" + 
+						cellSizeMultiplier + ") for " + 
+						World.OPTIMIZATION_SETTINGS_NS + "." + 
+						CELL_SIZE_MULT_S);
+			}
+			this.contactSweep = s.getBoolean(World.CONTACT_SWEEP_S, false);
+			this.kineticContacts = s.getBoolean(World.KINETIC_CONTACTS_S, 
+					false);
+			this.sparseGrid = s.getBoolean(SPARSE_GRID_S, false);
 		}
 	}
+	
+	public static void reset() {
+		state.set(new State());
+	}
 
 	/**
 	 * Creates a new overlay connectivity grid
 	 * @param cellSize Cell's edge's length (must be larger than the largest
 	 * 	radio coverage's diameter)
+	 * @param st The grid settings of the run
 	 */
-	private ConnectivityGrid(int cellSize) {
-		this.rows = worldSizeY/cellSize + 1;
-		this.cols = worldSizeX/cellSize + 1;
-		// leave empty cells on both sides to make neighbor search easier 
-		this.cells = new GridCell[rows+2][cols+2];
+	private ConnectivityGrid(int cellSize, State st) {
+		this.rows = st.worldSizeY/cellSize + 1;
+		this.cols = st.worldSizeX/cellSize + 1;
 		this.cellSize = cellSize;
+		this.occupiedCells = new ArrayList<GridCell>();
+		this.contactDetection = st.contactSweep || st.kineticContacts;
 
-		for (int i=0; i<rows+2; i++) {
-			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
+		if (st.sparseGrid) {
+			this.sparseCells = new LongHashMap<GridCell>();
+			this.cells = null;
+		}
+		else {
+			// leave empty cells on both sides to make neighbor search easier 
+			this.cells = new GridCell[rows+2][cols+2];
+			for (int i=0; i<rows+2; i++) {
+				for (int j=0; j<cols+2; j++) {
+					this.cells[i][j] = new GridCell(i, j);
+				}
 			}
+			this.sparseCells = null;
 		}
 		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		if (st.kineticContacts) {
+			kinetic = new KineticContacts(this);
+		}
+		interfaceList = new ArrayList<NetworkInterface>();
 	}
 
 	/**
-	 * Returns a connectivity grid object based on a hash value
-	 * @param key A hash value that separates different interfaces from each other
+	 * Returns the connectivity grid object of an interface type. Every
+	 * interface type has its own grid whose cell size is based on the
+	 * range of the first interface of the type.
+	 * @param key Name of the interface type (e.g., its settings namespace)
 	 * @param maxRange Maximum range used by the radio technology using this 
 	 *  connectivity grid. 
 	 * @return The connectivity grid object for a specific interface
 	 */
-	public static ConnectivityGrid ConnectivityGridFactory(int key, 
+	public static ConnectivityGrid ConnectivityGridFactory(String key, 
 			double maxRange) {
-		if (gridobjects.containsKey((Integer)key)) {
-			return (ConnectivityGrid)gridobjects.get((Integer)key);
-		} else {
-			ConnectivityGrid newgrid = 
-				new ConnectivityGrid((int)Math.ceil(maxRange * 
-						cellSizeMultiplier));
-			gridobjects.put((Integer)key,newgrid);
-			return newgrid;
+		State st = state.get();
+		ConnectivityGrid grid = st.gridobjects.get(key);
+		if (grid == null) {
+			grid = new ConnectivityGrid((int)Math.ceil(maxRange * 
+						st.cellSizeMultiplier), st);
+			st.gridobjects.put(key, grid);
 		}
+		return grid;
 	}
 
 	/**
@@ -140,6 +223,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		GridCell c = cellFromCoord(ni.getLocation());
 		c.addInterface(ni);
 		ginterfaces.put(ni,c);
+		interfaceList.add(ni);
 	}
 
 	/** 
@@ -150,8 +234,13 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		GridCell c = ginterfaces.get(ni);
 		if (c != null) {
 			c.removeInterface(ni);
+			removeIfEmpty(c);
 		}
 		ginterfaces.remove(ni);
+		interfaceList.remove(ni);
+		if (kinetic != null) {
+			kinetic.removeInterface(ni);
+		}
 	}
 
 	/**
@@ -175,50 +264,106 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		if (newCell != oldCell) {
 			oldCell.moveInterface(ni, newCell);
 			ginterfaces.put(ni,newCell);
+			removeIfEmpty(oldCell);
 		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells 
+	 * Get the cell having the specific coordinates. Creates the cell if
+	 * the grid is sparse and the cell does not exist.
+	 * @param c Coordinates
+	 * @return The cell
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
+	private GridCell cellFromCoord(Coord c) {
 		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
+		int row = (int)(c.getY()/cellSize) + 1; 
 		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
+
+		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " + 
+		c + " is out of world's bounds";
+		
+		return getOrCreateCell(row, col);
 	}
 
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
+	 * Returns the cell in the given row and column
 	 * @param row Row index of the cell
 	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
+	 * @return The cell or null if the grid is sparse and the cell is empty
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private GridCell getCell(int row, int col) {
+		if (this.sparseCells != null) {
+			return this.sparseCells.get(cellKey(row, col));
+		}
+		return this.cells[row][col];
 	}
 
 	/**
-	 * Get the cell having the specific coordinates
-	 * @param c Coordinates
+	 * Returns the cell in the given row and column. Creates the cell if 
+	 * the grid is sparse and the cell does not exist.
+	 * @param row Row index of the cell
+	 * @param col Column index of the cell
 	 * @return The cell
 	 */
-	private GridCell cellFromCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1; 
-		int col = (int)(c.getX()/cellSize) + 1;
+	private GridCell getOrCreateCell(int row, int col) {
+		if (this.sparseCells == null) {
+			return this.cells[row][col];
+		}
+		long key = cellKey(row, col);
+		GridCell cell = this.sparseCells.get(key);
+		if (cell == null) {
+			cell = new GridCell(row, col);
+			this.sparseCells.put(key, cell);
+		}
+		return cell;
+	}
 
-		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " + 
-		c + " is out of world's bounds";
-		
-		return this.cells[row][col];
+	/**
+	 * Removes a cell from a sparse grid if it has no interfaces
+	 * @param cell The cell
+	 */
+	private void removeIfEmpty(GridCell cell) {
+		if (this.sparseCells != null && cell.interfaces.isEmpty()) {
+			this.sparseCells.remove(cellKey(cell.row, cell.col));
+		}
+	}
+
+	/**
+	 * Returns the key of a cell in the sparse grid. The keys of the cells
+	 * are in the same order as the cells in row-major order.
+	 * @param row Row index of the cell
+	 * @param col Column index of the cell
+	 * @return The key
+	 */
+	private static long cellKey(int row, int col) {
+		return ((long)row << 32) | col;
+	}
+
+	/**
+	 * Returns the non-empty cells in row-major order. The returned list is
+	 * reused in the next call.
+	 * @return The non-empty cells
+	 */
+	private List<GridCell> getOccupiedCells() {
+		occupiedCells.clear();
+		if (this.sparseCells != null) {
+			int n = sparseCells.size();
+			keyBuffer = sparseCells.keys(keyBuffer);
+			Arrays.sort(keyBuffer, 0, n);
+			for (int i=0; i<n; i++) {
+				occupiedCells.add(sparseCells.get(keyBuffer[i]));
+			}
+		}
+		else {
+			for (int i=0; i<rows+2; i++) {
+				for (int j=0; j<cols+2; j++) {
+					if (!cells[i][j].interfaces.isEmpty()) {
+						occupiedCells.add(cells[i][j]);
+					}
+				}
+			}
+		}
+		return occupiedCells;
 	}
 
 	/**
@@ -237,19 +382,358 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni) {
 		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
-		GridCell loc = (GridCell)ginterfaces.get(ni);
+		getNearInterfaces(ni, niList);
+		return niList;
+	}
+
+	/**
+	 * Adds all interfaces that are "near" (i.e., in the cell of the given
+	 * interface's location or in the neighboring cells) and use the same 
+	 * technology and channel as the given interface to the given list. 
+	 * The cells are visited row by row starting from the upper left one.
+	 * Does not create any new objects (unless the list needs to grow).
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @param result The list where the interfaces are added to
+	 */
+	@Override
+	public void getNearInterfaces(NetworkInterface ni, 
+			List<NetworkInterface> result) {
+		if (!ginterfaces.containsKey(ni)) {
+			return;
+		}
 		
-		if (loc != null) {	
-			GridCell[] neighbors = 
-				getNeighborCellsByCoord(ni.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				niList.addAll(neighbors[i].getInterfaces());
+		Coord c = ni.getLocation();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		for (int i = row-1; i <= row+1; i++) {
+			for (int j = col-1; j <= col+1; j++) {
+				GridCell cell = getCell(i, j);
+				if (cell == null) {
+					continue;
+				}
+				ArrayList<NetworkInterface> list = cell.interfaces;
+				for (int k=0, n = list.size(); k < n; k++) {
+					result.add(list.get(k));
+				}
 			}
 		}
-		
-		return niList;
 	}
 
+	/**
+	 * Takes a snapshot of the current locations of all interfaces in the
+	 * grid. The snapshot is not taken if some of the interfaces is not 
+	 * always active (see {@link NetworkInterface#isAlwaysActive()}) because
+	 * then the ranges of the interfaces may change during the update.
+	 * @return True if the snapshot was taken
+	 */
+	@Override
+	public boolean snapshotLocations() {
+		int n = interfaceList.size();
+		this.snapshotKeys = null;
+		this.snapshotInterfaces = null;
+		for (int i=0; i < n; i++) {
+			if (!interfaceList.get(i).isAlwaysActive()) {
+				return false;
+			}
+		}
+
+		final long[] keys = new long[n];
+		for (int i=0; i < n; i++) {
+			Coord c = interfaceList.get(i).getLocation();
+			// +1 due empty cells on both sides of the matrix
+			keys[i] = cellKey((int)(c.getY()/cellSize) + 1, 
+					(int)(c.getX()/cellSize) + 1);
+		}
+		if (snapshotOrder == null || snapshotOrder.length != n) {
+			snapshotOrder = new Integer[n];
+		}
+		for (int i=0; i < n; i++) {
+			snapshotOrder[i] = i;
+		}
+		Arrays.sort(snapshotOrder, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				long ka = keys[a];
+				long kb = keys[b];
+				return ka < kb ? -1 : (ka > kb ? 1 : 0);
+			}
+		});
+
+		this.snapshotKeys = new long[n];
+		this.snapshotInterfaces = new NetworkInterface[n];
+		for (int i=0; i < n; i++) {
+			int index = snapshotOrder[i];
+			snapshotKeys[i] = keys[index];
+			snapshotInterfaces[i] = interfaceList.get(index);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the interfaces that were in the same or neighboring cells as the
+	 * given interface in the location snapshot to the given list. Does not
+	 * change the state of the grid.
+	 */
+	@Override
+	public boolean getSnapshotNearInterfaces(NetworkInterface ni, 
+			List<NetworkInterface> result) {
+		long[] keys = this.snapshotKeys;
+		if (keys == null) {
+			return false;
+		}
+		if (!ginterfaces.containsKey(ni)) {
+			return true;
+		}
+
+		Coord c = ni.getLocation();
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		for (int i = row-1; i <= row+1; i++) {
+			long last = cellKey(i, col+1);
+			int k = Arrays.binarySearch(keys, cellKey(i, col-1));
+			if (k < 0) {
+				k = -k - 1;
+			}
+			else {
+				while (k > 0 && keys[k-1] == keys[k]) {
+					k--; /* first interface of the cell */
+				}
+			}
+			for (int n = keys.length; k < n && keys[k] <= last; k++) {
+				result.add(snapshotInterfaces[k]);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Keeps the candidates whose current cell in the grid is the same as
+	 * or a neighbor of the cell of the given interface's location and
+	 * orders them like {@link #getNearInterfaces(NetworkInterface, List)}:
+	 * row by row and by the order in the cell.
+	 */
+	@Override
+	public void filterNearInterfaces(NetworkInterface ni, 
+			List<NetworkInterface> candidates, List<NetworkInterface> result) {
+		if (!ginterfaces.containsKey(ni)) {
+			return;
+		}
+
+		Coord c = ni.getLocation();
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		int m = candidates.size();
+		if (filterKeys == null || filterKeys.length < m) {
+			filterKeys = new long[m];
+			filterIndexes = new int[m];
+		}
+
+		int count = 0;
+		for (int i=0; i < m; i++) {
+			NetworkInterface near = candidates.get(i);
+			GridCell cell = ginterfaces.get(near);
+			if (cell == null || Math.abs(cell.row - row) > 1 ||
+					Math.abs(cell.col - col) > 1) {
+				continue;
+			}
+			long key = cellKey(cell.row, cell.col);
+			int index = cell.interfaces.indexOf(near);
+			/* insertion sort by the cell and the index in the cell */
+			int j = count;
+			while (j > 0 && (filterKeys[j-1] > key || 
+					(filterKeys[j-1] == key && filterIndexes[j-1] > index))) {
+				filterKeys[j] = filterKeys[j-1];
+				filterIndexes[j] = filterIndexes[j-1];
+				j--;
+			}
+			filterKeys[j] = key;
+			filterIndexes[j] = index;
+			result.add(result.size() - count + j, near);
+			count++;
+		}
+	}
+
+	/**
+	 * Returns the cell where an interface is
+	 * @param ni The interface
+	 * @return The cell or null if the interface is not in this grid
+	 */
+	GridCell getCellOf(NetworkInterface ni) {
+		return ginterfaces.get(ni);
+	}
+
+	/**
+	 * Returns true if contacts are detected by the grid (see 
+	 * {@link World#CONTACT_SWEEP_S} and {@link World#KINETIC_CONTACTS_S})
+	 */
+	@Override
+	public boolean detectsContacts() {
+		return this.contactDetection;
+	}
+
+	/**
+	 * Detects the contacts of all interfaces in the grid. First the 
+	 * locations of all interfaces are updated and the connections that 
+	 * are out of range are torn down; every connection is checked by the
+	 * interface that initiated it (or by the interface in this grid). Then
+	 * every pair of interfaces in the same or neighboring cells is checked
+	 * once: the cells are visited 
+	 * row by row and every cell is paired with itself and the four 
+	 * neighbors that come after it. Interfaces within range of each other
+	 * are connected if they aren't already; the interface of the earlier 
+	 * cell (or earlier in the same cell) tries to connect first. The result
+	 * does not depend on the order the hosts are updated in. If kinetic 
+	 * contact detection is on, only the pairs whose state may have changed 
+	 * are checked (see {@link KineticContacts}).
+	 */
+	@Override
+	public void detectContacts() {
+		if (kinetic != null) {
+			kinetic.detectContacts(interfaceList);
+			return;
+		}
+
+		for (int i=0, n = interfaceList.size(); i < n; i++) {
+			updateLocation(interfaceList.get(i));
+		}
+
+		for (int i=0, n = interfaceList.size(); i < n; i++) {
+			NetworkInterface ni = interfaceList.get(i);
+			List<Connection> cons = ni.getConnections();
+			for (int j=0; j < cons.size(); ) {
+				Connection con = cons.get(j);
+				NetworkInterface other = con.getOtherInterface(ni);
+				boolean checkHere = con.isInitiator(ni.getHost()) ||
+					!ginterfaces.containsKey(other);
+				if (checkHere && !isWithinRange(ni, other)) {
+					ni.destroyConnection(other);
+				}
+				else {
+					j++;
+				}
+			}
+		}
+
+		List<GridCell> occupied = getOccupiedCells();
+		for (int c=0, m = occupied.size(); c < m; c++) {
+			GridCell gc = occupied.get(c);
+			ArrayList<NetworkInterface> cell = gc.interfaces;
+			int row = gc.row;
+			int col = gc.col;
+			for (int i=0, n = cell.size(); i < n; i++) {
+				NetworkInterface ni = cell.get(i);
+				for (int j=i+1; j < n; j++) {
+					checkContact(ni, cell.get(j));
+				}
+				checkContacts(ni, getCell(row, col+1));
+				checkContacts(ni, getCell(row+1, col-1));
+				checkContacts(ni, getCell(row+1, col));
+				checkContacts(ni, getCell(row+1, col+1));
+			}
+		}
+	}
+
+	/**
+	 * Checks the contacts between an interface and all interfaces of a cell
+	 * @param ni The interface
+	 * @param cell The cell (or null for an empty cell)
+	 */
+	private void checkContacts(NetworkInterface ni, GridCell cell) {
+		if (cell == null) {
+			return;
+		}
+		ArrayList<NetworkInterface> list = cell.interfaces;
+		for (int i=0, n = list.size(); i < n; i++) {
+			checkContact(ni, list.get(i));
+		}
+	}
+
+	/**
+	 * Connects two interfaces if they are within range of each other and
+	 * not connected yet
+	 * @param a The interface that tries to connect first
+	 * @param b The other interface
+	 */
+	private void checkContact(NetworkInterface a, NetworkInterface b) {
+		if (!isWithinRange(a, b) || a.isConnected(b)) {
+			return;
+		}
+		connect(a, b);
+	}
+
+	/**
+	 * Tries to connect two interfaces; if the first interface does not
+	 * connect, the other one tries
+	 * @param a The interface that tries to connect first
+	 * @param b The other interface
+	 */
+	static void connect(NetworkInterface a, NetworkInterface b) {
+		a.connect(b);
+		if (!a.isConnected(b)) {
+			b.connect(a);
+		}
+	}
+
+	/**
+	 * Returns true if two interfaces are within the smaller one of their
+	 * transmit ranges. Compares squared distances.
+	 * @param a The first interface
+	 * @param b The second interface
+	 * @return True if the interfaces are within range of each other
+	 */
+	private static boolean isWithinRange(NetworkInterface a, 
+			NetworkInterface b) {
+		double range = Math.min(a.getTransmitRange(), b.getTransmitRange());
+		Coord ca = a.getLocation();
+		Coord cb = b.getLocation();
+		double dx = ca.getX() - cb.getX();
+		double dy = ca.getY() - cb.getY();
+		return dx*dx + dy*dy <= range*range;
+	}
+
+	/**
+	 * Writes the interfaces of every non-empty cell in their order in the
+	 * cell (the order of near interfaces depends on it)
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		for (GridCell cell : getOccupiedCells()) {
+			out.writeInt(cell.row);
+			out.writeInt(cell.col);
+			out.writeInt(cell.interfaces.size());
+			for (NetworkInterface ni : cell.interfaces) {
+				out.writeInterface(ni);
+			}
+		}
+		out.writeInt(-1);
+	}
+
+	public void readState(CheckpointInput in) throws IOException {
+		if (sparseCells != null) {
+			sparseCells.clear();
+		}
+		else {
+			for (int i=0; i<rows+2; i++) {
+				for (int j=0; j<cols+2; j++) {
+					cells[i][j].interfaces.clear();
+				}
+			}
+		}
+		ginterfaces.clear();
+		if (kinetic != null) {
+			kinetic.clear();
+		}
+
+		int row;
+		while ((row = in.readInt()) >= 0) {
+			GridCell cell = getOrCreateCell(row, in.readInt());
+			int nrofInterfaces = in.readInt();
+			for (int k=0; k<nrofInterfaces; k++) {
+				NetworkInterface ni = in.readInterface();
+				cell.addInterface(ni);
+				ginterfaces.put(ni, cell);
+			}
+		}
+	}
 
 	/**
 	 * Returns a string representation of the ConnectivityCells object
@@ -268,8 +752,12 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		// how large array is initially chosen
 		private static final int EXPECTED_INTERFACE_COUNT = 5;
 		private ArrayList<NetworkInterface> interfaces;
+		/** row and column index of the cell */
+		private final int row, col;
 
-		private GridCell() {
+		private GridCell(int row, int col) {
+			this.row = row;
+			this.col = col;
 			this.interfaces = new ArrayList<NetworkInterface>(
 					EXPECTED_INTERFACE_COUNT);
 		}
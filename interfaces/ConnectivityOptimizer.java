@@ -5,6 +5,7 @@
 package interfaces;
 
 import java.util.Collection;
+import java.util.List;
 
 import core.NetworkInterface;
 
@@ -40,6 +41,91 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Finds all network interfaces that might be located so that they can be
+	 * connected with the network interface and adds them to the given list.
+	 * Unlike {@link #getNearInterfaces(NetworkInterface)}, this method lets
+	 * the caller reuse the same list in every update. The default 
+	 * implementation adds the interfaces returned by 
+	 * {@link #getNearInterfaces(NetworkInterface)}.
+	 * 
+	 * @param ni network interface that needs to be connected
+	 * @param result The list where the interfaces are added to (the list is
+	 * not cleared first)
+	 */
+	public void getNearInterfaces(NetworkInterface ni, 
+			List<NetworkInterface> result) {
+		result.addAll(getNearInterfaces(ni));
+	}
+
+	/**
+	 * Takes a snapshot of the current locations of the interfaces for the
+	 * read phase of a two-phase update (see 
+	 * {@link core.World#UPDATE_THREADS_S}). The snapshot is used by 
+	 * {@link #getSnapshotNearInterfaces(NetworkInterface, List)} until the
+	 * next call. Default implementation does not take a snapshot.
+	 * @return True if a snapshot was taken, false if not (then the 
+	 * interfaces find their near interfaces in the update as usual)
+	 */
+	public boolean snapshotLocations() {
+		return false;
+	}
+
+	/**
+	 * Adds all network interfaces that might be located so that they can be
+	 * connected with the given interface according to the last location
+	 * snapshot (see {@link #snapshotLocations()}) to the given list. May be
+	 * called concurrently for different interfaces, so the state of the 
+	 * optimizer must not change. Default implementation adds nothing.
+	 * @param ni network interface that needs to be connected
+	 * @param result The list where the interfaces are added to
+	 * @return True if the interfaces were added, false if there is no 
+	 * snapshot
+	 */
+	public boolean getSnapshotNearInterfaces(NetworkInterface ni, 
+			List<NetworkInterface> result) {
+		return false;
+	}
+
+	/**
+	 * Adds those of the candidate interfaces that 
+	 * {@link #getNearInterfaces(NetworkInterface, List)} would add now to
+	 * the given list, in the same order. Default implementation queries 
+	 * the near interfaces and keeps the candidates.
+	 * @param ni network interface that needs to be connected
+	 * @param candidates The candidate interfaces
+	 * @param result The list where the interfaces are added to
+	 */
+	public void filterNearInterfaces(NetworkInterface ni, 
+			List<NetworkInterface> candidates, List<NetworkInterface> result) {
+		for (NetworkInterface near : getNearInterfaces(ni)) {
+			if (candidates.contains(near)) {
+				result.add(near);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the optimizer detects the contacts of its interfaces
+	 * itself (see {@link #detectContacts()}). Then the interfaces don't 
+	 * look for new connections or tear down the old ones when they are 
+	 * updated. Default implementation returns false.
+	 * @return True if the optimizer detects the contacts
+	 */
+	public boolean detectsContacts() {
+		return false;
+	}
+
+	/**
+	 * Creates the connections between the interfaces that have come within
+	 * range of each other and tears down the connections of the ones that
+	 * are out of range. Called before the hosts are updated if 
+	 * {@link #detectsContacts()} returns true. Default implementation does
+	 * nothing.
+	 */
+	public void detectContacts() {
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
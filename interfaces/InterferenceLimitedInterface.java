@@ -4,8 +4,11 @@
  */
 package interfaces;
 
-import java.util.Collection;
+import java.io.IOException;
+import java.util.List;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Connection;
 import core.NetworkInterface;
 import core.Settings;
@@ -20,6 +23,18 @@ import core.VBRConnection;
 public class InterferenceLimitedInterface extends NetworkInterface {
 	protected int currentTransmitSpeed;
 	protected int numberOfTransmissions;
+	/** number of transfers going on in the connections right now */
+	private int ongoingTransfers;
+	/** number of connected interfaces that were transferring in their
+	 * latest update */
+	private int transferringNeighbours;
+	/** connection list modification count when the transferring
+	 * neighbours were counted (or -1 if they need to be counted) */
+	private int neighboursModCount = -1;
+	/** the values the current transmit speed was calculated from */
+	private int speedTransmissions;
+	private int speedActive;
+	private int speedMax;
 
 	public InterferenceLimitedInterface(Settings s) {
 		super(s);
@@ -44,6 +59,33 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 		return new InterferenceLimitedInterface(this);
 	}
 
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(this.currentTransmitSpeed);
+		out.writeInt(this.numberOfTransmissions);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.currentTransmitSpeed = in.readInt();
+		this.numberOfTransmissions = in.readInt();
+		this.ongoingTransfers = 0;
+		for (Connection con : this.connections) {
+			if (con.getMessage() != null) {
+				this.ongoingTransfers++;
+			}
+		}
+		this.neighboursModCount = -1;
+		this.speedTransmissions = 0;
+	}
+
+	@Override
+	protected void transferStateChanged(Connection con, boolean started) {
+		this.ongoingTransfers += started ? 1 : -1;
+	}
+
 	/**
 	 * Returns the transmit speed of this network layer
 	 * @return the transmit speed
@@ -60,7 +102,7 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 	 */
 	public void connect(NetworkInterface anotherInterface) {
 		if (isScanning() 
-				&& anotherInterface.getHost().isRadioActive()
+				&& anotherInterface.isActive()
 				&& isWithinRange(anotherInterface)
 				&& !isConnected(anotherInterface) 
 				&& (this != anotherInterface)) {
@@ -81,8 +123,72 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			return; /* nothing to do */
 		}
 		
-		// First break the old ones
 		optimizer.updateLocation(this);
+		if (!optimizer.detectsContacts()) {
+			updateContacts();
+		}
+
+		// Find the current number of transmissions
+		// (to calculate the current transmission speed
+		boolean wasTransferring = isTransferring();
+		numberOfTransmissions = ongoingTransfers;
+		if (isTransferring() != wasTransferring) {
+			/* update the counts of the connected interfaces */
+			int delta = wasTransferring ? -1 : 1;
+			for (int i=0, n=connections.size(); i<n; i++) {
+				((InterferenceLimitedInterface)connections.get(i).
+						getOtherInterface(this)).transferringNeighbours += delta;
+			}
+		}
+		if (neighboursModCount != getConnectionsModCount()) {
+			countTransferringNeighbours();
+		}
+		
+		int numberOfActive = 1 + transferringNeighbours;
+		int ntrans = numberOfTransmissions;
+		if ( numberOfTransmissions < 1) ntrans = 1;
+		if ( numberOfActive <2 ) numberOfActive = 2;
+
+		if (ntrans != speedTransmissions || numberOfActive != speedActive ||
+				transmitSpeed != speedMax) {
+			// Based on the equation of Gupta and Kumar - and the transmission
+			// speed is divided equally to all the ongoing transmissions 
+			currentTransmitSpeed = (int)Math.floor((double)transmitSpeed / 
+					(Math.sqrt((1.0*numberOfActive) *
+							Math.log(1.0*numberOfActive))) /
+								ntrans );
+			speedTransmissions = ntrans;
+			speedActive = numberOfActive;
+			speedMax = transmitSpeed;
+		}
+		
+		for (Connection con : getConnections()) {
+			con.update();
+		}
+	}
+
+	/**
+	 * Counts the connected interfaces that were transferring in their
+	 * latest update. After this, the count is kept up to date by the
+	 * connected interfaces until the connections change.
+	 */
+	private void countTransferringNeighbours() {
+		transferringNeighbours = 0;
+		for (int i=0, n=connections.size(); i<n; i++) {
+			if (((InterferenceLimitedInterface)connections.get(i).
+					getOtherInterface(this)).isTransferring()) {
+				transferringNeighbours++;
+			}
+		}
+		neighboursModCount = getConnectionsModCount();
+	}
+
+	/**
+	 * Tears down the connections that are out of range and creates new 
+	 * ones to the near interfaces that are within range
+	 */
+	private void updateContacts() {
+		// First break the old ones
 		for (int i=0; i<this.connections.size(); ) {
 			Connection con = this.connections.get(i);
 			NetworkInterface anotherInterface = con.getOtherInterface(this);
@@ -98,38 +204,9 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
-
-		// Find the current number of transmissions
-		// (to calculate the current transmission speed
-		numberOfTransmissions = 0;
-		int numberOfActive = 1;
-		for (Connection con : this.connections) {
-			if (con.getMessage() != null) {
-				numberOfTransmissions++;
-			}
-			if (((InterferenceLimitedInterface)con.getOtherInterface(this)).
-					isTransferring() == true) {
-				numberOfActive++;
-			}
-		}
-
-		int ntrans = numberOfTransmissions;
-		if ( numberOfTransmissions < 1) ntrans = 1;
-		if ( numberOfActive <2 ) numberOfActive = 2;
-
-		// Based on the equation of Gupta and Kumar - and the transmission speed
-		// is divided equally to all the ongoing transmissions 
-		currentTransmitSpeed = (int)Math.floor((double)transmitSpeed / 
-				(Math.sqrt((1.0*numberOfActive) *
-						Math.log(1.0*numberOfActive))) /
-							ntrans );
-		
-		for (Connection con : getConnections()) {
-			con.update();
+		List<NetworkInterface> interfaces = getNearInterfaces();
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			connect(interfaces.get(i));
 		}
 	}
 
@@ -0,0 +1,456 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package interfaces;
+
+import interfaces.ConnectivityGrid.GridCell;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import util.LongHashMap;
+import core.Connection;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+
+/**
+ * Kinetic contact detection for a {@link ConnectivityGrid}. Between two
+ * changes in its movement, a host moves in a straight line at a constant
+ * speed (see {@link DTNHost#getMovementChanges()}), so the time when two
+ * hosts come within or go out of each other's range can be solved from
+ * their locations and velocities. Every pair of interfaces in the same or
+ * neighboring cells has a certificate that tells until which movement time
+ * the pair stays in its current state (within range or out of range). A
+ * pair is checked again only when its certificate expires or when either
+ * of the interfaces changes its movement, grid cell or range; the other
+ * pairs are not range-tested at all.
+ * <P>
+ * Contacts are still created and torn down when the hosts are updated: a
+ * pair whose certificate expired between two updates is checked at the
+ * next update. The pairs are connected and disconnected in the order of
+ * their interface addresses, so the result does not depend on when the
+ * certificates were created.
+ * </P>
+ */
+public class KineticContacts {
+	/** how much earlier than the solved time (seconds) a pair is checked
+	 * again, so that rounding errors never make the check late */
+	private static final double TIME_MARGIN = 1e-6;
+
+	/** orders the certificates by the addresses of their interfaces */
+	private static final Comparator<Certificate> PAIR_ORDER =
+		new Comparator<Certificate>() {
+		public int compare(Certificate c1, Certificate c2) {
+			return c1.key < c2.key ? -1 : (c1.key > c2.key ? 1 : 0);
+		}
+	};
+
+	private ConnectivityGrid grid;
+	/** kinetic state of the interfaces by their addresses */
+	private LongHashMap<InterfaceState> states;
+	/** certificates of the pairs that are within range */
+	private ArrayList<Certificate> inRange;
+	/** interfaces whose pairs are checked in the ongoing detection */
+	private ArrayList<InterfaceState> changed;
+	/** pairs to disconnect in the ongoing detection */
+	private ArrayList<Certificate> toDisconnect;
+	/** pairs to connect in the ongoing detection */
+	private ArrayList<Certificate> toConnect;
+	/** reused buffer for the near interfaces */
+	private ArrayList<NetworkInterface> nearInterfaces;
+	/** number of the ongoing detection */
+	private int round;
+	/** number of the ongoing {@link #checkAllPairs(InterfaceState)} call */
+	private int pairCheck;
+
+	/**
+	 * Creates kinetic contact detection for a grid
+	 * @param grid The grid whose interfaces' contacts are detected
+	 */
+	KineticContacts(ConnectivityGrid grid) {
+		this.grid = grid;
+		this.states = new LongHashMap<InterfaceState>();
+		this.inRange = new ArrayList<Certificate>();
+		this.changed = new ArrayList<InterfaceState>();
+		this.toDisconnect = new ArrayList<Certificate>();
+		this.toConnect = new ArrayList<Certificate>();
+		this.nearInterfaces = new ArrayList<NetworkInterface>();
+	}
+
+	/**
+	 * Detects the contacts of the interfaces. First the locations of the
+	 * interfaces are updated in the grid and the interfaces whose movement,
+	 * cell or range has changed get new certificates for all their pairs.
+	 * Then the pairs whose certificates have expired are checked. Finally,
+	 * the pairs that are out of range are disconnected and the pairs within
+	 * range that are not connected are connected.
+	 * @param interfaces All the interfaces of the grid
+	 */
+	void detectContacts(List<NetworkInterface> interfaces) {
+		round++;
+		changed.clear();
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			NetworkInterface ni = interfaces.get(i);
+			grid.updateLocation(ni);
+			InterfaceState st = states.get(ni.getAddress());
+			if (st == null) {
+				st = new InterfaceState(ni);
+				states.put(ni.getAddress(), st);
+				changed.add(st);
+			}
+			else if (st.hasChanged()) {
+				changed.add(st);
+			}
+		}
+
+		for (int i=0, n = changed.size(); i < n; i++) {
+			changed.get(i).reset(round);
+		}
+
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			InterfaceState st = states.get(interfaces.get(i).getAddress());
+			if (st.changedRound != round &&
+					st.nextExpiry <= st.getMovementTime()) {
+				checkExpired(st);
+			}
+		}
+
+		for (int i=0, n = changed.size(); i < n; i++) {
+			checkAllPairs(changed.get(i));
+		}
+
+		Collections.sort(toDisconnect, PAIR_ORDER);
+		for (int i=0, n = toDisconnect.size(); i < n; i++) {
+			disconnect(toDisconnect.get(i));
+		}
+		toDisconnect.clear();
+
+		int size = 0;
+		for (int i=0, n = inRange.size(); i < n; i++) {
+			Certificate c = inRange.get(i);
+			if (!c.isValid() || !c.inRange) {
+				c.listed = false;
+				continue;
+			}
+			inRange.set(size++, c);
+			if (!c.a.ni.isConnected(c.b.ni)) {
+				toConnect.add(c);
+			}
+		}
+		inRange.subList(size, inRange.size()).clear();
+
+		Collections.sort(toConnect, PAIR_ORDER);
+		for (int i=0, n = toConnect.size(); i < n; i++) {
+			Certificate c = toConnect.get(i);
+			ConnectivityGrid.connect(c.a.ni, c.b.ni);
+		}
+		toConnect.clear();
+	}
+
+	/**
+	 * Checks the pairs whose certificates have expired and removes the
+	 * certificates that are no longer valid
+	 * @param st The interface whose certificates are checked
+	 */
+	private void checkExpired(InterfaceState st) {
+		double now = st.getMovementTime();
+		double next = Double.MAX_VALUE;
+		List<Certificate> certs = st.certs;
+		int size = 0;
+		for (int i=0, n = certs.size(); i < n; i++) {
+			Certificate c = certs.get(i);
+			if (!c.isValid()) {
+				continue;
+			}
+			if (c.expiry <= now) {
+				check(c);
+			}
+			if (c.expiry < next) {
+				next = c.expiry;
+			}
+			certs.set(size++, c);
+		}
+		certs.subList(size, certs.size()).clear();
+		st.nextExpiry = next;
+	}
+
+	/**
+	 * Checks all the pairs of an interface and the interfaces in the same
+	 * and neighboring cells. Pairs with interfaces that were already
+	 * checked this round are skipped. Also the connections to interfaces
+	 * farther away (that have moved more than a cell since the previous
+	 * check) are checked.
+	 * @param st The interface
+	 */
+	private void checkAllPairs(InterfaceState st) {
+		pairCheck++;
+		nearInterfaces.clear();
+		grid.getNearInterfaces(st.ni, nearInterfaces);
+		for (int i=0, n = nearInterfaces.size(); i < n; i++) {
+			NetworkInterface other = nearInterfaces.get(i);
+			if (other == st.ni) {
+				continue;
+			}
+			InterfaceState os = states.get(other.getAddress());
+			if (os == null) {
+				continue;
+			}
+			os.pairCheck = pairCheck;
+			if (os.checkedRound != round) {
+				addCertificate(st, os);
+			}
+		}
+
+		List<Connection> cons = st.ni.getConnections();
+		for (int i=0, n = cons.size(); i < n; i++) {
+			InterfaceState os = states.get(
+					cons.get(i).getOtherInterface(st.ni).getAddress());
+			if (os != null && os.pairCheck != pairCheck) {
+				addCertificate(st, os);
+			}
+		}
+		st.checkedRound = round;
+	}
+
+	/**
+	 * Checks a pair and adds a certificate for it
+	 * @param st The interface that owns the certificate
+	 * @param os The other interface
+	 */
+	private void addCertificate(InterfaceState st, InterfaceState os) {
+		Certificate c = new Certificate(st, os);
+		check(c);
+		st.certs.add(c);
+		if (c.expiry < st.nextExpiry) {
+			st.nextExpiry = c.expiry;
+		}
+	}
+
+	/**
+	 * Checks if a pair is within range, marks it for connecting or
+	 * disconnecting if needed and solves when the pair needs to be checked
+	 * again. Within range means the same as in
+	 * {@link ConnectivityGrid#detectContacts()}, i.e., the squared distance
+	 * is at most the square of the smaller range.
+	 * @param c The certificate of the pair
+	 */
+	private void check(Certificate c) {
+		InterfaceState a = c.a;
+		InterfaceState b = c.b;
+		double range = Math.min(a.range, b.range);
+		Coord ca = a.ni.getLocation();
+		Coord cb = b.ni.getLocation();
+		double dx = cb.getX() - ca.getX();
+		double dy = cb.getY() - ca.getY();
+		double wx = b.vx - a.vx;
+		double wy = b.vy - a.vy;
+
+		/* squared distance - squared range = A*t^2 + B*t + C */
+		double qa = wx*wx + wy*wy;
+		double qb = 2 * (dx*wx + dy*wy);
+		double qc = dx*dx + dy*dy - range*range;
+
+		c.inRange = qc <= 0;
+		if (c.inRange) {
+			if (!c.listed) {
+				inRange.add(c);
+				c.listed = true;
+			}
+		}
+		else if (a.ni.isConnected(b.ni)) {
+			toDisconnect.add(c);
+		}
+
+		double t = solveCrossing(qa, qb, qc);
+		c.expiry = t == Double.MAX_VALUE ? t :
+			a.getMovementTime() + Math.max(t - TIME_MARGIN, 0);
+	}
+
+	/**
+	 * Solves the time when a pair goes out of range (if it is within range
+	 * now) or comes within range (if it is out of range now)
+	 * @param qa Square term of the squared distance minus squared range
+	 * @param qb Linear term of the squared distance minus squared range
+	 * @param qc Constant term, i.e., the squared distance minus squared
+	 * range now
+	 * @return Time from now or Double.MAX_VALUE if the state never changes
+	 */
+	public static double solveCrossing(double qa, double qb, double qc) {
+		if (qa == 0) {
+			return Double.MAX_VALUE; // same velocity, distance doesn't change
+		}
+		double disc = qb*qb - 4*qa*qc;
+
+		/* formulas chosen to avoid cancellation */
+		if (qc <= 0) { // larger root; qa > 0 and qc <= 0 so disc >= 0
+			double s = Math.sqrt(Math.max(disc, 0));
+			return qb <= 0 ? (-qb + s) / (2*qa) : 2*qc / (-qb - s);
+		}
+		if (qb >= 0 || disc < 0) {
+			return Double.MAX_VALUE; // moving away or passing by
+		}
+		return 2*qc / (-qb + Math.sqrt(disc)); // smaller root
+	}
+
+	/**
+	 * Disconnects a pair. The interface that created the connection tears
+	 * it down.
+	 * @param c The certificate of the pair
+	 */
+	private void disconnect(Certificate c) {
+		NetworkInterface a = c.a.ni;
+		NetworkInterface b = c.b.ni;
+		Connection con = a.getConnection(b);
+		if (con == null) {
+			return;
+		}
+		if (con.isInitiator(a.getHost())) {
+			a.destroyConnection(b);
+		}
+		else {
+			b.destroyConnection(a);
+		}
+	}
+
+	/**
+	 * Removes an interface. The certificates of its pairs become invalid.
+	 * @param ni The interface
+	 */
+	void removeInterface(NetworkInterface ni) {
+		InterfaceState st = states.remove(ni.getAddress());
+		if (st != null) {
+			st.version++;
+			st.certs.clear();
+		}
+	}
+
+	/**
+	 * Removes all certificates. All pairs are checked in the next
+	 * detection.
+	 */
+	void clear() {
+		states.clear();
+		inRange.clear();
+	}
+
+	/**
+	 * Kinetic state of an interface
+	 */
+	private class InterfaceState {
+		private NetworkInterface ni;
+		/** changes when the certificates of the interface become invalid */
+		private int version;
+		/** movement changes of the host when the state was reset */
+		private int movementChanges;
+		/** the cell where the interface was when the state was reset */
+		private GridCell cell;
+		/** range of the interface when the state was reset */
+		private double range;
+		/** velocity of the host when the state was reset */
+		private double vx, vy;
+		/** the certificates this interface created */
+		private ArrayList<Certificate> certs;
+		/** earliest expiry time of the certificates */
+		private double nextExpiry;
+		/** the round when the state was reset */
+		private int changedRound;
+		/** the round when all pairs of the interface were checked */
+		private int checkedRound;
+		/** the last pair check that found this interface near */
+		private int pairCheck;
+
+		private InterfaceState(NetworkInterface ni) {
+			this.ni = ni;
+			this.certs = new ArrayList<Certificate>();
+		}
+
+		/**
+		 * Returns true if the interface's movement, cell or range has
+		 * changed since the state was reset
+		 */
+		private boolean hasChanged() {
+			return movementChanges != ni.getHost().getMovementChanges() ||
+				cell != grid.getCellOf(ni) || range != ni.getTransmitRange();
+		}
+
+		/**
+		 * Invalidates all certificates of the interface and takes the
+		 * current movement, cell and range of the interface in use
+		 * @param round The ongoing round
+		 */
+		private void reset(int round) {
+			DTNHost host = ni.getHost();
+			this.version++;
+			this.certs.clear();
+			this.nextExpiry = Double.MAX_VALUE;
+			this.changedRound = round;
+			this.movementChanges = host.getMovementChanges();
+			this.cell = grid.getCellOf(ni);
+			this.range = ni.getTransmitRange();
+
+			Coord loc = host.getLocation();
+			Coord dest = host.getDestination();
+			double dist = dest == null ? 0 : loc.distance(dest);
+			if (dist > 0) {
+				this.vx = host.getSpeed() * (dest.getX() - loc.getX()) / dist;
+				this.vy = host.getSpeed() * (dest.getY() - loc.getY()) / dist;
+			}
+			else {
+				this.vx = 0;
+				this.vy = 0;
+			}
+		}
+
+		/**
+		 * Returns the movement time of the interface's host
+		 */
+		private double getMovementTime() {
+			return ni.getHost().getMovementTime();
+		}
+	}
+
+	/**
+	 * Certificate of a pair of interfaces. Tells whether the pair is within
+	 * range and until which movement time the state stays the same.
+	 */
+	private static class Certificate {
+		/** the interfaces, the one with smaller address first */
+		private InterfaceState a, b;
+		/** versions of the interfaces' states when created */
+		private int versionA, versionB;
+		/** key of the pair (the interfaces' addresses) */
+		private long key;
+		/** movement time when the pair must be checked again */
+		private double expiry;
+		/** is the pair within range */
+		private boolean inRange;
+		/** is the certificate in the list of pairs within range */
+		private boolean listed;
+
+		private Certificate(InterfaceState s1, InterfaceState s2) {
+			if (s1.ni.getAddress() < s2.ni.getAddress()) {
+				this.a = s1;
+				this.b = s2;
+			}
+			else {
+				this.a = s2;
+				this.b = s1;
+			}
+			this.versionA = a.version;
+			this.versionB = b.version;
+			this.key = ((long)a.ni.getAddress() << 32) | b.ni.getAddress();
+		}
+
+		/**
+		 * Returns true if neither of the interfaces has changed since the
+		 * certificate was created
+		 */
+		private boolean isValid() {
+			return versionA == a.version && versionB == b.version;
+		}
+	}
+}
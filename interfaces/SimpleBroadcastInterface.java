@@ -4,7 +4,7 @@
  */
 package interfaces;
 
-import java.util.Collection;
+import java.util.List;
 
 import core.CBRConnection;
 import core.Connection;
@@ -43,7 +43,7 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 	 */
 	public void connect(NetworkInterface anotherInterface) {
 		if (isScanning()  
-				&& anotherInterface.getHost().isRadioActive() 
+				&& anotherInterface.isActive() 
 				&& isWithinRange(anotherInterface) 
 				&& !isConnected(anotherInterface)
 				&& (this != anotherInterface)) {
@@ -71,6 +71,9 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 		
 		// First break the old ones
 		optimizer.updateLocation(this);
+		if (optimizer.detectsContacts()) {
+			return; /* the optimizer has updated the connections */
+		}
 		for (int i=0; i<this.connections.size(); ) {
 			Connection con = this.connections.get(i);
 			NetworkInterface anotherInterface = con.getOtherInterface(this);
@@ -87,10 +90,9 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
+		List<NetworkInterface> interfaces = getNearInterfaces();
+		for (int i=0, n = interfaces.size(); i < n; i++) {
+			connect(interfaces.get(i));
 		}
 	}
 
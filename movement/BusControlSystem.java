@@ -11,6 +11,7 @@ import java.util.List;
 import movement.map.SimMap;
 import core.Coord;
 import core.DTNSim;
+import core.SimulationContext;
 
 /**
  * This class controls busses and passengers that can use the bus. 
@@ -22,7 +23,14 @@ import core.DTNSim;
 public class BusControlSystem {
 	public static final String BUS_CONTROL_SYSTEM_NR = "busControlSystemNr";
 	
-	private static HashMap<Integer, BusControlSystem> systems;
+	/** the systems of the runs (one map per simulation context) */
+	private static final SimulationContext.Local<HashMap<Integer, 
+			BusControlSystem>> systems = new SimulationContext.Local<
+			HashMap<Integer, BusControlSystem>>() {
+		protected HashMap<Integer, BusControlSystem> initialValue() {
+			return new HashMap<Integer, BusControlSystem>();
+		}
+	};
 	
 	private HashMap<Integer, BusMovement> busses;
 	private HashMap<Integer, BusTravellerMovement> travellers;
@@ -46,7 +54,7 @@ public class BusControlSystem {
 	}
 	
 	public static void reset() {
-		systems = new HashMap<Integer, BusControlSystem>();
+		systems.set(new HashMap<Integer, BusControlSystem>());
 	}
 	
 	/**
@@ -84,12 +92,13 @@ public class BusControlSystem {
 	 */
 	public static BusControlSystem getBusControlSystem(int systemID) {
 		Integer id = new Integer(systemID);
+		HashMap<Integer, BusControlSystem> runSystems = systems.get();
 		
-		if (systems.containsKey(id)) {
-			return systems.get(id);
+		if (runSystems.containsKey(id)) {
+			return runSystems.get(id);
 		} else {
 			BusControlSystem bcs = new BusControlSystem(systemID);
-			systems.put(id, bcs);
+			runSystems.put(id, bcs);
 			return bcs;
 		}
 	}
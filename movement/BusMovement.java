@@ -4,12 +4,17 @@
  */
 package movement;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import movement.map.MapNode;
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
+import core.SimulationContext;
 
 /**
  * This class controls the movement of busses. It informs the bus control system
@@ -21,7 +26,13 @@ public class BusMovement extends MapRouteMovement {
 	
 	private BusControlSystem controlSystem;
 	private int id;
-	private static int nextID = 0;
+	/** next ID to give (one counter per simulation context) */
+	private static final SimulationContext.Local<AtomicInteger> nextID =
+		new SimulationContext.Local<AtomicInteger>() {
+			protected AtomicInteger initialValue() {
+				return new AtomicInteger();
+			}
+		};
 	private boolean startMode;
 	private List<Coord> stops;
 	
@@ -34,7 +45,7 @@ public class BusMovement extends MapRouteMovement {
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
 		controlSystem.setMap(super.getMap());
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 		controlSystem.registerBus(this);
 		startMode = true;
 		stops = new LinkedList<Coord>();
@@ -52,7 +63,7 @@ public class BusMovement extends MapRouteMovement {
 	public BusMovement(BusMovement proto) {
 		super(proto);
 		this.controlSystem = proto.controlSystem;
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 		controlSystem.registerBus(this);
 		startMode = true;
 	}
@@ -78,6 +89,18 @@ public class BusMovement extends MapRouteMovement {
 		return new BusMovement(this);
 	}
 
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeBoolean(startMode);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.startMode = in.readBoolean();
+	}
+
 	/**
 	 * Returns unique ID of the bus
 	 * @return unique ID of the bus
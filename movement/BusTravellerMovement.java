@@ -4,14 +4,19 @@
  */
 package movement;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
+import core.SimulationContext;
 
 /**
  * 
@@ -52,7 +57,13 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	
 	private boolean takeBus;
 	
-	private static int nextID = 0;
+	/** next ID to give (one counter per simulation context) */
+	private static final SimulationContext.Local<AtomicInteger> nextID =
+		new SimulationContext.Local<AtomicInteger>() {
+			protected AtomicInteger initialValue() {
+				return new AtomicInteger();
+			}
+		};
 	
 	/**
 	 * Creates a BusTravellerModel 
@@ -62,7 +73,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		super(settings);
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
-		id = nextID++;
+		id = nextID.get().getAndIncrement();
 		controlSystem.registerTraveller(this);
 		nextPath = new Path();
 		state = STATE_WALKING_ELSEWHERE;
@@ -89,7 +100,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			location = proto.location.clone();
 		}
 		nextPath = proto.nextPath;
-		id = nextID++;
+		id = nextID.get().getAndIncrement();
 		controlSystem.registerTraveller(this);
 		probabilities = proto.probabilities;
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
@@ -167,6 +178,41 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		return new BusTravellerMovement(this);
 	}
 
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(state);
+		out.writeBoolean(nextPath != null);
+		if (nextPath != null) {
+			nextPath.writeState(out);
+		}
+		out.writeCoord(location);
+		out.writeCoord(latestBusStop);
+		out.writeCoord(startBusStop);
+		out.writeCoord(endBusStop);
+		out.writeBoolean(takeBus);
+		out.writeInt(cbtd.state);
+		out.writeRandom(cbtd.rng);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.state = in.readInt();
+		this.nextPath = null;
+		if (in.readBoolean()) {
+			this.nextPath = new Path();
+			this.nextPath.readState(in);
+		}
+		this.location = in.readCoord();
+		this.latestBusStop = in.readCoord();
+		this.startBusStop = in.readCoord();
+		this.endBusStop = in.readCoord();
+		this.takeBus = in.readBoolean();
+		cbtd.state = in.readInt();
+		cbtd.rng = in.readRandom();
+	}
+
 	public int getState() {
 		return state;
 	}
@@ -351,7 +397,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	}
 	
 	public static void reset() {
-		nextID = 0;
+		nextID.set(new AtomicInteger());
 	}
 	
 }
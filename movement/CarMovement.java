@@ -4,10 +4,13 @@
  */
 package movement;
 
+import java.io.IOException;
 import java.util.List;
 
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
 
@@ -77,4 +80,18 @@ public class CarMovement extends MapBasedMovement implements
 	public boolean isReady() {
 		return true;
 	}
+
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeCoord(from);
+		out.writeCoord(to);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.from = in.readCoord();
+		this.to = in.readCoord();
+	}
 }
@@ -4,12 +4,16 @@
  */
 package movement;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.DTNSim;
+import core.SimulationContext;
 
 /**
  * This class controls the group mobility of the people meeting their friends in
@@ -25,8 +29,16 @@ public class EveningActivityControlSystem {
 	
 	private Random rng;
 	
-	private static HashMap<Integer, EveningActivityControlSystem> 
-		controlSystems;
+	/** the systems of the runs (one map per simulation context) */
+	private static final SimulationContext.Local<HashMap<Integer, 
+			EveningActivityControlSystem>> controlSystems = 
+		new SimulationContext.Local<HashMap<Integer, 
+				EveningActivityControlSystem>>() {
+			protected HashMap<Integer, EveningActivityControlSystem> 
+					initialValue() {
+				return new HashMap<Integer, EveningActivityControlSystem>();
+			}
+		};
 	
 	static {
 		DTNSim.registerForReset(EveningActivityControlSystem.class.
@@ -44,7 +56,8 @@ public class EveningActivityControlSystem {
 	}
 
 	public static void reset() {
-		controlSystems = new HashMap<Integer, EveningActivityControlSystem>();
+		controlSystems.set(
+				new HashMap<Integer, EveningActivityControlSystem>());
 	}
 	
 	/**
@@ -118,6 +131,67 @@ public class EveningActivityControlSystem {
 		this.rng = rand;
 	}
 	
+	/**
+	 * Writes the state of the control system, i.e., the random number 
+	 * generator and the trips that are still gathering members
+	 * @param out The checkpoint to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeRandom(rng);
+		out.writeInt(nextTrips.length);
+		for (EveningTrip trip : nextTrips) {
+			writeTrip(out, trip);
+		}
+	}
+
+	/**
+	 * Restores the state written by {@link #writeState(CheckpointOutput)}
+	 * @param in The checkpoint to read from
+	 * @throws IOException if reading fails
+	 */
+	public void readState(CheckpointInput in) throws IOException {
+		this.rng = in.readRandom();
+		this.nextTrips = new EveningTrip[in.readInt()];
+		for (int i=0; i<nextTrips.length; i++) {
+			nextTrips[i] = readTrip(in);
+		}
+	}
+
+	/**
+	 * Writes a trip of this system, or a reference to it if it has been
+	 * written already. Trips are shared by all the nodes of the group.
+	 * @param out The checkpoint to write to
+	 * @param trip The trip (or null)
+	 * @throws IOException if writing fails
+	 */
+	public void writeTrip(CheckpointOutput out, EveningTrip trip) 
+			throws IOException {
+		if (out.writeShared(trip)) {
+			trip.writeState(out);
+		}
+	}
+
+	/**
+	 * Reads a trip written with {@link #writeTrip(CheckpointOutput, 
+	 * EveningTrip)}
+	 * @param in The checkpoint to read from
+	 * @return The trip (or null)
+	 * @throws IOException if reading fails
+	 */
+	public EveningTrip readTrip(CheckpointInput in) throws IOException {
+		int index = in.readSharedIndex();
+		if (index < 0) {
+			return null;
+		}
+		EveningTrip trip = (EveningTrip)in.getShared(index);
+		if (trip == null) {
+			trip = EveningTrip.readTrip(in, eveningActivityNodes);
+			in.addShared(trip);
+		}
+		return trip;
+	}
+
 	/**
 	 * Returns a reference to a EveningActivityControlSystem with ID provided as
 	 * parameter. If a system does not already exist with the requested ID, a 
@@ -127,6 +201,8 @@ public class EveningActivityControlSystem {
 	 */
 	public static EveningActivityControlSystem getEveningActivityControlSystem(
 			int id) {
+		HashMap<Integer, EveningActivityControlSystem> controlSystems =
+			EveningActivityControlSystem.controlSystems.get();
 		if (controlSystems.containsKey(new Integer(id))) {
 			return controlSystems.get(new Integer(id));
 		} else {
@@ -7,14 +7,19 @@ package movement;
 import input.WKTReader;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
+import core.SimulationContext;
 
 /**
  * A Class to model movement when people are out shopping or doing other 
@@ -44,8 +49,6 @@ public class EveningActivityMovement extends MapBasedMovement
 	public static final String MAX_WAIT_TIME_SETTING = 
 		"maxAfterShoppingStopTime";
 	
-	private static int nrOfMeetingSpots = 10;
-	
 	private int mode;
 	private boolean ready;
 	private DijkstraPathFinder pathFinder;
@@ -60,7 +63,13 @@ public class EveningActivityMovement extends MapBasedMovement
 	
 	private int id;
 	
-	private static int nextID = 0;
+	/** next ID to give (one counter per simulation context) */
+	private static final SimulationContext.Local<AtomicInteger> nextID =
+		new SimulationContext.Local<AtomicInteger>() {
+			protected AtomicInteger initialValue() {
+				return new AtomicInteger();
+			}
+		};
 	
 	private int minGroupSize;
 	private int maxGroupSize;
@@ -75,7 +84,7 @@ public class EveningActivityMovement extends MapBasedMovement
 		pathFinder = new DijkstraPathFinder(null);
 		mode = WALKING_TO_MEETING_SPOT_MODE;
 		
-		nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
+		int nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
 		
 		minGroupSize = settings.getInt(MIN_GROUP_SIZE_SETTING);
 		maxGroupSize = settings.getInt(MAX_GROUP_SIZE_SETTING);
@@ -120,7 +129,7 @@ public class EveningActivityMovement extends MapBasedMovement
 			}
 		}
 		
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 		
 		int scsID = settings.getInt(EVENING_ACTIVITY_CONTROL_SYSTEM_NR_SETTING);
 		
@@ -144,7 +153,7 @@ public class EveningActivityMovement extends MapBasedMovement
 		super(proto);
 		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 		scs = proto.scs;
 		scs.addEveningActivityNode(this);
 		this.setMinGroupSize(proto.getMinGroupSize());
@@ -227,6 +236,40 @@ public class EveningActivityMovement extends MapBasedMovement
 		return new EveningActivityMovement(this);
 	}
 
+	/**
+	 * Writes the state of the model. The control system (and the trips
+	 * it shares among the nodes) is written with the first node.
+	 */
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(mode);
+		out.writeBoolean(ready);
+		out.writeBoolean(readyToShop);
+		out.writeCoord(lastWaypoint);
+		out.writeCoord(startAtLocation);
+		if (out.writeShared(scs)) {
+			scs.writeState(out);
+		}
+		scs.writeTrip(out, trip);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.mode = in.readInt();
+		this.ready = in.readBoolean();
+		this.readyToShop = in.readBoolean();
+		this.lastWaypoint = in.readCoord();
+		this.startAtLocation = in.readCoord();
+		int index = in.readSharedIndex();
+		if (index >= 0 && in.getShared(index) == null) {
+			in.addShared(scs);
+			scs.readState(in);
+		}
+		this.trip = scs.readTrip(in);
+	}
+
 	/**
 	 * @see SwitchableMovement
 	 */
@@ -277,7 +320,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	}
 
 	public static void reset() {
-		nextID = 0;
+		nextID.set(new AtomicInteger());
 	}
 
 	public int getMinGroupSize() {
@@ -4,6 +4,11 @@
  */
 package movement;
 
+import java.io.IOException;
+import java.util.Map;
+
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 
 /**
@@ -124,5 +129,48 @@ public class EveningTrip {
 	public void setWaitTimeAtEnd(double waitTimeAtEnd) {
 		this.waitTimeAtEnd = waitTimeAtEnd;
 	}
-}
 
+	/**
+	 * Writes the state of the trip. Group members are written as their IDs.
+	 * @param out The checkpoint to write to
+	 * @throws IOException if writing fails
+	 */
+	void writeState(CheckpointOutput out) throws IOException {
+		out.writeInt(eveningActivityNodes.length);
+		out.writeInt(eveningActivityNodesInBuffer);
+		for (int i=0; i<eveningActivityNodesInBuffer; i++) {
+			out.writeInt(eveningActivityNodes[i].getID());
+		}
+		out.writeBoolean(path != null);
+		if (path != null) {
+			path.writeState(out);
+		}
+		out.writeCoord(location);
+		out.writeCoord(destination);
+		out.writeDouble(waitTimeAtEnd);
+	}
+
+	/**
+	 * Reads a trip written by {@link #writeState(CheckpointOutput)}
+	 * @param in The checkpoint to read from
+	 * @param nodes The evening activity nodes by their IDs
+	 * @return The trip
+	 * @throws IOException if reading fails
+	 */
+	static EveningTrip readTrip(CheckpointInput in, 
+			Map<Integer, EveningActivityMovement> nodes) throws IOException {
+		EveningTrip trip = new EveningTrip(in.readInt(), null);
+		int nrofNodes = in.readInt();
+		for (int i=0; i<nrofNodes; i++) {
+			trip.addNode(nodes.get(in.readInt()));
+		}
+		if (in.readBoolean()) {
+			trip.path = new Path();
+			trip.path.readState(in);
+		}
+		trip.location = in.readCoord();
+		trip.destination = in.readCoord();
+		trip.waitTimeAtEnd = in.readDouble();
+		return trip;
+	}
+}
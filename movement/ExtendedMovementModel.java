@@ -4,6 +4,10 @@
  */
 package movement;
 
+import java.io.IOException;
+
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
 
@@ -57,6 +61,16 @@ public abstract class ExtendedMovementModel extends MovementModel {
 		}
 	}
 	
+	/**
+	 * Sets the current movement model without passing the last location of
+	 * the previous model to it (e.g., when the state of the models is
+	 * restored from a checkpoint)
+	 * @param mm The movement model in use
+	 */
+	protected void restoreCurrentMovementModel(SwitchableMovement mm) {
+		currentMovementModel = mm;
+	}
+	
 	/**
 	 * @return The movement model currently in use
 	 */
@@ -80,6 +94,22 @@ public abstract class ExtendedMovementModel extends MovementModel {
 		return ((MovementModel)currentMovementModel).generateWaitTime();
 	}
 	
+	/**
+	 * Writes the state of the model. Subclasses must write the state of 
+	 * their submodels and which one of them is the current one.
+	 */
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeBoolean(getPathCalledOnce);
+	}
+	
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.getPathCalledOnce = in.readBoolean();
+	}
+	
 	/**
 	 * Method is called between each getPath() request when the current MM is 
 	 * ready (isReady() method returns true). Subclasses should implement all 
@@ -18,6 +18,7 @@ import core.Coord;
 import core.DTNSim;
 import core.Settings;
 import core.SimClock;
+import core.SimulationContext;
 
 /**
  * Movement model that uses external data of node locations.
@@ -32,21 +33,13 @@ public class ExternalMovement extends MovementModel {
 	
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
-	private static ExternalMovementReader reader;
-	private static String inputFileName;
-	
-	/** mapping of external id to movement model */
-	private static Map<String, ExternalMovement> idMapping;
-	/** initial locations for nodes */
-	private static List<Tuple<String, Coord>> initLocations;
-	/** time of the very first location data */
-	private static double initTime;
-	/** sampling interval (seconds) of the location data */
-	private static double samplingInterval;
-	/** last read time stamp after preloading */
-	private static double lastPreloadTime;
-	/** how many time intervals to load on every preload run */
-	private static double nrofPreload = 10;
+	/** the external data of the runs (one per simulation context) */
+	private static final SimulationContext.Local<State> state =
+		new SimulationContext.Local<State>() {
+			protected State initialValue() {
+				return new State();
+			}
+		};
 	/** minimum number intervals that should be preloaded ahead of sim time */
 	private static final double MIN_AHEAD_INTERVALS = 2;
 		
@@ -70,30 +63,52 @@ public class ExternalMovement extends MovementModel {
 		reset();
 	}
 	
+	/**
+	 * The external movement data of a simulation run
+	 */
+	private static class State {
+		private ExternalMovementReader reader;
+		private String inputFileName;
+		
+		/** mapping of external id to movement model */
+		private Map<String, ExternalMovement> idMapping;
+		/** initial locations for nodes */
+		private List<Tuple<String, Coord>> initLocations;
+		/** time of the very first location data */
+		private double initTime;
+		/** sampling interval (seconds) of the location data */
+		private double samplingInterval;
+		/** last read time stamp after preloading */
+		private double lastPreloadTime;
+		/** how many time intervals to load on every preload run */
+		private double nrofPreload = 10;
+	}
+	
 	/**
 	 * Constructor for the prototype. Run once per group.
 	 * @param settings Where settings are read from
 	 */
 	public ExternalMovement(Settings settings) {
 		super(settings);
+		State st = state.get();
 		
-		if (idMapping == null) {
+		if (st.idMapping == null) {
 			// run these the first time object is created or after reset call
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
-			idMapping = new HashMap<String, ExternalMovement>();
-			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
+			st.idMapping = new HashMap<String, ExternalMovement>();
+			st.inputFileName = s.getSetting(MOVEMENT_FILE_S);
+			st.reader = new ExternalMovementReader(st.inputFileName);
 			
-			initLocations = reader.readNextMovements();
-			initTime = reader.getLastTimeStamp();
-			samplingInterval = -1;
-			lastPreloadTime = -1;
+			st.initLocations = st.reader.readNextMovements();
+			st.initTime = st.reader.getLastTimeStamp();
+			st.samplingInterval = -1;
+			st.lastPreloadTime = -1;
 			
 			s.setNameSpace(EXTERNAL_MOVEMENT_NS);
 			if (s.contains(NROF_PRELOAD_S)) {
-				nrofPreload = s.getInt(NROF_PRELOAD_S);
-				if (nrofPreload <= 0) {
-					nrofPreload = 1;
+				st.nrofPreload = s.getInt(NROF_PRELOAD_S);
+				if (st.nrofPreload <= 0) {
+					st.nrofPreload = 1;
 				}
 			}
 		}
@@ -109,15 +124,16 @@ public class ExternalMovement extends MovementModel {
 		
 		pathQueue = new LinkedList<Tuple<Double, Path>>();
 		latestPath = null;
+		State st = state.get();
 		
-		if (initLocations.size() > 0) { // we have location data left
+		if (st.initLocations.size() > 0) { // we have location data left
 			// gets a new location from the list
-			Tuple<String, Coord> initLoc = initLocations.remove(0); 
+			Tuple<String, Coord> initLoc = st.initLocations.remove(0); 
 			this.intialLocation = this.latestLocation = initLoc.getValue();
-			this.latestPathStartTime = initTime;
+			this.latestPathStartTime = st.initTime;
 			
 			// puts the new model to model map for later updates
-			idMapping.put(initLoc.getKey(), this);
+			st.idMapping.put(initLoc.getKey(), this);
 			isActive = true;
 		}
 		else {
@@ -132,15 +148,17 @@ public class ExternalMovement extends MovementModel {
 	 * needed.
 	 */
 	private static void checkPathNeed() {
-		if (samplingInterval == -1) { // first preload
-			lastPreloadTime = readMorePaths();
+		State st = state.get();
+		if (st.samplingInterval == -1) { // first preload
+			st.lastPreloadTime = readMorePaths(st);
 		}
 		
-		if (lastPreloadTime != Double.NaN && SimClock.getTime() >= 
-				lastPreloadTime - (samplingInterval * MIN_AHEAD_INTERVALS) ) {
-			for (int i=0; i < nrofPreload && 
-					lastPreloadTime != Double.NaN; i++) {
-				lastPreloadTime = readMorePaths();
+		if (st.lastPreloadTime != Double.NaN && SimClock.getTime() >= 
+				st.lastPreloadTime - 
+				(st.samplingInterval * MIN_AHEAD_INTERVALS) ) {
+			for (int i=0; i < st.nrofPreload && 
+					st.lastPreloadTime != Double.NaN; i++) {
+				st.lastPreloadTime = readMorePaths(st);
 			}
 		}
 	}
@@ -163,6 +181,7 @@ public class ExternalMovement extends MovementModel {
 	 * @param time When should the node be there
 	 */
 	private void addLocation(Coord loc, double time) {
+		double samplingInterval = state.get().samplingInterval;
 		assert samplingInterval > 0 : "Non-positive sampling interval!";
 		
 		if (loc.equals(latestLocation)) { // node didn't move
@@ -224,11 +243,13 @@ public class ExternalMovement extends MovementModel {
 	
 	@Override
 	public int getMaxX() {
+		ExternalMovementReader reader = state.get().reader;
 		return (int)(reader.getMaxX() - reader.getMinX()) + 1;
 	}
 
 	@Override
 	public int getMaxY() {
+		ExternalMovementReader reader = state.get().reader;
 		return (int)(reader.getMaxY() - reader.getMinY()) + 1;
 	}
 
@@ -240,19 +261,20 @@ public class ExternalMovement extends MovementModel {
 	
 	/**
 	 * Reads paths for the next time instance from the reader
+	 * @param st The external movement data of the run
 	 * @return The time stamp of the reading or Double.NaN if no movements
 	 * were read.
 	 */
-	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
-		double time = reader.getLastTimeStamp();
+	private static double readMorePaths(State st) {
+		List<Tuple<String, Coord>> list = st.reader.readNextMovements();
+		double time = st.reader.getLastTimeStamp();
 		
-		if (samplingInterval == -1) {
-			samplingInterval = time - initTime;
+		if (st.samplingInterval == -1) {
+			st.samplingInterval = time - st.initTime;
 		}
 		
 		for (Tuple<String, Coord> t : list) {
-			ExternalMovement em = idMapping.get(t.getKey());
+			ExternalMovement em = st.idMapping.get(t.getKey());
 			if (em != null) { // skip unknown IDs, i.e. IDs not mentioned in...
 				// ...init phase or if there are more IDs than nodes
 				em.addLocation(t.getValue(), time);
@@ -271,7 +293,7 @@ public class ExternalMovement extends MovementModel {
 	 * Reset state so that next instance will have a fresh state
 	 */
 	public static void reset() {
-		idMapping = null;
+		state.set(new State());
 	}
 
 }
@@ -99,6 +99,11 @@ public class GridLocation extends MovementModel {
 		return Double.MAX_VALUE;	// no new paths available
 	}
 	
+	@Override
+	public boolean isConcurrentMovementSupported() {
+		return true;
+	}
+	
 	@Override
 	public GridLocation replicate() {
 		return new GridLocation(this);
@@ -7,12 +7,15 @@ package movement;
 import input.WKTReader;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
 import core.SimClock;
@@ -217,6 +220,20 @@ public class HomeActivityMovement extends MapBasedMovement
 		return new HomeActivityMovement(this);
 	}
 
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(mode);
+		out.writeCoord(lastWaypoint);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.mode = in.readInt();
+		this.lastWaypoint = in.readCoord();
+	}
+
 	/**
 	 * @see SwitchableMovement
 	 */
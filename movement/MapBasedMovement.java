@@ -19,6 +19,8 @@ import java.util.Vector;
 
 import movement.map.MapNode;
 import movement.map.SimMap;
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
 import core.SettingsError;
@@ -60,7 +62,9 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	
 	/** how many map files are read */
 	private int nrofMapFilesRead = 0;
-	/** map cache -- in case last mm read the same map, use it without loading*/
+	/** map cache -- in case last mm read the same map, use it without loading.
+	 * Shared by all simulations that are run in the JVM (see 
+	 * {@link core.SimulationContext}) and guarded by the class' lock. */
 	private static SimMap cachedMap = null;
 	/** names of the previously cached map's files (for hit comparison) */
 	private static List<String> cachedMapFiles = null;
@@ -259,10 +263,23 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	
 	/**
 	 * Reads a sim map from location set to the settings, mirrors the map and
-	 * moves its upper left corner to origo.
+	 * moves its upper left corner to origo. The map is not modified after
+	 * that, so the cached map can be used by several simulations at the
+	 * same time.
 	 * @return A new SimMap based on the settings
 	 */
 	private SimMap readMap() {
+		synchronized (MapBasedMovement.class) {
+			return readMapToCache();
+		}
+	}
+	
+	/**
+	 * Reads a sim map (see {@link #readMap()}) and caches it. The caller
+	 * must hold the class' lock.
+	 * @return A new SimMap based on the settings
+	 */
+	private SimMap readMapToCache() {
 		SimMap simMap;
 		Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
 		WKTMapReader r = new WKTMapReader(true);
@@ -400,6 +417,34 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	public MapBasedMovement replicate() {
 		return new MapBasedMovement(this);
 	}
+
+	@Override
+	public boolean isCheckpointSupported() {
+		return true;
+	}
+
+	@Override
+	public boolean isConcurrentPathMovementSupported() {
+		return true;
+	}
+
+	/**
+	 * Writes the state of the model. The last map node is written as its
+	 * location. Subclasses with more state must override this and
+	 * {@link #readState(CheckpointInput)}.
+	 */
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeCoord(lastMapNode != null ? lastMapNode.getLocation() : null);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		Coord c = in.readCoord();
+		this.lastMapNode = (c != null ? map.getNodeByCoord(c) : null);
+	}
 	
 	public Coord getLastLocation() {
 		if (lastMapNode != null) {
@@ -4,12 +4,15 @@
  */
 package movement;
 
+import java.io.IOException;
 import java.util.List;
 
 import core.SettingsError;
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.MapRoute;
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
 
@@ -149,6 +152,18 @@ public class MapRouteMovement extends MapBasedMovement implements
 		return new MapRouteMovement(this);
 	}	
 
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		route.writeState(out);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		route.readState(in);
+	}
+
 	/**
 	 * Returns the list of stops on the route
 	 * @return The list of stops
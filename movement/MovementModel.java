@@ -4,10 +4,15 @@
  */
 package movement;
 
+import java.io.IOException;
 import java.util.Random;
 
 import util.ActivenessHandler;
+import util.RestorableRandom;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
+import core.Checkpointable;
 import core.Coord;
 import core.DTNHost;
 import core.DTNSim;
@@ -15,6 +20,8 @@ import core.ModuleCommunicationBus;
 import core.Settings;
 import core.SimClock;
 import core.SimError;
+import core.SimulationContext;
+import core.World;
 
 /**
  * <P>Superclass for all movement models. All subclasses must contain at least a 
@@ -26,7 +33,7 @@ import core.SimError;
  * {@link #getInitialLocation()} and {@link #getPath()} are worthwhile to 
  * override.</P>
  */
-public abstract class MovementModel {
+public abstract class MovementModel implements Checkpointable {
 	/** node's speed CSV (min, max) -setting id ({@value})*/
 	public static final String SPEED = "speed";
 	/** node's wait time CSV (min, max) -setting id ({@value})*/
@@ -45,8 +52,16 @@ public abstract class MovementModel {
 	/** movement models' rng seed -setting id ({@value})*/
 	public static final String RNG_SEED = "rngSeed";
 	
-	/** common rng for all movement models in the simulation */
-	protected static Random rng; 
+	/** rng of this movement model; shared by all movement models unless
+	 * parallel movement is enabled (see {@link World#MOVEMENT_THREADS_S}) */
+	protected Random rng;
+	/** shared rngs of the runs (one per simulation context) */
+	private static final SimulationContext.Local<State> state =
+		new SimulationContext.Local<State>() {
+			protected State initialValue() {
+				return new State();
+			}
+		};
 	
 	/** DTNHost to which this movement model is attached */
 	protected DTNHost host;
@@ -69,6 +84,35 @@ public abstract class MovementModel {
 		reset();
 	}
 	
+	/**
+	 * The random number generators shared by the movement models of a
+	 * simulation run
+	 */
+	private static class State {
+		/** common rng for all movement models in the simulation */
+		private Random commonRng;
+		/** rng for seeding movement models' own rngs (or null if the 
+		 * common rng is used) */
+		private Random streamSeedRng;
+		
+		private State() {
+			Settings s = new Settings(MOVEMENT_MODEL_NS);
+			int seed = 0;
+			if (s.contains(RNG_SEED)) {
+				seed = s.getInt(RNG_SEED);
+			}
+			this.commonRng = new RestorableRandom(seed);
+			
+			s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
+			if (s.getInt(World.MOVEMENT_THREADS_S, 0) > 0) {
+				this.streamSeedRng = new RestorableRandom(seed);
+			}
+			else {
+				this.streamSeedRng = null;
+			}
+		}
+	}
+	
 	/**
 	 * Checks that the minimum setting is not bigger than the maximum and
 	 * that both are positive
@@ -93,6 +137,7 @@ public abstract class MovementModel {
 	 */
 	public MovementModel() {
 		super();
+		this.rng = state.get().commonRng;
 	}
 	
 	/**
@@ -103,6 +148,7 @@ public abstract class MovementModel {
 		double[] speeds;
 		double[] times;
 		
+		this.rng = state.get().commonRng;
 		ah = new ActivenessHandler(settings);
 		
 		if (settings.contains(SPEED)) {
@@ -149,6 +195,14 @@ public abstract class MovementModel {
 		this.maxY = mm.maxY;
 		this.ah = mm.ah;
 		this.comBus = null;
+		
+		State st = state.get();
+		if (st.streamSeedRng != null) {
+			this.rng = new RestorableRandom(st.streamSeedRng.nextLong());
+		}
+		else {
+			this.rng = st.commonRng;
+		}
 	}
 		
 	/**
@@ -241,6 +295,86 @@ public abstract class MovementModel {
 		return SimClock.getTime() + generateWaitTime();
 	}
 	
+	/**
+	 * Returns true if hosts using this movement model can be moved 
+	 * concurrently with other hosts. That is the case if the model does not
+	 * change any state shared with other movement models (other than the
+	 * state of its own random number generator) while creating paths. 
+	 * This implementation returns false. 
+	 * @return true if concurrent movement is supported
+	 * @see World#MOVEMENT_THREADS_S
+	 */
+	public boolean isConcurrentMovementSupported() {
+		return false;
+	}
+	
+	/**
+	 * Returns true if hosts using this movement model can move along their
+	 * current paths concurrently with other hosts even if the model does not
+	 * support concurrent movement (see 
+	 * {@link #isConcurrentMovementSupported()}). That is the case if calls
+	 * of other movement models never change the paths this model has
+	 * returned or the value of {@link #isActive()}. The model itself is
+	 * then only called by the hosts that are moved one by one.
+	 * This implementation returns false.
+	 * @return true if concurrent movement along paths is supported
+	 * @see World#MOVEMENT_THREADS_S
+	 */
+	public boolean isConcurrentPathMovementSupported() {
+		return false;
+	}
+	
+	/**
+	 * Returns true if the state of this movement model can be written to a
+	 * simulation checkpoint (see {@link World#checkpoint(java.nio.file.Path)}).
+	 * Models whose state consists of more than the random number generator
+	 * and activeness must override this and the state methods.
+	 * This implementation returns false.
+	 * @return true if checkpointing is supported
+	 */
+	public boolean isCheckpointSupported() {
+		return false;
+	}
+
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeRandom(this.rng);
+		if (this.ah != null) {
+			this.ah.writeState(out);
+		}
+	}
+
+	public void readState(CheckpointInput in) throws IOException {
+		this.rng = in.readRandom();
+		if (this.ah != null) {
+			this.ah.readState(in);
+		}
+	}
+
+	/**
+	 * Writes the state of the random number generators shared by the
+	 * movement models. Must be written before the state of any model.
+	 * @param out The checkpoint to write to
+	 * @throws IOException if writing fails
+	 */
+	public static void writeCommonState(CheckpointOutput out)
+			throws IOException {
+		State st = state.get();
+		out.writeRandom(st.commonRng);
+		out.writeRandom(st.streamSeedRng);
+	}
+
+	/**
+	 * Restores the state written by {@link #writeCommonState}
+	 * @param in The checkpoint to read from
+	 * @throws IOException if reading fails
+	 */
+	public static void readCommonState(CheckpointInput in)
+			throws IOException {
+		State st = state.get();
+		st.commonRng = in.readRandom();
+		st.streamSeedRng = in.readRandom();
+	}
+
 	/**
 	 * Sets the module communication bus for this movement model
 	 * @param comBus The communications bus to set
@@ -275,14 +409,7 @@ public abstract class MovementModel {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		Settings s = new Settings(MOVEMENT_MODEL_NS);
-		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
-		}
-		else {
-			rng = new Random(0);
-		}
+		state.set(new State());
 	}
 	
 }
@@ -7,6 +7,7 @@ package movement;
 import input.WKTReader;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -15,6 +16,8 @@ import util.ParetoRNG;
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
 import core.SimClock;
@@ -47,7 +50,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 	public static final String OFFICE_LOCATIONS_FILE_SETTING = 
 		"officeLocationsFile";
 	
-	private static int nrOfOffices = 50;
+	private int nrOfOffices;
 	
 	private int mode;
 	private int workDayLength;
@@ -138,6 +141,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 	public OfficeActivityMovement(OfficeActivityMovement proto) {
 		super(proto);
 		this.workDayLength = proto.workDayLength;
+		this.nrOfOffices = proto.nrOfOffices;
 		startedWorkingTime = -1;
 		this.distance = proto.distance;
 		this.pathFinder = proto.pathFinder;
@@ -252,6 +256,28 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		return new OfficeActivityMovement(this);
 	}
 
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(mode);
+		out.writeInt(startedWorkingTime);
+		out.writeBoolean(ready);
+		out.writeBoolean(sittingAtDesk);
+		out.writeCoord(lastWaypoint);
+		paretoRNG.writeState(out);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.mode = in.readInt();
+		this.startedWorkingTime = in.readInt();
+		this.ready = in.readBoolean();
+		this.sittingAtDesk = in.readBoolean();
+		this.lastWaypoint = in.readCoord();
+		paretoRNG.readState(in);
+	}
+
 	/**
 	 * @see SwitchableMovement
 	 */
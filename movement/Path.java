@@ -4,15 +4,19 @@
  */
 package movement;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
+import core.Checkpointable;
 import core.Coord;
 
 /**
  * A Path between multiple Coordinates.
  */
-public class Path  {
+public class Path implements Checkpointable {
 	/** coordinates of the path */
 	private List<Coord> coords;
 	/** speeds in the path legs */
@@ -94,6 +98,15 @@ public class Path  {
 		return coords.get(nextWpIndex++);
 	}
 	
+	/**
+	 * Returns the index of the waypoint (in {@link #getCoords()}) that
+	 * {@link #getNextWaypoint()} returns next
+	 * @return the index of the next waypoint
+	 */
+	public int getNextWaypointIndex() {
+		return nextWpIndex;
+	}
+	
 	/**
 	 * Returns true if the path has more waypoints, false if not
 	 * @return true if the path has more waypoints, false if not
@@ -138,4 +151,30 @@ public class Path  {
 	public List<Double> getSpeeds() {
 		return this.speeds;
 	}
+
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeInt(this.nextWpIndex);
+		out.writeInt(this.coords.size());
+		for (Coord c : this.coords) {
+			out.writeCoord(c);
+		}
+		out.writeInt(this.speeds.size());
+		for (double speed : this.speeds) {
+			out.writeDouble(speed);
+		}
+	}
+
+	public void readState(CheckpointInput in) throws IOException {
+		this.nextWpIndex = in.readInt();
+		int nrofCoords = in.readInt();
+		this.coords = new ArrayList<Coord>(nrofCoords);
+		for (int i=0; i<nrofCoords; i++) {
+			this.coords.add(in.readCoord());
+		}
+		int nrofSpeeds = in.readInt();
+		this.speeds = new ArrayList<Double>(nrofSpeeds);
+		for (int i=0; i<nrofSpeeds; i++) {
+			this.speeds.add(in.readDouble());
+		}
+	}
 }
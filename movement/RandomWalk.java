@@ -4,6 +4,10 @@
  */
 package movement;
 
+import java.io.IOException;
+
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
 
@@ -76,6 +80,28 @@ public class RandomWalk extends MovementModel implements SwitchableMovement {
 		return p;
 	}
 	
+	@Override
+	public boolean isConcurrentMovementSupported() {
+		return true;
+	}
+
+	@Override
+	public boolean isCheckpointSupported() {
+		return true;
+	}
+
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeCoord(this.lastWaypoint);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.lastWaypoint = in.readCoord();
+	}
+	
 	@Override
 	public RandomWalk replicate() {
 		return new RandomWalk(this);
@@ -4,11 +4,14 @@
  */
 package movement;
 
+import java.io.IOException;
 import java.util.List;
 
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.PointsOfInterest;
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Settings;
 
 /**
@@ -70,4 +73,16 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 		return new ShortestPathMapBasedMovement(this);
 	}
 
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		pois.writeState(out);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		pois.readState(in);
+	}
+
 }
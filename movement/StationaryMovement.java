@@ -62,6 +62,16 @@ public class StationaryMovement extends MovementModel {
 		return Double.MAX_VALUE;	// no new paths available
 	}
 	
+	@Override
+	public boolean isConcurrentMovementSupported() {
+		return true;
+	}
+
+	@Override
+	public boolean isCheckpointSupported() {
+		return true;
+	}
+	
 	@Override
 	public StationaryMovement replicate() {
 		return new StationaryMovement(this);
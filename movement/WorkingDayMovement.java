@@ -4,6 +4,10 @@
  */
 package movement;
 
+import java.io.IOException;
+
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
 
@@ -164,6 +168,75 @@ public class WorkingDayMovement extends ExtendedMovementModel {
 		return new WorkingDayMovement(this);
 	}
 
+	@Override
+	public boolean isCheckpointSupported() {
+		return true;
+	}
+
+	/**
+	 * Returns true; the submodels and the control systems shared by them
+	 * only change the state of the models, never the hosts' current paths.
+	 */
+	@Override
+	public boolean isConcurrentPathMovementSupported() {
+		return true;
+	}
+
+	/**
+	 * Writes the state of the model and all its submodels. The state of 
+	 * the control systems shared by the submodels of all nodes is written
+	 * with the first node's submodels.
+	 */
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(mode);
+		out.writeBoolean(movementUsedForTransfers == carMM);
+		
+		MovementModel[] submodels = getSubmodels();
+		SwitchableMovement current = getCurrentMovementModel();
+		int currentIndex = -1;
+		for (int i=0; i<submodels.length; i++) {
+			if (submodels[i] == current) {
+				currentIndex = i;
+			}
+		}
+		out.writeInt(currentIndex);
+		
+		for (MovementModel mm : submodels) {
+			mm.writeState(out);
+		}
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.mode = in.readInt();
+		if (in.readBoolean()) {
+			movementUsedForTransfers = carMM;
+		} else {
+			movementUsedForTransfers = busTravellerMM;
+		}
+		
+		MovementModel[] submodels = getSubmodels();
+		int currentIndex = in.readInt();
+		restoreCurrentMovementModel(currentIndex >= 0 ? 
+				(SwitchableMovement)submodels[currentIndex] : null);
+		
+		for (MovementModel mm : submodels) {
+			mm.readState(in);
+		}
+	}
+
+	/**
+	 * Returns the submodels in the order their state is checkpointed
+	 * @return The submodels
+	 */
+	private MovementModel[] getSubmodels() {
+		return new MovementModel[] {busTravellerMM, workerMM, homeMM, 
+				eveningActivityMovement, carMM};
+	}
+
 	
 	public Coord getOfficeLocation() {
 		return workerMM.getOfficeLocation().clone();
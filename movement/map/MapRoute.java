@@ -11,6 +11,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.SettingsError;
 
@@ -102,6 +104,26 @@ public class MapRoute {
 		
 	}
 	
+	/**
+	 * Writes the position of the route (the stops are not written)
+	 * @param out The checkpoint to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeInt(this.index);
+		out.writeBoolean(this.comingBack);
+	}
+
+	/**
+	 * Restores the position written by {@link #writeState(CheckpointOutput)}
+	 * @param in The checkpoint to read from
+	 * @throws IOException if reading fails
+	 */
+	public void readState(CheckpointInput in) throws IOException {
+		this.index = in.readInt();
+		this.comingBack = in.readBoolean();
+	}
+
 	/**
 	 * Returns a new route with the same settings
 	 * @return a replicate of this route
@@ -15,6 +15,8 @@ import java.util.Random;
 
 import util.Tuple;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Coord;
 import core.Settings;
 import core.SettingsError;
@@ -66,6 +68,25 @@ public class PointsOfInterest {
 		this.rng = rng;
 		readPois(settings);
 	}
+
+	/**
+	 * Writes the state of the random number generator (the POIs are not
+	 * written)
+	 * @param out The checkpoint to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeRandom(this.rng);
+	}
+
+	/**
+	 * Restores the state written by {@link #writeState(CheckpointOutput)}
+	 * @param in The checkpoint to read from
+	 * @throws IOException if reading fails
+	 */
+	public void readState(CheckpointInput in) throws IOException {
+		this.rng = in.readRandom();
+	}
 	
 	/**
 	 * Selects a random destination from POIs or all MapNodes. Selecting among
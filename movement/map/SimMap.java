@@ -6,6 +6,7 @@ package movement.map;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -27,7 +28,7 @@ public class SimMap implements Serializable {
 	private boolean isMirrored;
 	
 	/** is re-hash needed before using hash mode (some coordinates changed) */
-	private boolean needsRehash = false;
+	private volatile boolean needsRehash = false;
 	
 	public SimMap(Map<Coord, MapNode> nodes) {
 		this.offset = new Coord(0,0);
@@ -53,15 +54,29 @@ public class SimMap implements Serializable {
 	 */
 	public MapNode getNodeByCoord(Coord c) {
 		if (needsRehash) { // some coordinates have changed after creating hash
-			nodesMap.clear();
-			for (MapNode node : getNodes()) {
-				nodesMap.put(node.getLocation(), node); // re-hash
-			}
+			rehash();
 		}
 	
 		return nodesMap.get(c);
 	}
 	
+	/**
+	 * Re-hashes the nodes by their current coordinates. The map is replaced
+	 * instead of modified, so the nodes can be looked up by several threads
+	 * (e.g., simulations that share the map) at the same time.
+	 */
+	private synchronized void rehash() {
+		if (!needsRehash) {
+			return; /* re-hashed by another thread */
+		}
+		Map<Coord, MapNode> rehashed = new HashMap<Coord, MapNode>();
+		for (MapNode node : getNodes()) {
+			rehashed.put(node.getLocation(), node);
+		}
+		nodesMap = rehashed;
+		needsRehash = false;
+	}
+	
 	/**
 	 * Returns the upper left corner coordinate of the map
 	 * @return the upper left corner coordinate of the map
@@ -0,0 +1,106 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import core.BufferListener;
+import core.DTNHost;
+import core.Settings;
+import core.UpdateListener;
+
+/**
+ * Buffer occupancy report. Reports the average buffer occupancy of the
+ * nodes and its variance every configurable-amount-of seconds. Also the
+ * largest occupancy any node had since the previous line is reported; it
+ * is tracked from the buffer occupancy changes, so also the peaks between
+ * the snapshots are seen. Writes reports only after the warmup period.
+ * Format of the lines is:
+ * <CODE>&lt;sim time&gt; &lt;average occupancy %&gt; &lt;variance&gt;
+ * &lt;max occupancy %&gt;</CODE>
+ */
+public class BufferOccupancyReport extends Report 
+	implements UpdateListener, BufferListener {
+	/** Reporting granularity -setting id ({@value}). 
+	 * Defines the interval how often (seconds) a new snapshot of buffer 
+	 * occupancies is created. Default is {@link #DEF_GRANULARITY} */
+	public static final String GRANULARITY = "granularity";
+	/** default value of the granularity setting ({@value}) */
+	public static final int DEF_GRANULARITY = 300;
+	/** value of the granularity setting */
+	protected final int granularity;
+	/** time of last update*/
+	protected double lastUpdate; 
+	/** largest occupancy percentage since the last snapshot */
+	private double maxOccupancy;
+	
+	/**
+	 * Constructor. Reads the settings and initializes the report module.
+	 */
+	public BufferOccupancyReport() {
+		Settings settings = getSettings();
+		this.lastUpdate = 0;
+		this.maxOccupancy = 0;
+		this.granularity = settings.getInt(GRANULARITY, DEF_GRANULARITY);
+		init();
+	}
+
+	public void bufferOccupancyChanged(DTNHost host, long occupancy) {
+		double percentage = getPercentage(host, occupancy);
+		if (percentage > this.maxOccupancy) {
+			this.maxOccupancy = percentage;
+		}
+	}
+	
+	/**
+	 * Creates a new snapshot of the buffer occupancies if "granularity" 
+	 * seconds have passed since the last snapshot. 
+	 * @param hosts All the hosts in the world
+	 */
+	public void updated(List<DTNHost> hosts) {
+		double simTime = getSimTime();
+		if (isWarmup()) {
+			this.maxOccupancy = 0;
+			return; /* warmup period is on */
+		}
+		/* creates a snapshot once every granularity seconds */
+		if (simTime - lastUpdate >= granularity) {
+			createSnapshot(hosts);
+			this.lastUpdate = simTime - simTime % granularity;
+		}
+	}
+	
+	/**
+	 * Creates a snapshot of the buffer occupancies
+	 * @param hosts The list of hosts in the world
+	 */
+	private void createSnapshot(List<DTNHost> hosts) {
+		List<Double> occupancies = new ArrayList<Double>(hosts.size());
+		for (DTNHost h : hosts) {
+			double percentage = getPercentage(h, 
+					h.getRouter().getOccupiedBufferSize());
+			occupancies.add(percentage);
+			if (percentage > this.maxOccupancy) {
+				this.maxOccupancy = percentage;
+			}
+		}
+		
+		write(format(getSimTime()) + " " + getAverage(occupancies) + " " +
+				getVariance(occupancies) + " " + format(this.maxOccupancy));
+		this.maxOccupancy = 0;
+	}
+	
+	/**
+	 * Returns a host's buffer occupancy as a percentage of its buffer size
+	 * @param host The host
+	 * @param occupancy The number of bytes in the host's buffer
+	 * @return The occupancy percentage
+	 */
+	private double getPercentage(DTNHost host, long occupancy) {
+		return 100.0 * occupancy / host.getRouter().getBufferSize();
+	}
+	
+}
@@ -0,0 +1,94 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import input.ContactPlanReader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import core.ConnectionListener;
+import core.DTNHost;
+import core.SimError;
+
+/**
+ * Records all connection up and down events of a run to a binary contact
+ * plan file (see {@link ContactPlanReader}). The plan can be replayed in
+ * other runs as external events (<CODE>ExternalEvents.filePath</CODE>)
+ * without simulating movement and connections
+ * (<CODE>Scenario.simulateMovement = false</CODE> and
+ * <CODE>Scenario.simulateConnections = false</CODE>). The file name is the
+ * report's output file name with the {@value ContactPlanReader#PLAN_EXT}
+ * extension instead of {@value Report#OUT_SUFFIX}. The first host of each
+ * record is the host whose update changed the connection. Also the 
+ * connections during the warm up period are recorded.
+ */
+public class ContactPlanReport extends Report implements ConnectionListener {
+	private String planFileName;
+	private DataOutputStream planOut;
+
+	/**
+	 * Constructor. Creates the contact plan file.
+	 */
+	public ContactPlanReport() {
+		String name = getOutputFileName();
+		if (name.endsWith(OUT_SUFFIX)) {
+			name = name.substring(0, name.length() - OUT_SUFFIX.length());
+		}
+		if (!name.endsWith(ContactPlanReader.PLAN_EXT)) {
+			name += ContactPlanReader.PLAN_EXT;
+		}
+		this.planFileName = name;
+
+		try {
+			this.planOut = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(planFileName)));
+			planOut.writeInt(ContactPlanReader.PLAN_MAGIC);
+			planOut.writeInt(ContactPlanReader.PLAN_VERSION);
+		} catch (IOException e) {
+			throw new SimError("Couldn't create contact plan '" +
+					planFileName + "'", e);
+		}
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		writeEvent(host1, host2, true);
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		writeEvent(host1, host2, false);
+	}
+
+	/**
+	 * Writes a connection event to the plan
+	 * @param from The host whose interface (dis)connected
+	 * @param to The other host
+	 * @param up True if the connection went up
+	 */
+	private void writeEvent(DTNHost from, DTNHost to, boolean up) {
+		try {
+			planOut.writeDouble(getSimTime());
+			planOut.writeInt(from.getAddress());
+			planOut.writeInt(to.getAddress());
+			planOut.writeBoolean(up);
+		} catch (IOException e) {
+			throw new SimError("Couldn't write contact plan '" +
+					planFileName + "'", e);
+		}
+	}
+
+	@Override
+	public void done() {
+		try {
+			planOut.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't write contact plan '" +
+					planFileName + "'", e);
+		}
+		super.done();
+	}
+}
@@ -61,10 +61,10 @@ public class MessageGraphvizReport extends Report implements MessageListener {
 		
 		for (Message m : deliveredMessages) {
 			List<DTNHost> path = m.getHops();
-			String pathString = path.remove(0).toString(); // start node
+			String pathString = path.get(0).toString(); // start node
 
-			for (DTNHost next : path) {
-				pathString += "->" + next.toString();
+			for (int i=1; i<path.size(); i++) {
+				pathString += "->" + path.get(i).toString();
 			}
 			
 			write (pathString + ";");
@@ -9,6 +9,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -256,6 +257,15 @@ public abstract class Report {
 		this.prefix = txt;
 	}
 	
+	/**
+	 * Returns the name of the report's output file (without the number
+	 * suffix of intervalled reports)
+	 * @return The output file name
+	 */
+	protected String getOutputFileName() {
+		return this.outFileName;
+	}
+
 	/**
 	 * Returns the name of the scenario as read from the settings
 	 * @return the name of the scenario as read from the settings
@@ -313,6 +323,18 @@ public abstract class Report {
 		return this.warmupIDs.contains(id);
 	}
 	
+	/**
+	 * Called when the simulation has been restored from a checkpoint. The
+	 * messages that existed at the time of the checkpoint are handled like
+	 * the messages created during the warm up period.
+	 * @param messageIds IDs of the messages in the restored simulation
+	 */
+	public void simulationRestored(Collection<String> messageIds) {
+		for (String id : messageIds) {
+			addWarmupID(id);
+		}
+	}
+	
 	/**
 	 * Returns a Settings object initialized for the report class' name space
 	 * that uses {@value REPORT_NS} as the secondary name space.
@@ -0,0 +1,119 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import java.util.List;
+
+import core.DTNHost;
+import core.Settings;
+import core.UpdateListener;
+import core.UpdateProfiler;
+
+/**
+ * Reports where the wall clock time of the simulation goes. Turns on the
+ * {@link UpdateProfiler} and writes a line every "granularity" simulated
+ * seconds. The line contains the simulation time, the wall clock time
+ * (milliseconds) since the previous line, the time spent in every phase of
+ * the simulation loop (milliseconds) and the values of the event counters
+ * since the previous line. The first line contains the names of the
+ * columns.
+ */
+public class UpdateProfileReport extends Report implements UpdateListener {
+	/** Reporting granularity -setting id ({@value}).
+	 * Defines the interval how often (seconds) a new line is written.
+	 * Default is {@value #DEF_GRANULARITY}. */
+	public static final String GRANULARITY = "granularity";
+	/** Default value for the granularity setting ({@value}) */
+	public static final int DEF_GRANULARITY = 60;
+	/** nanoseconds in a millisecond */
+	private static final double NS_IN_MS = 1000000.0;
+
+	/** value of the granularity setting */
+	protected final int granularity;
+	/** time of last line */
+	protected double lastUpdate;
+	/** wall clock time of last line (ns) */
+	private long lastWallTime;
+	/** phase times at the last line */
+	private long[] lastTimes;
+	/** counter values at the last line */
+	private long[] lastCounts;
+
+	/**
+	 * Constructor. Reads the settings, initializes the report module and
+	 * turns on profiling.
+	 */
+	public UpdateProfileReport() {
+		Settings settings = getSettings();
+		this.granularity = settings.getInt(GRANULARITY, DEF_GRANULARITY);
+		settings.ensurePositiveValue(granularity, GRANULARITY);
+		this.lastTimes = new long[UpdateProfiler.PHASE_NAMES.length];
+		this.lastCounts = new long[UpdateProfiler.COUNTER_NAMES.length];
+
+		UpdateProfiler.setEnabled(true);
+		init();
+	}
+
+	@Override
+	protected void init() {
+		super.init();
+		this.lastUpdate = getSimTime();
+		this.lastWallTime = System.nanoTime();
+
+		String header = "simTime wallTime";
+		for (String name : UpdateProfiler.PHASE_NAMES) {
+			header += " " + name;
+		}
+		for (String name : UpdateProfiler.COUNTER_NAMES) {
+			header += " " + name;
+		}
+		write(header);
+	}
+
+	/**
+	 * Writes a new line if "granularity" seconds have passed since the
+	 * last line.
+	 * @param hosts All the hosts in the world
+	 */
+	public void updated(List<DTNHost> hosts) {
+		double simTime = getSimTime();
+		if (simTime - lastUpdate >= granularity) {
+			writeLine();
+			this.lastUpdate = simTime - simTime % granularity;
+		}
+	}
+
+	/**
+	 * Writes the times and counter values since the previous line
+	 */
+	private void writeLine() {
+		long wallTime = System.nanoTime();
+		String line = format(getSimTime()) + " " +
+			format((wallTime - lastWallTime) / NS_IN_MS);
+		this.lastWallTime = wallTime;
+
+		for (int i=0; i<lastTimes.length; i++) {
+			long time = UpdateProfiler.getTime(i);
+			line += " " + format((time - lastTimes[i]) / NS_IN_MS);
+			lastTimes[i] = time;
+		}
+		for (int i=0; i<lastCounts.length; i++) {
+			long count = UpdateProfiler.getCount(i);
+			line += " " + (count - lastCounts[i]);
+			lastCounts[i] = count;
+		}
+
+		write(line);
+	}
+
+	@Override
+	public void done() {
+		if (getSimTime() > lastUpdate) {
+			writeLine();
+			this.lastUpdate = getSimTime();
+		}
+		super.done();
+	}
+}
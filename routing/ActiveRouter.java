@@ -4,17 +4,26 @@
  */
 package routing;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 
+import routing.drop.DropPolicy;
+import routing.drop.DropQueue;
 import routing.util.EnergyModel;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
+import util.LongHashMap;
+import util.TimerWheel;
 import util.Tuple;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -36,12 +45,53 @@ public abstract class ActiveRouter extends MessageRouter {
 	/** should messages that final recipient marks as delivered be deleted
 	 * from message buffer */
 	protected boolean deleteDelivered;
+	
+	/** Buffer drop policy -setting id ({@value}). Class name of a 
+	 * {@link DropPolicy} from the {@value #DROP_POLICY_PACKAGE} package. 
+	 * If set, the messages are dropped in the order the policy defines 
+	 * (see {@link #getNextMessageToRemove(boolean)}). By default, the 
+	 * message that was received first is dropped. */
+	public static final String DROP_POLICY_S = "dropPolicy";
+	/** package where the drop policies are looked from */
+	public static final String DROP_POLICY_PACKAGE = "routing.drop.";
+	
+	/** TTL timer wheel -setting id ({@value}). Boolean valued. If set to 
+	 * true, the expiry times of the messages are kept in a timer wheel and
+	 * the expired messages are dropped on the first update after their TTL
+	 * has run out, also while the router is sending (messages being sent 
+	 * are dropped after the transfer). If false, the whole buffer is 
+	 * checked once per TTL unit when the router is not sending. 
+	 * Default=false. */
+	public static final String TTL_TIMER_WHEEL_S = "ttlTimerWheel";
+	/** length of a tick of the TTL timer wheel (seconds) */
+	private static final double TTL_TIMER_TICK = 1.0;
+	
+	/** Fastest connection -setting id ({@value}). Boolean valued. If set 
+	 * to true and this host is connected to another host with more than one
+	 * interface, messages are sent to that host only using the fastest 
+	 * connection that is ready for a transfer (see 
+	 * {@link DTNHost#getFastestConnection(DTNHost)}). If false, any of the
+	 * connections can be used. Default=false. */
+	public static final String FASTEST_CONNECTION_S = "fastestConnection";
 		
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
 	
+	/** orders messages by their expiry times (and unique IDs) */
+	private static final Comparator<Message> EXPIRY_ORDER = 
+		new Comparator<Message>() {
+		public int compare(Message m1, Message m2) {
+			int c = Double.compare(m1.getExpiryTime(), m2.getExpiryTime());
+			if (c == 0) {
+				c = m1.getUniqueId() < m2.getUniqueId() ? -1 : 
+					(m1.getUniqueId() == m2.getUniqueId() ? 0 : 1);
+			}
+			return c;
+		}
+	};
+	
 	/** how often TTL check (discarding old messages) is performed */
-	private static int ttlCheckInterval = 60;
+	private int ttlCheckInterval;
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
@@ -49,6 +99,35 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
+	/** drop policy (or null if the default policy is used) */
+	private DropPolicy dropPolicy;
+	/** the buffered messages in the drop order (if drop policy is set) */
+	private DropQueue dropQueue;
+	/** should the TTL timer wheel be used */
+	private boolean ttlTimerWheel;
+	/** should only the fastest connection to a host be used for sending */
+	private boolean fastestConnection;
+	/** expiry timers of the buffered messages (if timer wheel is used) */
+	private TimerWheel<Message> expiryTimers;
+	/** the expiry timers keyed by the message ID numbers */
+	private LongHashMap<TimerWheel.Timer<Message>> expiryTimerOf;
+	/** reused list for the expired messages */
+	private List<Message> expiredMessages;
+	/** number of message buffer changes when the update was prepared */
+	private int preparedModCount;
+	/** copy of the messages made in the read phase (or null) */
+	private List<Message> preparedMessages;
+	/** message-connection tuples found in the read phase (or null) */
+	private List<Tuple<Message, Connection>> preparedForConnected;
+	/** the connections the tuples were found for */
+	private List<Connection> preparedConnections;
+	/** the read phase (stamp) when some message was destined to a host, 
+	 * indexed by the addresses of the hosts (or null) */
+	private int[] destinationStamps;
+	/** stamp of the last read phase or zero if nothing was prepared */
+	private int preparedStamp;
+	/** stamp of the next read phase */
+	private int nextStamp = 1;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -62,13 +141,22 @@ public abstract class ActiveRouter extends MessageRouter {
 		
 		this.deleteDelivered = s.getBoolean(DELETE_DELIVERED_S, false);
 		
+		if (s.contains(DROP_POLICY_S)) {
+			this.dropPolicy = (DropPolicy)s.createIntializedObject(
+					DROP_POLICY_PACKAGE + s.getSetting(DROP_POLICY_S));
+		} else {
+			this.dropPolicy = null; /* drop the oldest received message */
+		}
+		this.ttlTimerWheel = s.getBoolean(TTL_TIMER_WHEEL_S, false);
+		this.fastestConnection = s.getBoolean(FASTEST_CONNECTION_S, false);
+		
 		if (s.contains(EnergyModel.INIT_ENERGY_S)) {
 			this.energy = new EnergyModel(s);
 		} else {
 			this.energy = null; /* no energy model */
 		}
 		
-		ttlCheckInterval = 
+		this.ttlCheckInterval = 
 				(new Settings().getBoolean(Message.TTL_SECONDS_S, false) 
 						? 1 : 60);
 	}
@@ -81,6 +169,10 @@ public abstract class ActiveRouter extends MessageRouter {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
 		this.policy = r.policy;
+		this.dropPolicy = r.dropPolicy;
+		this.ttlTimerWheel = r.ttlTimerWheel;
+		this.fastestConnection = r.fastestConnection;
+		this.ttlCheckInterval = r.ttlCheckInterval;
 		this.energy = (r.energy != null ? r.energy.replicate() : null);
 	}
 	
@@ -89,8 +181,60 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		if (this.dropPolicy != null) {
+			this.dropQueue = new DropQueue(this.dropPolicy, host);
+		}
+		if (this.ttlTimerWheel) {
+			this.expiryTimers = new TimerWheel<Message>(TTL_TIMER_TICK, 
+					SimClock.getTime());
+			this.expiryTimerOf = new LongHashMap<TimerWheel.Timer<Message>>();
+			this.expiredMessages = new ArrayList<Message>();
+		}
 	}
 	
+	/**
+	 * Returns true if there are no applications nor an energy model (whose
+	 * state is not checkpointed)
+	 */
+	@Override
+	protected boolean isBaseStateCheckpointable() {
+		return super.isBaseStateCheckpointable() && this.energy == null;
+	}
+
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeDouble(this.lastTtlCheck);
+		out.writeInt(this.sendingConnections.size());
+		for (Connection con : this.sendingConnections) {
+			out.writeConnection(con);
+		}
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		if (this.dropQueue != null) {
+			this.dropQueue.clear();
+			for (Message m : getMessageCollection()) {
+				this.dropQueue.add(m);
+			}
+		}
+		if (this.expiryTimers != null) {
+			this.expiryTimers.clear(SimClock.getTime());
+			this.expiryTimerOf.clear();
+			for (Message m : getMessageCollection()) {
+				scheduleExpiry(m, getExpiryCheckTime(m));
+			}
+		}
+		this.lastTtlCheck = in.readDouble();
+		int nrofConnections = in.readInt();
+		this.sendingConnections.clear();
+		for (int i=0; i<nrofConnections; i++) {
+			this.sendingConnections.add(in.readConnection());
+		}
+	}
+
 	/**
 	 * Called when a connection's state changes. If energy modeling is enabled,
 	 * and a new connection is created to this node, reduces the energy for the
@@ -111,6 +255,9 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 		
 		DTNHost other = con.getOtherNode(getHost());
+		if (!mayHaveMessagesFor(other)) {
+			return false;
+		}
 		/* do a copy to avoid concurrent modification exceptions 
 		 * (startTransfer may remove messages) */
 		ArrayList<Message> temp = 
@@ -177,7 +324,10 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * @param m The message to transfer
 	 * @param con The connection to use
 	 * @return the value returned by 
-	 * {@link Connection#startTransfer(DTNHost, Message)}
+	 * {@link Connection#startTransfer(DTNHost, Message)} or 
+	 * {@link MessageRouter#TRY_LATER_BUSY} if the connection is not ready or
+	 * (with the {@link #FASTEST_CONNECTION_S} setting) a faster connection
+	 * to the same host should be used
 	 */
 	protected int startTransfer(Message m, Connection con) {
 		int retVal;
@@ -186,6 +336,10 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY;
 		}
 		
+		if (fastestConnection && !isFastestConnection(con)) {
+			return TRY_LATER_BUSY; /* the faster connection is tried instead */
+		}
+		
 		if (!policy.acceptSending(getHost(), 
 				con.getOtherNode(getHost()), con, m)) {
 			return MessageRouter.DENIED_POLICY;
@@ -204,6 +358,18 @@ public abstract class ActiveRouter extends MessageRouter {
 		return retVal;
 	}
 	
+	/**
+	 * Returns true if the connection is the fastest ready connection between
+	 * this host and the other host of the connection
+	 * @param con The connection to check
+	 * @return True if no faster connection to the other host is ready
+	 */
+	private boolean isFastestConnection(Connection con) {
+		Connection fastest = getHost().getFastestConnection(
+				con.getOtherNode(getHost()));
+		return fastest == null || fastest == con;
+	}
+	
 	/**
 	 * Makes rudimentary checks (that we have at least one message and one
 	 * connection) about can this router start transfer.
@@ -264,8 +430,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/** 
-	 * Removes messages from the buffer (oldest first) until
-	 * there's enough space for the new message.
+	 * Removes messages from the buffer (oldest first or in the order of 
+	 * the drop policy) until there's enough space for the new message.
 	 * @param size Size of the new message 
 	 * transferred, the transfer is aborted before message is removed
 	 * @return True if enough space could be freed, false if not
@@ -293,9 +459,16 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL is less than zero. If the TTL timer wheel 
+	 * is used, only the messages whose expiry timers have expired are 
+	 * checked.
 	 */
 	protected void dropExpiredMessages() {
+		if (this.expiryTimers != null) {
+			dropExpiredTimers();
+			return;
+		}
+		
 		Message[] messages = getMessageCollection().toArray(new Message[0]);
 		for (int i=0; i<messages.length; i++) {
 			int ttl = messages[i].getTtl(); 
@@ -305,6 +478,66 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 	
+	/**
+	 * Drops the messages whose expiry timers have expired. Messages whose 
+	 * TTL hasn't quite run out yet or that are being sent are checked 
+	 * again on the next update.
+	 */
+	private void dropExpiredTimers() {
+		double now = SimClock.getTime();
+		List<Message> expired = this.expiredMessages;
+		this.expiryTimers.advance(now, expired);
+		if (expired.isEmpty()) {
+			return;
+		}
+		
+		if (expired.size() > 1) {
+			/* the same order also after restoring a checkpoint */
+			Collections.sort(expired, EXPIRY_ORDER);
+		}
+		for (Message m : expired) {
+			this.expiryTimerOf.remove(m.getIdNumber());
+		}
+		for (Message m : expired) {
+			if (m.getTtl() <= 0 && !isSending(m.getId())) {
+				deleteMessage(m.getId(), true);
+			} else {
+				scheduleExpiry(m, Math.nextUp(now));
+			}
+		}
+		expired.clear();
+	}
+	
+	/**
+	 * Returns the time when the TTL of a message becomes zero. TTLs are 
+	 * whole minutes (or seconds) rounded down, so {@link Message#getTtl()}
+	 * returns zero one unit before the message's expiry time.
+	 * @param m The message
+	 * @return The time (Double.MAX_VALUE if the TTL is infinite)
+	 */
+	private double getExpiryCheckTime(Message m) {
+		double expiry = m.getExpiryTime();
+		return expiry == Double.MAX_VALUE ? expiry : expiry - ttlCheckInterval;
+	}
+	
+	/**
+	 * Schedules an expiry timer for a buffered message (replaces the 
+	 * message's old timer)
+	 * @param m The message
+	 * @param time When the message's TTL should be checked
+	 */
+	private void scheduleExpiry(Message m, double time) {
+		TimerWheel.Timer<Message> old = this.expiryTimerOf.remove(
+				m.getIdNumber());
+		if (old != null) {
+			this.expiryTimers.cancel(old);
+		}
+		if (time != Double.MAX_VALUE) {
+			this.expiryTimerOf.put(m.getIdNumber(), 
+					this.expiryTimers.schedule(m, time));
+		}
+	}
+	
 	/**
 	 * Tries to make room for a new message. Current implementation simply
 	 * calls {@link #makeRoomForMessage(int)} and ignores the return value.
@@ -319,7 +552,9 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	/**
 	 * Returns the oldest (by receive time) message in the message buffer 
-	 * (that is not being sent if excludeMsgBeingSent is true).
+	 * (that is not being sent if excludeMsgBeingSent is true). If a drop 
+	 * policy is set (see {@link #DROP_POLICY_S}), returns the first such 
+	 * message in the drop order of the policy instead.
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
 	 * being sent from the oldest message check (i.e. if oldest message is
 	 * being sent, the second oldest message is returned)
@@ -328,6 +563,15 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
+		if (this.dropQueue != null) {
+			for (Message m : this.dropQueue) {
+				if (!excludeMsgBeingSent || !isSending(m.getId())) {
+					return m;
+				}
+			}
+			return null;
+		}
+		
 		Collection<Message> messages = this.getMessageCollection();
 		Message oldest = null;
 		for (Message m : messages) {
@@ -347,6 +591,104 @@ public abstract class ActiveRouter extends MessageRouter {
 		return oldest;
 	}
 	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		if (this.dropQueue != null) {
+			this.dropQueue.add(m);
+		}
+		if (this.expiryTimers != null) {
+			scheduleExpiry(m, getExpiryCheckTime(m));
+		}
+		super.addToMessages(m, newMessage);
+	}
+	
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null && this.dropQueue != null) {
+			this.dropQueue.remove(m);
+		}
+		if (m != null && this.expiryTimers != null) {
+			TimerWheel.Timer<Message> timer = this.expiryTimerOf.remove(
+					m.getIdNumber());
+			if (timer != null) {
+				this.expiryTimers.cancel(timer);
+			}
+		}
+		return m;
+	}
+	
+	/**
+	 * Prepares the next update in the read phase of a two-phase update if
+	 * this host has connections: copies the messages (for 
+	 * {@link #tryAllMessagesToAllConnections()}), finds the 
+	 * message-connection tuples for {@link #getMessagesForConnected()} and
+	 * records the hosts the messages are destined to (for
+	 * {@link #requestDeliverableMessages(Connection)}). The prepared data 
+	 * is used only if the message buffer (and, for the tuples, the 
+	 * connections) have not changed since, so the results are the same as
+	 * without preparing.
+	 */
+	@Override
+	public void prepareUpdate() {
+		this.preparedMessages = null;
+		this.preparedForConnected = null;
+		this.preparedConnections = null;
+		this.preparedStamp = 0;
+
+		List<Connection> connections = getConnections();
+		if (connections.size() == 0) {
+			return; /* peers are unlikely to ask for messages */
+		}
+
+		this.preparedModCount = getMessagesModCount();
+		this.preparedStamp = this.nextStamp++;
+		List<Message> messages = 
+			new ArrayList<Message>(this.getMessageCollection());
+		for (int i=0, n = messages.size(); i < n; i++) {
+			int address = messages.get(i).getTo().getAddress();
+			if (this.destinationStamps == null) {
+				this.destinationStamps = new int[address + 1];
+			}
+			else if (address >= this.destinationStamps.length) {
+				this.destinationStamps = Arrays.copyOf(this.destinationStamps,
+						address + 1);
+			}
+			this.destinationStamps[address] = this.preparedStamp;
+		}
+		this.preparedForConnected = findMessagesForConnected(messages, 
+				connections);
+		this.preparedConnections = connections;
+		this.preparedMessages = messages;
+	}
+
+	/**
+	 * Returns true if the message buffer has not changed since the update
+	 * was prepared
+	 * @return true if the data prepared in {@link #prepareUpdate()} is valid
+	 */
+	private boolean isPreparedValid() {
+		return this.preparedStamp != 0 && 
+			this.preparedModCount == getMessagesModCount();
+	}
+
+	/**
+	 * Returns false if none of the messages of this router is destined to 
+	 * the given host according to the data prepared in the read phase, 
+	 * true if some message may be for the host
+	 * @param other The host
+	 * @return false if there are certainly no messages for the host
+	 */
+	private boolean mayHaveMessagesFor(DTNHost other) {
+		if (!isPreparedValid()) {
+			return true;
+		}
+		int address = other.getAddress();
+		return this.destinationStamps != null &&
+			address < this.destinationStamps.length &&
+			this.destinationStamps[address] == this.preparedStamp;
+	}
+
 	/**
 	 * Returns a list of message-connections tuples of the messages whose
 	 * recipient is some host that we're connected to at the moment.
@@ -358,10 +700,30 @@ public abstract class ActiveRouter extends MessageRouter {
 			return new ArrayList<Tuple<Message, Connection>>(0); 
 		}
 
+		List<Tuple<Message, Connection>> forTuples = 
+			this.preparedForConnected;
+		if (forTuples != null && isPreparedValid() && 
+				this.preparedConnections == getConnections()) {
+			this.preparedForConnected = null; /* the caller may modify it */
+			return forTuples;
+		}
+		return findMessagesForConnected(getMessageCollection(), 
+				getConnections());
+	}
+
+	/**
+	 * Finds the message-connection tuples of the given messages whose 
+	 * recipient is the other host of some of the given connections
+	 * @param messages The messages
+	 * @param connections The connections
+	 * @return a list of message-connections tuples
+	 */
+	private List<Tuple<Message, Connection>> findMessagesForConnected(
+			Collection<Message> messages, List<Connection> connections) {
 		List<Tuple<Message, Connection>> forTuples = 
 			new ArrayList<Tuple<Message, Connection>>();
-		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
+		for (Message m : messages) {
+			for (Connection con : connections) {
 				DTNHost to = con.getOtherNode(getHost());
 				if (m.getTo() == to) {
 					forTuples.add(new Tuple<Message, Connection>(m,con));
@@ -458,8 +820,13 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages = 
-			new ArrayList<Message>(this.getMessageCollection());
+		List<Message> messages = this.preparedMessages;
+		if (messages != null && isPreparedValid()) {
+			this.preparedMessages = null; /* sorted below */
+		}
+		else {
+			messages = new ArrayList<Message>(this.getMessageCollection());
+		}
 		this.sortByQueueMode(messages);
 
 		return tryMessagesToConnections(messages, connections);
@@ -622,8 +989,11 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 		
-		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= ttlCheckInterval && 
+		/* time to do a TTL check and drop old messages? Only if not sending
+		 * (unless the expiry times are in the timer wheel) */
+		if (this.expiryTimers != null) {
+			dropExpiredMessages();
+		} else if (SimClock.getTime() - lastTtlCheck >= ttlCheckInterval && 
 				sendingConnections.size() == 0) {
 			dropExpiredMessages();
 			lastTtlCheck = SimClock.getTime();
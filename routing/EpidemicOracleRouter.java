@@ -19,8 +19,14 @@ import core.*;
  */
 public class EpidemicOracleRouter extends ActiveRouter {
 	
-	/** List of all routers in this node group */
-	private static List<EpidemicOracleRouter> allRouters;
+	/** List of all routers in this node group (one per simulation 
+	 * context) */
+	private static final SimulationContext.Local<List<EpidemicOracleRouter>>
+		allRouters = new SimulationContext.Local<List<EpidemicOracleRouter>>() {
+			protected List<EpidemicOracleRouter> initialValue() {
+				return new ArrayList<EpidemicOracleRouter>();
+			}
+		};
 
 	static {
 		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
@@ -42,7 +48,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
 		super(r);
-		allRouters.add(this);
+		allRouters.get().add(this);
 	}
 	
 	@Override
@@ -112,7 +118,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 
 		if (m.getTo() == this.getHost()) {
-			for (EpidemicOracleRouter r : allRouters) {
+			for (EpidemicOracleRouter r : allRouters.get()) {
 				if (r != this && r != from.getRouter()) {
 					r.removeDeliveredMessage(id);
 				}
@@ -175,7 +181,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 * Resets the static router list
 	 */
 	public static void reset() {
-		allRouters = new ArrayList<EpidemicOracleRouter>();
+		allRouters.set(new ArrayList<EpidemicOracleRouter>());
 	}
 
 }
\ No newline at end of file
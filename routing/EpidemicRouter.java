@@ -48,6 +48,11 @@ public class EpidemicRouter extends ActiveRouter {
 	}
 	
 	
+	@Override
+	public boolean isCheckpointSupported() {
+		return isBaseStateCheckpointable();
+	}
+
 	@Override
 	public EpidemicRouter replicate() {
 		return new EpidemicRouter(this);
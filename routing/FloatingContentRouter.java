@@ -60,7 +60,9 @@ public class FloatingContentRouter extends ActiveRouter {
 	public static final int DEL_ENCOUNTER   = 0;
 	public static final int DEL_IMMEDIATE   = 1;
 
-        private static Random locRng = null;
+	/** rng for the location updates (one per simulation context) */
+	private static final SimulationContext.Local<Random> locRng =
+		new SimulationContext.Local<Random>();
 
 	private int seed = 1;
 	private int deletion_policy = DEL_ENCOUNTER;
@@ -126,8 +128,8 @@ public class FloatingContentRouter extends ActiveRouter {
 
 		seed = fcSettings.getInt(FC_SEED);
 
-		if (FloatingContentRouter.locRng == null) {
-		    FloatingContentRouter.locRng = new Random (seed);
+		if (FloatingContentRouter.locRng.get() == null) {
+		    FloatingContentRouter.locRng.set(new Random (seed));
 		}
 
 		if (fcSettings.contains (FC_DELETION)) {
@@ -235,7 +237,8 @@ public class FloatingContentRouter extends ActiveRouter {
 		this.location_error_max = r.location_error_max;
 		this.last_known_location = r.last_known_location;
 		this.ratio = r.ratio;
-		if (ratio == 1.0 || FloatingContentRouter.locRng.nextDouble () < ratio) {
+		if (ratio == 1.0 ||
+				FloatingContentRouter.locRng.get().nextDouble () < ratio) {
 		    this.location_update_interval = r.location_update_interval;
 		    this.location_error = r.location_error;
 		    this.location_source = r.location_source;
@@ -4,19 +4,26 @@
  */
 package routing;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import routing.util.RoutingInfo;
 
+import util.LongHashMap;
 import util.Tuple;
 
 import core.Application;
+import core.BufferListener;
+import core.CheckpointInput;
+import core.CheckpointOutput;
+import core.Checkpointable;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -25,11 +32,12 @@ import core.Settings;
 import core.SettingsError;
 import core.SimClock;
 import core.SimError;
+import core.UpdateProfiler;
 
 /**
  * Superclass for message routers.
  */
-public abstract class MessageRouter {
+public abstract class MessageRouter implements Checkpointable {
 	/** Message buffer size -setting id ({@value}). Integer value in bytes.*/
 	public static final String B_SIZE_S = "bufferSize";
 	/**
@@ -81,18 +89,39 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -99;
 	
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
-	/** The messages this router is carrying */
+	/** The messages being transferred keyed by the message ID number and
+	 * the address of the previous hop (see {@link #incomingKey}) */
+	private LongHashMap<Message> incomingMessages;
+	/** Number of the incoming messages with each ID, keyed by the message
+	 * ID number (for {@link #isIncomingMessage(String)}) */
+	private LongHashMap<Integer> incomingCounts;
+	/** The messages this router is carrying. Note: still keyed by the
+	 * message ID strings. The iteration order of this map is the send order
+	 * of the random and FIFO queue modes and it is restored from 
+	 * checkpoints, so keying it by the ID numbers would change the results
+	 * of existing scenarios. */
 	private HashMap<String, Message> messages; 
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
-	/** The messages that Applications on this router have blacklisted */
-	private HashMap<String, Object> blacklistedMessages;
+	/** largest number of messages in the buffer (for checkpoints) */
+	private int maxNrofMessages;
+	/** number of changes to the message buffer (see 
+	 * {@link #getMessagesModCount()}) */
+	private int messagesModCount;
+	/** The messages this router has received as the final recipient
+	 * keyed by the message ID numbers (see {@link Message#getIdNumber()}) */
+	private LongHashMap<Message> deliveredMessages;
+	/** The IDs of the messages that Applications on this router have 
+	 * blacklisted keyed by the message ID numbers */
+	private LongHashMap<String> blacklistedMessages;
+	/** reused buffer for the keys of the incoming messages (checkpoints) */
+	private long[] incomingKeys;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
 	private int bufferSize;
+	/** total size of the messages in the buffer (bytes) */
+	private long occupancy;
+	/** listeners informed about the buffer occupancy changes (or null) */
+	private List<BufferListener> bListeners;
 	/** TTL for all messages */
 	protected int msgTtl;
 	/** Queue mode for sending messages */
@@ -139,10 +168,13 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
+		this.incomingMessages = new LongHashMap<Message>();
+		this.incomingCounts = new LongHashMap<Integer>();
 		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
-		this.blacklistedMessages = new HashMap<String, Object>();
+		this.messagesModCount++;
+		this.occupancy = 0;
+		this.deliveredMessages = new LongHashMap<Message>();
+		this.blacklistedMessages = new LongHashMap<String>();
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -177,6 +209,30 @@ public abstract class MessageRouter {
 		}
 	}
 	
+	/**
+	 * Read phase of a two-phase update: may prepare the next 
+	 * {@link #update()} call, e.g., by collecting data from the message
+	 * buffer. The prepared data must be used only if the buffer has not 
+	 * changed since (see {@link #getMessagesModCount()}). This method is 
+	 * called concurrently for different routers (see 
+	 * {@link core.World#UPDATE_THREADS_S}), so it must not change the state
+	 * of the other hosts nor call the identity based 
+	 * {@link Object#hashCode()} of an object (e.g., by using it as a hash 
+	 * map key) because that could change the hash codes the simulation 
+	 * objects get. Default implementation does nothing.
+	 */
+	public void prepareUpdate() {
+	}
+	
+	/**
+	 * Returns the number of changes to the message buffer: the number 
+	 * changes when a message is added to or removed from the buffer.
+	 * @return The number of changes to the message buffer
+	 */
+	protected int getMessagesModCount() {
+		return this.messagesModCount;
+	}
+	
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
@@ -210,7 +266,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.containsKey(m.getIdNumber()));
 	}
 	
 	/** 
@@ -223,7 +279,11 @@ public abstract class MessageRouter {
 	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
 	 */
 	protected boolean isBlacklistedMessage(String id) {
-		return this.blacklistedMessages.containsKey(id);
+		if (this.blacklistedMessages.isEmpty()) {
+			return false;
+		}
+		int number = Message.findIdNumber(id);
+		return number >= 0 && this.blacklistedMessages.containsKey(number);
 	}
 	
 	/**
@@ -262,17 +322,30 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public int getFreeBufferSize() {
-		int occupancy = 0;
-		
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 		
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-		
-		return this.getBufferSize() - occupancy;
+		return (int)(this.getBufferSize() - this.occupancy);
+	}
+	
+	/**
+	 * Returns the total size of the messages in the buffer. The value is 
+	 * updated when messages are added to or removed from the buffer, so 
+	 * this doesn't go through the messages.
+	 * @return The number of bytes the buffered messages take
+	 */
+	public long getOccupiedBufferSize() {
+		return this.occupancy;
+	}
+	
+	/**
+	 * Sets the listeners that are informed when the buffer occupancy
+	 * changes
+	 * @param bListeners The buffer listeners (or null for none)
+	 */
+	public void setBufferListeners(List<BufferListener> bListeners) {
+		this.bListeners = bListeners;
 	}
 	
 	/**
@@ -322,6 +395,9 @@ public abstract class MessageRouter {
 		this.putToIncomingBuffer(newMessage, from);		
 		newMessage.addNodeOnPath(this.host);
 		
+		UpdateProfiler.count(UpdateProfiler.TRANSFERS_STARTED);
+		UpdateProfiler.count(UpdateProfiler.LISTENER_CALLBACKS, 
+				this.mListeners.size());
 		for (MessageListener ml : this.mListeners) {
 			ml.messageTransferStarted(newMessage, from, getHost());
 		}
@@ -372,13 +448,15 @@ public abstract class MessageRouter {
 
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.put(incoming.getIdNumber(), aMessage);
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
-			this.blacklistedMessages.put(id, null);
+			this.blacklistedMessages.put(incoming.getIdNumber(), id);
 		}
 		
+		UpdateProfiler.count(UpdateProfiler.LISTENER_CALLBACKS, 
+				this.mListeners.size());
 		for (MessageListener ml : this.mListeners) {
 			ml.messageTransferred(aMessage, from, this.host,
 					isFirstDelivery);
@@ -394,7 +472,7 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		putIncoming(m, from.getAddress());
 	}
 	
 	/**
@@ -405,7 +483,49 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int number = Message.findIdNumber(id);
+		if (number < 0) {
+			return null;
+		}
+		Message m = this.incomingMessages.remove(incomingKey(number, 
+				from.getAddress()));
+		if (m != null) {
+			int count = this.incomingCounts.get(number);
+			if (count == 1) {
+				this.incomingCounts.remove(number);
+			}
+			else {
+				this.incomingCounts.put(number, count - 1);
+			}
+		}
+		return m;
+	}
+	
+	/**
+	 * Puts a message to the incoming messages buffer and counts it
+	 * @param m The message to put
+	 * @param fromAddress Address of the host the message is from 
+	 * (previous hop)
+	 */
+	private void putIncoming(Message m, int fromAddress) {
+		int number = m.getIdNumber();
+		if (this.incomingMessages.put(incomingKey(number, fromAddress), 
+				m) == null) {
+			Integer count = this.incomingCounts.get(number);
+			this.incomingCounts.put(number, count == null ? 1 : count + 1);
+		}
+	}
+	
+	/**
+	 * Returns the key of an incoming message. Two messages with the same
+	 * ID are distinguished by the from host.
+	 * @param idNumber Number of the message ID
+	 * @param fromAddress Address of the host the message is from 
+	 * (previous hop)
+	 * @return The key
+	 */
+	private static long incomingKey(int idNumber, int fromAddress) {
+		return ((long)idNumber << 32) | (fromAddress & 0xFFFFFFFFL);
 	}
 	
 	/**
@@ -415,7 +535,11 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		if (this.incomingMessages.isEmpty()) {
+			return false;
+		}
+		int number = Message.findIdNumber(id);
+		return number >= 0 && this.incomingCounts.containsKey(number);
 	}
 	
 	/**
@@ -427,9 +551,20 @@ public abstract class MessageRouter {
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
 
-		this.messages.put(m.getId(), m);
+		Message old = this.messages.put(m.getId(), m);
+		this.messagesModCount++;
+		if (this.messages.size() > this.maxNrofMessages) {
+			this.maxNrofMessages = this.messages.size();
+		}
+		this.occupancy += m.getSize();
+		if (old != null) {
+			this.occupancy -= old.getSize();
+		}
+		bufferOccupancyChanged();
 		
 		if (newMessage) {
+			UpdateProfiler.count(UpdateProfiler.LISTENER_CALLBACKS, 
+					this.mListeners.size());
 			for (MessageListener ml : this.mListeners) {
 				ml.newMessage(m);
 			}
@@ -443,9 +578,28 @@ public abstract class MessageRouter {
 	 */
 	protected Message removeFromMessages(String id) {
 		Message m = this.messages.remove(id);
+		if (m != null) {
+			this.messagesModCount++;
+			this.occupancy -= m.getSize();
+			bufferOccupancyChanged();
+		}
 		return m;
 	}
 	
+	/**
+	 * Informs the buffer listeners (if any) about the current occupancy
+	 */
+	private void bufferOccupancyChanged() {
+		if (this.bListeners == null || this.bListeners.isEmpty()) {
+			return;
+		}
+		UpdateProfiler.count(UpdateProfiler.LISTENER_CALLBACKS, 
+				this.bListeners.size());
+		for (BufferListener bl : this.bListeners) {
+			bl.bufferOccupancyChanged(this.host, this.occupancy);
+		}
+	}
+	
 	/**
 	 * This method should be called (on the receiving host) when a message 
 	 * transfer was aborted.
@@ -461,6 +615,8 @@ public abstract class MessageRouter {
 					" to abort in " + this.host);
 		}		
 		
+		UpdateProfiler.count(UpdateProfiler.LISTENER_CALLBACKS, 
+				this.mListeners.size());
 		for (MessageListener ml : this.mListeners) {
 			ml.messageTransferAborted(incoming, from, this.host);
 		}
@@ -491,6 +647,8 @@ public abstract class MessageRouter {
 		if (removed == null) throw new SimError("no message for id " +
 				id + " to remove at " + this.host);
 		
+		UpdateProfiler.count(UpdateProfiler.LISTENER_CALLBACKS, 
+				this.mListeners.size());
 		for (MessageListener ml : this.mListeners) {
 			ml.messageDeleted(removed, this.host, drop);
 		}
@@ -641,6 +799,109 @@ public abstract class MessageRouter {
 		return apps;
 	}
 
+	/**
+	 * Returns true if the state of this router can be written to a
+	 * simulation checkpoint (see {@link core.World#checkpoint(java.nio.file.Path)}).
+	 * Routers that support checkpoints must override this and, if they
+	 * have more state than the message buffers, the state methods.
+	 * This implementation returns false.
+	 * @return true if checkpointing is supported
+	 */
+	public boolean isCheckpointSupported() {
+		return false;
+	}
+
+	/**
+	 * Returns true if the state of this class can be written to a
+	 * checkpoint, i.e., there are no applications attached to the router.
+	 * Subclasses that return true from {@link #isCheckpointSupported()}
+	 * should check this too.
+	 * @return true if the router's base state can be checkpointed
+	 */
+	protected boolean isBaseStateCheckpointable() {
+		return this.applications.isEmpty();
+	}
+
+	/**
+	 * Writes the message buffers of the router. The messages are written in
+	 * the buffer's iteration order and the buffer is restored with the same
+	 * capacity so that the messages are iterated in the same order after
+	 * restoring.
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeInt(this.maxNrofMessages);
+		writeMessages(out, this.messages);
+		this.incomingKeys = this.incomingMessages.keys(this.incomingKeys);
+		out.writeInt(this.incomingMessages.size());
+		for (int i=0, n=this.incomingMessages.size(); i<n; i++) {
+			long key = this.incomingKeys[i];
+			out.writeInt((int)key); /* address of the previous hop */
+			out.writeMessage(this.incomingMessages.get(key));
+		}
+		List<Message> delivered = this.deliveredMessages.values();
+		out.writeInt(delivered.size());
+		for (Message m : delivered) {
+			out.writeMessage(m);
+		}
+		List<String> blacklisted = this.blacklistedMessages.values();
+		out.writeInt(blacklisted.size());
+		for (String id : blacklisted) {
+			out.writeUTF(id);
+		}
+	}
+
+	public void readState(CheckpointInput in) throws IOException {
+		this.maxNrofMessages = in.readInt();
+		int capacity = 16; /* HashMap's default */
+		while (this.maxNrofMessages > capacity * 3 / 4) {
+			capacity *= 2;
+		}
+		this.messages = new HashMap<String, Message>(capacity);
+		this.messagesModCount++;
+		readMessages(in, this.messages);
+		this.occupancy = 0;
+		for (Message m : this.messages.values()) {
+			this.occupancy += m.getSize();
+		}
+		this.incomingMessages.clear();
+		this.incomingCounts.clear();
+		int nrofIncoming = in.readInt();
+		for (int i=0; i<nrofIncoming; i++) {
+			int fromAddress = in.readInt();
+			putIncoming(in.readMessage(), fromAddress);
+		}
+		this.deliveredMessages.clear();
+		int nrofDelivered = in.readInt();
+		for (int i=0; i<nrofDelivered; i++) {
+			Message m = in.readMessage();
+			this.deliveredMessages.put(m.getIdNumber(), m);
+		}
+		this.blacklistedMessages.clear();
+		int nrofBlacklisted = in.readInt();
+		for (int i=0; i<nrofBlacklisted; i++) {
+			String id = in.readUTF();
+			this.blacklistedMessages.put(Message.getIdNumber(id), id);
+		}
+	}
+
+	private void writeMessages(CheckpointOutput out, Map<String, Message> map)
+			throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String, Message> e : map.entrySet()) {
+			out.writeUTF(e.getKey());
+			out.writeMessage(e.getValue());
+		}
+	}
+
+	private void readMessages(CheckpointInput in, Map<String, Message> map)
+			throws IOException {
+		int nrofMessages = in.readInt();
+		for (int i=0; i<nrofMessages; i++) {
+			String key = in.readUTF();
+			map.put(key, in.readMessage());
+		}
+	}
+
 	/**
 	 * Creates a replicate of this router. The replicate has the same
 	 * settings as this router but empty buffers and routing tables.
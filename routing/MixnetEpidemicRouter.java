@@ -3,6 +3,7 @@
  */
 package routing;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -18,8 +19,11 @@ import java.util.Set;
 
 import routing.util.RoutingInfo;
 
+import util.RestorableRandom;
 import util.Tuple;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -62,7 +66,26 @@ public class MixnetEpidemicRouter extends ActiveRouter {
         maxTime = mixnetSettings.getDouble("maxTime");
         activeDebug = mixnetSettings.getBoolean("activedebug");
 		//this.rng = new Random(getHost().toString().hashCode());
-		this.rng = new Random(25);
+		this.rng = new RestorableRandom(25);
+	}
+
+	@Override
+	public boolean isCheckpointSupported() {
+		return isBaseStateCheckpointable();
+	}
+
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeDouble(this.delayTimer);
+		out.writeRandom(this.rng);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.delayTimer = in.readDouble();
+		this.rng = in.readRandom();
 	}
 
     @Override
@@ -3,6 +3,7 @@
  */
 package routing;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -18,8 +19,11 @@ import java.util.Set;
 
 import routing.util.RoutingInfo;
 
+import util.RestorableRandom;
 import util.Tuple;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -77,12 +81,31 @@ public class MixnetSnWRouter extends ActiveRouter {
 		nrofbundle = mixnetSettings.getInt("nrofbundle");
         maxTime = mixnetSettings.getDouble("maxTime");
         activeDebug = mixnetSettings.getBoolean("activedebug");
-		this.rng = new Random(25);
+		this.rng = new RestorableRandom(25);
 
 		initialNrofCopies = mixnetSettings.getInt(NROF_COPIES);
 		isBinary = mixnetSettings.getBoolean(BINARY_MODE);
 	}
 
+	@Override
+	public boolean isCheckpointSupported() {
+		return isBaseStateCheckpointable();
+	}
+
+	@Override
+	public void writeState(CheckpointOutput out) throws IOException {
+		super.writeState(out);
+		out.writeDouble(this.delayTimer);
+		out.writeRandom(this.rng);
+	}
+
+	@Override
+	public void readState(CheckpointInput in) throws IOException {
+		super.readState(in);
+		this.delayTimer = in.readDouble();
+		this.rng = in.readRandom();
+	}
+
     @Override
 	public MessageRouter replicate() {
 		MixnetSnWRouter r = new MixnetSnWRouter(this);
@@ -0,0 +1,62 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.drop;
+
+import core.DTNHost;
+import core.Message;
+import core.Settings;
+
+/**
+ * Superclass of the buffer drop policies. A drop policy defines the order
+ * in which an active router drops messages when its buffer is full. The 
+ * order is given by a drop class and a priority that are computed once, 
+ * when a message is added to the buffer (see {@link DropQueue}). Messages 
+ * of a lower class are dropped before any message of a higher class and 
+ * within a class the message with the smallest priority is dropped first.
+ * All the routers of a group share the same policy object, so policies 
+ * must not have per-router state. Subclasses must have a constructor 
+ * with a {@link Settings} parameter.
+ */
+public abstract class DropPolicy {
+	
+	/**
+	 * Constructor.
+	 * @param s The settings of the router's host group
+	 */
+	public DropPolicy(Settings s) { }
+	
+	/**
+	 * Returns the drop priority of a message within its drop class
+	 * @param m The message
+	 * @return The priority (messages with smaller priority are dropped 
+	 * first)
+	 */
+	public abstract double getPriority(Message m);
+	
+	/**
+	 * Returns the drop class of a message. The default implementation puts 
+	 * all messages to the same class.
+	 * @param m The message
+	 * @return The drop class (messages of a lower class are dropped first)
+	 */
+	public int getDropClass(Message m) {
+		return 0;
+	}
+	
+	/**
+	 * Returns the drop class of a message in the buffer of the given host.
+	 * Policies whose classes depend on the host that has the message (and
+	 * not only on the message) override this. The default implementation 
+	 * returns {@link #getDropClass(Message)}.
+	 * @param m The message
+	 * @param host The host whose buffer the message is in (or null if 
+	 * not known)
+	 * @return The drop class (messages of a lower class are dropped first)
+	 */
+	public int getDropClass(Message m, DTNHost host) {
+		return getDropClass(m);
+	}
+	
+}
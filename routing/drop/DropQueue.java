@@ -0,0 +1,145 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.drop;
+
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import util.LongHashMap;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * The messages of a router's buffer sorted by the order they should be 
+ * dropped in. The order is defined by a {@link DropPolicy} and ties are 
+ * broken by the unique IDs of the messages, so the order doesn't depend 
+ * on the order the messages were added in. Adding and removing a message 
+ * takes O(log n) time.
+ */
+public class DropQueue implements Iterable<Message> {
+	private DropPolicy policy;
+	/** the host whose buffer the queue is for (or null) */
+	private DTNHost host;
+	/** the entries in the drop order */
+	private TreeSet<Entry> queue;
+	/** the entries keyed by the message ID numbers */
+	private LongHashMap<Entry> entries;
+	
+	/**
+	 * Creates a new, empty queue that is not bound to any host.
+	 * @param policy The policy that defines the drop order
+	 */
+	public DropQueue(DropPolicy policy) {
+		this(policy, null);
+	}
+	
+	/**
+	 * Creates a new, empty queue for the buffer of a host.
+	 * @param policy The policy that defines the drop order
+	 * @param host The host whose buffer the queue is for
+	 */
+	public DropQueue(DropPolicy policy, DTNHost host) {
+		this.policy = policy;
+		this.host = host;
+		this.queue = new TreeSet<Entry>();
+		this.entries = new LongHashMap<Entry>();
+	}
+	
+	/**
+	 * Adds a message to the queue. A message with the same ID that was in
+	 * the queue is replaced.
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		Entry e = new Entry(m, policy.getDropClass(m, host), 
+				policy.getPriority(m));
+		Entry old = this.entries.put(m.getIdNumber(), e);
+		if (old != null) {
+			this.queue.remove(old);
+		}
+		this.queue.add(e);
+	}
+	
+	/**
+	 * Removes a message from the queue
+	 * @param m The message to remove (or a message with the same ID)
+	 */
+	public void remove(Message m) {
+		Entry e = this.entries.remove(m.getIdNumber());
+		if (e != null) {
+			this.queue.remove(e);
+		}
+	}
+	
+	/**
+	 * Removes all messages from the queue
+	 */
+	public void clear() {
+		this.queue.clear();
+		this.entries.clear();
+	}
+	
+	/**
+	 * Returns the number of messages in the queue
+	 * @return The number of messages
+	 */
+	public int size() {
+		return this.queue.size();
+	}
+	
+	/**
+	 * Returns an iterator that returns the messages in the order they 
+	 * should be dropped. The queue must not be modified while iterating.
+	 * @return The iterator
+	 */
+	public Iterator<Message> iterator() {
+		final Iterator<Entry> i = this.queue.iterator();
+		return new Iterator<Message>() {
+			public boolean hasNext() {
+				return i.hasNext();
+			}
+
+			public Message next() {
+				return i.next().message;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	/**
+	 * A message and its drop order keys (computed when the message was 
+	 * added, so later changes in the message don't break the ordering)
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private Message message;
+		private int dropClass;
+		private double priority;
+		private int uniqueId;
+		
+		private Entry(Message message, int dropClass, double priority) {
+			this.message = message;
+			this.dropClass = dropClass;
+			this.priority = priority;
+			this.uniqueId = message.getUniqueId();
+		}
+
+		public int compareTo(Entry e) {
+			if (this.dropClass != e.dropClass) {
+				return this.dropClass < e.dropClass ? -1 : 1;
+			}
+			int c = Double.compare(this.priority, e.priority);
+			if (c != 0) {
+				return c;
+			}
+			if (this.uniqueId != e.uniqueId) {
+				return this.uniqueId < e.uniqueId ? -1 : 1;
+			}
+			return this.message.getId().compareTo(e.message.getId());
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.drop;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * Drop policy that drops the largest message first. Equally large messages 
+ * are dropped in the order they were received.
+ */
+public class LargestFirstDropPolicy extends DropPolicy {
+	
+	/**
+	 * Constructor.
+	 * @param s The settings of the router's host group
+	 */
+	public LargestFirstDropPolicy(Settings s) {
+		super(s);
+	}
+	
+	@Override
+	public int getDropClass(Message m) {
+		return -m.getSize();
+	}
+	
+	@Override
+	public double getPriority(Message m) {
+		return m.getReceiveTime();
+	}
+	
+}
@@ -0,0 +1,53 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.drop;
+
+import core.DTNHost;
+import core.Message;
+import core.Settings;
+
+/**
+ * Drop policy for the mixnet routers (e.g., 
+ * {@link routing.MixnetEpidemicRouter}). The mix pool of a node consists
+ * of the messages the node has created as a mix of their route (i.e., the
+ * messages it forwards to the next hop of the mix list when its bundle is
+ * full). Messages in the node's own pool are dropped only if there are no
+ * other messages (e.g., relayed copies of other nodes' messages or fake 
+ * cover messages) to drop. Within both groups the message received first 
+ * is dropped first.
+ */
+public class MixnetDropPolicy extends DropPolicy {
+	
+	/**
+	 * Constructor.
+	 * @param s The settings of the router's host group
+	 */
+	public MixnetDropPolicy(Settings s) {
+		super(s);
+	}
+	
+	@Override
+	public int getDropClass(Message m, DTNHost host) {
+		return isInMixPool(m, host) ? 1 : 0;
+	}
+	
+	/**
+	 * Returns true if the message is in the mix pool of the host, i.e., the
+	 * host has created the message when it received the message's 
+	 * previous hop as a mix
+	 * @param m The message
+	 * @param host The host whose buffer the message is in (or null)
+	 * @return True if the message is in the host's mix pool
+	 */
+	private boolean isInMixPool(Message m, DTNHost host) {
+		return host != null && m.getFrom() == host && m.mixindex > 0;
+	}
+	
+	@Override
+	public double getPriority(Message m) {
+		return m.getReceiveTime();
+	}
+	
+}
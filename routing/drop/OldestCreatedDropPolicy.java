@@ -0,0 +1,28 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.drop;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * Drop policy that drops the message that was created first.
+ */
+public class OldestCreatedDropPolicy extends DropPolicy {
+	
+	/**
+	 * Constructor.
+	 * @param s The settings of the router's host group
+	 */
+	public OldestCreatedDropPolicy(Settings s) {
+		super(s);
+	}
+	
+	@Override
+	public double getPriority(Message m) {
+		return m.getCreationTime();
+	}
+	
+}
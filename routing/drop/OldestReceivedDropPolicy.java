@@ -0,0 +1,31 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.drop;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * Drop policy that drops the message that was received (or created) first.
+ * This is the same order that active routers use without a drop policy, 
+ * but messages received at the same time are dropped in the order of 
+ * their unique IDs.
+ */
+public class OldestReceivedDropPolicy extends DropPolicy {
+	
+	/**
+	 * Constructor.
+	 * @param s The settings of the router's host group
+	 */
+	public OldestReceivedDropPolicy(Settings s) {
+		super(s);
+	}
+	
+	@Override
+	public double getPriority(Message m) {
+		return m.getReceiveTime();
+	}
+	
+}
@@ -0,0 +1,42 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.drop;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * Drop policy that drops a random message. The priority of a message is a
+ * pseudo random number computed from the unique ID of the message (and
+ * the optional seed), so the drop order is the same on every run and 
+ * doesn't depend on the order the messages were added in.
+ */
+public class RandomDropPolicy extends DropPolicy {
+	/** Seed for the drop order -setting id ({@value}). Integer valued. 
+	 * Read from the router's host group. Default is 0. */
+	public static final String DROP_SEED_S = "dropSeed";
+	
+	private long seed;
+	
+	/**
+	 * Constructor.
+	 * @param s The settings of the router's host group
+	 */
+	public RandomDropPolicy(Settings s) {
+		super(s);
+		this.seed = s.getInt(DROP_SEED_S, 0);
+	}
+	
+	@Override
+	public double getPriority(Message m) {
+		/* mixes the bits of the unique ID (SplitMix64 finalizer) */
+		long z = (m.getUniqueId() + seed) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (z >>> 11) * 0x1.0p-53;
+	}
+	
+}
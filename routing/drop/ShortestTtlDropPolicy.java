@@ -0,0 +1,29 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.drop;
+
+import core.Message;
+import core.Settings;
+
+/**
+ * Drop policy that drops the message whose TTL runs out first. Messages 
+ * with infinite TTL are dropped last.
+ */
+public class ShortestTtlDropPolicy extends DropPolicy {
+	
+	/**
+	 * Constructor.
+	 * @param s The settings of the router's host group
+	 */
+	public ShortestTtlDropPolicy(Settings s) {
+		super(s);
+	}
+	
+	@Override
+	public double getPriority(Message m) {
+		return m.getExpiryTime();
+	}
+	
+}
@@ -59,7 +59,9 @@ public class EnergyModel implements ModuleCommunicationListener {
 	/** sim time of the last energy updated */
 	private double lastUpdate;
 	private ModuleCommunicationBus comBus;
-	private static Random rng = null;
+	/** rng for the initial energy levels (one per simulation context) */
+	private static final SimulationContext.Local<Random> rng =
+		new SimulationContext.Local<Random>();
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -120,11 +122,13 @@ public class EnergyModel implements ModuleCommunicationListener {
 			this.currentEnergy = range[0];
 		}
 		else {
-			if (rng == null) {
-				rng = new Random((int)(range[0] + range[1]));
+			Random energyRng = rng.get();
+			if (energyRng == null) {
+				energyRng = new Random((int)(range[0] + range[1]));
+				rng.set(energyRng);
 			}
 			this.currentEnergy = range[0] + 
-				rng.nextDouble() * (range[1] - range[0]);
+				energyRng.nextDouble() * (range[1] - range[0]);
 		}
 	}
 	
@@ -70,5 +70,49 @@ public class ActivenessHandlerTest extends TestCase {
 
 	}
 	
+	public void testNextChange() {
+		clock.setTime(1);
+		assertFalse(ah.isActive());
+		assertEquals(in, ah.nextChange(0), 0.001);
+		clock.setTime(in + 1);
+		assertTrue(ah.isActive());
+		assertEquals(out, ah.nextChange(0), 0.001);
+		assertEquals(out - 2, ah.nextChange(2), 0.001);
+		
+		clock.setTime(out + 1);
+		int rangeChanges = ah.getRangeChanges();
+		assertFalse(ah.isActive());
+		assertEquals(rangeChanges + 1, ah.getRangeChanges());
+		assertEquals(100, ah.nextChange(0), 0.001);
+
+		/* one passed range is skipped per call */
+		clock.setTime(500);
+		assertFalse(ah.isActive());
+		assertEquals(500, ah.nextChange(0), 0.001);
+		assertFalse(ah.isActive());
+		assertFalse(ah.isActive());
+		assertEquals(Double.MAX_VALUE, ah.nextChange(0));
+	}
+	
+	public void testNextChangeOfPeriods() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(ActivenessHandler.ACTIVE_PERIODS_S, "10,5");
+		ActivenessHandler pah = new ActivenessHandler(ts);
+		
+		clock.setTime(3);
+		assertTrue(pah.isActive());
+		double change = pah.nextChange(0);
+		assertEquals(10.5, change, 0.001);
+		clock.setTime(change - 0.01);
+		assertTrue(pah.isActive());
+		clock.setTime(change + 0.01);
+		assertFalse(pah.isActive());
+		
+		change = pah.nextChange(0);
+		assertEquals(14.5, change, 0.001);
+		clock.setTime(change + 0.01);
+		assertTrue(pah.isActive());
+	}
+	
 }
 
@@ -47,8 +47,19 @@ public class AllTests {
 		suite.addTestSuite(MaxPropDijkstraTest.class);
 		suite.addTestSuite(MaxPropRouterTest.class);
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
+		suite.addTestSuite(RestorableRandomTest.class);
+		suite.addTestSuite(LongHashMapTest.class);
+		suite.addTestSuite(TimerWheelTest.class);
+		suite.addTestSuite(EventQueueSchedulerTest.class);
 		suite.addTestSuite(MessageTest.class);
+		suite.addTestSuite(DropQueueTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(FastestConnectionTest.class);
+		suite.addTestSuite(CheckpointTest.class);
+		suite.addTestSuite(InterferenceLimitedInterfaceTest.class);
+		suite.addTestSuite(KineticContactsTest.class);
+		suite.addTestSuite(MessageRouterTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,234 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import input.EventQueue;
+import input.MessageEventGenerator;
+import interfaces.ConnectivityGrid;
+import interfaces.SimpleBroadcastInterface;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests writing a checkpoint of a World and continuing the simulation from
+ * it.
+ */
+public class CheckpointTest extends TestCase {
+	private static final String GROUP_NS = "Group";
+	private static final String IFACE_NS = "btInterface";
+	private static final String EVENTS_NS = "Events1";
+	private static final int NROF_HOSTS = 20;
+	private static final double UPDATE_INTERVAL = 1.0;
+	private static final double CHECKPOINT_TIME = 300;
+	private static final double END_TIME = 600;
+	
+	private World world;
+	private List<DTNHost> hosts;
+	/** message events (after the checkpoint time) in the order they happen */
+	private List<String> events;
+	private File file;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings s = new TestSettings();
+		s.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." + 
+				MovementModel.WORLD_SIZE, "200,200");
+		s.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." + 
+				MovementModel.RNG_SEED, "3");
+		
+		s.setNameSpace(GROUP_NS);
+		s.putSetting(MovementModel.SPEED, "0.5,1.5");
+		s.putSetting(MovementModel.WAIT_TIME, "0,20");
+		s.putSetting(MessageRouter.B_SIZE_S, "5000");
+		s.putSetting(MessageRouter.MSG_TTL_S, "10");
+		s.putSetting(MessageRouter.SEND_QUEUE_MODE_S, 
+				"" + MessageRouter.Q_MODE_FIFO);
+		
+		s.setNameSpace(IFACE_NS);
+		s.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "30");
+		s.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "100");
+		
+		s.setNameSpace(EVENTS_NS);
+		s.putSetting(MessageEventGenerator.MESSAGE_SIZE_S, "300,1000");
+		s.putSetting(MessageEventGenerator.MESSAGE_INTERVAL_S, "5,15");
+		s.putSetting(MessageEventGenerator.HOST_RANGE_S, "0," + NROF_HOSTS);
+		s.putSetting(MessageEventGenerator.MESSAGE_ID_PREFIX_S, "M");
+		
+		this.file = File.createTempFile("checkpointTest", ".chk");
+		this.file.deleteOnExit();
+	}
+	
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		this.file.delete();
+	}
+	
+	/**
+	 * Creates the world and its hosts (resets the static state first)
+	 */
+	private void createWorld() {
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		Message.reset();
+		MovementModel.reset();
+		ConnectivityGrid.reset();
+		
+		this.events = new ArrayList<String>();
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(new EventLogger());
+		
+		Settings groupSettings = new Settings(GROUP_NS);
+		NetworkInterface iface = new SimpleBroadcastInterface(
+				new Settings(IFACE_NS));
+		iface.setGroupSettings(groupSettings);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(iface);
+		MovementModel mm = new RandomWaypoint(new Settings(GROUP_NS));
+		MessageRouter router = new EpidemicRouter(new Settings(GROUP_NS));
+		
+		this.hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<NROF_HOSTS; i++) {
+			hosts.add(new DTNHost(ml, null, "h", li, 
+					new ModuleCommunicationBus(), mm, router));
+		}
+		
+		List<EventQueue> eqs = new ArrayList<EventQueue>();
+		eqs.add(new MessageEventGenerator(new Settings(EVENTS_NS)));
+		this.world = new World(hosts, 200, 200, UPDATE_INTERVAL, 
+				new ArrayList<UpdateListener>(), true, eqs);
+	}
+	
+	/**
+	 * Updates the world until the given time
+	 * @param time The time
+	 */
+	private void runUntil(double time) {
+		while (SimClock.getTime() < time) {
+			world.update();
+		}
+	}
+	
+	/**
+	 * Returns the locations, buffered messages and connections of the hosts
+	 * @return The state of the hosts as a string
+	 */
+	private String getState() {
+		StringBuilder sb = new StringBuilder();
+		for (DTNHost h : hosts) {
+			sb.append(h + " " + h.getLocation());
+			List<String> ids = new ArrayList<String>();
+			for (Message m : h.getMessageCollection()) {
+				ids.add(m.getId());
+			}
+			Collections.sort(ids);
+			sb.append(" " + ids);
+			for (Connection c : h.getConnections()) {
+				sb.append(" " + c);
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+	
+	public void testRestore() {
+		createWorld();
+		runUntil(END_TIME);
+		String state = getState();
+		List<String> eventsAfter = this.events;
+		assertTrue(eventsAfter.size() > 0);
+		
+		/* writing a checkpoint does not change the run */
+		createWorld();
+		runUntil(CHECKPOINT_TIME);
+		assertTrue("No connections at the checkpoint", 
+				getState().contains("<->"));
+		world.checkpoint(file.toPath());
+		runUntil(END_TIME);
+		assertEquals(state, getState());
+		assertEquals(eventsAfter, this.events);
+		
+		/* the restored run continues like the original run */
+		createWorld();
+		world.restore(file.toPath());
+		assertEquals(CHECKPOINT_TIME, SimClock.getTime());
+		runUntil(END_TIME);
+		assertEquals(state, getState());
+		assertEquals(eventsAfter, this.events);
+	}
+	
+	public void testCheckpointOfRestoredRun() throws Exception {
+		createWorld();
+		runUntil(CHECKPOINT_TIME);
+		world.checkpoint(file.toPath());
+		
+		createWorld();
+		world.restore(file.toPath());
+		String state = getState();
+		Path second = File.createTempFile("checkpointTest", ".chk").toPath();
+		try {
+			world.checkpoint(second);
+			createWorld();
+			world.restore(second);
+			assertEquals(state, getState());
+		} finally {
+			second.toFile().delete();
+		}
+	}
+	
+	/** Logs the message events that happen after the checkpoint time */
+	private class EventLogger implements MessageListener {
+		private void log(String type, Message m, DTNHost from, DTNHost to) {
+			if (SimClock.getTime() > CHECKPOINT_TIME) {
+				events.add(SimClock.getTime() + " " + type + " " + m.getId() +
+						" " + from + " " + to);
+			}
+		}
+		
+		public void newMessage(Message m) {
+			log("C", m, m.getFrom(), m.getTo());
+		}
+		
+		public void messageTransferStarted(Message m, DTNHost from, 
+				DTNHost to) {
+			log("S", m, from, to);
+		}
+		
+		public void messageDeleted(Message m, DTNHost where, 
+				boolean dropped) {
+			log(dropped ? "DR" : "R", m, where, null);
+		}
+		
+		public void messageTransferAborted(Message m, DTNHost from, 
+				DTNHost to) {
+			log("A", m, from, to);
+		}
+		
+		public void messageTransferred(Message m, DTNHost from, DTNHost to,
+				boolean firstDelivery) {
+			log(firstDelivery ? "D" : "T", m, from, to);
+		}
+	}
+}
@@ -0,0 +1,399 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import input.EventQueue;
+import interfaces.ConnectivityGrid;
+import interfaces.SimpleBroadcastInterface;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import routing.MessageRouter;
+import routing.PassiveRouter;
+import routing.util.EnergyModel;
+import core.CheckpointOutput;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests for the location snapshot of the ConnectivityGrid that is used in 
+ * the read phase of two-phase host updates
+ */
+public class ConnectivityGridTest extends TestCase {
+	/* cell size is the range (1.0) times the default multiplier (5) */
+	private static final Coord[] LOCATIONS = {new Coord(1,1), 
+		new Coord(2,1), new Coord(6,1), new Coord(12,1), new Coord(1,7)};
+	private TestUtils utils;
+	private ConnectivityGrid grid;
+	private DTNHost[] hosts;
+	private NetworkInterface[] ni;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		ConnectivityGrid.reset();
+		this.utils = new TestUtils(null, null, ts);
+		
+		this.hosts = new DTNHost[LOCATIONS.length];
+		this.ni = new NetworkInterface[LOCATIONS.length];
+		for (int i=0; i<LOCATIONS.length; i++) {
+			hosts[i] = utils.createHost(LOCATIONS[i].clone());
+			ni[i] = hosts[i].getInterfaces().get(0);
+		}
+		this.grid = ConnectivityGrid.ConnectivityGridFactory(
+				ni[0].getInterfaceType(), 1.0);
+		for (int i=0; i<ni.length; i++) {
+			grid.updateLocation(ni[i]);
+		}
+	}
+	
+	public void testSnapshotNearInterfaces() {
+		assertTrue(grid.snapshotLocations());
+		for (int i=0; i<ni.length; i++) {
+			List<NetworkInterface> snapshot = new ArrayList<NetworkInterface>();
+			assertTrue(grid.getSnapshotNearInterfaces(ni[i], snapshot));
+			Collection<NetworkInterface> near = grid.getNearInterfaces(ni[i]);
+			assertEquals(near.size(), snapshot.size());
+			assertTrue(snapshot.containsAll(near));
+		}
+		
+		/* moved close to the first host but not updated in the grid */
+		hosts[3].setLocation(new Coord(3,1));
+		assertFalse(grid.getNearInterfaces(ni[0]).contains(ni[3]));
+		List<NetworkInterface> snapshot = new ArrayList<NetworkInterface>();
+		grid.getSnapshotNearInterfaces(ni[0], snapshot);
+		assertFalse(snapshot.contains(ni[3]));
+		
+		assertTrue(grid.snapshotLocations());
+		snapshot.clear();
+		grid.getSnapshotNearInterfaces(ni[0], snapshot);
+		assertTrue(snapshot.contains(ni[3]));
+	}
+	
+	public void testFilterNearInterfaces() {
+		hosts[3].setLocation(new Coord(3,1));
+		assertTrue(grid.snapshotLocations());
+		List<NetworkInterface> candidates = new ArrayList<NetworkInterface>();
+		grid.getSnapshotNearInterfaces(ni[0], candidates);
+		Collections.reverse(candidates);
+		
+		/* not in a near cell in the grid yet */
+		List<NetworkInterface> result = new ArrayList<NetworkInterface>();
+		grid.filterNearInterfaces(ni[0], candidates, result);
+		assertEquals(grid.getNearInterfaces(ni[0]), result);
+		assertFalse(result.contains(ni[3]));
+		
+		grid.updateLocation(ni[3]);
+		result.clear();
+		grid.filterNearInterfaces(ni[0], candidates, result);
+		assertEquals(grid.getNearInterfaces(ni[0]), result);
+		assertTrue(result.contains(ni[3]));
+		
+		/* only the candidates are kept */
+		candidates.remove(ni[1]);
+		result.clear();
+		grid.filterNearInterfaces(ni[0], candidates, result);
+		List<NetworkInterface> expected = 
+			new ArrayList<NetworkInterface>(grid.getNearInterfaces(ni[0]));
+		expected.remove(ni[1]);
+		assertEquals(expected, result);
+	}
+	
+	/**
+	 * Checks that exactly the interfaces of the given hosts that are within
+	 * range of each other are connected
+	 */
+	private void assertContactsInRange(List<DTNHost> hosts) {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			NetworkInterface a = hosts.get(i).getInterfaces().get(0);
+			for (int j=i+1; j < n; j++) {
+				NetworkInterface b = hosts.get(j).getInterfaces().get(0);
+				boolean inRange = a.getLocation().distance(b.getLocation()) <=
+					Math.min(a.getTransmitRange(), b.getTransmitRange());
+				assertEquals(a + " and " + b, inRange, a.isConnected(b));
+			}
+		}
+	}
+	
+	public void testContactSweepHalfNeighbors() {
+		/* pairs across the cell borders of the four neighbors that come 
+		 * after a cell: right, down-left, down and down-right. The host
+		 * of the later cell is created first. */
+		double[][] pairs = { 
+				{24.8, 23, 25.2, 23},		/* right */
+				{45.2, 24.8, 44.8, 25.2},	/* down-left */
+				{63, 24.8, 63, 25.2},		/* down */
+				{84.8, 24.8, 85.2, 25.2}};	/* down-right */
+		DTNHost[] early = new DTNHost[pairs.length];
+		DTNHost[] late = new DTNHost[pairs.length];
+		final List<DTNHost> tornDownBy = new ArrayList<DTNHost>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) { }
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				tornDownBy.add(host1);
+			}
+		});
+		utils.setConListeners(cl);
+		for (int i=0; i<pairs.length; i++) {
+			late[i] = utils.createHost(new Coord(pairs[i][2], pairs[i][3]));
+			early[i] = utils.createHost(new Coord(pairs[i][0], pairs[i][1]));
+		}
+		
+		grid.detectContacts();
+		assertContactsInRange(utils.getAllHosts());
+		for (int i=0; i<pairs.length; i++) {
+			NetworkInterface a = early[i].getInterfaces().get(0);
+			NetworkInterface b = late[i].getInterfaces().get(0);
+			assertTrue(a.isConnected(b));
+			/* the interface of the earlier cell connected */
+			assertTrue(a.getConnection(b).isInitiator(early[i]));
+			assertEquals(1, a.getConnections().size());
+		}
+		
+		/* the later hosts move out of range; they come first in the grid 
+		 * but don't tear down the connections they didn't initiate */
+		for (int i=0; i<pairs.length; i++) {
+			Coord c = late[i].getLocation();
+			late[i].setLocation(new Coord(
+					c.getX() + 2*(pairs[i][2] - pairs[i][0]), 
+					c.getY() + 2*(pairs[i][3] - pairs[i][1])));
+		}
+		grid.detectContacts();
+		assertContactsInRange(utils.getAllHosts());
+		for (int i=0; i<pairs.length; i++) {
+			assertEquals(0, early[i].getConnections().size());
+			assertEquals(0, late[i].getConnections().size());
+		}
+		assertEquals(Arrays.asList(early), tornDownBy);
+		tornDownBy.clear();
+		
+		/* the earlier hosts follow across the borders */
+		for (int i=0; i<pairs.length; i++) {
+			Coord c = early[i].getLocation();
+			early[i].setLocation(new Coord(
+					c.getX() + 2*(pairs[i][2] - pairs[i][0]), 
+					c.getY() + 2*(pairs[i][3] - pairs[i][1])));
+		}
+		grid.detectContacts();
+		assertContactsInRange(utils.getAllHosts());
+		for (int i=0; i<pairs.length; i++) {
+			assertEquals(1, early[i].getConnections().size());
+		}
+		
+		/* a connection initiated by the later host is torn down by it */
+		for (int i=0; i<pairs.length; i++) {
+			early[i].forceConnection(late[i], null, false);
+			late[i].forceConnection(early[i], null, true);
+			Coord c = early[i].getLocation();
+			early[i].setLocation(new Coord(
+					c.getX() - 2*(pairs[i][2] - pairs[i][0]), 
+					c.getY() - 2*(pairs[i][3] - pairs[i][1])));
+		}
+		tornDownBy.clear();
+		grid.detectContacts();
+		assertContactsInRange(utils.getAllHosts());
+		assertEquals(Arrays.asList(late), tornDownBy);
+	}
+	
+	/**
+	 * Returns the cells and their interfaces as written to a checkpoint
+	 */
+	private byte[] getCells(ConnectivityGrid g) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CheckpointOutput out = new CheckpointOutput(bytes);
+		g.writeState(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+	
+	public void testSparseGridMatchesDense() throws IOException {
+		ConnectivityGrid dense = ConnectivityGrid.ConnectivityGridFactory(
+				"denseInterface", 1.0);
+		TestSettings ts = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(ConnectivityGrid.SPARSE_GRID_S, "true");
+		ConnectivityGrid sparse;
+		try {
+			ConnectivityGrid.reset();
+			sparse = ConnectivityGrid.ConnectivityGridFactory(
+					"sparseInterface", 1.0);
+		} finally {
+			new TestSettings(); /* clears the settings */
+			ConnectivityGrid.reset();
+		}
+		
+		/* hosts in clusters, at slightly negative coordinates and at the
+		 * edges of the 1000x1000 world (cell size is 5) */
+		Random rng = new Random(1);
+		Coord[] edges = {new Coord(-0.5, -4.9), new Coord(0, 0), 
+				new Coord(1000, 1000), new Coord(-2, 1000), 
+				new Coord(1000, 0), new Coord(4.99, 5)};
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<40; i++) {
+			Coord c = i < edges.length ? edges[i].clone() : 
+				new Coord(rng.nextInt(3) * 8 + rng.nextDouble() * 12, 
+						rng.nextInt(3) * 8 + rng.nextDouble() * 12);
+			DTNHost h = utils.createHost(c);
+			hosts.add(h);
+			dense.addInterface(h.getInterfaces().get(0));
+			sparse.addInterface(h.getInterfaces().get(0));
+		}
+		
+		for (int round=0; round<50; round++) {
+			for (DTNHost h : hosts) {
+				NetworkInterface ni = h.getInterfaces().get(0);
+				assertEquals(dense.getNearInterfaces(ni), 
+						sparse.getNearInterfaces(ni));
+			}
+			assertTrue(Arrays.equals(getCells(dense), getCells(sparse)));
+			
+			for (DTNHost h : hosts) {
+				Coord c = h.getLocation();
+				if (rng.nextInt(10) == 0) {
+					c = edges[rng.nextInt(edges.length)].clone();
+				}
+				else {
+					c = new Coord(
+						Math.max(-4.9, Math.min(1000, c.getX() + 
+								rng.nextGaussian() * 4)),
+						Math.max(-4.9, Math.min(1000, c.getY() + 
+								rng.nextGaussian() * 4)));
+				}
+				h.setLocation(c);
+				dense.updateLocation(h.getInterfaces().get(0));
+				sparse.updateLocation(h.getInterfaces().get(0));
+			}
+			if (round == 25) {
+				for (int i=hosts.size() - 1; i >= 0; i -= 3) {
+					NetworkInterface ni = hosts.remove(i).getInterfaces().get(0);
+					dense.removeInterface(ni);
+					sparse.removeInterface(ni);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs a world of randomly moving hosts and returns the connection
+	 * events (sorted within each update interval)
+	 * @param optimization Name of the contact detection optimization setting
+	 * to enable or null for the default per-interface update
+	 * @return The connection events as strings
+	 */
+	private List<String> runContacts(String optimization) {
+		TestSettings s = new TestSettings();
+		s.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." + 
+				MovementModel.WORLD_SIZE, "200,200");
+		s.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." + 
+				MovementModel.RNG_SEED, "5");
+		s.putSetting("Group." + MovementModel.SPEED, "0.5,3");
+		s.putSetting("Group." + MovementModel.WAIT_TIME, "0,10");
+		s.putSetting("iface." + NetworkInterface.TRANSMIT_RANGE_S, "20");
+		s.putSetting("iface." + NetworkInterface.TRANSMIT_SPEED_S, "100");
+		if (optimization != null) {
+			s.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." + 
+					optimization, "true");
+		}
+		
+		final List<String> events = new ArrayList<String>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				events.add(getEvent("up", host1, host2));
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				events.add(getEvent("down", host1, host2));
+			}
+		});
+		
+		try {
+			SimClock.reset();
+			DTNHost.reset();
+			NetworkInterface.reset();
+			MovementModel.reset();
+			ConnectivityGrid.reset();
+			
+			NetworkInterface iface = new SimpleBroadcastInterface(
+					new Settings("iface"));
+			iface.setGroupSettings(new Settings("Group"));
+			iface.setClisteners(cl);
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(iface);
+			MovementModel mm = new RandomWaypoint(new Settings("Group"));
+			MessageRouter router = new PassiveRouter(new Settings("Group"));
+			List<DTNHost> hosts = new ArrayList<DTNHost>();
+			for (int i=0; i<30; i++) {
+				hosts.add(new DTNHost(null, null, "h", li, 
+						new ModuleCommunicationBus(), mm, router));
+			}
+			World world = new World(hosts, 200, 200, 1.0, 
+					new ArrayList<UpdateListener>(), true, 
+					new ArrayList<EventQueue>());
+			
+			List<String> all = new ArrayList<String>();
+			for (int i=0; i<500; i++) {
+				world.update();
+				Collections.sort(events);
+				for (String e : events) {
+					all.add(SimClock.getIntTime() + " " + e);
+				}
+				events.clear();
+			}
+			return all;
+		} finally {
+			new TestSettings(); /* clears the settings */
+			ConnectivityGrid.reset();
+		}
+	}
+	
+	private String getEvent(String type, DTNHost host1, DTNHost host2) {
+		int a1 = host1.getAddress();
+		int a2 = host2.getAddress();
+		return type + " " + Math.min(a1, a2) + "-" + Math.max(a1, a2);
+	}
+	
+	public void testKineticContactsMatchDefault() {
+		List<String> def = runContacts(null);
+		int ups = 0;
+		int downs = 0;
+		for (String e : def) {
+			if (e.contains(" up ")) {
+				ups++;
+			} else {
+				downs++;
+			}
+		}
+		assertTrue(ups > 50);
+		assertTrue(downs > 50);
+		
+		assertEquals(def, runContacts(World.CONTACT_SWEEP_S));
+		assertEquals(def, runContacts(World.KINETIC_CONTACTS_S));
+	}
+	
+	public void testNoSnapshotWithEnergyModel() {
+		hosts[0].getComBus().addProperty(EnergyModel.ENERGY_VALUE_ID, 1.0);
+		assertFalse(ni[0].isAlwaysActive());
+		assertFalse(grid.snapshotLocations());
+		List<NetworkInterface> snapshot = new ArrayList<NetworkInterface>();
+		assertFalse(grid.getSnapshotNearInterfaces(ni[0], snapshot));
+	}
+}
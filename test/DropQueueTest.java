@@ -0,0 +1,173 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+import routing.drop.DropPolicy;
+import routing.drop.DropQueue;
+import routing.drop.LargestFirstDropPolicy;
+import routing.drop.MixnetDropPolicy;
+import routing.drop.OldestCreatedDropPolicy;
+import routing.drop.OldestReceivedDropPolicy;
+import routing.drop.RandomDropPolicy;
+import routing.drop.ShortestTtlDropPolicy;
+import core.DTNHost;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Tests for the drop policies and the drop queue
+ */
+public class DropQueueTest extends TestCase {
+	private TestSettings ts;
+	private SimClock clock;
+	private Message m1;
+	private Message m2;
+	private Message m3;
+	private Message m4;
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.ts = new TestSettings();
+		this.clock = SimClock.getInstance();
+		clock.setTime(0);
+		
+		m1 = new Message(null, null, "DQ1", 10);
+		m1.setTtl(100);
+		clock.setTime(10);
+		m2 = new Message(null, null, "DQ2", 30);
+		m2.setTtl(50);
+		clock.setTime(20);
+		m3 = new Message(null, null, "DQ3", 20);
+		clock.setTime(30);
+		m4 = new Message(null, null, "DQ4", 30);
+		m4.setTtl(10);
+		
+		m1.setReceiveTime(40);
+		m2.setReceiveTime(30);
+		m3.setReceiveTime(50);
+		m4.setReceiveTime(20);
+	}
+	
+	private String dropOrder(DropPolicy policy) {
+		DropQueue q = new DropQueue(policy);
+		q.add(m1);
+		q.add(m2);
+		q.add(m3);
+		q.add(m4);
+		assertEquals(4, q.size());
+		return toString(q);
+	}
+	
+	public void testOldestReceived() {
+		assertEquals("DQ4 DQ2 DQ1 DQ3", 
+				dropOrder(new OldestReceivedDropPolicy(ts)));
+	}
+	
+	public void testOldestCreated() {
+		assertEquals("DQ1 DQ2 DQ3 DQ4", 
+				dropOrder(new OldestCreatedDropPolicy(ts)));
+	}
+	
+	public void testShortestTtl() {
+		/* expiry times: 30+600, 10+3000, 0+6000 and infinite */
+		assertEquals("DQ4 DQ2 DQ1 DQ3", 
+				dropOrder(new ShortestTtlDropPolicy(ts)));
+	}
+	
+	public void testLargestFirst() {
+		/* equally large are dropped in receiving order */
+		assertEquals("DQ4 DQ2 DQ3 DQ1", 
+				dropOrder(new LargestFirstDropPolicy(ts)));
+	}
+	
+	public void testMixnet() {
+		TestUtils utils = new TestUtils(null, null, ts);
+		DTNHost mix = utils.createHost();
+		DTNHost other = utils.createHost();
+		MixnetDropPolicy policy = new MixnetDropPolicy(ts);
+		
+		/* created by the mix when it received the previous hop */
+		Message pooled = new Message(mix, other, "DQ5", 10);
+		pooled.mixlist.add(mix);
+		pooled.mixlist.add(other);
+		pooled.mixindex = 1;
+		pooled.setReceiveTime(5);
+		/* relayed copy of a message in another mix's pool */
+		Message relayed = new Message(other, mix, "DQ6", 10);
+		relayed.mixlist.addAll(pooled.mixlist);
+		relayed.mixindex = 1;
+		relayed.setReceiveTime(40);
+		
+		DropQueue q = new DropQueue(policy, mix);
+		q.add(pooled);
+		q.add(m2);
+		q.add(relayed);
+		assertEquals("DQ2 DQ6 DQ5", toString(q));
+		
+		/* only the creating mix holds the message in its pool */
+		q = new DropQueue(policy, other);
+		q.add(pooled);
+		q.add(m2);
+		q.add(relayed);
+		assertEquals("DQ5 DQ2 DQ6", toString(q));
+		
+		/* without a host the policy drops in receiving order */
+		assertEquals("DQ4 DQ2 DQ1 DQ3", dropOrder(policy));
+	}
+	
+	public void testRandom() {
+		String order = dropOrder(new RandomDropPolicy(ts));
+		assertEquals(order, dropOrder(new RandomDropPolicy(ts)));
+		
+		DropQueue q = new DropQueue(new RandomDropPolicy(ts));
+		q.add(m4);
+		q.add(m3);
+		q.add(m2);
+		q.add(m1);
+		assertEquals(order, toString(q));
+	}
+	
+	public void testAddAndRemove() {
+		DropQueue q = new DropQueue(new OldestReceivedDropPolicy(ts));
+		q.add(m1);
+		q.add(m2);
+		q.add(m3);
+		
+		Message replicate = m2.replicate();
+		replicate.setReceiveTime(60);
+		q.add(replicate); /* replaces m2 */
+		assertEquals(3, q.size());
+		assertEquals("DQ1 DQ3 DQ2", toString(q));
+		assertSame(replicate, lastOf(q));
+		
+		q.remove(m1);
+		q.remove(m4); /* not in the queue */
+		assertEquals("DQ3 DQ2", toString(q));
+		
+		q.clear();
+		assertEquals(0, q.size());
+		assertFalse(q.iterator().hasNext());
+	}
+	
+	private String toString(DropQueue q) {
+		String s = "";
+		for (Message m : q) {
+			s += m.getId() + " ";
+		}
+		return s.trim();
+	}
+	
+	private Message lastOf(DropQueue q) {
+		Message last = null;
+		for (Iterator<Message> i = q.iterator(); i.hasNext(); ) {
+			last = i.next();
+		}
+		return last;
+	}
+}
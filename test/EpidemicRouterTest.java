@@ -4,8 +4,12 @@
  */
 package test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import routing.EpidemicRouter;
 import routing.MessageRouter;
+import core.BufferListener;
 import core.DTNHost;
 import core.Message;
 
@@ -375,6 +379,44 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertFalse(mc.next());
 	}
 	
+	/**
+	 * Tests that the buffer occupancy is kept up to date and the buffer
+	 * listeners are informed about the changes
+	 */
+	public void testBufferOccupancy() {
+		final List<Long> changes = new ArrayList<Long>();
+		List<BufferListener> listeners = new ArrayList<BufferListener>();
+		listeners.add(new BufferListener() {
+			public void bufferOccupancyChanged(DTNHost host, long occupancy) {
+				assertEquals(h1, host);
+				changes.add(occupancy);
+			}
+		});
+		h1.getRouter().setBufferListeners(listeners);
+		
+		h1.createNewMessage(new Message(h1,h3, msgId1, BUFFER_SIZE/4));
+		h1.createNewMessage(new Message(h1,h3, msgId2, BUFFER_SIZE/2));
+		assertEquals(BUFFER_SIZE/4 + BUFFER_SIZE/2, 
+				h1.getRouter().getOccupiedBufferSize());
+		assertEquals(BUFFER_SIZE - BUFFER_SIZE/4 - BUFFER_SIZE/2, 
+				h1.getRouter().getFreeBufferSize());
+		
+		h1.deleteMessage(msgId1, false);
+		assertEquals(BUFFER_SIZE/2, h1.getRouter().getOccupiedBufferSize());
+		
+		// doesn't fit -> msgId2 is dropped to make room
+		h1.createNewMessage(new Message(h1,h3, msgId3, BUFFER_SIZE*3/4));
+		assertEquals(BUFFER_SIZE*3/4, h1.getRouter().getOccupiedBufferSize());
+		assertEquals(1, h1.getNrofMessages());
+		
+		long[] expected = {BUFFER_SIZE/4, BUFFER_SIZE/4 + BUFFER_SIZE/2,
+				BUFFER_SIZE/2, 0, BUFFER_SIZE*3/4};
+		assertEquals(expected.length, changes.size());
+		for (int i=0; i<expected.length; i++) {
+			assertEquals(expected[i], (long)changes.get(i));
+		}
+	}
+	
 	/**
 	 * Tests creating a new message when the message buffer is full and the
 	 * message that should be removed is the message being sent 
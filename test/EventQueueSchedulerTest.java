@@ -0,0 +1,106 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import input.EventQueue;
+import input.EventQueueScheduler;
+import input.ExternalEvent;
+import input.ScheduledUpdatesQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the EventQueueScheduler
+ */
+public class EventQueueSchedulerTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private ScheduledUpdatesQueue q1;
+	private ScheduledUpdatesQueue q2;
+	private PolledQueue q3;
+	private EventQueueScheduler eqs;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		q1 = new ScheduledUpdatesQueue();
+		q2 = new ScheduledUpdatesQueue();
+		q3 = new PolledQueue();
+
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(q1);
+		queues.add(q2);
+		queues.add(q3);
+		eqs = new EventQueueScheduler(queues);
+	}
+
+	public void testEmpty() {
+		assertEquals(MAX, eqs.nextEventsTime());
+		assertEquals(MAX, eqs.nextEvent().getTime());
+	}
+
+	public void testMerge() {
+		q1.addUpdate(1);
+		q1.addUpdate(4);
+		q2.addUpdate(2);
+		q2.addUpdate(3);
+		eqs.queueChanged(q1);
+		eqs.queueChanged(q2);
+
+		for (int i=1; i<=4; i++) {
+			assertEquals((double)i, eqs.nextEventsTime());
+			assertEquals((double)i, eqs.nextEvent().getTime());
+		}
+		assertEquals(MAX, eqs.nextEventsTime());
+
+		long[] counts = eqs.getEventCounts();
+		assertEquals(2, counts[0]);
+		assertEquals(2, counts[1]);
+		assertEquals(0, counts[2]);
+	}
+
+	public void testTiesGoToEarlierQueue() {
+		q2.addUpdate(1);
+		eqs.queueChanged(q2);
+		q3.time = 1;
+		q1.addUpdate(1);
+		eqs.queueChanged(q1);
+
+		assertSame(q1, eqs.getNextQueue());
+		eqs.nextEvent();
+		assertSame(q2, eqs.getNextQueue());
+		eqs.nextEvent();
+		assertSame(q3, eqs.getNextQueue());
+	}
+
+	public void testPolledQueueChangesAreSeen() {
+		q1.addUpdate(5);
+		eqs.queueChanged(q1);
+		assertSame(q1, eqs.getNextQueue());
+
+		q3.time = 2; // changes without notifying the scheduler
+		assertSame(q3, eqs.getNextQueue());
+		assertEquals(2.0, eqs.nextEvent().getTime());
+		assertEquals(5.0, eqs.nextEvent().getTime());
+	}
+
+	/**
+	 * Queue whose next event's time can change at any time
+	 */
+	private static class PolledQueue implements EventQueue {
+		private double time = MAX;
+
+		public ExternalEvent nextEvent() {
+			ExternalEvent ee = new ExternalEvent(time);
+			time = MAX;
+			return ee;
+		}
+
+		public double nextEventsTime() {
+			return time;
+		}
+	}
+}
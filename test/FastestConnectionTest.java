@@ -0,0 +1,122 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.ActiveRouter;
+import routing.EpidemicRouter;
+import core.Connection;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests choosing between the connections of hosts that are connected with
+ * more than one interface type.
+ */
+public class FastestConnectionTest extends TestCase {
+	private static final String SLOW_IFACE = "slowInterface";
+	private static final String FAST_IFACE = "fastInterface";
+	private static final String GROUP_NS = "fastestGroup";
+	
+	private MessageChecker mc;
+	private DTNHost h1;
+	private DTNHost h2;
+	private Connection slow;
+	private Connection fast;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		NetworkInterface.reset();
+		DTNHost.reset();
+		this.mc = new MessageChecker();
+		mc.reset();
+	}
+	
+	/**
+	 * Creates two hosts that are connected with a slow and a fast interface
+	 * @param fastestConnection Value for the fastest connection setting
+	 */
+	private void createHosts(boolean fastestConnection) {
+		TestSettings s = new TestSettings(GROUP_NS);
+		s.putSetting(ActiveRouter.FASTEST_CONNECTION_S, "" + 
+				fastestConnection);
+		EpidemicRouter proto = new EpidemicRouter(s);
+		
+		this.h1 = createHost(proto);
+		this.h2 = createHost(proto);
+		h1.forceConnection(h2, SLOW_IFACE, true);
+		h1.forceConnection(h2, FAST_IFACE, true);
+		this.slow = h1.getInterface(1).getConnections().get(0);
+		this.fast = h1.getInterface(2).getConnections().get(0);
+	}
+	
+	private DTNHost createHost(EpidemicRouter proto) {
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(createInterface(SLOW_IFACE, 10));
+		li.add(createInterface(FAST_IFACE, 100));
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(mc);
+		
+		return new DTNHost(ml, null, "h", li, new ModuleCommunicationBus(),
+				new StationaryMovement(new Coord(0,0)), proto);
+	}
+	
+	private NetworkInterface createInterface(String type, int speed) {
+		TestSettings s = new TestSettings(type);
+		s.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
+		s.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "" + speed);
+		NetworkInterface ni = new TestInterface(s);
+		ni.setGroupSettings(new TestSettings(GROUP_NS));
+		return ni;
+	}
+	
+	public void testGetFastestConnection() {
+		createHosts(false);
+		assertEquals(4, h1.getConnections().size() + 
+				h2.getConnections().size());
+		assertSame(fast, h1.getFastestConnection(h2));
+		assertSame(fast, h2.getFastestConnection(h1));
+		
+		/* only connections that are ready for a transfer are returned */
+		fast.startTransfer(h1, new Message(h1, h2, "M1", 100));
+		assertSame(slow, h1.getFastestConnection(h2));
+		assertSame(slow, h2.getFastestConnection(h1));
+	}
+	
+	public void testDefaultUsesFirstConnection() {
+		createHosts(false);
+		h1.createNewMessage(new Message(h1, h2, "M1", 100));
+		h1.update(true);
+		
+		assertNotNull(slow.getMessage());
+		assertNull(fast.getMessage());
+	}
+	
+	public void testRouterUsesFastestConnection() {
+		createHosts(true);
+		h1.createNewMessage(new Message(h1, h2, "M1", 100));
+		h1.update(true);
+		
+		assertNull(slow.getMessage());
+		assertNotNull(fast.getMessage());
+		
+		/* 100 bytes at 100 Bps */
+		mc.reset();
+		SimClock.getInstance().setTime(1);
+		h1.update(true);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_RELAY, mc.getLastType());
+		assertEquals("M1", mc.getLastMsg().getId());
+	}
+}
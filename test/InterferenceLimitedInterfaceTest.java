@@ -0,0 +1,192 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.InterferenceLimitedInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.Connection;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests that the transmit speed of InterferenceLimitedInterface, whose 
+ * counts of transferring neighbours are kept up to date incrementally, is
+ * the same as when the counts are calculated from the connections in every
+ * update.
+ */
+public class InterferenceLimitedInterfaceTest extends TestCase {
+	private static final String IFACE_NS = "ilInterface";
+	private static final int SPEED = 1000;
+	private static final Coord FAR_AWAY = new Coord(900, 900);
+	private TestDTNHost[] hosts;
+	private InterferenceLimitedInterface[] ifaces;
+	private int msgCount;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		ConnectivityGrid.reset();
+		
+		TestSettings ts = new TestSettings();
+		ts.setNameSpace(IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "7");
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "" + SPEED);
+		InterferenceLimitedInterface proto = 
+			new InterferenceLimitedInterface(ts);
+		proto.setGroupSettings(new TestSettings("ilGroup"));
+		
+		/* a chain of hosts: h0 - h1 - h2 - h3 - h4 */
+		this.hosts = new TestDTNHost[5];
+		this.ifaces = new InterferenceLimitedInterface[hosts.length];
+		for (int i=0; i<hosts.length; i++) {
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(proto);
+			hosts[i] = new TestDTNHost(li, new ModuleCommunicationBus(), 
+					null);
+			hosts[i].setLocation(new Coord(5 * i, 0));
+			ifaces[i] = (InterferenceLimitedInterface)
+				hosts[i].getInterfaces().get(0);
+		}
+		
+		updateAll(0, 1, 2, 3, 4);
+		assertEquals(1, ifaces[0].getConnections().size());
+		assertEquals(2, ifaces[2].getConnections().size());
+	}
+	
+	/**
+	 * Updates the interfaces in the given order and checks the transmit
+	 * speed of each interface right after its update
+	 * @param order Indexes of the interfaces in the update order
+	 */
+	private void updateAll(int... order) {
+		for (int i : order) {
+			ifaces[i].update();
+			assertEquals("Speed of " + ifaces[i], recountSpeed(ifaces[i]),
+					ifaces[i].getTransmitSpeed());
+		}
+	}
+	
+	/**
+	 * Calculates the transmit speed of an interface from the transfers of 
+	 * its connections and the transfer state of the connected interfaces
+	 * the way the interface originally did in every update
+	 * @param ni The interface
+	 * @return The transmit speed
+	 */
+	private int recountSpeed(InterferenceLimitedInterface ni) {
+		int numberOfTransmissions = 0;
+		int numberOfActive = 1;
+		for (Connection con : ni.getConnections()) {
+			if (con.getMessage() != null) {
+				numberOfTransmissions++;
+			}
+			if (((InterferenceLimitedInterface)con.getOtherInterface(ni)).
+					isTransferring()) {
+				numberOfActive++;
+			}
+		}
+		
+		int ntrans = numberOfTransmissions;
+		if (numberOfTransmissions < 1) ntrans = 1;
+		if (numberOfActive < 2) numberOfActive = 2;
+		
+		return (int)Math.floor((double)SPEED / 
+				(Math.sqrt((1.0*numberOfActive) * 
+						Math.log(1.0*numberOfActive))) / ntrans);
+	}
+	
+	/**
+	 * Returns the connection between two hosts
+	 */
+	private Connection con(int from, int to) {
+		for (Connection con : ifaces[from].getConnections()) {
+			if (con.getOtherNode(hosts[from]) == hosts[to]) {
+				return con;
+			}
+		}
+		fail("No connection between " + hosts[from] + " and " + hosts[to]);
+		return null;
+	}
+	
+	private void startTransfer(int from, int to) {
+		Message m = new Message(hosts[from], hosts[to], "M" + msgCount++, 
+				100 * SPEED);
+		con(from, to).startTransfer(hosts[from], m);
+		assertNotNull(con(from, to).getMessage());
+	}
+	
+	public void testStartAndFinish() {
+		startTransfer(0, 1);
+		updateAll(0, 1, 2, 3, 4);
+		updateAll(4, 3, 2, 1, 0);
+		
+		startTransfer(2, 3);
+		startTransfer(2, 1);
+		updateAll(2, 0, 4, 1, 3);
+		updateAll(1, 2, 3, 0, 4);
+		
+		con(0, 1).finalizeTransfer();
+		updateAll(3, 1, 0, 2, 4);
+		updateAll(0, 1, 2, 3, 4);
+		
+		con(2, 3).finalizeTransfer();
+		con(2, 1).finalizeTransfer();
+		updateAll(4, 2, 0, 3, 1);
+		updateAll(0, 1, 2, 3, 4);
+		assertEquals(recountSpeed(ifaces[2]), ifaces[2].getTransmitSpeed());
+		assertFalse(ifaces[2].isTransferring());
+	}
+	
+	public void testAbort() {
+		startTransfer(1, 2);
+		startTransfer(3, 4);
+		updateAll(0, 1, 2, 3, 4);
+		
+		con(1, 2).abortTransfer();
+		updateAll(2, 3, 1, 4, 0);
+		
+		startTransfer(2, 1);
+		con(3, 4).abortTransfer();
+		updateAll(4, 3, 2, 1, 0);
+		updateAll(0, 1, 2, 3, 4);
+	}
+	
+	public void testConnectionDownMidTransfer() {
+		startTransfer(1, 2);
+		startTransfer(3, 2);
+		updateAll(0, 1, 2, 3, 4);
+		
+		/* the responder of a transfer moves away and updates first */
+		hosts[2].setLocation(FAR_AWAY);
+		updateAll(2, 0, 1, 3, 4);
+		assertEquals(0, ifaces[2].getConnections().size());
+		assertFalse(ifaces[2].isTransferring());
+		updateAll(0, 1, 2, 3, 4);
+		
+		/* comes back and a new transfer starts; then the initiator of the 
+		 * transfer moves away and updates last */
+		hosts[2].setLocation(new Coord(10, 0));
+		updateAll(0, 1, 2, 3, 4);
+		startTransfer(3, 2);
+		startTransfer(0, 1);
+		updateAll(4, 3, 2, 1, 0);
+		hosts[3].setLocation(FAR_AWAY);
+		updateAll(0, 1, 2, 4, 3);
+		assertEquals(0, ifaces[3].getConnections().size());
+		updateAll(0, 1, 2, 3, 4);
+		updateAll(4, 3, 2, 1, 0);
+	}
+}
@@ -0,0 +1,74 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import interfaces.KineticContacts;
+import junit.framework.TestCase;
+
+/**
+ * Tests for solving when two moving interfaces come within or go out of
+ * range in {@link KineticContacts}
+ */
+public class KineticContactsTest extends TestCase {
+	private static final double DELTA = 1e-9;
+	private static final double NEVER = Double.MAX_VALUE;
+	
+	/**
+	 * Solves the crossing time of a pair
+	 * @param dx X distance from the first interface to the second
+	 * @param dy Y distance from the first interface to the second
+	 * @param wx X velocity of the second interface relative to the first
+	 * @param wy Y velocity of the second interface relative to the first
+	 * @param range The range
+	 * @return The time when the pair crosses the range
+	 */
+	private double solve(double dx, double dy, double wx, double wy, 
+			double range) {
+		return KineticContacts.solveCrossing(wx*wx + wy*wy, 
+				2 * (dx*wx + dy*wy), dx*dx + dy*dy - range*range);
+	}
+	
+	public void testApproaching() {
+		/* distance 10 -> 2 at speed 1 */
+		assertEquals(8, solve(10, 0, -1, 0, 2), DELTA);
+		assertEquals(8, solve(0, -10, 0, 1, 2), DELTA);
+		/* diagonal approach, distance 5 -> 1 at speed 2 */
+		assertEquals(2, solve(3, 4, -1.2, -1.6, 1), DELTA);
+	}
+	
+	public void testMovingApart() {
+		assertEquals(NEVER, solve(10, 0, 1, 0, 2));
+		assertEquals(NEVER, solve(10, 0, 0, 1, 2)); /* passes sideways */
+	}
+	
+	public void testPassingBy() {
+		/* closest distance 3 is out of range */
+		assertEquals(NEVER, solve(10, 3, -1, 0, 2));
+	}
+	
+	public void testTangentPass() {
+		/* closest distance is exactly the range (discriminant is 0) */
+		assertEquals(10, solve(10, 2, -1, 0, 2), DELTA);
+		/* and when the pair is within range at the point of contact */
+		assertEquals(0, solve(0, 2, 1, 0, 2), DELTA);
+	}
+	
+	public void testSameVelocity() {
+		/* the distance does not change (qa == 0) */
+		assertEquals(NEVER, solve(10, 0, 0, 0, 2));
+		assertEquals(NEVER, solve(1, 0, 0, 0, 2));
+	}
+	
+	public void testAlreadyInRange() {
+		/* moving apart from distance 1, range 2 reached in 1 second */
+		assertEquals(1, solve(1, 0, 1, 0, 2), DELTA);
+		/* moving through the other one from distance 1 */
+		assertEquals(3, solve(1, 0, -1, 0, 2), DELTA);
+		/* at the same location */
+		assertEquals(0.5, solve(0, 0, 0, 4, 2), DELTA);
+		/* exactly at the range and leaving */
+		assertEquals(0, solve(2, 0, 1, 0, 2), DELTA);
+	}
+}
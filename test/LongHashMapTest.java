@@ -0,0 +1,116 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.LongHashMap;
+
+/**
+ * Tests for the LongHashMap
+ */
+public class LongHashMapTest extends TestCase {
+
+	public void testPutGetRemove() {
+		LongHashMap<String> map = new LongHashMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(-5, "b"));
+		assertNull(map.put(1L << 40, "c"));
+		assertEquals(3, map.size());
+
+		assertEquals("a", map.get(1));
+		assertEquals("b", map.get(-5));
+		assertEquals("c", map.get(1L << 40));
+		assertNull(map.get(2));
+		assertTrue(map.containsKey(-5));
+		assertFalse(map.containsKey(5));
+
+		assertEquals("a", map.put(1, "d"));
+		assertEquals("d", map.get(1));
+		assertEquals(3, map.size());
+
+		assertEquals("b", map.remove(-5));
+		assertNull(map.remove(-5));
+		assertNull(map.get(-5));
+		assertEquals(2, map.size());
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1));
+	}
+
+	public void testNullValue() {
+		LongHashMap<String> map = new LongHashMap<String>();
+		try {
+			map.put(1, null);
+			fail("Null value should not be accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testSameAsHashMap() {
+		LongHashMap<Integer> map = new LongHashMap<Integer>();
+		HashMap<Long, Integer> ref = new HashMap<Long, Integer>();
+		Random rng = new Random(1);
+
+		/* small key range to get lots of collisions and removals */
+		for (int i=0; i<20000; i++) {
+			long key = rng.nextInt(300) - 100;
+			if (rng.nextInt(3) == 0) {
+				assertEquals(ref.remove(key), map.remove(key));
+			} else {
+				assertEquals(ref.put(key, i), map.put(key, i));
+			}
+			assertEquals(ref.size(), map.size());
+		}
+
+		for (long key = -100; key < 200; key++) {
+			assertEquals(ref.get(key), map.get(key));
+		}
+	}
+
+	public void testKeys() {
+		LongHashMap<String> map = new LongHashMap<String>(2);
+		long[] expected = new long[100];
+		for (int i=0; i<expected.length; i++) {
+			expected[i] = ((long)i << 32) | (i % 7);
+			map.put(expected[i], "v" + i);
+		}
+
+		long[] keys = map.keys(new long[1]);
+		assertTrue(keys.length >= map.size());
+		Arrays.sort(keys, 0, map.size());
+		for (int i=0; i<expected.length; i++) {
+			assertEquals(expected[i], keys[i]);
+			assertEquals("v" + i, map.get(keys[i]));
+		}
+
+		long[] buffer = new long[200];
+		assertSame(buffer, map.keys(buffer));
+	}
+
+	public void testValues() {
+		LongHashMap<String> map = new LongHashMap<String>();
+		assertTrue(map.values().isEmpty());
+		for (int i=0; i<50; i++) {
+			map.put(i * 3, "v" + i);
+		}
+		map.remove(3);
+
+		long[] keys = map.keys(null);
+		List<String> values = map.values();
+		assertEquals(map.size(), values.size());
+		for (int i=0; i<values.size(); i++) {
+			assertEquals(map.get(keys[i]), values.get(i));
+		}
+		assertFalse(values.contains("v1"));
+	}
+}
@@ -41,7 +41,6 @@ public class MessageGraphvizReportTest extends TestCase {
 		Coord c2 = new Coord(1,0);
 		Coord c3 = new Coord(2,0);
 
-		utils.setTransmitRange(2);
 		DTNHost h1 = utils.createHost(c1,"h1");
 		DTNHost h2 = utils.createHost(c2,"h2");
 		DTNHost h3 = utils.createHost(c3,"h3");
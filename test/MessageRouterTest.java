@@ -0,0 +1,83 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import routing.MessageRouter;
+import routing.PassiveRouter;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.Settings;
+
+/**
+ * Tests for the incoming messages buffer of MessageRouter
+ */
+public class MessageRouterTest extends TestCase {
+	private DTNHost h0;
+	private DTNHost h1;
+	private DTNHost h2;
+	private IncomingRouter r0;
+	
+	/**
+	 * Router that exposes the incoming messages checks
+	 */
+	private static class IncomingRouter extends PassiveRouter {
+		public IncomingRouter(Settings s) {
+			super(s);
+		}
+		
+		protected IncomingRouter(IncomingRouter r) {
+			super(r);
+		}
+		
+		@Override
+		public boolean isIncomingMessage(String id) {
+			return super.isIncomingMessage(id);
+		}
+		
+		@Override
+		public MessageRouter replicate() {
+			return new IncomingRouter(this);
+		}
+	}
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		TestUtils utils = new TestUtils(null, 
+				new ArrayList<MessageListener>(), ts);
+		utils.setMessageRouterProto(new IncomingRouter(ts));
+		h0 = utils.createHost();
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		r0 = (IncomingRouter)h0.getRouter();
+	}
+	
+	public void testIncomingMessages() {
+		Message m1 = new Message(h1, h0, "incoming1", 10);
+		Message m2 = new Message(h1, h0, "incoming2", 10);
+		assertFalse(r0.isIncomingMessage("incoming1"));
+		
+		/* same message from two hosts */
+		r0.receiveMessage(m1, h1);
+		r0.receiveMessage(m1.replicate(), h2);
+		r0.receiveMessage(m2, h1);
+		assertTrue(r0.isIncomingMessage("incoming1"));
+		assertTrue(r0.isIncomingMessage("incoming2"));
+		assertFalse(r0.isIncomingMessage("noSuchMessage"));
+		
+		r0.messageAborted("incoming1", h1, 5);
+		assertTrue(r0.isIncomingMessage("incoming1"));
+		r0.messageTransferred("incoming1", h2);
+		assertFalse(r0.isIncomingMessage("incoming1"));
+		assertTrue(r0.isIncomingMessage("incoming2"));
+		
+		r0.messageAborted("incoming2", h1, 5);
+		assertFalse(r0.isIncomingMessage("incoming2"));
+	}
+}
@@ -4,6 +4,8 @@
  */
 package test;
 
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
@@ -49,6 +51,19 @@ public class MessageTest extends TestCase {
 
 	}
 
+	@Test
+	public void testIdNumber() {
+		assertEquals(-1, Message.findIdNumber("testIdNumber"));
+		Message other = new Message(from, to, "testIdNumber", 100);
+		int number = other.getIdNumber();
+		assertTrue(number >= 0);
+		assertEquals(number, Message.findIdNumber("testIdNumber"));
+		assertEquals(number, other.replicate().getIdNumber());
+		assertEquals(number, Message.getIdNumber("testIdNumber"));
+		assertFalse(number == msg.getIdNumber());
+		assertEquals(-1, Message.findIdNumber("noSuchMessage"));
+	}
+
 	@Test
 	public void testAddProperty() {
 		String value1 = "value1";
@@ -60,5 +75,58 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testReplicateSharesPath() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+		Message orig = new Message(h1, h3, "testReplicateSharesPath", 10);
+		
+		Message rep1 = orig.replicate();
+		rep1.addNodeOnPath(h2);
+		Message rep2 = rep1.replicate();
+		rep2.addNodeOnPath(h3);
+		
+		assertEquals(Arrays.asList(h1), orig.getHops());
+		assertEquals(Arrays.asList(h1, h2), rep1.getHops());
+		assertEquals(Arrays.asList(h1, h2, h3), rep2.getHops());
+		assertEquals(0, orig.getHopCount());
+		assertEquals(1, rep1.getHopCount());
+		assertEquals(2, rep2.getHopCount());
+		
+		try {
+			rep2.getHops().add(h1);
+			fail("Path should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testReplicateCopyOnWrite() {
+		msg.addProperty("foo", "value1");
+		Message rep = msg.replicate();
+		assertEquals("value1", rep.getProperty("foo"));
+		
+		rep.updateProperty("foo", "value2");
+		rep.addProperty("bar", "value3");
+		assertEquals("value1", msg.getProperty("foo"));
+		assertNull(msg.getProperty("bar"));
+		assertEquals("value2", rep.getProperty("foo"));
+		
+		msg.updateProperty("foo", "value4");
+		assertEquals("value4", msg.getProperty("foo"));
+		assertEquals("value2", rep.getProperty("foo"));
+		
+		assertSame(msg.mixlist, rep.mixlist);
+		try {
+			rep.mixlist.add(to);
+			fail("Replicated mix list should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
 
 }
@@ -0,0 +1,49 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.RestorableRandom;
+
+/**
+ * Tests for the RestorableRandom
+ */
+public class RestorableRandomTest extends TestCase {
+
+	public void testSameSequenceAsRandom() {
+		Random r = new Random(42);
+		RestorableRandom rr = new RestorableRandom(42);
+
+		for (int i=0; i<100; i++) {
+			assertEquals(r.nextInt(), rr.nextInt());
+			assertEquals(r.nextInt(17), rr.nextInt(17));
+			assertEquals(r.nextLong(), rr.nextLong());
+			assertEquals(r.nextDouble(), rr.nextDouble());
+			assertEquals(r.nextGaussian(), rr.nextGaussian());
+		}
+
+		r.setSeed(7);
+		rr.setSeed(7);
+		assertEquals(r.nextGaussian(), rr.nextGaussian());
+		assertEquals(r.nextDouble(), rr.nextDouble());
+	}
+
+	public void testRestoreState() {
+		RestorableRandom rr = new RestorableRandom(1);
+		rr.nextDouble();
+		rr.nextGaussian(); // leaves the second value cached
+
+		RestorableRandom copy = new RestorableRandom(0);
+		copy.setState(rr.getState(), rr.getNextGaussian());
+
+		for (int i=0; i<10; i++) {
+			assertEquals(rr.nextGaussian(), copy.nextGaussian());
+			assertEquals(rr.nextInt(), copy.nextInt());
+		}
+		assertTrue(Double.isNaN(new RestorableRandom(3).getNextGaussian()));
+	}
+}
@@ -5,7 +5,16 @@
 package test;
 
 import input.ScheduledUpdatesQueue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
 import junit.framework.TestCase;
+import core.CheckpointInput;
+import core.CheckpointOutput;
+import core.DTNHost;
 import core.SimClock;
 
 /**
@@ -107,4 +116,67 @@ public class ScheduledUpdatesQueueTest extends TestCase {
 		assertEquals(5.0, suq.nextEvent().getTime());
 		assertEquals(8.0, suq.nextEvent().getTime());
 	}
+	
+	public void testBulkUpdates() {
+		suq.addUpdate(6.0);
+		suq.addUpdates(new double[] {3.0, 9.5, 6.0, 1.0, 3.0, 12.0, 2.5});
+		suq.addUpdates(new double[] {4.0});
+		suq.addUpdates(new double[0]);
+		
+		assertEquals(1.0, suq.nextEvent().getTime());
+		assertEquals(2.5, suq.nextEvent().getTime());
+		assertEquals(3.0, suq.nextEvent().getTime());
+		
+		suq.addUpdates(new double[] {3.0, 0.5, 11.0});
+		assertEquals(0.5, suq.nextEvent().getTime());
+		assertEquals(3.0, suq.nextEvent().getTime());
+		assertEquals(4.0, suq.nextEvent().getTime());
+		assertEquals(6.0, suq.nextEvent().getTime());
+		assertEquals(9.5, suq.nextEvent().getTime());
+		assertEquals(11.0, suq.nextEvent().getTime());
+		assertEquals(12.0, suq.nextEvent().getTime());
+		assertEquals(MAX, suq.nextEvent().getTime());
+	}
+	
+	public void testManyUpdates() {
+		for (int i=0; i<1000; i++) {
+			suq.addUpdate((i * 7919) % 1000);
+		}
+		for (int i=0; i<1000; i++) {
+			suq.addUpdate(i);
+		}
+		
+		for (int i=0; i<1000; i++) {
+			assertEquals((double)i, suq.nextEvent().getTime());
+		}
+		assertEquals(MAX, suq.nextEventsTime());
+	}
+
+	public void testCheckpoint() throws IOException {
+		for (int i=0; i<100; i++) {
+			suq.addUpdate((i * 31) % 50);
+		}
+		for (int i=0; i<10; i++) {
+			suq.nextEvent();
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CheckpointOutput out = new CheckpointOutput(bytes);
+		suq.writeState(out);
+		out.close();
+
+		ScheduledUpdatesQueue restored = new ScheduledUpdatesQueue();
+		restored.addUpdate(1000);
+		restored.readState(new CheckpointInput(new ByteArrayInputStream(
+				bytes.toByteArray()), new ArrayList<DTNHost>()));
+
+		for (int i=10; i<50; i++) {
+			assertEquals((double)i, restored.nextEvent().getTime());
+		}
+		assertEquals(MAX, restored.nextEventsTime());
+		restored.addUpdate(5);
+		restored.addUpdate(5);
+		assertEquals(5.0, restored.nextEvent().getTime());
+		assertEquals(MAX, restored.nextEventsTime());
+	}
 }
@@ -6,6 +6,7 @@ package test;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.Map;
 
 import junit.framework.TestCase;
 import core.Settings;
@@ -215,5 +216,23 @@ public class SettingsTest extends TestCase {
 		Settings.setRunIndex(-1);
 		assertEquals("[val1 ; val2;val3; val4 ]", s.getSetting(RS_S));
 	}
+	
+	public void testGetRunArraySettings() {
+		Map<String, String[]> arrays = Settings.getRunArraySettings();
+		
+		assertEquals(3, arrays.size());
+		assertFalse(arrays.containsKey(IRS_S));
+		String[] vals = arrays.get(RS_S);
+		assertEquals(4, vals.length);
+		assertEquals("val1", vals[0]);
+		assertEquals("val4", vals[3]);
+		assertEquals(2, arrays.get(CSV_RS_S).length);
+	}
+	
+	public void testSetSetting() {
+		Settings.setSetting(RS_S, "val5");
+		assertEquals("val5", s.getSetting(RS_S));
+		assertFalse(Settings.getRunArraySettings().containsKey(RS_S));
+	}
 
 }
@@ -31,6 +31,8 @@ public class TestDTNHost extends DTNHost {
 	
 	public String transferredId;
 	public DTNHost transferredFrom;
+	/** list where the host adds itself when it is updated (or null) */
+	public List<DTNHost> updateLog;
 
 	
 	public TestDTNHost(List<NetworkInterface> li, 
@@ -51,6 +53,9 @@ public class TestDTNHost extends DTNHost {
 	public void update(boolean up) {
 		this.nrofUpdate++;
 		this.lastUpdate = SimClock.getTime();
+		if (this.updateLog != null) {
+			this.updateLog.add(this);
+		}
 	}
 	
 	@Override
@@ -43,7 +43,7 @@ public class TestSettings extends core.Settings {
 	}
 	
 	public static void init(String propFile) throws SettingsError {
-		props = new Properties();
+		setProperties(new Properties());
 	}
 	
 	/**
@@ -59,7 +59,7 @@ public class TestSettings extends core.Settings {
 			nameSpace += ".";
 		}
 		
-		if (props == null) {
+		if (getProperties() == null) {
 			try {
 				init(null);
 			} catch (SettingsError e) {
@@ -68,7 +68,7 @@ public class TestSettings extends core.Settings {
 			}
 		}
 		
-		props.put(nameSpace + key, value);
+		getProperties().put(nameSpace + key, value);
 	}	
 
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.TimerWheel;
+
+/**
+ * Tests for the TimerWheel
+ */
+public class TimerWheelTest extends TestCase {
+
+	public void testExpiry() {
+		TimerWheel<String> wheel = new TimerWheel<String>(1.0, 0);
+		List<String> expired = new ArrayList<String>();
+		wheel.schedule("a", 5.5);
+		wheel.schedule("b", 2);
+		wheel.schedule("c", 5.2);
+		assertEquals(3, wheel.size());
+
+		wheel.advance(1.9, expired);
+		assertTrue(expired.isEmpty());
+		wheel.advance(2, expired);
+		assertEquals("[b]", expired.toString());
+		expired.clear();
+
+		wheel.advance(5.3, expired);
+		assertEquals("[c]", expired.toString());
+		expired.clear();
+		wheel.advance(5.5, expired);
+		assertEquals("[a]", expired.toString());
+		assertEquals(0, wheel.size());
+	}
+
+	public void testPastAndCancel() {
+		TimerWheel<String> wheel = new TimerWheel<String>(1.0, 100);
+		List<String> expired = new ArrayList<String>();
+		TimerWheel.Timer<String> t = wheel.schedule("a", 200);
+		wheel.schedule("b", 50); /* in the past -> expires right away */
+		wheel.advance(100, expired);
+		assertEquals("[b]", expired.toString());
+
+		wheel.cancel(t);
+		wheel.cancel(t); /* no effect */
+		assertEquals(0, wheel.size());
+		expired.clear();
+		wheel.advance(300, expired);
+		assertTrue(expired.isEmpty());
+	}
+
+	public void testClear() {
+		TimerWheel<String> wheel = new TimerWheel<String>(1.0, 0);
+		List<String> expired = new ArrayList<String>();
+		TimerWheel.Timer<String> t = wheel.schedule("a", 10);
+		wheel.clear(5);
+		assertEquals(0, wheel.size());
+		wheel.cancel(t); /* no effect */
+		wheel.advance(20, expired);
+		assertTrue(expired.isEmpty());
+	}
+
+	public void testRandomTimes() {
+		Random rng = new Random(1);
+		double tick = 0.5;
+		TimerWheel<Double> wheel = new TimerWheel<Double>(tick, 0);
+		List<Double> times = new ArrayList<Double>();
+		List<TimerWheel.Timer<Double>> timers = 
+			new ArrayList<TimerWheel.Timer<Double>>();
+		/* times on all levels and beyond them */
+		double maxTime = tick * Math.pow(TimerWheel.SLOTS, 
+				TimerWheel.LEVELS) * 2;
+		for (int i=0; i<2000; i++) {
+			double time = Math.pow(rng.nextDouble(), 4) * maxTime;
+			times.add(time);
+			timers.add(wheel.schedule(time, time));
+		}
+		/* cancel every tenth */
+		List<Double> cancelled = new ArrayList<Double>();
+		for (int i=0; i<timers.size(); i+=10) {
+			wheel.cancel(timers.get(i));
+			cancelled.add(times.get(i));
+		}
+		assertEquals(1800, wheel.size());
+
+		List<Double> expired = new ArrayList<Double>();
+		double now = 0;
+		int nrofExpired = 0;
+		while (wheel.size() > 0) {
+			now += rng.nextDouble() * 5000;
+			wheel.advance(now, expired);
+			for (double time : expired) {
+				assertTrue(time <= now);
+				assertFalse(cancelled.contains(time));
+				times.remove(time);
+			}
+			nrofExpired += expired.size();
+			expired.clear();
+			/* all timers up to now have expired */
+			for (double time : times) {
+				if (!cancelled.contains(time)) {
+					assertTrue(time > now);
+				}
+			}
+		}
+		assertEquals(1800, nrofExpired);
+	}
+}
@@ -5,6 +5,8 @@
 package test;
 
 import input.EventQueue;
+import input.ExternalEvent;
+import input.PlannedConnectionEvent;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -36,6 +38,7 @@ public class WorldTest extends TestCase {
 	protected void setUp() throws Exception {
 		super.setUp();
 		SimClock.reset();
+		DTNHost.reset();
 		TestSettings testSettings = new TestSettings();
 		testSettings.setNameSpace(TestUtils.IFACE_NS);
 		testSettings.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
@@ -102,6 +105,149 @@ public class WorldTest extends TestCase {
 	}
 	
 
+	public void testPlannedConnections() {
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		events.add(new PlannedConnectionEvent(0, 1, true, 0.02));
+		events.add(new PlannedConnectionEvent(2, 3, true, 0.03));
+		events.add(new PlannedConnectionEvent(2, 3, false, 0.06));
+		events.add(new PlannedConnectionEvent(4, 5, true, 0.15));
+		eQueues.add(new ListQueue(events));
+		TestScenario ts = new TestScenario();
+		this.world = new World(ts.getHosts(),ts.getWorldSizeX(), 
+				ts.getWorldSizeY(),ts.getUpdateInterval(), 
+				ts.getUpdateListeners(), ts.simulateConnections(), 
+				ts.getExternalEvents() );
+		
+		world.update();
+		/* hosts are not updated after the planned events */
+		assertNrofUpdates(1);
+		assertEquals(1, testHosts.get(0).getConnections().size());
+		assertEquals(1, testHosts.get(1).getConnections().size());
+		/* changes of the same host are applied in order */
+		assertEquals(0, testHosts.get(2).getConnections().size());
+		assertEquals(0, testHosts.get(3).getConnections().size());
+		assertEquals(0, testHosts.get(4).getConnections().size());
+		
+		world.update();
+		assertNrofUpdates(2);
+		assertEquals(1, testHosts.get(4).getConnections().size());
+		assertEquals(1, testHosts.get(5).getConnections().size());
+	}
+	
+	public void testIncrementalUpdates() {
+		List<DTNHost> updateLog = createIncrementalWorld(false, 
+				new AffectingEvent(0.02, 5, 1), new AffectingEvent(0.02, 1, 7),
+				new AffectingEvent(0.05, 3), new AffectingEvent(0.07, 3, 5));
+		
+		world.update();
+		/* affected hosts are updated once per event time and all hosts 
+		 * at the end of the interval */
+		assertEquals(1, testHosts.get(0).nrofUpdate);
+		assertEquals(2, testHosts.get(1).nrofUpdate);
+		assertEquals(3, testHosts.get(3).nrofUpdate);
+		assertEquals(3, testHosts.get(5).nrofUpdate);
+		assertEquals(2, testHosts.get(7).nrofUpdate);
+		assertEquals(0.1, testHosts.get(0).lastUpdate, TIME_DELTA);
+		
+		/* without randomizing, dirty hosts are updated in address order */
+		assertEquals(testHosts.get(1), updateLog.get(0));
+		assertEquals(testHosts.get(5), updateLog.get(1));
+		assertEquals(testHosts.get(7), updateLog.get(2));
+		assertEquals(testHosts.get(3), updateLog.get(3));
+		assertEquals(testHosts.get(3), updateLog.get(4));
+		assertEquals(testHosts.get(5), updateLog.get(5));
+		assertEquals(6 + testHosts.size(), updateLog.size());
+	}
+	
+	public void testIncrementalUpdateOrder() {
+		int nrofEvents = 20;
+		AffectingEvent[] events = new AffectingEvent[nrofEvents];
+		for (int i=0; i<nrofEvents; i++) {
+			events[i] = new AffectingEvent(0.001 * (i + 1), 0, 9);
+		}
+		List<DTNHost> updateLog = createIncrementalWorld(true, events);
+		
+		world.update();
+		/* the dirty hosts follow the randomized update order, i.e., the 
+		 * host with the lower address is not always updated first */
+		int nrofLowFirst = 0;
+		for (int i=0; i<nrofEvents; i++) {
+			List<DTNHost> pair = updateLog.subList(2*i, 2*i + 2);
+			assertTrue(pair.contains(testHosts.get(0)));
+			assertTrue(pair.contains(testHosts.get(9)));
+			if (pair.get(0) == testHosts.get(0)) {
+				nrofLowFirst++;
+			}
+		}
+		assertTrue(nrofLowFirst > 0);
+		assertTrue(nrofLowFirst < nrofEvents);
+		assertEquals(nrofEvents + 1, testHosts.get(0).nrofUpdate);
+		assertEquals(1, testHosts.get(4).nrofUpdate);
+	}
+	
+	/**
+	 * Creates a world with incremental updates and the given events
+	 * @param randomize Should the update order be randomized
+	 * @param events The events of the world
+	 * @return A list where the updated hosts are logged in update order
+	 */
+	private List<DTNHost> createIncrementalWorld(boolean randomize, 
+			ExternalEvent... events) {
+		TestSettings s = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		s.putSetting(World.INCREMENTAL_UPDATES_S, "true");
+		s.putSetting(World.RANDOMIZE_UPDATES_S, "" + randomize);
+		
+		List<DTNHost> updateLog = new ArrayList<DTNHost>();
+		for (TestDTNHost h : testHosts) {
+			h.updateLog = updateLog;
+		}
+		List<ExternalEvent> list = new ArrayList<ExternalEvent>();
+		for (ExternalEvent ee : events) {
+			list.add(ee);
+		}
+		eQueues.add(new ListQueue(list));
+		
+		TestScenario ts = new TestScenario();
+		this.world = new World(ts.getHosts(),ts.getWorldSizeX(), 
+				ts.getWorldSizeY(),ts.getUpdateInterval(), 
+				ts.getUpdateListeners(), ts.simulateConnections(), 
+				ts.getExternalEvents() );
+		return updateLog;
+	}
+	
+	/** Event that only reports the hosts it affects */
+	private static class AffectingEvent extends ExternalEvent {
+		private int[] affected;
+		
+		public AffectingEvent(double time, int... affected) {
+			super(time);
+			this.affected = affected;
+		}
+		
+		@Override
+		public int[] getAffectedHosts() {
+			return this.affected;
+		}
+	}
+	
+	/** Event queue that returns the events of a list */
+	private static class ListQueue implements EventQueue {
+		private List<ExternalEvent> events;
+		
+		public ListQueue(List<ExternalEvent> events) {
+			this.events = events;
+		}
+		
+		public ExternalEvent nextEvent() {
+			return events.remove(0);
+		}
+		
+		public double nextEventsTime() {
+			return (events.size() > 0 ? events.get(0).getTime() : 
+				Double.MAX_VALUE);
+		}
+	}
+
 	/** Dummy scenario for providing test values for the World */ 
 	private class TestScenario extends core.SimScenario {
 		public TestScenario() {	}
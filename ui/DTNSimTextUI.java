@@ -34,6 +34,9 @@ public class DTNSimTextUI extends DTNSimUI {
 			}
 			simTime = SimClock.getTime();
 			this.update(false);
+			if (simTime < endTime) {
+				checkpointIfDue();
+			}
 		}
 		
 		double duration = (System.currentTimeMillis() - startTime)/1000.0;
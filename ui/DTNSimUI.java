@@ -4,11 +4,18 @@
  */
 package ui;
 
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Vector;
 
 import report.Report;
 import core.ApplicationListener;
+import core.BufferListener;
+import core.Connection;
 import core.ConnectionListener;
+import core.DTNHost;
+import core.Message;
 import core.MessageListener;
 import core.MovementListener;
 import core.Settings;
@@ -17,6 +24,7 @@ import core.SimClock;
 import core.SimError;
 import core.SimScenario;
 import core.UpdateListener;
+import core.WarmupCache;
 import core.World;
 
 /**
@@ -42,6 +50,40 @@ public abstract class DTNSimUI {
 	 */
 	public static final String MM_WARMUP_S = 
 		movement.MovementModel.MOVEMENT_MODEL_NS + ".warmup";
+	/**
+	 * Movement model warmup cache directory -setting id ({@value}). If 
+	 * defined, the state of the hosts' movement after the warmup is stored
+	 * to this directory and later runs with the same movement settings 
+	 * load it from there instead of running the warmup again (see 
+	 * {@link core.WarmupCache}). Supports value filling.
+	 */
+	public static final String MM_WARMUP_CACHE_S = 
+		movement.MovementModel.MOVEMENT_MODEL_NS + ".warmupCache";
+	
+	/**
+	 * Checkpoint interval -setting id ({@value}). Defines how often 
+	 * (simulated seconds) the state of the simulation is written to the
+	 * checkpoint file (see {@link World#checkpoint(java.nio.file.Path)}).
+	 * Default is zero, i.e., no checkpoints are written.
+	 */
+	public static final String CHECKPOINT_INTERVAL_S = "Checkpoint.interval";
+	/**
+	 * Checkpoint file path -setting id ({@value}). Supports value filling.
+	 * Default is {@value #DEF_CHECKPOINT_FILE}.
+	 */
+	public static final String CHECKPOINT_FILE_S = "Checkpoint.file";
+	/** Default checkpoint file path ({@value}) */
+	public static final String DEF_CHECKPOINT_FILE = 
+		"%%Scenario.name%%.checkpoint";
+	/**
+	 * Resumed checkpoint -setting id ({@value}). If defined, the simulation
+	 * is continued from the state in the given checkpoint file instead of 
+	 * starting from the beginning. The settings must be the same as the 
+	 * checkpointed simulation's. Movement warmup is skipped and reports
+	 * only see what happens after the checkpoint. Supports value filling.
+	 * Can also be given with the {@link core.DTNSim#RESUME_FLAG} option.
+	 */
+	public static final String RESUME_S = "Checkpoint.resume";
 	
 	/** report class' package name */
 	private static final String REPORT_PAC = "report.";
@@ -58,6 +100,14 @@ public abstract class DTNSimUI {
 	protected SimScenario scen;
 	/** simtime of last UI update */
 	protected double lastUpdate;
+	/** how often checkpoints are written (0 = never) */
+	protected double checkpointInterval;
+	/** simtime when the next checkpoint is written */
+	protected double nextCheckpoint;
+	/** path of the checkpoint file */
+	protected String checkpointFile;
+	/** is the JVM exited if the simulation can't be started */
+	protected boolean exitOnError;
 	
 	/**
 	 * Constructor.
@@ -67,6 +117,25 @@ public abstract class DTNSimUI {
 		this.reports = new Vector<Report>();
 		this.simDone = false;
 		this.simCancelled = false;
+		this.exitOnError = true;
+	}
+	
+	/**
+	 * Sets whether the JVM is exited if the simulation can't be started
+	 * (the default) or the error is thrown to the caller of 
+	 * {@link #start()}
+	 * @param exit True to exit, false to throw the error
+	 */
+	public void setExitOnError(boolean exit) {
+		this.exitOnError = exit;
+	}
+	
+	/**
+	 * Returns true if the simulation has terminated normally
+	 * @return true if the simulation has terminated normally
+	 */
+	public boolean isSimDone() {
+		return this.simDone;
 	}
 	
 	/**
@@ -99,6 +168,28 @@ public abstract class DTNSimUI {
 						reportClass));	
 			}
 
+			this.checkpointInterval = 
+				settings.getDouble(CHECKPOINT_INTERVAL_S, 0);
+			settings.ensurePositiveValue(checkpointInterval,
+					CHECKPOINT_INTERVAL_S);
+			this.checkpointFile = settings.valueFillString(
+					settings.getSetting(CHECKPOINT_FILE_S, 
+							DEF_CHECKPOINT_FILE));
+			
+			if (settings.contains(RESUME_S)) {
+				String resumeFile = settings.valueFillString(
+						settings.getSetting(RESUME_S));
+				this.world = this.scen.getWorld();
+				world.restore(Paths.get(resumeFile));
+				Set<String> messageIds = getMessageIds();
+				for (Report r : this.reports) {
+					r.simulationRestored(messageIds);
+				}
+				this.lastUpdate = SimClock.getTime();
+				scheduleNextCheckpoint();
+				return;
+			}
+			
 			double warmupTime = 0;
 			if (settings.contains(MM_WARMUP_S)) {
 				warmupTime = settings.getDouble(MM_WARMUP_S);
@@ -109,20 +200,79 @@ public abstract class DTNSimUI {
 			}
 
 			this.world = this.scen.getWorld();
-			world.warmupMovementModel(warmupTime);
+			if (warmupTime > 0 && settings.contains(MM_WARMUP_CACHE_S) &&
+					world.simulateMovement()) {
+				String cacheDir = settings.valueFillString(
+						settings.getSetting(MM_WARMUP_CACHE_S));
+				new WarmupCache(world, cacheDir, warmupTime).warmup();
+			}
+			else {
+				world.warmupMovementModel(warmupTime);
+			}
+			scheduleNextCheckpoint();
 		}
 		catch (SettingsError se) {
 			System.err.println("Can't start: error in configuration file(s)");
 			System.err.println(se.getMessage());
+			if (!exitOnError) {
+				throw se;
+			}
 			System.exit(-1);			
 		}
 		catch (SimError er) {
 			System.err.println("Can't start: " + er.getMessage());
 			System.err.println("Caught at " + er.getStackTrace()[0]);
+			if (!exitOnError) {
+				throw er;
+			}
 			System.exit(-1);
 		}		
 	}
 	
+	/**
+	 * Returns the IDs of all messages in the hosts' buffers and transfers
+	 * @return The message IDs
+	 */
+	private Set<String> getMessageIds() {
+		Set<String> ids = new HashSet<String>();
+		for (DTNHost host : world.getHosts()) {
+			for (Message m : host.getMessageCollection()) {
+				ids.add(m.getId());
+			}
+			for (Connection con : host.getConnections()) {
+				if (con.getMessage() != null) {
+					ids.add(con.getMessage().getId());
+				}
+			}
+		}
+		return ids;
+	}
+	
+	/**
+	 * Writes a checkpoint of the simulation if checkpoints are enabled and
+	 * the checkpoint interval has passed since the previous one. Should be
+	 * called between world updates.
+	 */
+	protected void checkpointIfDue() {
+		if (this.checkpointInterval <= 0 || 
+				SimClock.getTime() < this.nextCheckpoint) {
+			return;
+		}
+		world.checkpoint(Paths.get(this.checkpointFile));
+		scheduleNextCheckpoint();
+	}
+	
+	/**
+	 * Sets the time of the next checkpoint to the next multiple of the 
+	 * checkpoint interval
+	 */
+	private void scheduleNextCheckpoint() {
+		if (this.checkpointInterval > 0) {
+			this.nextCheckpoint = this.checkpointInterval * 
+				(Math.floor(SimClock.getTime() / this.checkpointInterval) + 1);
+		}
+	}
+	
 	/**
 	 * Runs maintenance jobs that are needed before exiting.
 	 */
@@ -152,6 +302,9 @@ public abstract class DTNSimUI {
 		if (r instanceof ApplicationListener) {
 			scen.addApplicationListener((ApplicationListener)r);
 		}
+		if (r instanceof BufferListener) {
+			scen.addBufferListener((BufferListener)r);
+		}
 
 		this.reports.add(r);
 	}
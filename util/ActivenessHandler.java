@@ -4,9 +4,13 @@
  */
 package util;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.Queue;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
+import core.Checkpointable;
 import core.Settings;
 import core.SettingsError;
 import core.SimClock;
@@ -15,7 +19,7 @@ import core.SimClock;
  * Object of this class tell the models when a node belonging
  * to a certain group is active and when not.
  */
-public class ActivenessHandler {
+public class ActivenessHandler implements Checkpointable {
 	
 	/** 
 	 * <P>Active times -setting id ({@value})</P>
@@ -48,11 +52,16 @@ public class ActivenessHandler {
 	 */
 	public static final String ACTIVE_PERIODS_OFFSET_S = "activePeriodsOffset";
 	
+	/** how much earlier the activeness changes are reported */
+	private static final double TIME_MARGIN = 1e-6;
+	
 	private Queue<TimeRange> activeTimes;
 	private int [] activePeriods;
 	private int activePeriodsOffset;
 	
 	private TimeRange curRange = null;
+	/** how many times the current time range has changed */
+	private int rangeChanges = 0;
 	
 	public ActivenessHandler(Settings s) {
 		this.activeTimes = parseActiveTimes(s);
@@ -132,20 +141,139 @@ public class ActivenessHandler {
 			}
 		}
 		
-		if (curRange == null) {
-			return false; // out of active times
-		}
-		
 		double time = SimClock.getTime() + offset;
 		
-		if (this.curRange.isOut(time)) { // time for the next time range
-			this.curRange = activeTimes.poll();
+		/* hosts of the same group may be moved concurrently */
+		synchronized (this) {
 			if (curRange == null) {
 				return false; // out of active times
 			}
+			
+			if (this.curRange.isOut(time)) { // time for the next time range
+				this.curRange = activeTimes.poll();
+				this.rangeChanges++;
+				if (curRange == null) {
+					return false; // out of active times
+				}
+			}
+			
+			return curRange.isInRange(time);
+		}
+	}
+
+	/**
+	 * Returns the simulation time when the result of {@link #isActive(int)}
+	 * with the same offset may change next time. The result does not change
+	 * before that time unless the current time range changes in between
+	 * (see {@link #getRangeChanges()}). The returned time may be a bit
+	 * early but never late. Should be called right after 
+	 * {@link #isActive(int)}.
+	 * @param offset The offset
+	 * @return The time of the next possible change or Double.MAX_VALUE if
+	 * the activeness never changes
+	 */
+	public double nextChange(int offset) {
+		if (this.activeTimes == null) {
+			if (this.activePeriods == null) {
+				return Double.MAX_VALUE; // always active
+			}
+			int time = SimClock.getIntTime();
+			int timeIndex = (time + this.activePeriodsOffset + offset) % 
+				(this.activePeriods[0] + this.activePeriods[1]);
+			int untilChange;
+			if (timeIndex < 0) {
+				untilChange = 1;
+			} else if (timeIndex <= this.activePeriods[0]) {
+				untilChange = this.activePeriods[0] + 1 - timeIndex;
+			} else {
+				untilChange = this.activePeriods[0] + this.activePeriods[1] -
+					timeIndex;
+			}
+			/* integer time is the simulation time rounded */
+			return time + untilChange - 0.5 - TIME_MARGIN;
 		}
 		
-		return curRange.isInRange(time);
+		double time = SimClock.getTime() + offset;
+		synchronized (this) {
+			if (curRange == null) {
+				return Double.MAX_VALUE; // out of active times for good
+			}
+			if (time < curRange.start) {
+				return curRange.start - offset - TIME_MARGIN;
+			}
+			if (!curRange.isOut(time)) {
+				return curRange.end - offset - TIME_MARGIN;
+			}
+			return SimClock.getTime(); // range not updated yet
+		}
+	}
+
+	/**
+	 * Returns how many times the current active time range has changed. 
+	 * The range is shared by all the users of the handler so the result 
+	 * of {@link #isActive(int)} may change also when someone else moves 
+	 * to the next range.
+	 * @return The number of range changes
+	 */
+	public int getRangeChanges() {
+		return this.rangeChanges;
+	}
+
+	/**
+	 * Returns true if there are no active times nor periods, i.e., 
+	 * {@link #isActive(int)} always returns true
+	 * @return true if the handler never reports inactiveness
+	 */
+	public boolean isAlwaysActive() {
+		return this.activeTimes == null && this.activePeriods == null;
+	}
+
+	/**
+	 * Writes the active time ranges that have not passed yet
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		if (this.activeTimes == null) {
+			return; /* state doesn't change */
+		}
+		synchronized (this) {
+			writeRange(out, this.curRange);
+			out.writeInt(this.activeTimes.size());
+			for (TimeRange r : this.activeTimes) {
+				writeRange(out, r);
+			}
+		}
+	}
+
+	public void readState(CheckpointInput in) throws IOException {
+		if (this.activeTimes == null) {
+			return;
+		}
+		synchronized (this) {
+			this.curRange = readRange(in);
+			this.rangeChanges++;
+			int nrofRanges = in.readInt();
+			this.activeTimes.clear();
+			for (int i=0; i<nrofRanges; i++) {
+				this.activeTimes.add(readRange(in));
+			}
+		}
+	}
+
+	private void writeRange(CheckpointOutput out, TimeRange r)
+			throws IOException {
+		out.writeBoolean(r != null);
+		if (r != null) {
+			out.writeDouble(r.start);
+			out.writeDouble(r.end);
+		}
+	}
+
+	private TimeRange readRange(CheckpointInput in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		double start = in.readDouble();
+		return new TimeRange(start, in.readDouble());
 	}
 
 	/**
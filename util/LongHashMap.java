@@ -0,0 +1,235 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hash map with primitive long keys. Uses open addressing with linear
+ * probing, so no objects are created for the entries and the memory use
+ * is proportional to the number of entries. Null values are not
+ * supported.
+ * @param <V> Type of the values
+ */
+public class LongHashMap<V> {
+	/** initial capacity of the tables (power of two) */
+	private static final int DEF_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+
+	/**
+	 * Creates a new, empty map
+	 */
+	public LongHashMap() {
+		this(DEF_CAPACITY);
+	}
+
+	/**
+	 * Creates a new, empty map
+	 * @param expectedSize How many entries the map is expected to have
+	 */
+	public LongHashMap(int expectedSize) {
+		int capacity = DEF_CAPACITY;
+		while (capacity < expectedSize * 2) {
+			capacity *= 2;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * Returns the value of a key
+	 * @param key The key
+	 * @return The value or null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		for (int i = index(key); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V)values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if the key is in the map
+	 * @param key The key
+	 * @return True if the key is in the map
+	 */
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Sets the value of a key
+	 * @param key The key
+	 * @param value The new value (not null)
+	 * @return The old value or null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values not supported");
+		}
+
+		int i = index(key);
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V)values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if (size * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes a key from the map
+	 * @param key The key
+	 * @return The removed value or null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int i = index(key);
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				break;
+			}
+		}
+		if (values[i] == null) {
+			return null;
+		}
+
+		V old = (V)values[i];
+		values[i] = null;
+		size--;
+
+		/* shift the following entries of the probe sequence backwards */
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int home = index(keys[j]);
+			/* can the entry at j be moved to the free slot i? */
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				values[j] = null;
+				i = j;
+			}
+		}
+		return old;
+	}
+
+	/**
+	 * Removes all entries from the map
+	 */
+	public void clear() {
+		for (int i=0; i<values.length; i++) {
+			values[i] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of entries in the map
+	 * @return The number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the map has no entries
+	 * @return True if the map is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Copies the keys of the map to an array. A new array is created if
+	 * the given one is too small.
+	 * @param buffer The array to copy the keys to (may be null)
+	 * @return The array that contains the keys in its first {@link #size()}
+	 * elements (in no particular order)
+	 */
+	public long[] keys(long[] buffer) {
+		if (buffer == null || buffer.length < size) {
+			buffer = new long[size];
+		}
+		int n = 0;
+		for (int i=0; i<values.length; i++) {
+			if (values[i] != null) {
+				buffer[n++] = keys[i];
+			}
+		}
+		return buffer;
+	}
+
+	/**
+	 * Returns the values of the map in a new list
+	 * @return The values (in the same order as the keys are returned by
+	 * {@link #keys(long[])})
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		List<V> list = new ArrayList<V>(size);
+		for (int i=0; i<values.length; i++) {
+			if (values[i] != null) {
+				list.add((V)values[i]);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the home slot of a key
+	 * @param key The key
+	 * @return Index of the slot where probing for the key starts
+	 */
+	private int index(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Creates new, empty tables
+	 * @param capacity Size of the tables (power of two)
+	 */
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Moves all entries to tables of a new size
+	 * @param capacity The new size (power of two)
+	 */
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for (int i=0; i<oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int j = index(oldKeys[i]);
+				while (values[j] != null) {
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+}
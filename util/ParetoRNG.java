@@ -4,8 +4,12 @@
  */
 package util;
 
+import java.io.IOException;
 import java.util.Random;
 
+import core.CheckpointInput;
+import core.CheckpointOutput;
+
 /**
  * A random number generator for a Pareto distribution
  * @author Frans Ekman
@@ -49,5 +53,23 @@ public class ParetoRNG {
 		} while (x > maxValue);
 		return x;
 	}
+
+	/**
+	 * Writes the state of the underlying random number generator
+	 * @param out The checkpoint to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writeState(CheckpointOutput out) throws IOException {
+		out.writeRandom(this.rng);
+	}
+
+	/**
+	 * Restores the state written by {@link #writeState(CheckpointOutput)}
+	 * @param in The checkpoint to read from
+	 * @throws IOException if reading fails
+	 */
+	public void readState(CheckpointInput in) throws IOException {
+		this.rng = in.readRandom();
+	}
 		
 }
@@ -0,0 +1,107 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package util;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Random number generator whose state can be read and restored (e.g., for
+ * simulation checkpoints). Uses the same algorithm as {@link Random}, so
+ * the generated sequences are identical to the ones of a {@link Random}
+ * with the same seed.
+ */
+public class RestorableRandom extends Random {
+	private static final long serialVersionUID = 1L;
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+	/** ID number of the next generator */
+	private static final AtomicLong nextIdNumber = new AtomicLong();
+
+	/** unique ID number of this generator */
+	private final long idNumber = nextIdNumber.getAndIncrement();
+	/* no initializers: the super constructor calls setSeed() */
+	private long state;
+	private boolean haveNextNextGaussian;
+	private double nextNextGaussian;
+
+	/**
+	 * Creates a new random number generator with the given seed
+	 * @param seed The seed
+	 */
+	public RestorableRandom(long seed) {
+		super(seed);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		this.state = (seed ^ MULTIPLIER) & MASK;
+		this.haveNextNextGaussian = false;
+	}
+
+	@Override
+	protected int next(int bits) {
+		this.state = (this.state * MULTIPLIER + ADDEND) & MASK;
+		return (int)(this.state >>> (48 - bits));
+	}
+
+	@Override
+	public double nextGaussian() {
+		if (this.haveNextNextGaussian) {
+			this.haveNextNextGaussian = false;
+			return this.nextNextGaussian;
+		}
+
+		double v1, v2, s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+		this.nextNextGaussian = v2 * multiplier;
+		this.haveNextNextGaussian = true;
+		return v1 * multiplier;
+	}
+
+	/**
+	 * Returns the ID number of this generator. The numbers are unique 
+	 * among the generators created in this virtual machine.
+	 * @return The ID number
+	 */
+	public long getIdNumber() {
+		return this.idNumber;
+	}
+
+	/**
+	 * Returns the internal state of the generator
+	 * @return the 48-bit state
+	 */
+	public long getState() {
+		return this.state;
+	}
+
+	/**
+	 * Returns the cached Gaussian value
+	 * @return the value nextGaussian returns next or NaN if there is no
+	 * cached value
+	 */
+	public double getNextGaussian() {
+		return this.haveNextNextGaussian ? this.nextNextGaussian : Double.NaN;
+	}
+
+	/**
+	 * Restores the state of the generator
+	 * @param state The 48-bit state (see {@link #getState()})
+	 * @param nextGaussian The cached Gaussian value (see
+	 * {@link #getNextGaussian()})
+	 */
+	public void setState(long state, double nextGaussian) {
+		this.state = state & MASK;
+		this.haveNextNextGaussian = !Double.isNaN(nextGaussian);
+		this.nextNextGaussian = nextGaussian;
+	}
+}
@@ -0,0 +1,267 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package util;
+
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel. Items are scheduled to expire at some time and
+ * {@link #advance(double, List)} returns the items whose time has come. 
+ * The time is divided into ticks and the wheel has {@value #LEVELS} levels
+ * of {@value #SLOTS} slots: a slot of the first level holds the timers of 
+ * one tick, a slot of the second level the timers of {@value #SLOTS} ticks,
+ * etc. Timers are moved to the lower levels when their time gets closer,
+ * so scheduling and cancelling a timer is O(1) and advancing the wheel 
+ * costs O(1) per passed tick plus the number of (moved and) expired 
+ * timers. Timers too far in the future for the wheel are kept in an 
+ * overflow list.
+ * @param <T> Type of the items
+ */
+public class TimerWheel<T> {
+	/** number of slots on each level ({@value}) */
+	public static final int SLOTS = 64;
+	/** number of levels ({@value}) */
+	public static final int LEVELS = 4;
+	private static final int SLOT_BITS = 6;
+	private static final int SLOT_MASK = SLOTS - 1;
+	
+	private double tickLength;
+	/** the first tick whose timers haven't all expired yet */
+	private long currentTick;
+	/** sentinel heads of the slot lists [level][slot] */
+	private Timer<T>[][] slots;
+	/** timers that are beyond the highest level */
+	private Timer<T> overflow;
+	private int size;
+	
+	/**
+	 * Creates a new, empty timer wheel
+	 * @param tickLength Length of one tick (simulated seconds)
+	 * @param time The current time
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TimerWheel(double tickLength, double time) {
+		this.tickLength = tickLength;
+		this.slots = new Timer[LEVELS][SLOTS];
+		for (int i=0; i<LEVELS; i++) {
+			for (int j=0; j<SLOTS; j++) {
+				slots[i][j] = new Timer<T>(null, 0);
+			}
+		}
+		this.overflow = new Timer<T>(null, 0);
+		clear(time);
+	}
+	
+	/**
+	 * Schedules a new timer
+	 * @param item The item that expires
+	 * @param time The time when the item expires
+	 * @return The timer (can be used for cancelling it)
+	 */
+	public Timer<T> schedule(T item, double time) {
+		Timer<T> timer = new Timer<T>(item, time);
+		insert(timer);
+		size++;
+		return timer;
+	}
+	
+	/**
+	 * Cancels a timer. Cancelling a timer that has expired or has already
+	 * been cancelled does nothing.
+	 * @param timer The timer to cancel
+	 */
+	public void cancel(Timer<T> timer) {
+		if (timer.prev != null) {
+			unlink(timer);
+			size--;
+		}
+	}
+	
+	/**
+	 * Advances the wheel to the given time and removes the timers that have 
+	 * expired (whose time is less than or equal to the given time)
+	 * @param time The new time (not less than the previous one)
+	 * @param expired List where the items of the expired timers are added
+	 * (in the order of their times within a tick)
+	 */
+	public void advance(double time, List<T> expired) {
+		long targetTick = toTick(time);
+		if (size == 0) {
+			currentTick = Math.max(currentTick, targetTick);
+			return;
+		}
+		
+		for (; currentTick < targetTick; currentTick++) {
+			cascade();
+			expire(Double.MAX_VALUE, expired);
+			if (size == 0) {
+				currentTick = targetTick;
+				return;
+			}
+		}
+		cascade();
+		expire(time, expired);
+	}
+	
+	/**
+	 * Removes all timers
+	 * @param time The current time
+	 */
+	public void clear(double time) {
+		for (int i=0; i<LEVELS; i++) {
+			for (int j=0; j<SLOTS; j++) {
+				clearList(slots[i][j]);
+			}
+		}
+		clearList(overflow);
+		this.size = 0;
+		this.currentTick = toTick(time);
+	}
+	
+	/**
+	 * Returns the number of scheduled timers
+	 * @return The number of timers
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the tick of a time
+	 */
+	private long toTick(double time) {
+		return (long)Math.floor(time / tickLength);
+	}
+	
+	/**
+	 * Puts a timer to the slot that matches its time
+	 */
+	private void insert(Timer<T> timer) {
+		long tick = Math.max(toTick(timer.time), currentTick);
+		for (int level=0; level<LEVELS; level++) {
+			int shift = SLOT_BITS * level;
+			if ((tick >> (shift + SLOT_BITS)) == 
+				(currentTick >> (shift + SLOT_BITS))) {
+				link(slots[level][(int)(tick >> shift) & SLOT_MASK], timer);
+				return;
+			}
+		}
+		link(overflow, timer);
+	}
+	
+	/**
+	 * Moves the timers of the current tick from the higher levels down 
+	 * when the current tick starts a new slot of a higher level
+	 */
+	private void cascade() {
+		int level = 1;
+		while (level < LEVELS && 
+				(currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+			level++;
+		}
+		if (level == LEVELS && currentTick % (1L << (SLOT_BITS*LEVELS)) == 0) {
+			reinsert(overflow);
+		}
+		for (level--; level >= 1; level--) {
+			int shift = SLOT_BITS * level;
+			reinsert(slots[level][(int)(currentTick >> shift) & SLOT_MASK]);
+		}
+	}
+	
+	/**
+	 * Removes the timers of the current tick that expire at the given time
+	 * or earlier
+	 */
+	private void expire(double time, List<T> expired) {
+		Timer<T> head = slots[0][(int)currentTick & SLOT_MASK];
+		Timer<T> t = head.next;
+		while (t != head) {
+			Timer<T> next = t.next;
+			if (t.time <= time) {
+				unlink(t);
+				size--;
+				expired.add(t.item);
+			}
+			t = next;
+		}
+	}
+	
+	/**
+	 * Inserts again all timers of a slot list
+	 */
+	private void reinsert(Timer<T> head) {
+		Timer<T> t = head.next;
+		if (t == head) {
+			return;
+		}
+		head.prev.next = null; /* detach the list */
+		head.next = head;
+		head.prev = head;
+		while (t != null) {
+			Timer<T> next = t.next;
+			insert(t);
+			t = next;
+		}
+	}
+	
+	private void clearList(Timer<T> head) {
+		for (Timer<T> t = head.next; t != head && t != null; ) {
+			Timer<T> next = t.next;
+			t.prev = null;
+			t.next = null;
+			t = next;
+		}
+		head.next = head;
+		head.prev = head;
+	}
+	
+	private void link(Timer<T> head, Timer<T> timer) {
+		timer.prev = head.prev;
+		timer.next = head;
+		head.prev.next = timer;
+		head.prev = timer;
+	}
+	
+	private void unlink(Timer<T> timer) {
+		timer.prev.next = timer.next;
+		timer.next.prev = timer.prev;
+		timer.prev = null;
+		timer.next = null;
+	}
+	
+	/**
+	 * A scheduled timer
+	 * @param <T> Type of the item
+	 */
+	public static class Timer<T> {
+		private T item;
+		private double time;
+		private Timer<T> prev;
+		private Timer<T> next;
+		
+		private Timer(T item, double time) {
+			this.item = item;
+			this.time = time;
+			this.prev = this;
+			this.next = this;
+		}
+		
+		/**
+		 * Returns the item of the timer
+		 * @return The item
+		 */
+		public T getItem() {
+			return this.item;
+		}
+		
+		/**
+		 * Returns the time when the timer expires
+		 * @return The expiry time
+		 */
+		public double getTime() {
+			return this.time;
+		}
+	}
+}